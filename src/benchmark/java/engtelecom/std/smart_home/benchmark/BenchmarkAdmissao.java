@@ -0,0 +1,166 @@
+package engtelecom.std.smart_home.benchmark;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import engtelecom.std.smart_home.CasaInteligenteApplication;
+
+/**
+ * Mede a latência de um cliente bem-comportado enquanto outro cliente inunda
+ * a execução de cenários, com e sem o controle de admissão.
+ *
+ * O cliente bem-comportado lê e altera a lâmpada 1 em ritmo constante. Em
+ * cada modo há uma rodada sem carga e outra em que um segundo cliente pede a
+ * execução de um cenário com uma rotina longa a uma taxa fixa, maior do que a
+ * aplicação consegue atender, ignorando o {@code Retry-After}. A taxa é
+ * mantida mesmo quando as respostas atrasam (carga em malha aberta), como
+ * faria um painel com defeito. São informados os percentis da latência do
+ * cliente bem-comportado e quantas execuções do cenário foram aceitas e
+ * recusadas. O cliente abusivo sai de outro endereço de loopback
+ * (127.0.0.2), pois o limite de cada cliente vale para o seu endereço.
+ *
+ * Uso: {@code gradle benchmarkAdmissao --args="<execuções por segundo> <segundos por rodada>"}
+ */
+public class BenchmarkAdmissao {
+
+    private static final int PORTA = 18100;
+    private static final int ACOES_CENARIO = 20;
+    private static final long INTERVALO_BOM_MS = 10;
+    private static final int THREADS_ABUSIVAS = 64;
+
+    private static final HttpClient HTTP = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(2)).build();
+    private static final HttpClient HTTP_ABUSIVO = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(2)).localAddress(enderecoAbusivo()).build();
+
+    public static void main(String[] args) throws Exception {
+        int taxa = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int segundos = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        System.out.printf("cliente abusivo: %d execuções/s, %d s por rodada%n", taxa, segundos);
+        for (boolean admissao : new boolean[] { false, true }) {
+            ConfigurableApplicationContext contexto = new SpringApplicationBuilder(CasaInteligenteApplication.class)
+                    .run("--server.port=" + PORTA, "--casa.admissao.habilitado=" + admissao,
+                            "--casa.aquecimento.habilitado=false", "--casa.coalescencia.janela-ms=0",
+                            "--casa.telemetria.habilitada=false");
+            try {
+                criarCenario();
+                String modo = admissao ? "com admissão" : "sem admissão";
+                medir(modo + ", sem carga", 0, segundos);
+                medir(modo + ", sobrecarga", taxa, segundos);
+            } finally {
+                contexto.close();
+            }
+        }
+    }
+
+    private static void medir(String rodada, int taxa, int segundos) throws InterruptedException {
+        long inicio = System.nanoTime();
+        long fim = inicio + segundos * 1_000_000_000L;
+        LongAdder aceitas = new LongAdder();
+        LongAdder recusadas = new LongAdder();
+
+        // cada thread abusiva envia a sua parte da taxa em instantes fixos, sem esperar folga
+        List<Thread> threads = new ArrayList<>();
+        long intervalo = taxa == 0 ? 0 : 1_000_000_000L * THREADS_ABUSIVAS / taxa;
+        for (int i = 0; taxa > 0 && i < THREADS_ABUSIVAS; i++) {
+            long primeiro = inicio + intervalo * i / THREADS_ABUSIVAS;
+            Thread t = new Thread(() -> {
+                HttpRequest requisicao = HttpRequest.newBuilder(
+                        URI.create("http://127.0.0.1:" + PORTA + "/cenarios/1"))
+                        .header("X-Cliente", "painel-abusivo").method("PATCH", HttpRequest.BodyPublishers.noBody())
+                        .build();
+                for (long proximo = primeiro; proximo < fim; proximo += intervalo) {
+                    try {
+                        long espera = proximo - System.nanoTime();
+                        if (espera > 0) {
+                            Thread.sleep(espera / 1_000_000, (int) (espera % 1_000_000));
+                        }
+                        int status = HTTP_ABUSIVO.send(requisicao, HttpResponse.BodyHandlers.discarding()).statusCode();
+                        (status == 429 ? recusadas : aceitas).increment();
+                    } catch (IOException | InterruptedException e) {
+                        recusadas.increment();
+                    }
+                }
+            });
+            t.start();
+            threads.add(t);
+        }
+
+        long[] latencias = new long[(int) (segundos * 1000 / INTERVALO_BOM_MS) + 1];
+        int n = 0;
+        int erros = 0;
+        while (System.nanoTime() < fim && n < latencias.length) {
+            HttpRequest requisicao = n % 5 == 0
+                    ? HttpRequest.newBuilder(URI.create(url("/dispositivos/1"))).header("X-Cliente", "painel-bom")
+                            .header("content-type", "application/json")
+                            .PUT(HttpRequest.BodyPublishers.ofString(
+                                    "{\"ligado\":true,\"cor\":\"azul\",\"intensidade\":" + n % 100 + "}"))
+                            .build()
+                    : HttpRequest.newBuilder(URI.create(url("/dispositivos/1"))).header("X-Cliente", "painel-bom")
+                            .build();
+            long t0 = System.nanoTime();
+            try {
+                if (HTTP.send(requisicao, HttpResponse.BodyHandlers.discarding()).statusCode() != 200) {
+                    erros++;
+                }
+            } catch (IOException e) {
+                erros++;
+            }
+            latencias[n++] = System.nanoTime() - t0;
+            Thread.sleep(INTERVALO_BOM_MS);
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+
+        long[] medidas = Arrays.copyOf(latencias, n);
+        Arrays.sort(medidas);
+        System.out.printf("%-26s cliente bom: %5d req  p50=%7.2f ms  p99=%7.2f ms  máx=%8.2f ms  erros=%d",
+                rodada, n, medidas[n / 2] / 1e6, medidas[(int) (n * 0.99)] / 1e6, medidas[n - 1] / 1e6, erros);
+        if (taxa > 0) {
+            System.out.printf("  | cenário: %d aceitas, %d recusadas", aceitas.sum(), recusadas.sum());
+        }
+        System.out.println();
+    }
+
+    private static void criarCenario() throws IOException, InterruptedException {
+        StringBuilder rotina = new StringBuilder();
+        for (int i = 0; i < ACOES_CENARIO; i++) {
+            rotina.append(i == 0 ? "" : ",").append("{\"dispositivoId\":1,\"ligado\":true,\"cor\":\"verde\",")
+                    .append("\"intensidade\":").append(i).append("}");
+        }
+        HttpResponse<String> resposta = HTTP.send(HttpRequest.newBuilder(URI.create(url("/cenarios")))
+                .header("content-type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString("{\"nome\":\"carga\",\"rotina\":[" + rotina + "]}"))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        if (resposta.statusCode() != 201) {
+            throw new IllegalStateException("cenário não criado: " + resposta.statusCode() + " " + resposta.body());
+        }
+    }
+
+    private static InetAddress enderecoAbusivo() {
+        try {
+            return InetAddress.getByAddress(new byte[] { 127, 0, 0, 2 });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String url(String caminho) {
+        return "http://localhost:" + PORTA + caminho;
+    }
+}
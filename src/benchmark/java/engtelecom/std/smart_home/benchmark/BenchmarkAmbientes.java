@@ -0,0 +1,115 @@
+package engtelecom.std.smart_home.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import engtelecom.std.smart_home.entities.ArCondicionado;
+import engtelecom.std.smart_home.entities.Dispositivo;
+import engtelecom.std.smart_home.entities.Lampada;
+import engtelecom.std.smart_home.entities.Televisao;
+import engtelecom.std.smart_home.service.AmbienteService;
+import engtelecom.std.smart_home.service.CaixaPostalService;
+import engtelecom.std.smart_home.service.Casa;
+import engtelecom.std.smart_home.service.CasaService;
+import engtelecom.std.smart_home.service.CoalescedorService;
+import engtelecom.std.smart_home.service.DiarioAlteracoes;
+import engtelecom.std.smart_home.service.DispositivoService;
+
+/**
+ * Compara um comando de ambiente com o envio de uma substituição por
+ * dispositivo, como um cliente faria antes, em ambientes com milhares de
+ * dispositivos.
+ *
+ * Para cada tamanho, o ambiente sala recebe lâmpadas, aparelhos de
+ * ar-condicionado e televisões, e é ligado e desligado alternadamente de duas
+ * formas: uma substituição completa ({@code substituirDispositivo}) por
+ * dispositivo, em sequência, e um único comando de ambiente. Também é medido
+ * um comando restrito às lâmpadas. São informados os tempos medianos, sem o
+ * custo HTTP das requisições individuais.
+ *
+ * Uso: {@code gradle benchmarkAmbientes --args="<dispositivos> [<dispositivos>...]"}
+ */
+public class BenchmarkAmbientes {
+
+    private static final int REPETICOES = 10;
+
+    public static void main(String[] args) throws Exception {
+        int[] tamanhos = args.length == 0 ? new int[] { 1_000, 5_000, 20_000 }
+                : Arrays.stream(args).mapToInt(Integer::parseInt).toArray();
+
+        for (int n : tamanhos) {
+            DiarioAlteracoes diario = new DiarioAlteracoes(100_000, 1_000);
+            CasaService casaService = new CasaService(10, n + 9, 100, 100, 10, diario);
+            DispositivoService dispositivoService = new DispositivoService(
+                    new CaixaPostalService(256, 32, 4, 8, 1), new CoalescedorService(0), casaService, diario);
+            dispositivoService.registrarDispositivosPadrao();
+            AmbienteService ambienteService = new AmbienteService(dispositivoService, casaService, diario);
+            Casa casa = preencher(casaService, dispositivoService, ambienteService, n);
+
+            long[] individual = new long[REPETICOES];
+            long[] ambiente = new long[REPETICOES];
+            long[] lampadas = new long[REPETICOES];
+            for (int r = 0; r < REPETICOES; r++) {
+                boolean ligado = r % 2 == 0;
+
+                long t0 = System.nanoTime();
+                for (Long id : ambienteService.buscarPorId(casa, 1L).getDispositivos()) {
+                    Dispositivo d = dispositivoService.buscarPorId(casa, id);
+                    Map<String, Object> body = new HashMap<>(d.obterEstado());
+                    body.put("ligado", ligado);
+                    dispositivoService.substituirDispositivo(casa, id, body);
+                }
+                individual[r] = System.nanoTime() - t0;
+
+                t0 = System.nanoTime();
+                Map<String, Object> resultado = ambienteService.executarComando(casa, 1, null,
+                        Map.of("ligado", !ligado));
+                ambiente[r] = System.nanoTime() - t0;
+                if ((Integer) resultado.get("alterados") != n) {
+                    throw new IllegalStateException("comando de ambiente alterou " + resultado.get("alterados"));
+                }
+
+                t0 = System.nanoTime();
+                ambienteService.executarComando(casa, 1, "lampada", Map.of("intensidade", 10 + r));
+                lampadas[r] = System.nanoTime() - t0;
+            }
+
+            System.out.printf("%,7d dispositivos: um PUT por dispositivo=%8.1f ms  comando do ambiente=%7.1f ms"
+                    + "  (%.1fx)  só lâmpadas=%7.1f ms%n", n, mediana(individual), mediana(ambiente),
+                    mediana(individual) / mediana(ambiente), mediana(lampadas));
+        }
+    }
+
+    private static Casa preencher(CasaService casaService, DispositivoService dispositivoService,
+            AmbienteService ambienteService, int n) {
+        Casa casa = casaService.criarCasa(null, null);
+        for (int i = 9; i < n; i++) {
+            Dispositivo d = switch (i % 5) {
+                case 0, 1, 2 -> new Lampada("branca", 50);
+                case 3 -> new ArCondicionado();
+                default -> new Televisao();
+            };
+            dispositivoService.cadastrarDispositivo(casa, d);
+        }
+
+        List<Map<String, Object>> dispositivos = new ArrayList<>(n);
+        for (long id = 1; id <= n; id++) {
+            dispositivos.add(Map.of("id", id));
+        }
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("tipo", "sala");
+        body.put("dispositivos", dispositivos);
+        ambienteService.atualizarAmbiente(casa, 1, body);
+        return casa;
+    }
+
+    private static double mediana(long[] nanos) {
+        long[] ordenado = nanos.clone();
+        Arrays.sort(ordenado);
+        return ordenado[ordenado.length / 2] / 1e6;
+    }
+}
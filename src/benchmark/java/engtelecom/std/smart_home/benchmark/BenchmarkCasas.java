@@ -0,0 +1,89 @@
+package engtelecom.std.smart_home.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import engtelecom.std.smart_home.service.CaixaPostalService;
+import engtelecom.std.smart_home.service.Casa;
+import engtelecom.std.smart_home.service.CasaService;
+import engtelecom.std.smart_home.service.CoalescedorService;
+import engtelecom.std.smart_home.service.DiarioAlteracoes;
+import engtelecom.std.smart_home.service.DispositivoService;
+
+/**
+ * Mede a vazão de comandos do cadastro particionado à medida que o número de
+ * casas cresce.
+ *
+ * Várias threads enviam comandos para dispositivos aleatórios de casas
+ * aleatórias, passando pela consulta na partição da casa e pela caixa postal
+ * do dispositivo, como uma requisição HTTP faria. Uma última rodada concentra
+ * metade dos comandos em uma única casa, para verificar que uma casa
+ * sobrecarregada não derruba a vazão das demais.
+ *
+ * Uso: {@code gradle benchmarkCasas --args="<threads> <segundos por rodada>"}
+ */
+public class BenchmarkCasas {
+
+    private static final int[] CASAS = { 1, 10, 100, 1000, 5000 };
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int segundos = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+        DiarioAlteracoes diario = new DiarioAlteracoes(100_000, 1_000);
+        CasaService casaService = new CasaService(10_000, 1000, 100, 100, 10, diario);
+        DispositivoService dispositivoService = new DispositivoService(
+                new CaixaPostalService(256, 32, 4, 8, 1), new CoalescedorService(0), casaService, diario);
+        dispositivoService.registrarDispositivosPadrao();
+
+        List<Casa> casas = new ArrayList<>();
+        System.out.printf("threads=%d%n", threads);
+        for (int n : CASAS) {
+            while (casas.size() < n) {
+                casas.add(casaService.criarCasa(null, null));
+            }
+            medir("uniforme", dispositivoService, casas, threads, segundos, false);
+        }
+        medir("casa quente", dispositivoService, casas, threads, segundos, true);
+    }
+
+    private static void medir(String cenario, DispositivoService dispositivoService, List<Casa> casas,
+            int threads, int segundos, boolean casaQuente) throws InterruptedException {
+        LongAdder comandos = new LongAdder();
+        LongAdder comandosOutras = new LongAdder();
+        long fim = System.nanoTime() + segundos * 1_000_000_000L;
+
+        List<Thread> trabalhadores = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread th = new Thread(() -> {
+                ThreadLocalRandom aleatorio = ThreadLocalRandom.current();
+                while (System.nanoTime() < fim) {
+                    boolean quente = casaQuente && aleatorio.nextBoolean();
+                    Casa casa = quente ? casas.get(0) : casas.get(aleatorio.nextInt(casas.size()));
+                    long id = 1 + aleatorio.nextInt(9);
+                    dispositivoService.aplicarDiferenca(casa, id, Map.of("ligado", aleatorio.nextBoolean()));
+                    comandos.increment();
+                    if (!quente) {
+                        comandosOutras.increment();
+                    }
+                }
+            });
+            th.start();
+            trabalhadores.add(th);
+        }
+        for (Thread th : trabalhadores) {
+            th.join();
+        }
+
+        if (casaQuente) {
+            System.out.printf("%-11s casas=%-5d comandos/s=%10.0f  (demais casas: %10.0f)%n", cenario, casas.size(),
+                    comandos.sum() / (double) segundos, comandosOutras.sum() / (double) segundos);
+        } else {
+            System.out.printf("%-11s casas=%-5d comandos/s=%10.0f%n", cenario, casas.size(),
+                    comandos.sum() / (double) segundos);
+        }
+    }
+}
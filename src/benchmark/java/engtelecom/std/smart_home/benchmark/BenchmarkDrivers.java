@@ -0,0 +1,90 @@
+package engtelecom.std.smart_home.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import engtelecom.std.smart_home.driver.DriverBloqueante;
+import engtelecom.std.smart_home.driver.DriverDispositivo;
+import engtelecom.std.smart_home.driver.DriverNio;
+import engtelecom.std.smart_home.driver.SimuladorGatewayTcp;
+
+/**
+ * Compara a vazão e a latência do {@link DriverNio} com as do
+ * {@link DriverBloqueante}, ambos falando com o {@link SimuladorGatewayTcp}
+ * local.
+ *
+ * Uso: {@code gradle benchmarkDrivers --args="<comandos> <emVoo>"}
+ */
+public class BenchmarkDrivers {
+
+    private static final String GATEWAYS = "localhost:19500,localhost:19501";
+
+    public static void main(String[] args) throws Exception {
+        int comandos = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int emVoo = args.length > 1 ? Integer.parseInt(args[1]) : 1024;
+
+        SimuladorGatewayTcp simulador = new SimuladorGatewayTcp(GATEWAYS, 0.0);
+        try {
+            DriverNio nio = new DriverNio(GATEWAYS, 4, 5000);
+            try {
+                medir(nio, comandos / 10, emVoo); // aquecimento
+                medir(nio, comandos, emVoo);
+            } finally {
+                nio.encerrar();
+            }
+
+            DriverBloqueante bloqueante = new DriverBloqueante(GATEWAYS, 64, 5000);
+            try {
+                // o driver bloqueante abre uma conexão por comando: usa menos comandos
+                medir(bloqueante, comandos / 100, emVoo);
+                medir(bloqueante, comandos / 10, emVoo);
+            } finally {
+                bloqueante.encerrar();
+            }
+        } finally {
+            simulador.encerrar();
+        }
+    }
+
+    /**
+     * Envia {@code comandos} comandos mantendo no máximo {@code emVoo} em
+     * andamento e imprime vazão e percentis de latência.
+     */
+    private static void medir(DriverDispositivo driver, int comandos, int emVoo) throws InterruptedException {
+        Semaphore janela = new Semaphore(emVoo);
+        long[] latencias = new long[comandos];
+        List<CompletableFuture<?>> futuros = new ArrayList<>(comandos);
+        Map<String, Object> alteracoes = Map.of("ligado", true, "intensidade", 50);
+
+        long inicio = System.nanoTime();
+        for (int i = 0; i < comandos; i++) {
+            janela.acquire();
+            final int n = i;
+            long t0 = System.nanoTime();
+            futuros.add(driver.enviar(i % 1000, alteracoes).whenComplete((r, e) -> {
+                latencias[n] = System.nanoTime() - t0;
+                janela.release();
+            }));
+        }
+
+        long falhas = 0;
+        for (CompletableFuture<?> f : futuros) {
+            try {
+                f.get(30, TimeUnit.SECONDS);
+            } catch (Exception e) {
+                falhas++;
+            }
+        }
+        long duracao = System.nanoTime() - inicio;
+
+        Arrays.sort(latencias);
+        System.out.printf("%-11s comandos=%-7d falhas=%-5d vazao=%10.0f cmd/s  p50=%7.3f ms  p99=%7.3f ms%n",
+                driver.getNome(), comandos, falhas, comandos / (duracao / 1e9),
+                latencias[comandos / 2] / 1e6, latencias[(int) (comandos * 0.99)] / 1e6);
+    }
+}
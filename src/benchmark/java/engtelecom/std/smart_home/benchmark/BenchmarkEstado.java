@@ -0,0 +1,155 @@
+package engtelecom.std.smart_home.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import engtelecom.std.smart_home.entities.Ambiente;
+import engtelecom.std.smart_home.entities.Cenario;
+import engtelecom.std.smart_home.entities.Dispositivo;
+import engtelecom.std.smart_home.entities.Lampada;
+import engtelecom.std.smart_home.service.AmbienteService;
+import engtelecom.std.smart_home.service.CaixaPostalService;
+import engtelecom.std.smart_home.service.Casa;
+import engtelecom.std.smart_home.service.CasaService;
+import engtelecom.std.smart_home.service.CenarioService;
+import engtelecom.std.smart_home.service.CoalescedorService;
+import engtelecom.std.smart_home.service.DiarioAlteracoes;
+import engtelecom.std.smart_home.service.DispositivoService;
+import engtelecom.std.smart_home.service.EstadoCasaService;
+import engtelecom.std.smart_home.service.GrupoService;
+import engtelecom.std.smart_home.service.LeituraCompartilhadaService;
+import engtelecom.std.smart_home.service.TransicaoService;
+
+/**
+ * Compara a primeira tela do aplicativo montada com três chamadas
+ * ({@code /ambientes}, {@code /dispositivos} e {@code /cenarios}) e com uma
+ * chamada a {@code /estado}.
+ *
+ * A casa recebe lâmpadas distribuídas entre os ambientes padrão e cenários
+ * com ações sobre elas. Para cada forma de leitura são informados o tamanho
+ * total das respostas em JSON e o tempo de CPU mediano para montá-las e
+ * serializá-las, sem o compartilhamento de leituras simultâneas; a leitura
+ * composta também é medida com a projeção {@code campos=ligado}.
+ *
+ * Uso: {@code gradle benchmarkEstado --args="<dispositivos> <cenários> <ações por cenário>"}
+ */
+public class BenchmarkEstado {
+
+    private static final int REPETICOES = 51;
+
+    public static void main(String[] args) throws Exception {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 2_000;
+        int numCenarios = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int acoes = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        ObjectMapper json = new ObjectMapper();
+        DiarioAlteracoes diario = new DiarioAlteracoes(100_000, 1_000);
+        CasaService casaService = new CasaService(10, n + 9, 100, numCenarios + 10, 10, diario);
+        DispositivoService dispositivoService = new DispositivoService(
+                new CaixaPostalService(256, 32, 4, 8, 1), new CoalescedorService(0), casaService, diario);
+        dispositivoService.registrarDispositivosPadrao();
+        AmbienteService ambienteService = new AmbienteService(dispositivoService, casaService, diario);
+        TransicaoService transicaoService = new TransicaoService(casaService, dispositivoService, 50, 100);
+        CenarioService cenarioService = new CenarioService(dispositivoService, transicaoService, diario);
+        GrupoService grupoService = new GrupoService(casaService, dispositivoService, diario);
+        EstadoCasaService estadoCasaService = new EstadoCasaService(dispositivoService, ambienteService,
+                cenarioService, grupoService, diario, new LeituraCompartilhadaService(diario, json));
+
+        Casa casa = casaService.criarCasa(null, null);
+        for (int i = 9; i < n; i++) {
+            dispositivoService.cadastrarDispositivo(casa, new Lampada("branca", 50));
+        }
+        List<Long> ambientes = new ArrayList<>(ambienteService.buscarTodosComId(casa).keySet());
+        List<Dispositivo> todos = dispositivoService.buscarTodos(casa);
+        for (int i = 0; i < todos.size(); i++) {
+            ambienteService.instalarDispositivoNoAmbiente(casa, todos.get(i).getId(),
+                    ambientes.get(i % ambientes.size()));
+        }
+        for (int c = 0; c < numCenarios; c++) {
+            Cenario cenario = new Cenario();
+            cenario.setNome("cenário " + c);
+            ArrayList<Map<String, Object>> rotina = new ArrayList<>();
+            for (int a = 0; a < acoes; a++) {
+                rotina.add(Map.of("dispositivoId", todos.get((c * acoes + a) % todos.size()).getId(),
+                        "ligado", true));
+            }
+            cenario.setRotina(rotina);
+            cenarioService.cadastrarCenario(casa, cenario);
+        }
+
+        Set<String> secoes = new LinkedHashSet<>(List.of("ambientes", "dispositivos", "cenarios"));
+        Leitura separadas = () -> json.writeValueAsBytes(listarAmbientes(ambienteService, dispositivoService, casa))
+                .length + json.writeValueAsBytes(dispositivoService.buscarTodos(casa)).length
+                + json.writeValueAsBytes(cenarioService.buscarTodos(casa)).length;
+        Leitura composta = () -> json.writeValueAsBytes(estadoCasaService.montar(casa, secoes, null)).length;
+        Leitura projetada = () -> json.writeValueAsBytes(estadoCasaService.montar(casa, secoes, Set.of("ligado")))
+                .length;
+
+        System.out.printf("%,d dispositivos em %d ambientes, %d cenários com %d ações%n", n, ambientes.size(),
+                numCenarios, acoes);
+        double base = medir("3 chamadas", separadas, 0);
+        medir("/estado", composta, base);
+        medir("/estado?campos=ligado", projetada, base);
+        System.exit(0);
+    }
+
+    /**
+     * Lê várias vezes e informa o tamanho da resposta e o tempo de CPU mediano.
+     *
+     * @return o tempo de CPU mediano, em ms
+     */
+    private static double medir(String nome, Leitura leitura, double base) throws Exception {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        for (int i = 0; i < REPETICOES; i++) {
+            leitura.ler(); // aquecimento
+        }
+        long[] cpu = new long[REPETICOES];
+        int bytes = 0;
+        for (int i = 0; i < REPETICOES; i++) {
+            long t0 = threads.getCurrentThreadCpuTime();
+            bytes = leitura.ler();
+            cpu[i] = threads.getCurrentThreadCpuTime() - t0;
+        }
+        Arrays.sort(cpu);
+        double mediana = cpu[REPETICOES / 2] / 1e6;
+        System.out.printf("  %-22s %,10d bytes   CPU=%7.2f ms%s%n", nome, bytes, mediana,
+                base == 0 ? "" : String.format("  (%.1fx menos CPU)", base / mediana));
+        return mediana;
+    }
+
+    /**
+     * Equivalente ao {@code GET /ambientes}: cada ambiente com os seus
+     * dispositivos completos, buscados um a um.
+     */
+    private static List<Map<String, Object>> listarAmbientes(AmbienteService ambienteService,
+            DispositivoService dispositivoService, Casa casa) {
+        List<Map<String, Object>> resposta = new ArrayList<>();
+        for (Ambiente ambiente : ambienteService.buscarTodosComId(casa).values()) {
+            Map<String, Object> obj = new HashMap<>();
+            obj.put("tipo", ambiente.tipo().getNome());
+            ArrayList<Dispositivo> dispositivos = new ArrayList<>();
+            for (Long id : ambiente.getDispositivos()) {
+                Dispositivo d = dispositivoService.buscarPorId(casa, id);
+                if (d != null) {
+                    dispositivos.add(d);
+                }
+            }
+            obj.put("dispositivos", dispositivos);
+            resposta.add(obj);
+        }
+        return resposta;
+    }
+
+    private interface Leitura {
+        int ler() throws Exception;
+    }
+}
@@ -0,0 +1,141 @@
+package engtelecom.std.smart_home.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import engtelecom.std.smart_home.entities.Grupo;
+import engtelecom.std.smart_home.entities.Lampada;
+import engtelecom.std.smart_home.service.CaixaPostalService;
+import engtelecom.std.smart_home.service.Casa;
+import engtelecom.std.smart_home.service.CasaService;
+import engtelecom.std.smart_home.service.CoalescedorService;
+import engtelecom.std.smart_home.service.DiarioAlteracoes;
+import engtelecom.std.smart_home.service.DispositivoService;
+import engtelecom.std.smart_home.service.GrupoService;
+
+/**
+ * Compara a resolução dos membros de um grupo pelo cache da hierarquia com o
+ * achatamento recursivo dos subgrupos a cada consulta, em hierarquias
+ * profundas.
+ *
+ * Para cada profundidade, a casa recebe uma árvore de grupos com três
+ * subgrupos por nível; os dispositivos ficam distribuídos entre as folhas.
+ * São informados os tempos medianos para resolver o grupo raiz com o cache
+ * já calculado e pelo achatamento recursivo, e o tempo para resolvê-lo logo
+ * depois de uma folha ser alterada, que recalcula apenas a folha e os seus
+ * ancestrais.
+ *
+ * Uso: {@code gradle benchmarkGrupos --args="<dispositivos> <profundidade> [<profundidade>...]"}
+ */
+public class BenchmarkGrupos {
+
+    private static final int REPETICOES = 21;
+    private static final int RAMOS = 3;
+
+    public static void main(String[] args) throws Exception {
+        int n = args.length == 0 ? 200_000 : Integer.parseInt(args[0]);
+        int[] profundidades = args.length < 2 ? new int[] { 4, 6, 8 }
+                : Arrays.stream(args, 1, args.length).mapToInt(Integer::parseInt).toArray();
+
+        for (int profundidade : profundidades) {
+            DiarioAlteracoes diario = new DiarioAlteracoes(100_000, 1_000);
+            CasaService casaService = new CasaService(10, n + 9, 100, 100, 10, diario);
+            DispositivoService dispositivoService = new DispositivoService(
+                    new CaixaPostalService(256, 32, 4, 8, 1), new CoalescedorService(0), casaService, diario);
+            dispositivoService.registrarDispositivosPadrao();
+            GrupoService grupoService = new GrupoService(casaService, dispositivoService, diario);
+
+            Casa casa = casaService.criarCasa(null, null);
+            for (int i = 9; i < n; i++) {
+                dispositivoService.cadastrarDispositivo(casa, new Lampada("branca", 50));
+            }
+            List<Grupo> folhas = new ArrayList<>();
+            long[] proximo = { 1 };
+            int porFolha = (int) Math.ceil(n / Math.pow(RAMOS, profundidade));
+            Grupo raiz = montar(casa, grupoService, profundidade, folhas, proximo, n, porFolha);
+
+            long[] cache = new long[REPETICOES];
+            long[] recursivo = new long[REPETICOES];
+            long[] invalidado = new long[REPETICOES];
+            int membros = 0;
+            int achatados = 0;
+            for (int r = 0; r < REPETICOES; r++) {
+                long t0 = System.nanoTime();
+                membros = grupoService.membros(casa, raiz.getId()).getCardinality();
+                cache[r] = System.nanoTime() - t0;
+
+                t0 = System.nanoTime();
+                achatados = achatar(grupoService, casa, raiz.getId(), new HashSet<>()).size();
+                recursivo[r] = System.nanoTime() - t0;
+
+                // renomear uma folha invalida a folha e os seus ancestrais
+                Grupo folha = folhas.get(r % folhas.size());
+                grupoService.atualizarGrupo(casa, folha.getId(), corpo("folha " + r, folha.getDispositivos(),
+                        List.of()));
+                t0 = System.nanoTime();
+                grupoService.membros(casa, raiz.getId());
+                invalidado[r] = System.nanoTime() - t0;
+            }
+            if (membros != achatados || membros != n) {
+                throw new IllegalStateException("cache=" + membros + " recursivo=" + achatados);
+            }
+
+            System.out.printf("profundidade %2d (%,6d grupos, %,d membros): cache=%8.3f ms  recursivo=%8.2f ms"
+                    + "  (%.0fx)  após alterar uma folha=%7.3f ms%n", profundidade, grupoService.buscarTodos(casa).size(), membros,
+                    mediana(cache), mediana(recursivo), mediana(recursivo) / mediana(cache), mediana(invalidado));
+        }
+    }
+
+    /**
+     * Cria, de baixo para cima, uma árvore com {@link #RAMOS} subgrupos por
+     * nível e distribui os dispositivos 1..n entre as folhas.
+     */
+    private static Grupo montar(Casa casa, GrupoService grupoService, int nivel, List<Grupo> folhas,
+            long[] proximo, int n, int porFolha) {
+        if (nivel == 0) {
+            List<Long> dispositivos = new ArrayList<>();
+            for (int i = 0; i < porFolha && proximo[0] <= n; i++) {
+                dispositivos.add(proximo[0]++);
+            }
+            Grupo folha = grupoService.cadastrarGrupo(casa, corpo("folha", dispositivos, List.of()));
+            folhas.add(folha);
+            return folha;
+        }
+        List<Long> subgrupos = new ArrayList<>();
+        for (int i = 0; i < RAMOS; i++) {
+            subgrupos.add(montar(casa, grupoService, nivel - 1, folhas, proximo, n, porFolha).getId());
+        }
+        return grupoService.cadastrarGrupo(casa, corpo("nível " + nivel, List.of(), subgrupos));
+    }
+
+    private static Map<String, Object> corpo(String nome, List<Long> dispositivos, List<Long> subgrupos) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("nome", nome);
+        body.put("dispositivos", dispositivos);
+        body.put("subgrupos", subgrupos);
+        return body;
+    }
+
+    /**
+     * Achatamento recursivo a cada consulta, percorrendo os subgrupos.
+     */
+    private static Set<Long> achatar(GrupoService grupoService, Casa casa, long id, Set<Long> membros) {
+        Grupo g = grupoService.buscarPorId(casa, id);
+        membros.addAll(g.getDispositivos());
+        for (Long s : g.getSubgrupos()) {
+            achatar(grupoService, casa, s, membros);
+        }
+        return membros;
+    }
+
+    private static double mediana(long[] nanos) {
+        long[] ordenado = nanos.clone();
+        Arrays.sort(ordenado);
+        return ordenado[ordenado.length / 2] / 1e6;
+    }
+}
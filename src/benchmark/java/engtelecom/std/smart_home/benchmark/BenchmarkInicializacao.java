@@ -0,0 +1,146 @@
+package engtelecom.std.smart_home.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compara a inicialização do modo padrão (jar comum) com a do modo rápido
+ * (jar com Spring AOT, arquivo CDS e perfil {@code rapido}).
+ *
+ * Para cada modo, a aplicação é iniciada várias vezes em um processo próprio
+ * e são medidos:
+ * <ul>
+ * <li>o tempo desde a criação do processo até a primeira resposta HTTP 200;</li>
+ * <li>o tempo até a aplicação ficar pronta, informado por ela mesma em
+ * {@code /metricas/inicializacao};</li>
+ * <li>a memória residente (RSS) do processo logo após a primeira resposta.</li>
+ * </ul>
+ *
+ * Os caminhos dos jars são passados pela tarefa do Gradle, que antes gera o
+ * jar padrão e o arquivo CDS.
+ *
+ * Uso: {@code gradle benchmarkInicializacao --args="<repeticoes>"}
+ */
+public class BenchmarkInicializacao {
+
+    private static final int PORTA = 18090;
+    private static final Pattern PRONTO = Pattern.compile("\"prontoEmMs\":(\\d+)");
+
+    private static final HttpClient HTTP = HttpClient.newBuilder().connectTimeout(Duration.ofMillis(200)).build();
+
+    public static void main(String[] args) throws Exception {
+        int repeticoes = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        String java = ProcessHandle.current().info().command().orElse("java");
+
+        Path jarPadrao = Path.of(System.getProperty("jarPadrao"));
+        Path dirRapido = Path.of(System.getProperty("dirRapido"));
+        Path jarRapido;
+        try (var arquivos = Files.list(dirRapido)) {
+            jarRapido = arquivos.filter(p -> p.toString().endsWith("-rapido.jar")).findFirst().orElseThrow();
+        }
+
+        List<String> padrao = List.of(java, "-jar", jarPadrao.toString());
+        List<String> rapido = List.of(java, "-XX:SharedArchiveFile=" + dirRapido.resolve("casa.jsa"), "-Xlog:cds=off",
+                "-jar", jarRapido.toString(), "--spring.profiles.active=rapido");
+
+        // uma partida de cada para aquecer o cache de arquivos do sistema
+        medir(padrao);
+        medir(rapido);
+
+        System.out.printf("%-8s %14s %14s %10s%n", "modo", "1ª resposta", "pronto", "RSS");
+        imprimir("padrão", padrao, repeticoes);
+        imprimir("rápido", rapido, repeticoes);
+    }
+
+    private static void imprimir(String nome, List<String> comando, int repeticoes) throws Exception {
+        long[] primeira = new long[repeticoes];
+        long[] pronto = new long[repeticoes];
+        long[] rss = new long[repeticoes];
+        for (int i = 0; i < repeticoes; i++) {
+            long[] medida = medir(comando);
+            primeira[i] = medida[0];
+            pronto[i] = medida[1];
+            rss[i] = medida[2];
+        }
+        System.out.printf("%-8s %11d ms %11d ms %7d MB%n", nome, mediana(primeira), mediana(pronto),
+                mediana(rss) / 1024);
+    }
+
+    /**
+     * Inicia a aplicação e mede uma partida.
+     *
+     * @return tempo até a primeira resposta (ms), tempo até ficar pronta (ms) e
+     *         RSS após a primeira resposta (kB)
+     */
+    private static long[] medir(List<String> comando) throws Exception {
+        List<String> completo = new ArrayList<>(comando);
+        completo.addAll(List.of("--server.port=" + PORTA, "--casa.telemetria.porta-udp=0",
+                "--casa.telemetria.porta-tcp=0"));
+
+        long inicio = System.nanoTime();
+        Process processo = new ProcessBuilder(completo).redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+        try {
+            while (!responde("/dispositivos/1")) {
+                if (!processo.isAlive()) {
+                    throw new IllegalStateException("a aplicação terminou antes de responder: " + completo);
+                }
+                Thread.sleep(5);
+            }
+            long primeira = (System.nanoTime() - inicio) / 1_000_000;
+            long rss = rss(processo.pid());
+
+            Matcher m = PRONTO.matcher(ler("/metricas/inicializacao"));
+            long pronto = m.find() ? Long.parseLong(m.group(1)) : -1;
+            return new long[] { primeira, pronto, rss };
+        } finally {
+            processo.destroy();
+            processo.waitFor();
+        }
+    }
+
+    private static boolean responde(String caminho) throws InterruptedException {
+        try {
+            return HTTP.send(HttpRequest.newBuilder(URI.create("http://localhost:" + PORTA + caminho)).build(),
+                    HttpResponse.BodyHandlers.discarding()).statusCode() == 200;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static String ler(String caminho) throws IOException, InterruptedException {
+        return HTTP.send(HttpRequest.newBuilder(URI.create("http://localhost:" + PORTA + caminho)).build(),
+                HttpResponse.BodyHandlers.ofString()).body();
+    }
+
+    private static long rss(long pid) throws IOException {
+        File status = new File("/proc/" + pid + "/status");
+        if (!status.exists()) {
+            return -1;
+        }
+        for (String linha : Files.readAllLines(status.toPath())) {
+            if (linha.startsWith("VmRSS:")) {
+                return Long.parseLong(linha.replaceAll("\\D", ""));
+            }
+        }
+        return -1;
+    }
+
+    private static long mediana(long[] valores) {
+        long[] ordenados = valores.clone();
+        Arrays.sort(ordenados);
+        return ordenados[ordenados.length / 2];
+    }
+}
@@ -0,0 +1,130 @@
+package engtelecom.std.smart_home.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import engtelecom.std.smart_home.entities.Lampada;
+import engtelecom.std.smart_home.service.CaixaPostalService;
+import engtelecom.std.smart_home.service.Casa;
+import engtelecom.std.smart_home.service.CasaService;
+import engtelecom.std.smart_home.service.CoalescedorService;
+import engtelecom.std.smart_home.service.DiarioAlteracoes;
+import engtelecom.std.smart_home.service.DispositivoService;
+import engtelecom.std.smart_home.service.LeituraCompartilhadaService;
+
+/**
+ * Mede o tempo de CPU economizado ao colapsar leituras idênticas e
+ * simultâneas da listagem de dispositivos.
+ *
+ * A cada rajada, um comando altera um dispositivo (como acontece entre duas
+ * atualizações dos painéis) e em seguida muitos pedidos de
+ * {@code GET /dispositivos} chegam ao mesmo tempo, atendidos por um conjunto
+ * de threads. As rajadas são executadas montando e serializando a listagem em
+ * cada pedido e pelo {@link LeituraCompartilhadaService}; são informados o
+ * tempo de CPU do processo e a duração média de uma rajada, os cálculos feitos
+ * por rajada e a fração de pedidos atendidos sem cálculo. Ao fim, é verificado
+ * que a resposta compartilhada traz o valor da última alteração.
+ *
+ * Uso: {@code gradle benchmarkLeituras --args="<dispositivos> <pedidos por rajada> <threads> <rajadas>"}
+ */
+public class BenchmarkLeituras {
+
+    public static void main(String[] args) throws Exception {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 5_000;
+        int pedidos = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+        int rajadas = args.length > 3 ? Integer.parseInt(args[3]) : 40;
+
+        ObjectMapper json = new ObjectMapper();
+        DiarioAlteracoes diario = new DiarioAlteracoes(100_000, 1_000);
+        CasaService casaService = new CasaService(10, n + 9, 100, 100, 10, diario);
+        DispositivoService dispositivoService = new DispositivoService(
+                new CaixaPostalService(256, 32, 4, 8, 1), new CoalescedorService(0), casaService, diario);
+        dispositivoService.registrarDispositivosPadrao();
+        LeituraCompartilhadaService leituras = new LeituraCompartilhadaService(diario, json);
+
+        Casa casa = casaService.criarCasa(null, null);
+        for (int i = 9; i < n; i++) {
+            dispositivoService.cadastrarDispositivo(casa, new Lampada("branca", 50));
+        }
+        long alterada = n;
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        Supplier<byte[]> direto = () -> {
+            try {
+                return json.writeValueAsBytes(dispositivoService.buscarTodos(casa));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        };
+        Supplier<byte[]> compartilhado = () -> leituras.ler(casa, "dispositivos/" + casa.getId(),
+                () -> dispositivoService.buscarTodos(casa));
+
+        // aquecimento
+        executar(pool, dispositivoService, casa, alterada, direto, pedidos, rajadas / 4);
+        executar(pool, dispositivoService, casa, alterada, compartilhado, pedidos, rajadas / 4);
+
+        System.out.printf("%,d dispositivos, rajadas de %,d pedidos em %d threads%n", n, pedidos, threads);
+        double[] semColapso = executar(pool, dispositivoService, casa, alterada, direto, pedidos, rajadas);
+        long calculadas0 = ((Number) leituras.metricas().get("calculadas")).longValue();
+        long pedidas0 = ((Number) leituras.metricas().get("pedidas")).longValue();
+        double[] comColapso = executar(pool, dispositivoService, casa, alterada, compartilhado, pedidos, rajadas);
+        Map<String, Object> m = leituras.metricas();
+        long calculadas = ((Number) m.get("calculadas")).longValue() - calculadas0;
+        long pedidas = ((Number) m.get("pedidas")).longValue() - pedidas0;
+
+        System.out.printf("  %-14s CPU por rajada=%8.1f ms  duração=%7.1f ms  cálculos por rajada=%,6d%n",
+                "sem colapso", semColapso[0], semColapso[1], pedidos);
+        System.out.printf("  %-14s CPU por rajada=%8.1f ms  duração=%7.1f ms  cálculos por rajada=%6.1f"
+                + "  (%.1f%% dos pedidos sem cálculo, CPU %.1fx menor)%n", "com colapso", comColapso[0],
+                comColapso[1], (double) calculadas / rajadas, 100.0 * (pedidas - calculadas) / pedidas,
+                semColapso[0] / comColapso[0]);
+
+        dispositivoService.aplicarDiferenca(casa, alterada, Map.of("intensidade", 99));
+        String resposta = new String(compartilhado.get());
+        if (!resposta.contains("\"intensidade\":99,") && !resposta.contains("\"intensidade\":99}")) {
+            throw new IllegalStateException("resposta compartilhada não reflete a última alteração");
+        }
+        pool.shutdown();
+    }
+
+    /**
+     * Executa as rajadas e retorna o tempo de CPU do processo e a duração
+     * média de uma rajada, em ms.
+     */
+    private static double[] executar(ExecutorService pool, DispositivoService dispositivoService, Casa casa,
+            long alterada, Supplier<byte[]> ler, int pedidos, int rajadas) throws Exception {
+        var so = (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+        long cpu = 0;
+        long duracao = 0;
+        for (int r = 0; r < rajadas; r++) {
+            dispositivoService.aplicarDiferenca(casa, alterada, Map.of("intensidade", r % 90));
+            CountDownLatch largada = new CountDownLatch(1);
+            List<Future<byte[]>> respostas = new ArrayList<>(pedidos);
+            for (int i = 0; i < pedidos; i++) {
+                respostas.add(pool.submit(() -> {
+                    largada.await();
+                    return ler.get();
+                }));
+            }
+            long cpu0 = so.getProcessCpuTime();
+            long t0 = System.nanoTime();
+            largada.countDown();
+            for (Future<byte[]> f : respostas) {
+                f.get();
+            }
+            duracao += System.nanoTime() - t0;
+            cpu += so.getProcessCpuTime() - cpu0;
+        }
+        return new double[] { cpu / 1e6 / rajadas, duracao / 1e6 / rajadas };
+    }
+}
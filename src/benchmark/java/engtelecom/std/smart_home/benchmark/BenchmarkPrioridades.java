@@ -0,0 +1,161 @@
+package engtelecom.std.smart_home.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import engtelecom.std.smart_home.entities.Cenario;
+import engtelecom.std.smart_home.entities.Dispositivo;
+import engtelecom.std.smart_home.entities.ExecucaoCenario;
+import engtelecom.std.smart_home.entities.Lampada;
+import engtelecom.std.smart_home.entities.Prioridade;
+import engtelecom.std.smart_home.service.CaixaPostalService;
+import engtelecom.std.smart_home.service.Casa;
+import engtelecom.std.smart_home.service.CasaService;
+import engtelecom.std.smart_home.service.CenarioService;
+import engtelecom.std.smart_home.service.CoalescedorService;
+import engtelecom.std.smart_home.service.DiarioAlteracoes;
+import engtelecom.std.smart_home.service.DispositivoService;
+import engtelecom.std.smart_home.service.ExecucaoService;
+import engtelecom.std.smart_home.service.PrioridadeAtual;
+import engtelecom.std.smart_home.service.TransicaoService;
+
+/**
+ * Mede a latência de comandos e de cenários urgentes enquanto o serviço está
+ * saturado por tráfego em lote.
+ *
+ * Várias threads repetem sem parar um comando em massa para todos os
+ * dispositivos da casa, e execuções assíncronas de cenários longos ocupam as
+ * threads de execução. Enquanto isso, um comando para um único dispositivo e
+ * a execução assíncrona de um cenário curto são medidos repetidamente: uma vez
+ * na faixa de lote, disputando a vez com a carga como se não houvesse
+ * faixas, e outra vez nas faixas interativa e crítica.
+ *
+ * Uso: {@code gradle benchmarkPrioridades --args="<dispositivos> <threads de carga> <amostras>"}
+ */
+public class BenchmarkPrioridades {
+
+    private static final int ACOES_CENARIO_LONGO = 1_000;
+    private static final int ACOES_CENARIO_CURTO = 10;
+
+    public static void main(String[] args) throws Exception {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 2_000;
+        int threadsCarga = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int amostras = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+
+        DiarioAlteracoes diario = new DiarioAlteracoes(100_000, 1_000);
+        CasaService casaService = new CasaService(10, n + 9, 100, 100, 100, diario);
+        DispositivoService dispositivoService = new DispositivoService(
+                new CaixaPostalService(256, 32, 4, 8, 1), new CoalescedorService(0), casaService, diario);
+        dispositivoService.registrarDispositivosPadrao();
+        TransicaoService transicaoService = new TransicaoService(casaService, dispositivoService, 50, 100);
+        CenarioService cenarioService = new CenarioService(dispositivoService, transicaoService, diario);
+        ExecucaoService execucaoService = new ExecucaoService(cenarioService, 2, 100, 500, 8, 1);
+
+        Casa casa = casaService.criarCasa(null, null);
+        for (int i = 9; i < n; i++) {
+            dispositivoService.cadastrarDispositivo(casa, new Lampada("branca", 50));
+        }
+        List<Long> lampadas = new ArrayList<>();
+        for (Dispositivo d : dispositivoService.buscarTodos(casa)) {
+            if (d instanceof Lampada) {
+                lampadas.add(d.getId());
+            }
+        }
+        long longo = cadastrar(cenarioService, casa, lampadas.subList(0, Math.min(ACOES_CENARIO_LONGO,
+                lampadas.size())));
+        long curto = cadastrar(cenarioService, casa, lampadas.subList(lampadas.size() - ACOES_CENARIO_CURTO,
+                lampadas.size()));
+        long alvo = lampadas.get(lampadas.size() / 2);
+
+        // carga em lote: comandos em massa sem parar e cenários longos sempre na fila
+        AtomicBoolean parar = new AtomicBoolean();
+        List<Thread> carga = new ArrayList<>();
+        for (int t = 0; t < threadsCarga; t++) {
+            int semente = t;
+            carga.add(Thread.ofPlatform().daemon().start(() -> {
+                int r = semente;
+                while (!parar.get()) {
+                    dispositivoService.aplicarEmParalelo(casa, lampadas, null, Map.of("intensidade", r++ % 100));
+                }
+            }));
+        }
+        carga.add(Thread.ofPlatform().daemon().start(() -> {
+            while (!parar.get()) {
+                if (execucaoService.tamanhoFila() < 4) {
+                    PrioridadeAtual.executar(Prioridade.LOTE, () -> execucaoService.agendar(casa, longo));
+                }
+                dormir(5);
+            }
+        }));
+        Thread.sleep(2_000);
+
+        System.out.printf("%,d dispositivos, %d threads com comandos em massa e cenários de %,d ações em lote%n",
+                n, threadsCarga, ACOES_CENARIO_LONGO);
+        medir("sem faixas (lote)", Prioridade.LOTE, dispositivoService, execucaoService, casa, alvo, curto,
+                amostras);
+        medir("interativa", Prioridade.INTERATIVA, dispositivoService, execucaoService, casa, alvo, curto,
+                amostras);
+        medir("crítica", Prioridade.CRITICA, dispositivoService, execucaoService, casa, alvo, curto, amostras);
+
+        parar.set(true);
+        System.out.println("  execuções: " + execucaoService.metricas());
+        System.exit(0);
+    }
+
+    /**
+     * Mede, na faixa informada, a latência de um comando para um dispositivo
+     * e o tempo até o fim da execução assíncrona de um cenário curto.
+     */
+    private static void medir(String nome, Prioridade prioridade, DispositivoService dispositivoService,
+            ExecucaoService execucaoService, Casa casa, long alvo, long cenario, int amostras) {
+        long[] comandos = new long[amostras];
+        long[] cenarios = new long[Math.max(1, amostras / 10)];
+        PrioridadeAtual.executar(prioridade, () -> {
+            for (int i = 0; i < amostras; i++) {
+                long t0 = System.nanoTime();
+                dispositivoService.aplicarDiferenca(casa, alvo, Map.of("ligado", i % 2 == 0));
+                comandos[i] = System.nanoTime() - t0;
+                dormir(10);
+            }
+            for (int i = 0; i < cenarios.length; i++) {
+                long t0 = System.nanoTime();
+                ExecucaoCenario execucao = execucaoService.agendar(casa, cenario);
+                while (!execucao.isFinalizada()) {
+                    dormir(1);
+                }
+                cenarios[i] = System.nanoTime() - t0;
+            }
+        });
+        System.out.printf("  %-18s comando p50=%8.2f ms  p99=%8.2f ms   cenário p50=%8.1f ms  p99=%8.1f ms%n",
+                nome, percentil(comandos, 0.5), percentil(comandos, 0.99), percentil(cenarios, 0.5),
+                percentil(cenarios, 0.99));
+    }
+
+    private static double percentil(long[] valores, double p) {
+        long[] ordenados = valores.clone();
+        Arrays.sort(ordenados);
+        return ordenados[Math.min(ordenados.length - 1, (int) Math.ceil(ordenados.length * p) - 1)] / 1e6;
+    }
+
+    private static long cadastrar(CenarioService cenarioService, Casa casa, List<Long> alvos) {
+        Cenario cenario = new Cenario();
+        cenario.setNome(alvos.size() + " ações");
+        ArrayList<Map<String, Object>> rotina = new ArrayList<>();
+        for (Long id : alvos) {
+            rotina.add(Map.of("dispositivoId", id, "cor", "amarela"));
+        }
+        cenario.setRotina(rotina);
+        return cenarioService.cadastrarCenario(casa, cenario).getId();
+    }
+
+    private static void dormir(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
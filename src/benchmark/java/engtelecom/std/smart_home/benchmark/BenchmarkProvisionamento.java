@@ -0,0 +1,96 @@
+package engtelecom.std.smart_home.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import engtelecom.std.smart_home.service.CaixaPostalService;
+import engtelecom.std.smart_home.service.Casa;
+import engtelecom.std.smart_home.service.CasaService;
+import engtelecom.std.smart_home.service.CoalescedorService;
+import engtelecom.std.smart_home.service.DiarioAlteracoes;
+import engtelecom.std.smart_home.service.DispositivoService;
+
+/**
+ * Mede a taxa de provisionamento de dispositivos cadastrados um a um
+ * ({@code POST /dispositivos}) e em lotes ({@code POST /dispositivos/lote}).
+ *
+ * O mesmo prédio (lâmpadas, aparelhos de ar-condicionado e televisões com
+ * estado inicial) é descrito em JSON e cadastrado em uma casa vazia: um
+ * dispositivo por chamada, e em lotes de tamanhos crescentes lidos em fluxo do
+ * JSON, com um bloco de IDs e uma única passagem pelos índices por lote.
+ *
+ * Uso: {@code gradle benchmarkProvisionamento --args="<dispositivos>"}
+ */
+public class BenchmarkProvisionamento {
+
+    private static final int RODADAS = 5;
+    private static final int[] LOTES = { 100, 1_000, 0 };
+    private static final TypeReference<Map<String, Object>> MAPA = new TypeReference<>() {
+    };
+
+    public static void main(String[] args) throws Exception {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        ObjectMapper json = new ObjectMapper();
+
+        List<Map<String, Object>> predio = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            predio.add(switch (i % 10) {
+                case 8 -> Map.of("tipo", "ar-condicionado", "temperatura", 22);
+                case 9 -> Map.of("tipo", "televisao", "volume", 20);
+                default -> Map.of("tipo", "lampada", "cor", "branca", "intensidade", i % 100);
+            });
+        }
+
+        System.out.printf("%,d dispositivos por casa, melhor de %d rodadas%n", n, RODADAS);
+        medir("um a um", n, json, predio, 1);
+        for (int lote : LOTES) {
+            medir(lote == 0 ? "lote único" : "lotes de " + lote, n, json, predio, lote == 0 ? n : lote);
+        }
+        System.exit(0);
+    }
+
+    private static void medir(String nome, int n, ObjectMapper json, List<Map<String, Object>> predio, int lote)
+            throws Exception {
+        // cada chamada recebe o seu corpo em JSON, como no HTTP
+        List<byte[]> corpos = new ArrayList<>();
+        for (int i = 0; i < predio.size(); i += lote) {
+            List<Map<String, Object>> parte = predio.subList(i, Math.min(predio.size(), i + lote));
+            corpos.add(lote == 1 ? json.writeValueAsBytes(parte.get(0)) : json.writeValueAsBytes(parte));
+        }
+
+        long melhor = Long.MAX_VALUE;
+        for (int r = 0; r < RODADAS; r++) {
+            DiarioAlteracoes diario = new DiarioAlteracoes(100_000, 1_000);
+            CasaService casaService = new CasaService(10, n + 9, 100, 100, 10, diario);
+            DispositivoService dispositivoService = new DispositivoService(
+                    new CaixaPostalService(256, 32, 4, 8, 1), new CoalescedorService(0), casaService, diario);
+            dispositivoService.registrarDispositivosPadrao();
+            Casa casa = casaService.criarCasa(null, null);
+
+            long t0 = System.nanoTime();
+            for (byte[] corpo : corpos) {
+                if (lote == 1) {
+                    dispositivoService.cadastrarDispositivo(casa,
+                            dispositivoService.criarDispositivo(json.readValue(corpo, MAPA)));
+                } else {
+                    try (MappingIterator<Map<String, Object>> itens = json.readerFor(MAPA)
+                            .readValues(new ByteArrayInputStream(corpo))) {
+                        dispositivoService.provisionar(casa, itens);
+                    }
+                }
+            }
+            melhor = Math.min(melhor, System.nanoTime() - t0);
+            if (dispositivoService.buscarTodos(casa).size() != n + 9) {
+                throw new IllegalStateException("número de dispositivos inesperado");
+            }
+        }
+        System.out.printf("  %-16s %,8d chamadas  %8.1f ms  %,12.0f dispositivos/s%n", nome, corpos.size(),
+                melhor / 1e6, n / (melhor / 1e9));
+    }
+}
@@ -0,0 +1,127 @@
+package engtelecom.std.smart_home.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import engtelecom.std.smart_home.entities.Cenario;
+import engtelecom.std.smart_home.entities.Dispositivo;
+import engtelecom.std.smart_home.entities.Lampada;
+import engtelecom.std.smart_home.service.CaixaPostalService;
+import engtelecom.std.smart_home.service.Casa;
+import engtelecom.std.smart_home.service.CasaService;
+import engtelecom.std.smart_home.service.CenarioService;
+import engtelecom.std.smart_home.service.CoalescedorService;
+import engtelecom.std.smart_home.service.DiarioAlteracoes;
+import engtelecom.std.smart_home.service.DispositivoService;
+import engtelecom.std.smart_home.service.TransicaoService;
+
+/**
+ * Compara a consulta dos cenários que usam um dispositivo
+ * ({@code GET /dispositivos/{id}/cenarios}) pelo índice reverso da casa com a
+ * varredura das rotinas de todos os cenários.
+ *
+ * Para números crescentes de cenários (cada um com um número fixo de ações
+ * sobre lâmpadas sorteadas), são informados o tempo de cadastro por cenário,
+ * que inclui a validação da rotina e a indexação, e o tempo mediano das duas
+ * consultas para um dispositivo sorteado.
+ *
+ * Uso: {@code gradle benchmarkReferencias --args="<ações por cenário> <máximo de cenários>"}
+ */
+public class BenchmarkReferencias {
+
+    private static final int DISPOSITIVOS = 1_000;
+    private static final int CONSULTAS = 1_001;
+
+    public static void main(String[] args) throws Exception {
+        int acoes = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int maximo = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+
+        System.out.printf("%,d lâmpadas, rotinas com %d ações%n", DISPOSITIVOS, acoes);
+        for (int n = 100; n <= maximo; n *= 10) {
+            executar(n, acoes);
+        }
+        System.exit(0);
+    }
+
+    private static void executar(int n, int acoes) {
+        DiarioAlteracoes diario = new DiarioAlteracoes(100_000, 1_000);
+        CasaService casaService = new CasaService(10, DISPOSITIVOS + 9, 100, n, 10, diario);
+        DispositivoService dispositivoService = new DispositivoService(
+                new CaixaPostalService(256, 32, 4, 8, 1), new CoalescedorService(0), casaService, diario);
+        dispositivoService.registrarDispositivosPadrao();
+        TransicaoService transicaoService = new TransicaoService(casaService, dispositivoService, 50, 100);
+        CenarioService cenarioService = new CenarioService(dispositivoService, transicaoService, diario);
+
+        Casa casa = casaService.criarCasa(null, null);
+        for (int i = 0; i < DISPOSITIVOS; i++) {
+            dispositivoService.cadastrarDispositivo(casa, new Lampada("branca", 50));
+        }
+        List<Long> lampadas = new ArrayList<>();
+        for (Dispositivo d : dispositivoService.buscarTodos(casa)) {
+            if (d instanceof Lampada) {
+                lampadas.add(d.getId());
+            }
+        }
+
+        Random aleatorio = new Random(42);
+        long t0 = System.nanoTime();
+        for (int c = 0; c < n; c++) {
+            Cenario cenario = new Cenario();
+            cenario.setNome("cenário " + c);
+            ArrayList<Map<String, Object>> rotina = new ArrayList<>();
+            for (int a = 0; a < acoes; a++) {
+                rotina.add(Map.of("dispositivoId", lampadas.get(aleatorio.nextInt(lampadas.size())),
+                        "intensidade", a % 100));
+            }
+            cenario.setRotina(rotina);
+            cenarioService.cadastrarCenario(casa, cenario);
+        }
+        double cadastroUs = (System.nanoTime() - t0) / 1e3 / n;
+
+        long[] indice = new long[CONSULTAS];
+        long[] varredura = new long[CONSULTAS];
+        int encontrados = 0;
+        for (int i = 0; i < CONSULTAS; i++) {
+            long id = lampadas.get(aleatorio.nextInt(lampadas.size()));
+
+            long t = System.nanoTime();
+            int pelo = cenarioService.buscarPorDispositivo(casa, id).size();
+            indice[i] = System.nanoTime() - t;
+
+            t = System.nanoTime();
+            int varridos = varrer(cenarioService, casa, id).size();
+            varredura[i] = System.nanoTime() - t;
+
+            if (pelo != varridos) {
+                throw new IllegalStateException("índice e varredura divergem para o dispositivo " + id);
+            }
+            encontrados += pelo;
+        }
+        Arrays.sort(indice);
+        Arrays.sort(varredura);
+        System.out.printf("  %,7d cenários  cadastro %6.1f µs/cenário  %5.1f cenários/dispositivo"
+                + "  índice %8.3f ms  varredura %8.3f ms%n", n, cadastroUs, (double) encontrados / CONSULTAS,
+                indice[CONSULTAS / 2] / 1e6, varredura[CONSULTAS / 2] / 1e6);
+    }
+
+    /**
+     * Consulta ingênua: percorre as ações de todos os cenários da casa.
+     */
+    private static Map<Long, List<Integer>> varrer(CenarioService cenarioService, Casa casa, long dispositivoId) {
+        Map<Long, List<Integer>> cenarios = new LinkedHashMap<>();
+        for (Cenario c : cenarioService.buscarTodos(casa)) {
+            int numeroAcao = 0;
+            for (Map<String, Object> acao : c.getRotina()) {
+                numeroAcao++;
+                if (((Number) acao.get("dispositivoId")).longValue() == dispositivoId) {
+                    cenarios.computeIfAbsent(c.getId(), id -> new ArrayList<>()).add(numeroAcao);
+                }
+            }
+        }
+        return cenarios;
+    }
+}
@@ -0,0 +1,226 @@
+package engtelecom.std.smart_home.benchmark;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import engtelecom.std.smart_home.CasaInteligenteApplication;
+
+/**
+ * Sobe três nós da aplicação na mesma JVM, em portas locais, e mede a
+ * replicação entre eles:
+ * <ul>
+ * <li>tempo até a primeira eleição de líder;</li>
+ * <li>atraso até uma escrita no líder ser lida em um seguidor, usando o
+ * cabeçalho de posição do diário (leitura das próprias escritas);</li>
+ * <li>tempo para os seguidores alcançarem o líder depois de uma rajada de
+ * escritas;</li>
+ * <li>tempo de troca de líder quando o líder cai, até uma escrita ser aceita
+ * por outro nó;</li>
+ * <li>tempo para o nó derrubado voltar e alcançar o novo líder.</li>
+ * </ul>
+ *
+ * Uso: {@code gradle benchmarkReplicacao --args="<escritas> <timeout-lider-ms>"}
+ */
+public class BenchmarkReplicacao {
+
+    private static final int PORTA_BASE = 18081;
+    private static final int NOS = 3;
+    private static final String POSICAO = "X-Replicacao-Posicao";
+
+    private static final Pattern PAPEL = Pattern.compile("\"papel\":\"(\\w+)\"");
+    private static final Pattern SEQUENCIA = Pattern.compile("\"sequencia\":(\\d+)");
+    private static final Pattern ATRASO = Pattern.compile("\"atraso\":\\{[^}]*\\}");
+
+    private static final HttpClient HTTP = HttpClient.newBuilder().connectTimeout(Duration.ofMillis(500)).build();
+
+    private static String[] argumentosBase;
+
+    public static void main(String[] args) throws Exception {
+        int escritas = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        long timeoutLiderMs = args.length > 1 ? Long.parseLong(args[1]) : 1000;
+
+        StringBuilder lista = new StringBuilder();
+        for (int i = 0; i < NOS; i++) {
+            lista.append(i == 0 ? "" : ",").append(url(i));
+        }
+        argumentosBase = new String[] {
+                "--casa.replicacao.nos=" + lista,
+                "--casa.replicacao.timeout-lider-ms=" + timeoutLiderMs,
+                "--casa.telemetria.habilitada=false",
+                "--casa.admissao.habilitado=false",
+                "--casa.coalescencia.janela-ms=0" };
+
+        ConfigurableApplicationContext[] nos = new ConfigurableApplicationContext[NOS];
+        for (int i = 0; i < NOS; i++) {
+            nos[i] = iniciar(i);
+        }
+
+        try {
+            long inicio = System.nanoTime();
+            int lider = aguardarLider();
+            System.out.printf("primeira eleição: líder=%s em %d ms%n", url(lider), (System.nanoTime() - inicio) / 1_000_000);
+            int seguidor = (lider + 1) % NOS;
+
+            // aquecimento
+            for (int i = 0; i < escritas / 10; i++) {
+                escrever(lider, i);
+            }
+
+            // escrita no líder seguida de leitura no seguidor com a posição recebida
+            long[] atrasos = new long[escritas / 4];
+            for (int i = 0; i < atrasos.length; i++) {
+                String posicao = escrever(lider, i);
+                long t0 = System.nanoTime();
+                HttpResponse<String> leitura = HTTP.send(HttpRequest.newBuilder(URI.create(url(seguidor) + "/dispositivos/1"))
+                        .header(POSICAO, posicao).build(), HttpResponse.BodyHandlers.ofString());
+                if (leitura.statusCode() != 200) {
+                    throw new IllegalStateException("leitura no seguidor falhou: " + leitura.statusCode());
+                }
+                atrasos[i] = System.nanoTime() - t0;
+            }
+            Arrays.sort(atrasos);
+            System.out.printf("leitura da própria escrita no seguidor: p50=%.2f ms  p99=%.2f ms  máx=%.2f ms%n",
+                    atrasos[atrasos.length / 2] / 1e6, atrasos[(int) (atrasos.length * 0.99)] / 1e6,
+                    atrasos[atrasos.length - 1] / 1e6);
+
+            // rajada de escritas e tempo para os seguidores alcançarem o líder
+            inicio = System.nanoTime();
+            long ultima = 0;
+            for (int i = 0; i < escritas; i++) {
+                ultima = sequencia(escrever(lider, i));
+            }
+            double duracao = (System.nanoTime() - inicio) / 1e9;
+            long fimEscritas = System.nanoTime();
+            for (int i = 0; i < NOS; i++) {
+                if (i != lider) {
+                    aguardarSequencia(i, ultima);
+                }
+            }
+            System.out.printf("rajada: %d escritas em %.2f s (%.0f/s); seguidores alcançaram o líder %d ms após a última%n",
+                    escritas, duracao, escritas / duracao, (System.nanoTime() - fimEscritas) / 1_000_000);
+            System.out.printf("atraso medido no seguidor: %s%n", extrair(ATRASO, ler(seguidor, "/metricas/replicacao")));
+
+            // queda do líder
+            nos[lider].close();
+            nos[lider] = null;
+            inicio = System.nanoTime();
+            int novoLider = -1;
+            while (novoLider < 0) {
+                for (int i = 0; i < NOS; i++) {
+                    if (nos[i] != null && tentarEscrever(i, 42)) {
+                        novoLider = i;
+                        break;
+                    }
+                }
+                Thread.sleep(10);
+            }
+            System.out.printf("troca de líder: %s aceitou escrita %d ms após a queda de %s%n",
+                    url(novoLider), (System.nanoTime() - inicio) / 1_000_000, url(lider));
+
+            // volta do nó derrubado
+            inicio = System.nanoTime();
+            nos[lider] = iniciar(lider);
+            long alvo = Long.parseLong(extrair(SEQUENCIA, ler(novoLider, "/replicacao")));
+            aguardarSequencia(lider, alvo);
+            System.out.printf("reingresso: %s voltou e alcançou a sequência %d em %d ms%n",
+                    url(lider), alvo, (System.nanoTime() - inicio) / 1_000_000);
+        } finally {
+            for (ConfigurableApplicationContext no : nos) {
+                if (no != null) {
+                    no.close();
+                }
+            }
+        }
+    }
+
+    private static ConfigurableApplicationContext iniciar(int i) {
+        String[] argumentos = Arrays.copyOf(argumentosBase, argumentosBase.length + 2);
+        argumentos[argumentosBase.length] = "--server.port=" + (PORTA_BASE + i);
+        argumentos[argumentosBase.length + 1] = "--casa.replicacao.no=" + i;
+        return new SpringApplicationBuilder(CasaInteligenteApplication.class).run(argumentos);
+    }
+
+    private static String url(int i) {
+        return "http://localhost:" + (PORTA_BASE + i);
+    }
+
+    /**
+     * Substitui o estado da lâmpada 1 e retorna a posição do diário informada
+     * pelo líder ({@code termo:sequencia}).
+     */
+    private static String escrever(int no, int i) throws IOException, InterruptedException {
+        HttpResponse<String> resposta = HTTP.send(requisicaoEscrita(no, i), HttpResponse.BodyHandlers.ofString());
+        if (resposta.statusCode() != 200) {
+            throw new IllegalStateException("escrita falhou: " + resposta.statusCode() + " " + resposta.body());
+        }
+        return resposta.headers().firstValue(POSICAO).orElse("0:0");
+    }
+
+    private static long sequencia(String posicao) {
+        return Long.parseLong(posicao.substring(posicao.indexOf(':') + 1));
+    }
+
+    private static boolean tentarEscrever(int no, int i) {
+        try {
+            return HTTP.send(requisicaoEscrita(no, i), HttpResponse.BodyHandlers.discarding()).statusCode() == 200;
+        } catch (IOException | InterruptedException e) {
+            return false;
+        }
+    }
+
+    private static HttpRequest requisicaoEscrita(int no, int i) {
+        String corpo = "{\"ligado\":true,\"cor\":\"azul\",\"intensidade\":" + (i % 100) + "}";
+        return HttpRequest.newBuilder(URI.create(url(no) + "/dispositivos/1"))
+                .timeout(Duration.ofSeconds(2))
+                .header("content-type", "application/json")
+                .PUT(HttpRequest.BodyPublishers.ofString(corpo)).build();
+    }
+
+    private static int aguardarLider() throws InterruptedException {
+        while (true) {
+            for (int i = 0; i < NOS; i++) {
+                if ("lider".equals(extrair(PAPEL, ler(i, "/replicacao")))) {
+                    return i;
+                }
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private static void aguardarSequencia(int no, long sequencia) throws InterruptedException {
+        while (true) {
+            String s = extrair(SEQUENCIA, ler(no, "/replicacao"));
+            if (s != null && Long.parseLong(s) >= sequencia) {
+                return;
+            }
+            Thread.sleep(5);
+        }
+    }
+
+    private static String ler(int no, String caminho) throws InterruptedException {
+        try {
+            return HTTP.send(HttpRequest.newBuilder(URI.create(url(no) + caminho)).build(),
+                    HttpResponse.BodyHandlers.ofString()).body();
+        } catch (IOException e) {
+            return "";
+        }
+    }
+
+    private static String extrair(Pattern padrao, String texto) {
+        Matcher m = padrao.matcher(texto);
+        if (!m.find()) {
+            return null;
+        }
+        return m.groupCount() > 0 ? m.group(1) : m.group();
+    }
+}
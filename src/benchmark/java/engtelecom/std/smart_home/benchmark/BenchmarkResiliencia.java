@@ -0,0 +1,152 @@
+package engtelecom.std.smart_home.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import engtelecom.std.smart_home.driver.DriverSimulado;
+import engtelecom.std.smart_home.entities.Cenario;
+import engtelecom.std.smart_home.entities.Dispositivo;
+import engtelecom.std.smart_home.entities.Lampada;
+import engtelecom.std.smart_home.service.AmbienteService;
+import engtelecom.std.smart_home.service.CaixaPostalService;
+import engtelecom.std.smart_home.service.Casa;
+import engtelecom.std.smart_home.service.CasaService;
+import engtelecom.std.smart_home.service.CenarioService;
+import engtelecom.std.smart_home.service.CoalescedorService;
+import engtelecom.std.smart_home.service.DiarioAlteracoes;
+import engtelecom.std.smart_home.service.DispositivoService;
+import engtelecom.std.smart_home.service.GemeoDigitalService;
+import engtelecom.std.smart_home.service.GrupoService;
+import engtelecom.std.smart_home.service.ReplicacaoService;
+import engtelecom.std.smart_home.service.TransicaoService;
+
+/**
+ * Mede a latência de cenários aplicados com {@code confirmar=true} quando
+ * parte dos dispositivos não responde.
+ *
+ * O driver simulado tem 2 gateways, 1% dos dispositivos mortos e 1% dos
+ * comandos com latência de 1 s. Cada cenário acende ou apaga um conjunto
+ * aleatório de lâmpadas e espera as confirmações com prazo de 1 s. A mesma
+ * sequência de cenários é aplicada sem disjuntores, com disjuntores e com
+ * disjuntores e hedge; depois de um aquecimento, os disjuntores dos
+ * dispositivos mortos já estão abertos e eles deixam de custar o prazo. Por
+ * fim, um dos gateways morre e é mostrado como o seu disjuntor abre e passa a
+ * liberar as esperas na hora.
+ *
+ * Uso: {@code gradle benchmarkResiliencia --args="<dispositivos> <cenários> <ações por cenário>"}
+ */
+public class BenchmarkResiliencia {
+
+    private static final long TIMEOUT_MS = 1_000;
+    private static final long PRAZO_MS = 1_000;
+    private static final long AQUECIMENTO_MS = 6_000;
+
+    public static void main(String[] args) throws Exception {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 2_000;
+        int numCenarios = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int acoes = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+
+        System.out.printf("%,d dispositivos em 2 gateways, 1%% mortos, 1%% dos comandos com 1 s;"
+                + " %d cenários de %d ações, prazo de %d ms%n", n, numCenarios, acoes, PRAZO_MS);
+        executar("sem disjuntor", n, numCenarios, acoes, Integer.MAX_VALUE, 0, 0);
+        executar("com disjuntor", n, numCenarios, acoes, 3, 0, 0);
+        executar("disjuntor + hedge", n, numCenarios, acoes, 3, 100, 0);
+        executar("gateway 0 morto", n, numCenarios / 4, acoes, 3, 100, 1);
+        System.exit(0);
+    }
+
+    private static void executar(String nome, int n, int numCenarios, int acoes, int limiar, long hedgeMs,
+            int gatewaysMortos) throws Exception {
+        DriverSimulado driver = new DriverSimulado(5, 50, 0.0, 0.0, 0.01, 1_000, 0.01, 2, gatewaysMortos);
+        DiarioAlteracoes diario = new DiarioAlteracoes(100_000, 1_000);
+        CasaService casaService = new CasaService(10, n + 9, 100, 2 * numCenarios + 10, 10, diario);
+        DispositivoService dispositivoService = new DispositivoService(
+                new CaixaPostalService(256, 32, 4, 8, 1), new CoalescedorService(0), casaService, diario);
+        dispositivoService.registrarDispositivosPadrao();
+        AmbienteService ambienteService = new AmbienteService(dispositivoService, casaService, diario);
+        TransicaoService transicaoService = new TransicaoService(casaService, dispositivoService, 50, 100);
+        CenarioService cenarioService = new CenarioService(dispositivoService, transicaoService, diario);
+        GrupoService grupoService = new GrupoService(casaService, dispositivoService, diario);
+        ReplicacaoService replicacaoService = new ReplicacaoService(casaService, dispositivoService,
+                ambienteService, cenarioService, grupoService, diario, new ObjectMapper(), "", 0, 500, 1_500, 50,
+                1_000);
+        GemeoDigitalService gemeos = new GemeoDigitalService(dispositivoService, driver, replicacaoService, 256,
+                TIMEOUT_MS, 100, 1_000, limiar, 50, 30_000, hedgeMs);
+        dispositivoService.adicionarOuvinte(gemeos);
+
+        Casa casa = casaService.criarCasa(null, null);
+        for (int i = 9; i < n; i++) {
+            dispositivoService.cadastrarDispositivo(casa, new Lampada("branca", 50));
+        }
+        List<Long> lampadas = new ArrayList<>();
+        for (Dispositivo d : dispositivoService.buscarTodos(casa)) {
+            if (d instanceof Lampada) {
+                lampadas.add(d.getId());
+            }
+        }
+
+        // cada conjunto de dispositivos tem um cenário que acende e outro que apaga
+        Random aleatorio = new Random(42);
+        List<long[]> pares = new ArrayList<>();
+        for (int c = 0; c < numCenarios; c++) {
+            List<Long> alvos = new ArrayList<>();
+            for (int a = 0; a < acoes; a++) {
+                alvos.add(lampadas.get(aleatorio.nextInt(lampadas.size())));
+            }
+            pares.add(new long[] { cadastrar(cenarioService, casa, alvos, 80), cadastrar(cenarioService, casa, alvos, 10) });
+        }
+
+        ScheduledExecutorService relogio = Executors.newSingleThreadScheduledExecutor();
+        relogio.scheduleWithFixedDelay(gemeos::reconciliar, 20, 20, TimeUnit.MILLISECONDS);
+
+        // aquecimento: todos os cenários uma vez, sem esperar, e tempo para os disjuntores abrirem
+        for (long[] par : pares) {
+            cenarioService.aplicarCenario(casa, par[0]);
+        }
+        Thread.sleep(AQUECIMENTO_MS);
+
+        long[] latencias = new long[numCenarios];
+        Map<String, Integer> desfechos = new TreeMap<>();
+        for (int c = 0; c < numCenarios; c++) {
+            long t0 = System.nanoTime();
+            List<Map<String, Object>> rotina = cenarioService.aplicarCenario(casa, pares.get(c)[1]);
+            gemeos.confirmar(casa, rotina, PRAZO_MS);
+            latencias[c] = System.nanoTime() - t0;
+            for (Map<String, Object> acao : rotina) {
+                desfechos.merge((String) acao.get("confirmacao"), 1, Integer::sum);
+            }
+        }
+        relogio.shutdownNow();
+
+        Arrays.sort(latencias);
+        Map<String, Object> m = gemeos.metricas();
+        System.out.printf("  %-18s p50=%7.1f ms  p99=%7.1f ms  máx=%7.1f ms  %s  disjuntores abertos=%s"
+                + "  hedges=%s (%s venceram)%n", nome, latencias[numCenarios / 2] / 1e6,
+                latencias[Math.min(numCenarios - 1, (int) Math.ceil(numCenarios * 0.99) - 1)] / 1e6,
+                latencias[numCenarios - 1] / 1e6, desfechos, m.get("disjuntoresAbertos"), m.get("hedges"),
+                m.get("hedgesVencedores"));
+        if (gatewaysMortos > 0) {
+            System.out.printf("  %-18s disjuntores dos gateways: %s%n", "", m.get("gateways"));
+        }
+    }
+
+    private static long cadastrar(CenarioService cenarioService, Casa casa, List<Long> alvos, int intensidade) {
+        Cenario cenario = new Cenario();
+        cenario.setNome("intensidade " + intensidade);
+        ArrayList<Map<String, Object>> rotina = new ArrayList<>();
+        for (Long id : alvos) {
+            rotina.add(Map.of("dispositivoId", id, "intensidade", intensidade));
+        }
+        cenario.setRotina(rotina);
+        return cenarioService.cadastrarCenario(casa, cenario).getId();
+    }
+}
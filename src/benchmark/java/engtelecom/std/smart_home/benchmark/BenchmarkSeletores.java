@@ -0,0 +1,159 @@
+package engtelecom.std.smart_home.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Predicate;
+
+import engtelecom.std.smart_home.entities.ArCondicionado;
+import engtelecom.std.smart_home.entities.Dispositivo;
+import engtelecom.std.smart_home.entities.Lampada;
+import engtelecom.std.smart_home.entities.Televisao;
+import engtelecom.std.smart_home.service.AmbienteService;
+import engtelecom.std.smart_home.service.CaixaPostalService;
+import engtelecom.std.smart_home.service.Casa;
+import engtelecom.std.smart_home.service.CasaService;
+import engtelecom.std.smart_home.service.CoalescedorService;
+import engtelecom.std.smart_home.service.DiarioAlteracoes;
+import engtelecom.std.smart_home.service.DispositivoService;
+import engtelecom.std.smart_home.service.SeletorService;
+
+/**
+ * Compara a avaliação de seletores sobre os índices em bitmap com a varredura
+ * do cadastro e mede a vazão dos comandos em massa, em uma casa com até
+ * milhões de dispositivos.
+ *
+ * A casa recebe lâmpadas (60%), aparelhos de ar-condicionado (20%) e
+ * televisões (20%) com estados aleatórios, distribuídos entre os ambientes
+ * padrão. Para cada seletor é informado o tempo mediano da avaliação pelos
+ * índices e da varredura equivalente, que percorre todos os dispositivos da
+ * casa testando o predicado. Em seguida, um comando em massa liga ou desliga
+ * todas as lâmpadas da sala.
+ *
+ * Uso: {@code gradle benchmarkSeletores --args="<dispositivos> [<dispositivos>...]"}
+ */
+public class BenchmarkSeletores {
+
+    private static final int REPETICOES = 15;
+    private static final String[] CORES = { "branca", "amarela", "azul", "verde", "vermelha" };
+
+    private record Consulta(String seletor, Predicate<Dispositivo> predicado) {
+    }
+
+    private static final List<Consulta> CONSULTAS = List.of(
+            new Consulta("tipo=lampada e ligado=true",
+                    d -> d instanceof Lampada && d.getLigado()),
+            new Consulta("ambiente=sala e intensidade>=90",
+                    d -> d instanceof Lampada l && l.getIntensidade() >= 90 && d.getId() % 5 == 0),
+            new Consulta("tipo=ar-condicionado e temperatura>26 e não modoSilencioso=true",
+                    d -> d instanceof ArCondicionado a && a.getTemperatura() > 26 && !a.isModoSilencioso()),
+            new Consulta("cor in (azul, verde) ou volume>95",
+                    d -> d instanceof Lampada l && (l.getCor().equals("azul") || l.getCor().equals("verde"))
+                            || d instanceof Televisao t && t.getVolume() > 95));
+
+    public static void main(String[] args) throws Exception {
+        int[] tamanhos = args.length == 0 ? new int[] { 10_000, 100_000, 1_000_000 }
+                : Arrays.stream(args).mapToInt(Integer::parseInt).toArray();
+
+        for (int n : tamanhos) {
+            DiarioAlteracoes diario = new DiarioAlteracoes(100_000, 1_000);
+            CasaService casaService = new CasaService(10, n + 9, 100, 100, 10, diario);
+            DispositivoService dispositivoService = new DispositivoService(
+                    new CaixaPostalService(256, 32, 4, 8, 1), new CoalescedorService(0), casaService, diario);
+            dispositivoService.registrarDispositivosPadrao();
+            AmbienteService ambienteService = new AmbienteService(dispositivoService, casaService, diario);
+            SeletorService seletorService = new SeletorService(casaService, dispositivoService, 4096);
+
+            long inicio = System.nanoTime();
+            Casa casa = preencher(casaService, dispositivoService, ambienteService, n);
+            System.out.printf("%n%,d dispositivos (cadastro e índices em %.1f s; índices: %s)%n",
+                    n, (System.nanoTime() - inicio) / 1e9, seletorService.metricas().get("indices"));
+
+            for (Consulta c : CONSULTAS) {
+                long[] indice = new long[REPETICOES];
+                long[] varredura = new long[REPETICOES];
+                int selecionados = 0;
+                int encontrados = 0;
+                for (int r = 0; r < REPETICOES; r++) {
+                    long t0 = System.nanoTime();
+                    selecionados = seletorService.avaliar(casa, c.seletor()).getCardinality();
+                    indice[r] = System.nanoTime() - t0;
+
+                    t0 = System.nanoTime();
+                    encontrados = 0;
+                    for (Dispositivo d : dispositivoService.buscarTodos(casa)) {
+                        if (c.predicado().test(d)) {
+                            encontrados++;
+                        }
+                    }
+                    varredura[r] = System.nanoTime() - t0;
+                }
+                if (selecionados != encontrados) {
+                    throw new IllegalStateException(c.seletor() + ": índice=" + selecionados
+                            + " varredura=" + encontrados);
+                }
+                System.out.printf("  %-68s %,9d  índice=%8.3f ms  varredura=%8.2f ms%n",
+                        c.seletor(), selecionados, mediana(indice), mediana(varredura));
+            }
+
+            for (boolean ligado : new boolean[] { true, false }) {
+                Map<String, Object> resultado = seletorService.difundir(casa, "ambiente=sala e tipo=lampada",
+                        Map.of("ligado", ligado));
+                double ms = ((Number) resultado.get("duracaoMs")).doubleValue();
+                System.out.printf("  comando em massa ligado=%-5s %,9d alterados em %8.1f ms (%,.0f dispositivos/s)%n",
+                        ligado, resultado.get("alterados"), ms, (Integer) resultado.get("alterados") / (ms / 1000));
+            }
+        }
+    }
+
+    private static Casa preencher(CasaService casaService, DispositivoService dispositivoService,
+            AmbienteService ambienteService, int n) {
+        Casa casa = casaService.criarCasa(null, null);
+        Random aleatorio = new Random(42);
+        // a casa já vem com os 9 dispositivos padrão
+        for (int i = 9; i < n; i++) {
+            int sorteio = aleatorio.nextInt(10);
+            Map<String, Object> estado = new HashMap<>();
+            estado.put("ligado", aleatorio.nextBoolean());
+            Dispositivo d;
+            if (sorteio < 6) {
+                d = new Lampada(CORES[aleatorio.nextInt(CORES.length)], 1 + aleatorio.nextInt(100));
+            } else if (sorteio < 8) {
+                d = new ArCondicionado();
+                estado.put("temperatura", 16 + aleatorio.nextInt(15));
+                estado.put("modoSilencioso", aleatorio.nextBoolean());
+            } else {
+                d = new Televisao();
+                estado.put("volume", aleatorio.nextInt(101));
+            }
+            d.atualizar(estado);
+            dispositivoService.cadastrarDispositivo(casa, d);
+        }
+
+        // ambientes padrão 1..5: o dispositivo i fica no ambiente (i % 5) + 1; a sala (1) tem os múltiplos de 5
+        List<List<Map<String, Object>>> porAmbiente = new ArrayList<>();
+        for (int a = 0; a < 5; a++) {
+            porAmbiente.add(new ArrayList<>());
+        }
+        for (long id = 1; id <= n; id++) {
+            porAmbiente.get((int) (id % 5)).add(Map.of("id", id));
+        }
+        for (int a = 0; a < 5; a++) {
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("tipo", ambienteService.buscarPorId(casa, (long) a + 1).getNome());
+            body.put("dispositivos", porAmbiente.get(a));
+            ambienteService.atualizarAmbiente(casa, a + 1, body);
+        }
+        return casa;
+    }
+
+    private static double mediana(long[] nanos) {
+        long[] ordenado = nanos.clone();
+        Arrays.sort(ordenado);
+        return ordenado[ordenado.length / 2] / 1e6;
+    }
+}
@@ -0,0 +1,126 @@
+package engtelecom.std.smart_home.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import engtelecom.std.smart_home.entities.Dispositivo;
+import engtelecom.std.smart_home.entities.Lampada;
+import engtelecom.std.smart_home.service.CaixaPostalService;
+import engtelecom.std.smart_home.service.Casa;
+import engtelecom.std.smart_home.service.CasaService;
+import engtelecom.std.smart_home.service.CenarioService;
+import engtelecom.std.smart_home.service.CoalescedorService;
+import engtelecom.std.smart_home.service.DiarioAlteracoes;
+import engtelecom.std.smart_home.service.DispositivoService;
+import engtelecom.std.smart_home.service.TransicaoService;
+
+/**
+ * Compara a simulação de um cenário sobre a sobreposição copy-on-write da
+ * casa com a simulação sobre uma cópia completa do estado de todos os
+ * dispositivos.
+ *
+ * Para casas de tamanhos crescentes, a mesma rotina (um número fixo de ações
+ * sobre lâmpadas sorteadas) é simulada várias vezes; são informados o tempo
+ * mediano e a memória alocada por simulação. Com a sobreposição, ambos
+ * dependem só da rotina; com a cópia completa, crescem com a casa.
+ *
+ * Uso: {@code gradle benchmarkSimulacao --args="<ações por cenário> <maior casa>"}
+ */
+public class BenchmarkSimulacao {
+
+    private static final int REPETICOES = 21;
+
+    public static void main(String[] args) throws Exception {
+        int acoes = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int maior = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+
+        System.out.printf("rotina com %d ações%n", acoes);
+        for (int n = 1_000; n <= maior; n *= 10) {
+            executar(n, acoes);
+        }
+        System.exit(0);
+    }
+
+    private static void executar(int n, int acoes) {
+        DiarioAlteracoes diario = new DiarioAlteracoes(100_000, 1_000);
+        CasaService casaService = new CasaService(10, n + 9, 100, 100, 10, diario);
+        DispositivoService dispositivoService = new DispositivoService(
+                new CaixaPostalService(256, 32, 4, 8, 1), new CoalescedorService(0), casaService, diario);
+        dispositivoService.registrarDispositivosPadrao();
+        TransicaoService transicaoService = new TransicaoService(casaService, dispositivoService, 50, 100);
+        CenarioService cenarioService = new CenarioService(dispositivoService, transicaoService, diario);
+
+        Casa casa = casaService.criarCasa(null, null);
+        for (int i = 9; i < n; i++) {
+            dispositivoService.cadastrarDispositivo(casa, new Lampada("branca", 50));
+        }
+        List<Dispositivo> lampadas = new ArrayList<>();
+        for (Dispositivo d : dispositivoService.buscarTodos(casa)) {
+            if (d instanceof Lampada) {
+                lampadas.add(d);
+            }
+        }
+        List<Map<String, Object>> rotina = new ArrayList<>();
+        for (int a = 0; a < acoes; a++) {
+            rotina.add(Map.of("dispositivoId", lampadas.get((a * 7_919) % lampadas.size()).getId(),
+                    "intensidade", a % 100, "ligado", true));
+        }
+
+        Simulacao sobreposicao = () -> cenarioService.simularRotina(casa, rotina);
+        Simulacao copiaCompleta = () -> simularComCopia(dispositivoService, casa, rotina);
+        medir(n, "sobreposição", sobreposicao);
+        medir(n, "cópia completa", copiaCompleta);
+    }
+
+    /**
+     * Simulação ingênua: copia o estado de todos os dispositivos da casa e
+     * aplica a rotina sobre a cópia.
+     */
+    private static Object simularComCopia(DispositivoService dispositivoService, Casa casa,
+            List<Map<String, Object>> rotina) {
+        Map<Long, Map<String, Object>> copia = new HashMap<>();
+        Map<Long, Dispositivo> dispositivos = new HashMap<>();
+        for (Dispositivo d : dispositivoService.buscarTodos(casa)) {
+            copia.put(d.getId(), d.obterEstado());
+            dispositivos.put(d.getId(), d);
+        }
+        for (Map<String, Object> acao : rotina) {
+            long id = ((Number) acao.get("dispositivoId")).longValue();
+            Map<String, Object> parametros = new HashMap<>(acao);
+            parametros.remove("dispositivoId");
+            Map<String, Object> diferenca = dispositivos.get(id).calcularDiferenca(parametros, copia.get(id));
+            copia.get(id).putAll(diferenca);
+        }
+        return copia;
+    }
+
+    private static void medir(int n, String nome, Simulacao simulacao) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+                .getThreadMXBean();
+        long id = Thread.currentThread().threadId();
+        for (int i = 0; i < REPETICOES; i++) {
+            simulacao.simular(); // aquecimento
+        }
+        long[] tempos = new long[REPETICOES];
+        long[] alocados = new long[REPETICOES];
+        for (int i = 0; i < REPETICOES; i++) {
+            long a0 = threads.getThreadAllocatedBytes(id);
+            long t0 = System.nanoTime();
+            simulacao.simular();
+            tempos[i] = System.nanoTime() - t0;
+            alocados[i] = threads.getThreadAllocatedBytes(id) - a0;
+        }
+        Arrays.sort(tempos);
+        Arrays.sort(alocados);
+        System.out.printf("  %,8d dispositivos  %-15s %9.3f ms  %,12d bytes alocados%n", n, nome,
+                tempos[REPETICOES / 2] / 1e6, alocados[REPETICOES / 2]);
+    }
+
+    private interface Simulacao {
+        Object simular();
+    }
+}
@@ -0,0 +1,141 @@
+package engtelecom.std.smart_home.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import engtelecom.std.smart_home.entities.Dispositivo;
+import engtelecom.std.smart_home.entities.Lampada;
+import engtelecom.std.smart_home.service.AmbienteService;
+import engtelecom.std.smart_home.service.CaixaPostalService;
+import engtelecom.std.smart_home.service.Casa;
+import engtelecom.std.smart_home.service.CasaService;
+import engtelecom.std.smart_home.service.CenarioService;
+import engtelecom.std.smart_home.service.CoalescedorService;
+import engtelecom.std.smart_home.service.DiarioAlteracoes;
+import engtelecom.std.smart_home.service.DispositivoService;
+import engtelecom.std.smart_home.service.EstadoCasaService;
+import engtelecom.std.smart_home.service.GrupoService;
+import engtelecom.std.smart_home.service.LeituraCompartilhadaService;
+import engtelecom.std.smart_home.service.TransicaoService;
+
+/**
+ * Compara a sincronização de um cliente que baixa de novo a lista completa de
+ * dispositivos ({@code GET /dispositivos}) ou o estado completo
+ * ({@code GET /estado}) com a sincronização por diferença
+ * ({@code GET /estado?desde=}).
+ *
+ * Entre duas sincronizações, um número de dispositivos sorteados recebe um
+ * comando. Para cada quantidade de alterações são informados o tamanho da
+ * resposta em JSON e o tempo de CPU mediano para montá-la e serializá-la. Por
+ * fim, um cliente que ficou para trás de mais alterações do que o buffer do
+ * diário guarda ainda recebe apenas a diferença, lida do índice.
+ *
+ * Uso: {@code gradle benchmarkSincronizacao --args="<dispositivos> <capacidade do diário>"}
+ */
+public class BenchmarkSincronizacao {
+
+    private static final int REPETICOES = 21;
+    private static final int[] ALTERACOES = { 1, 10, 100, 1_000 };
+
+    public static void main(String[] args) throws Exception {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int capacidade = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+
+        ObjectMapper json = new ObjectMapper();
+        DiarioAlteracoes diario = new DiarioAlteracoes(capacidade, 1_000);
+        CasaService casaService = new CasaService(10, n + 9, 100, 100, 10, diario);
+        DispositivoService dispositivoService = new DispositivoService(
+                new CaixaPostalService(256, 32, 4, 8, 1), new CoalescedorService(0), casaService, diario);
+        dispositivoService.registrarDispositivosPadrao();
+        AmbienteService ambienteService = new AmbienteService(dispositivoService, casaService, diario);
+        TransicaoService transicaoService = new TransicaoService(casaService, dispositivoService, 50, 100);
+        CenarioService cenarioService = new CenarioService(dispositivoService, transicaoService, diario);
+        GrupoService grupoService = new GrupoService(casaService, dispositivoService, diario);
+        EstadoCasaService estadoCasaService = new EstadoCasaService(dispositivoService, ambienteService,
+                cenarioService, grupoService, diario, new LeituraCompartilhadaService(diario, json));
+
+        Casa casa = casaService.criarCasa(null, null);
+        for (int i = 9; i < n; i++) {
+            dispositivoService.cadastrarDispositivo(casa, new Lampada("branca", 50));
+        }
+        List<Long> ids = new ArrayList<>();
+        for (Dispositivo d : dispositivoService.buscarTodos(casa)) {
+            ids.add(d.getId());
+        }
+        Set<String> secoes = new LinkedHashSet<>(EstadoCasaService.SECOES);
+        Random aleatorio = new Random(42);
+
+        System.out.printf("%,d dispositivos, diário com %,d registros%n", n, capacidade);
+        System.out.printf("  %-13s %-16s %12s %10s%n", "alterações", "sincronização", "bytes", "CPU");
+        for (int alteracoes : ALTERACOES) {
+            long[] cpuLista = new long[REPETICOES];
+            long[] cpuEstado = new long[REPETICOES];
+            long[] cpuDiferenca = new long[REPETICOES];
+            int bytesLista = 0;
+            int bytesEstado = 0;
+            int bytesDiferenca = 0;
+            long sequencia = diario.ultimaSequencia();
+            for (int r = 0; r < REPETICOES; r++) {
+                alterar(dispositivoService, casa, ids, alteracoes, aleatorio);
+
+                long t0 = cpu();
+                bytesLista = json.writeValueAsBytes(dispositivoService.buscarTodos(casa)).length;
+                cpuLista[r] = cpu() - t0;
+
+                t0 = cpu();
+                bytesEstado = json.writeValueAsBytes(estadoCasaService.montar(casa, secoes, null)).length;
+                cpuEstado[r] = cpu() - t0;
+
+                t0 = cpu();
+                Map<String, Object> diferenca = estadoCasaService.lerAlteracoes(casa, sequencia, null, null);
+                bytesDiferenca = json.writeValueAsBytes(diferenca).length;
+                cpuDiferenca[r] = cpu() - t0;
+                sequencia = (Long) diferenca.get("sequencia");
+            }
+            imprimir(alteracoes, "/dispositivos", bytesLista, cpuLista);
+            imprimir(alteracoes, "/estado", bytesEstado, cpuEstado);
+            imprimir(alteracoes, "/estado?desde=", bytesDiferenca, cpuDiferenca);
+        }
+
+        // cliente atrasado além do buffer do diário
+        long sequencia = diario.ultimaSequencia();
+        int alteracoes = 2 * capacidade;
+        alterar(dispositivoService, casa, ids, alteracoes, aleatorio);
+        long t0 = cpu();
+        Map<String, Object> diferenca = estadoCasaService.lerAlteracoes(casa, sequencia, null, null);
+        int bytes = json.writeValueAsBytes(diferenca).length;
+        long gasto = cpu() - t0;
+        System.out.printf("  atrasado %,d alterações: completo=%s, %,d dispositivos, %,d bytes, CPU=%.2f ms;"
+                + " índice com %s registros%n", alteracoes, diferenca.get("completo"),
+                ((List<?>) diferenca.get("dispositivos")).size(), bytes, gasto / 1e6,
+                diario.metricas().get("indice"));
+        System.exit(0);
+    }
+
+    private static void alterar(DispositivoService dispositivoService, Casa casa, List<Long> ids, int alteracoes,
+            Random aleatorio) {
+        for (int i = 0; i < alteracoes; i++) {
+            long id = ids.get(aleatorio.nextInt(ids.size()));
+            dispositivoService.aplicarDiferenca(casa, id, Map.of("intensidade", aleatorio.nextInt(100)));
+        }
+    }
+
+    private static void imprimir(int alteracoes, String nome, int bytes, long[] cpu) {
+        Arrays.sort(cpu);
+        System.out.printf("  %,13d %-16s %,12d %7.3f ms%n", alteracoes, nome, bytes, cpu[cpu.length / 2] / 1e6);
+    }
+
+    private static long cpu() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        return threads.getCurrentThreadCpuTime();
+    }
+}
@@ -0,0 +1,105 @@
+package engtelecom.std.smart_home.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import engtelecom.std.smart_home.entities.Lampada;
+import engtelecom.std.smart_home.service.CaixaPostalService;
+import engtelecom.std.smart_home.service.Casa;
+import engtelecom.std.smart_home.service.CasaService;
+import engtelecom.std.smart_home.service.CoalescedorService;
+import engtelecom.std.smart_home.service.DiarioAlteracoes;
+import engtelecom.std.smart_home.service.DispositivoService;
+import engtelecom.std.smart_home.service.TransicaoService;
+
+/**
+ * Mede o custo de muitos esmaecimentos simultâneos avançados pelo relógio
+ * único das transições.
+ *
+ * Uma casa recebe lâmpadas com intensidade 100, e todas começam ao mesmo
+ * tempo a esmaecer até 0. Na metade da duração, um comando comum fixa a
+ * intensidade de uma a cada dez lâmpadas em 77, o que deve cancelar a sua
+ * transição. Ao fim, são informados o tempo de CPU do processo (em fração de
+ * um núcleo), o custo médio e máximo de um tique do relógio, os passos
+ * enviados e o atraso até a última transição terminar, e é verificado que as
+ * lâmpadas terminaram em 0 ou, se receberam o comando, em 77.
+ *
+ * Uso: {@code gradle benchmarkTransicoes --args="<lâmpadas> <duração ms> <intervalo mínimo ms>"}
+ */
+public class BenchmarkTransicoes {
+
+    public static void main(String[] args) throws Exception {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        long duracaoMs = args.length > 1 ? Long.parseLong(args[1]) : 30_000;
+        long intervaloMinimoMs = args.length > 2 ? Long.parseLong(args[2]) : 1_000;
+
+        DiarioAlteracoes diario = new DiarioAlteracoes(100_000, 1_000);
+        CasaService casaService = new CasaService(10, n + 9, 100, 100, 10, diario);
+        DispositivoService dispositivoService = new DispositivoService(
+                new CaixaPostalService(256, 32, 4, 8, 1), new CoalescedorService(0), casaService, diario);
+        dispositivoService.registrarDispositivosPadrao();
+        TransicaoService transicaoService = new TransicaoService(casaService, dispositivoService, 50,
+                intervaloMinimoMs);
+
+        Casa casa = casaService.criarCasa(null, null);
+        for (int i = 9; i < n; i++) {
+            dispositivoService.cadastrarDispositivo(casa, new Lampada("branca", 100));
+        }
+        for (long id = 1; id <= 9; id++) {
+            dispositivoService.aplicarDiferenca(casa, id, Map.of("intensidade", 100));
+        }
+        long lampadas = dispositivoService.buscarTodos(casa).stream().filter(d -> d instanceof Lampada).count();
+
+        var so = (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+        long cpu0 = so.getProcessCpuTime();
+        long t0 = System.nanoTime();
+        for (long id = 1; id <= n; id++) {
+            if (dispositivoService.buscarPorId(casa, id) instanceof Lampada) {
+                transicaoService.iniciar(casa, id, Map.of("intensidade", 0, "duracaoMs", duracaoMs));
+            }
+        }
+        double inicioMs = (System.nanoTime() - t0) / 1e6;
+
+        Thread.sleep(duracaoMs / 2);
+        int comandados = 0;
+        for (long id = 10; id <= n; id += 10) {
+            if (dispositivoService.buscarPorId(casa, id) instanceof Lampada) {
+                dispositivoService.aplicarDiferenca(casa, id, Map.of("intensidade", 77));
+                comandados++;
+            }
+        }
+
+        while (((Number) transicaoService.metricas().get("ativas")).longValue() > 0) {
+            Thread.sleep(10);
+        }
+        double totalMs = (System.nanoTime() - t0) / 1e6;
+        double cpuMs = (so.getProcessCpuTime() - cpu0) / 1e6;
+        Thread.sleep(200); // últimos passos ainda nas caixas postais
+
+        int erradas = 0;
+        for (long id = 1; id <= n; id++) {
+            if (dispositivoService.buscarPorId(casa, id) instanceof Lampada l) {
+                int esperado = id >= 10 && id % 10 == 0 ? 77 : 0;
+                if (l.getIntensidade() != esperado) {
+                    erradas++;
+                }
+            }
+        }
+
+        Map<String, Object> m = transicaoService.metricas();
+        System.out.printf("%,d esmaecimentos de %,d ms (intervalo mínimo %,d ms), %,d cancelados por comando%n",
+                lampadas, duracaoMs, intervaloMinimoMs, comandados);
+        System.out.printf("  início de todas: %.0f ms   última concluída após %.0f ms (%.0f ms após o fim previsto)%n",
+                inicioMs, totalMs, totalMs - inicioMs - duracaoMs);
+        System.out.printf("  CPU do processo: %.0f ms (%.1f%% de um núcleo)   passos: %,d (%,.0f/s)   recusados: %,d%n",
+                cpuMs, 100 * cpuMs / totalMs, m.get("passos"),
+                ((Number) m.get("passos")).longValue() / (totalMs / 1000), m.get("passosRecusados"));
+        System.out.printf("  tique: médio %.3f ms, máximo %.1f ms em %,d tiques   concluídas: %,d   canceladas: %,d%n",
+                m.get("tickMedioMs"), m.get("tickMaximoMs"), m.get("ticks"), m.get("concluidas"),
+                m.get("canceladas"));
+        if (erradas > 0) {
+            throw new IllegalStateException(erradas + " lâmpadas terminaram com a intensidade errada");
+        }
+        System.exit(0);
+    }
+}
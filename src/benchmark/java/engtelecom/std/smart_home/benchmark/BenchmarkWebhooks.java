@@ -0,0 +1,167 @@
+package engtelecom.std.smart_home.benchmark;
+
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+
+import engtelecom.std.smart_home.entities.Dispositivo;
+import engtelecom.std.smart_home.entities.Lampada;
+import engtelecom.std.smart_home.service.CaixaPostalService;
+import engtelecom.std.smart_home.service.Casa;
+import engtelecom.std.smart_home.service.CasaService;
+import engtelecom.std.smart_home.service.CoalescedorService;
+import engtelecom.std.smart_home.service.DiarioAlteracoes;
+import engtelecom.std.smart_home.service.DispositivoService;
+import engtelecom.std.smart_home.service.WebhookService;
+
+/**
+ * Verifica que assinantes lentos ou fora do ar não afetam a latência dos
+ * comandos e que um assinante saudável recebe todos os eventos em ordem.
+ *
+ * Os comandos alternam a intensidade das lâmpadas de uma casa, primeiro sem
+ * nenhuma assinatura e depois com três receptores locais: um saudável, um
+ * lento que responde 503 a parte dos lotes e uma porta sem servidor. São
+ * informadas as latências p50 e p99 dos comandos nas duas fases e, para cada
+ * assinatura, os eventos entregues, os lotes, os envios falhos e os eventos no
+ * depósito de falhas; ao fim, é verificado que o receptor saudável recebeu
+ * todas as sequências da segunda fase, uma vez cada e em ordem.
+ *
+ * Uso: {@code gradle benchmarkWebhooks --args="<comandos> <atraso do lento ms> <fração de 503>"}
+ */
+public class BenchmarkWebhooks {
+
+    public static void main(String[] args) throws Exception {
+        int comandos = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+        long atrasoMs = args.length > 1 ? Long.parseLong(args[1]) : 500;
+        double fracaoErros = args.length > 2 ? Double.parseDouble(args[2]) : 0.3;
+
+        ObjectMapper json = new ObjectMapper();
+        DiarioAlteracoes diario = new DiarioAlteracoes(100_000, 1_000);
+        CasaService casaService = new CasaService(10, 10_000, 100, 100, 10, diario);
+        DispositivoService dispositivoService = new DispositivoService(
+                new CaixaPostalService(256, 32, 4, 8, 1), new CoalescedorService(0), casaService, diario);
+        dispositivoService.registrarDispositivosPadrao();
+        WebhookService webhookService = new WebhookService(diario, json, "", 100_000, 100, 20, 2_000, 4, 50,
+                1_000, 1_000, "127.0.0.1");
+        Casa casa = casaService.criarCasa(null, null);
+        List<Long> lampadas = new ArrayList<>();
+        for (Dispositivo d : dispositivoService.buscarTodos(casa)) {
+            if (d instanceof Lampada) {
+                lampadas.add(d.getId());
+            }
+        }
+
+        // receptor saudável: guarda as sequências recebidas
+        List<Long> recebidas = new ArrayList<>();
+        HttpServer saudavel = receptor(json, 0, 0, recebidas);
+        // receptor lento: demora em cada lote e recusa uma parte deles
+        HttpServer lento = receptor(json, atrasoMs, fracaoErros, new ArrayList<>());
+        int portaMorta;
+        try (ServerSocket s = new ServerSocket(0)) {
+            portaMorta = s.getLocalPort();
+        }
+
+        comandar(dispositivoService, casa, lampadas, comandos / 5); // aquecimento
+        long[] semAssinantes = comandar(dispositivoService, casa, lampadas, comandos);
+
+        long primeira = diario.ultimaSequencia() + 1;
+        webhookService.assinar(Map.of("url", "http://127.0.0.1:" + saudavel.getAddress().getPort() + "/", "casaId", casa.getId()));
+        webhookService.assinar(Map.of("url", "http://127.0.0.1:" + lento.getAddress().getPort() + "/", "casaId", casa.getId()));
+        webhookService.assinar(Map.of("url", "http://127.0.0.1:" + portaMorta + "/", "casaId", casa.getId()));
+        long[] comAssinantes = comandar(dispositivoService, casa, lampadas, comandos);
+        long ultima = diario.ultimaSequencia();
+
+        long limite = System.currentTimeMillis() + 60_000;
+        while (System.currentTimeMillis() < limite) {
+            synchronized (recebidas) {
+                if (!recebidas.isEmpty() && recebidas.get(recebidas.size() - 1) >= ultima) {
+                    break;
+                }
+            }
+            Thread.sleep(20);
+        }
+
+        System.out.printf("%,d comandos por fase, %,d eventos na fase com assinantes%n", comandos,
+                ultima - primeira + 1);
+        imprimir("sem assinantes", semAssinantes);
+        imprimir("com 3 assinantes", comAssinantes);
+        for (Map<String, Object> a : webhookService.buscarTodas()) {
+            System.out.printf("  %-28s entregues=%,7d  lotes=%,5d  falhos=%,4d  pendentes=%,6d  em falhas=%,6d  (%s)%n",
+                    a.get("url"), a.get("entregues"), a.get("lotes"), a.get("enviosFalhos"), a.get("pendentes"),
+                    a.get("emFalhas"), a.get("ultimoErro"));
+        }
+
+        synchronized (recebidas) {
+            long esperada = primeira;
+            for (long s : recebidas) {
+                if (s != esperada++) {
+                    throw new IllegalStateException("sequência " + s + " recebida fora de ordem ou repetida");
+                }
+            }
+            if (esperada != ultima + 1) {
+                throw new IllegalStateException("receptor saudável recebeu até " + (esperada - 1) + " de " + ultima);
+            }
+        }
+        saudavel.stop(0);
+        lento.stop(0);
+        System.exit(0);
+    }
+
+    private static long[] comandar(DispositivoService dispositivoService, Casa casa, List<Long> lampadas,
+            int comandos) {
+        long[] latencias = new long[comandos];
+        for (int i = 0; i < comandos; i++) {
+            long id = lampadas.get(i % lampadas.size());
+            long t0 = System.nanoTime();
+            dispositivoService.aplicarDiferenca(casa, id, Map.of("intensidade", 1 + (i / lampadas.size()) % 100));
+            latencias[i] = System.nanoTime() - t0;
+        }
+        Arrays.sort(latencias);
+        return latencias;
+    }
+
+    private static void imprimir(String fase, long[] latencias) {
+        System.out.printf("  %-17s p50=%7.4f ms  p99=%7.4f ms  máx=%7.2f ms%n", fase,
+                latencias[latencias.length / 2] / 1e6, latencias[(int) (latencias.length * 0.99)] / 1e6, latencias[latencias.length - 1] / 1e6);
+    }
+
+    /**
+     * Receptor local de webhooks que guarda as sequências dos lotes aceitos.
+     */
+    private static HttpServer receptor(ObjectMapper json, long atrasoMs, double fracaoErros, List<Long> recebidas)
+            throws Exception {
+        HttpServer servidor = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        servidor.createContext("/", troca -> {
+            byte[] corpo = troca.getRequestBody().readAllBytes();
+            try {
+                Thread.sleep(atrasoMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (ThreadLocalRandom.current().nextDouble() < fracaoErros) {
+                troca.sendResponseHeaders(503, -1);
+                troca.close();
+                return;
+            }
+            List<?> eventos = json.readValue(corpo, List.class);
+            synchronized (recebidas) {
+                for (Object e : eventos) {
+                    recebidas.add(((Number) ((Map<?, ?>) e).get("sequencia")).longValue());
+                }
+            }
+            troca.sendResponseHeaders(204, -1);
+            troca.close();
+        });
+        servidor.setExecutor(Executors.newFixedThreadPool(4));
+        servidor.start();
+        return servidor;
+    }
+}
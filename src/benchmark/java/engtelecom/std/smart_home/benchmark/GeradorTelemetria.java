@@ -0,0 +1,127 @@
+package engtelecom.std.smart_home.benchmark;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import engtelecom.std.smart_home.telemetria.CampoTelemetria;
+import engtelecom.std.smart_home.telemetria.ProtocoloTelemetria;
+
+/**
+ * Gerador de carga para o gateway de telemetria.
+ *
+ * Envia relatórios aleatórios para os dispositivos 1..N das casas 1..C na taxa
+ * pedida e, ao final, consulta {@code /metricas/telemetria} da aplicação para calcular
+ * quantos relatórios por segundo foram efetivamente aplicados.
+ *
+ * Uso: {@code gradle gerarTelemetria --args="<udp|tcp> <relatorios/s> <segundos> [dispositivos] [casas] [host]"}
+ */
+public class GeradorTelemetria {
+
+    private static final int PORTA = 9600;
+    private static final int PORTA_HTTP = 8080;
+
+    // relatórios por datagrama: cabe em um quadro Ethernet comum
+    private static final int RELATORIOS_POR_PACOTE = 100;
+
+    private static final Pattern RECEBIDOS = Pattern.compile("\"recebidos\":(\\d+)");
+
+    public static void main(String[] args) throws Exception {
+        String protocolo = args.length > 0 ? args[0] : "udp";
+        long taxa = args.length > 1 ? Long.parseLong(args[1]) : 1_000_000;
+        int segundos = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int dispositivos = args.length > 3 ? Integer.parseInt(args[3]) : 9;
+        int casas = args.length > 4 ? Integer.parseInt(args[4]) : 1;
+        String host = args.length > 5 ? args[5] : "localhost";
+
+        long recebidosAntes = consultarRecebidos(host);
+
+        long enviados;
+        long inicio = System.nanoTime();
+        try (WritableByteChannel canal = abrir(protocolo, host)) {
+            enviados = enviar(canal, taxa, segundos, dispositivos, casas);
+        }
+        double duracaoEnvio = (System.nanoTime() - inicio) / 1e9;
+
+        // aguarda o gateway terminar de processar o que ainda estiver nos buffers
+        long recebidos = consultarRecebidos(host) - recebidosAntes;
+        for (int i = 0; i < 20; i++) {
+            Thread.sleep(100);
+            long atual = consultarRecebidos(host) - recebidosAntes;
+            if (atual == recebidos) {
+                break;
+            }
+            recebidos = atual;
+        }
+
+        System.out.printf("%s: enviados=%d (%.0f/s)  aplicados=%d (%.0f/s)  perdidos=%.2f%%%n",
+                protocolo, enviados, enviados / duracaoEnvio, recebidos, recebidos / duracaoEnvio,
+                enviados == 0 ? 0.0 : 100.0 * (enviados - recebidos) / enviados);
+    }
+
+    private static WritableByteChannel abrir(String protocolo, String host) throws IOException {
+        InetSocketAddress destino = new InetSocketAddress(host, PORTA);
+        if (protocolo.equals("tcp")) {
+            return SocketChannel.open(destino);
+        }
+        DatagramChannel udp = DatagramChannel.open();
+        udp.connect(destino);
+        return udp;
+    }
+
+    /**
+     * Envia pacotes de relatórios em fatias de 1 ms, mantendo a taxa pedida.
+     */
+    private static long enviar(WritableByteChannel canal, long taxa, int segundos, int dispositivos, int casas)
+            throws IOException {
+        ByteBuffer pacote = ByteBuffer.allocateDirect(RELATORIOS_POR_PACOTE * ProtocoloTelemetria.TAMANHO_QUADRO);
+        CampoTelemetria[] campos = CampoTelemetria.values();
+        ThreadLocalRandom aleatorio = ThreadLocalRandom.current();
+
+        long inicio = System.nanoTime();
+        long fim = inicio + segundos * 1_000_000_000L;
+        long enviados = 0;
+
+        for (long agora = inicio; agora < fim; agora = System.nanoTime()) {
+            long devidos = (long) ((agora - inicio) / 1e9 * taxa);
+            if (enviados >= devidos) {
+                LockSupport.parkNanos(200_000);
+                continue;
+            }
+
+            pacote.clear();
+            int n = (int) Math.min(RELATORIOS_POR_PACOTE, devidos - enviados);
+            for (int i = 0; i < n; i++) {
+                CampoTelemetria campo = campos[aleatorio.nextInt(campos.length)];
+                int valor = campo == CampoTelemetria.LIGADO ? aleatorio.nextInt(2) : aleatorio.nextInt(16, 31);
+                ProtocoloTelemetria.codificar(pacote, 1 + aleatorio.nextInt(casas), 1 + aleatorio.nextInt(dispositivos),
+                        campo, valor);
+            }
+            pacote.flip();
+            while (pacote.hasRemaining()) {
+                canal.write(pacote);
+            }
+            enviados += n;
+        }
+        return enviados;
+    }
+
+    private static long consultarRecebidos(String host) throws IOException, InterruptedException {
+        HttpResponse<String> resposta = HttpClient.newHttpClient().send(
+                HttpRequest.newBuilder(URI.create("http://" + host + ":" + PORTA_HTTP + "/metricas/telemetria")).build(),
+                HttpResponse.BodyHandlers.ofString());
+        Matcher m = RECEBIDOS.matcher(resposta.body());
+        return m.find() ? Long.parseLong(m.group(1)) : 0;
+    }
+}
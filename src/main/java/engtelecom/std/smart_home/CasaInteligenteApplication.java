@@ -2,11 +2,13 @@ package engtelecom.std.smart_home;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 /**
  * Classe principal.
  */
 @SpringBootApplication
+@EnableScheduling
 public class CasaInteligenteApplication {
 
 	public static void main(String[] args) {
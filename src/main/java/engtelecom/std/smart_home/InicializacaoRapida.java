@@ -0,0 +1,24 @@
+package engtelecom.std.smart_home;
+
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Ajustes para o modo de inicialização rápida (perfil {@code rapido}).
+ *
+ * Nesse perfil os beans são criados sob demanda
+ * ({@code spring.main.lazy-initialization}), o que adia a geração da
+ * documentação OpenAPI e de outras configurações automáticas até o primeiro
+ * uso. Os beans da própria aplicação continuam sendo criados na partida, pois
+ * a casa padrão, as caixas postais, a reconciliação, a telemetria e a
+ * replicação precisam estar ativas antes da primeira requisição.
+ */
+@Configuration(proxyBeanMethods = false)
+public class InicializacaoRapida {
+
+    @Bean
+    static LazyInitializationExcludeFilter beansDaAplicacao() {
+        return (nome, definicao, tipo) -> tipo.getPackageName().startsWith("engtelecom.std.smart_home");
+    }
+}
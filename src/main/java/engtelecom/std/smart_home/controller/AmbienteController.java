@@ -6,6 +6,7 @@ import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
 
 import engtelecom.std.smart_home.entities.Ambiente;
@@ -13,36 +14,54 @@ import engtelecom.std.smart_home.entities.Dispositivo;
 import engtelecom.std.smart_home.exceptions.AmbienteNaoEncontradoException;
 import engtelecom.std.smart_home.exceptions.DispositivoNaoEncontradoException;
 import engtelecom.std.smart_home.service.AmbienteService;
+import engtelecom.std.smart_home.service.Casa;
+import engtelecom.std.smart_home.service.CasaService;
 import engtelecom.std.smart_home.service.DispositivoService;
+import engtelecom.std.smart_home.service.LeituraCompartilhadaService;
 
 @RestController
-@RequestMapping({ "/ambientes", "/ambientes/" })
+@RequestMapping({ "/ambientes", "/ambientes/", "/casas/{casaId}/ambientes", "/casas/{casaId}/ambientes/" })
 public class AmbienteController {
 
+    @Autowired
+    private CasaService casaService;
+
     @Autowired
     private AmbienteService ambienteService;
 
     @Autowired
     private DispositivoService dispositivoService;
 
+    @Autowired
+    private LeituraCompartilhadaService leituraCompartilhadaService;
+
     /**
      * Listar todos os ambientes, bem como os dispositivos associados a cada um
      *
-     * @return lista de ambientes com seus dispositivos
+     * Pedidos simultâneos da mesma casa, sem alterações entre eles, recebem a
+     * mesma resposta, montada uma única vez.
+     *
+     * @param casaId o ID da casa (casa padrão se ausente)
+     * @return lista de ambientes com seus dispositivos, em JSON
      * 
      */
-    @GetMapping
-    public ArrayList<Map<String, Object>> listarAmbientes() {
+    @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
+    public byte[] listarAmbientes(@PathVariable(name = "casaId", required = false) Long casaId) {
+        Casa casa = casaService.obter(casaId);
+        return leituraCompartilhadaService.ler(casa, "ambientes/" + casa.getId(), () -> montarLista(casa));
+    }
+
+    private ArrayList<Map<String, Object>> montarLista(Casa casa) {
         // Lista que irá conter a resposta final da API
         ArrayList<Map<String, Object>> resposta = new ArrayList<>();
 
         // Obtém todos os ambientes cadastrados, associados aos seus respectivos IDs
-        Map<Long, Ambiente> ambientes = ambienteService.buscarTodosComId();
+        Map<Long, Ambiente> ambientes = ambienteService.buscarTodosComId(casa);
 
         // Para cada ambiente, monta a representação do ambiente e adiciona à resposta
         for (Map.Entry<Long, Ambiente> entry : ambientes.entrySet()) {
             Ambiente ambiente = entry.getValue();
-            resposta.add(montarResposta(ambiente));
+            resposta.add(montarResposta(casa, ambiente));
         }
 
         return resposta;
@@ -51,15 +70,18 @@ public class AmbienteController {
     /**
      * Obter um ambiente pelo id
      *
+     * @param casaId     o ID da casa (casa padrão se ausente)
      * @param ambienteId o ID do ambiente
      * @return o ambiente encontrado
      * @throws AmbienteNaoEncontradoException se o ambiente não for encontrado
      */
     @GetMapping("/{ambienteId}")
-    public Map<String, Object> obterAmbiente(@PathVariable long ambienteId) {
-        Ambiente a = ambienteService.buscarPorId(ambienteId);
+    public Map<String, Object> obterAmbiente(@PathVariable(name = "casaId", required = false) Long casaId,
+            @PathVariable long ambienteId) {
+        Casa casa = casaService.obter(casaId);
+        Ambiente a = ambienteService.buscarPorId(casa, ambienteId);
         if (a != null) {
-            return montarResposta(a);
+            return montarResposta(casa, a);
         }
         throw new AmbienteNaoEncontradoException(ambienteId);
     }
@@ -67,6 +89,7 @@ public class AmbienteController {
     /**
      * Atualizar um ambiente existente
      * 
+     * @param casaId     o ID da casa (casa padrão se ausente)
      * @param ambienteId ID do ambiente a ser atualizado (informado na URI)
      * @param body       corpo da requisição contendo os novos dados do ambiente
      * @return representação do ambiente atualizado
@@ -75,12 +98,38 @@ public class AmbienteController {
      */
     @PutMapping("/{ambienteId}")
     @ResponseStatus(HttpStatus.OK)
-    public Map<String, Object> atualizarAmbiente(@PathVariable long ambienteId, @RequestBody Map<String, Object> body) {
-        Ambiente ambiente = ambienteService.atualizarAmbiente(ambienteId, body);
+    public Map<String, Object> atualizarAmbiente(@PathVariable(name = "casaId", required = false) Long casaId,
+            @PathVariable long ambienteId, @RequestBody Map<String, Object> body) {
+        Casa casa = casaService.obter(casaId);
+        Ambiente ambiente = ambienteService.atualizarAmbiente(casa, ambienteId, body);
         if (ambiente == null) {
             throw new AmbienteNaoEncontradoException(ambienteId);
         }
-        return montarResposta(ambiente);
+        return montarResposta(casa, ambiente);
+    }
+
+    /**
+     * Aplicar um comando a todos os dispositivos de um ambiente, ou apenas aos
+     * de um tipo, em paralelo
+     *
+     * @param casaId     o ID da casa (casa padrão se ausente)
+     * @param ambienteId ID do ambiente
+     * @param tipo       tipo dos dispositivos (lampada, ar-condicionado ou televisao); todos se ausente
+     * @param body       campos a aplicar (ex.: {@code {"ligado": false}})
+     * @return totais e resultado de cada dispositivo (alterado, semEfeito, ignorado ou falha)
+     * @throws AmbienteNaoEncontradoException se o ambiente informado não existir
+     * @throws IllegalArgumentException       se o comando estiver vazio ou o tipo for desconhecido
+     */
+    @PatchMapping("/{ambienteId}/dispositivos")
+    public Map<String, Object> executarComando(@PathVariable(name = "casaId", required = false) Long casaId,
+            @PathVariable long ambienteId, @RequestParam(name = "tipo", required = false) String tipo,
+            @RequestBody Map<String, Object> body) {
+        Map<String, Object> resultado = ambienteService.executarComando(casaService.obter(casaId), ambienteId,
+                tipo, body);
+        if (resultado == null) {
+            throw new AmbienteNaoEncontradoException(ambienteId);
+        }
+        return resultado;
     }
 
     /**
@@ -89,10 +138,11 @@ public class AmbienteController {
      * O ambiente é convertido para uma estrutura contendo apenas o tipo do ambiente 
      * e a lista completa de dispositivos atualmente associados a ele.
      *
+     * @param casa     casa do ambiente
      * @param ambiente ambiente de domínio a ser representado
      * @return mapa contendo os dados do ambiente no formato da resposta HTTP
      */
-    private Map<String, Object> montarResposta(Ambiente ambiente) {
+    private Map<String, Object> montarResposta(Casa casa, Ambiente ambiente) {
         Map<String, Object> obj = new HashMap<>();
 
         // Tipo do ambiente 
@@ -102,7 +152,7 @@ public class AmbienteController {
         ArrayList<Dispositivo> dispositivos = new ArrayList<>();
 
         for (Long dispositivoId : ambiente.getDispositivos()) {
-            Dispositivo d = dispositivoService.buscarPorId(dispositivoId);
+            Dispositivo d = dispositivoService.buscarPorId(casa, dispositivoId);
             if (d != null) {
                 dispositivos.add(d);
             }
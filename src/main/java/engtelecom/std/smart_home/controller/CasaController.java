@@ -0,0 +1,90 @@
+package engtelecom.std.smart_home.controller;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.web.bind.annotation.*;
+
+import engtelecom.std.smart_home.exceptions.CasaNaoEncontradaException;
+import engtelecom.std.smart_home.exceptions.CotaExcedidaException;
+import engtelecom.std.smart_home.service.Casa;
+import engtelecom.std.smart_home.service.CasaService;
+
+@RestController
+@RequestMapping({ "/casas", "/casas/" })
+public class CasaController {
+
+    @Autowired
+    private CasaService casaService;
+
+    /**
+     * Listar as casas atendidas, com suas cotas e uso atual
+     *
+     * @return lista de casas
+     */
+    @GetMapping
+    public List<Map<String, Object>> obterCasas() {
+        List<Map<String, Object>> resposta = new ArrayList<>();
+        for (Casa c : casaService.buscarTodas()) {
+            resposta.add(c.descrever());
+        }
+        return resposta;
+    }
+
+    /**
+     * Obter uma casa pelo id
+     *
+     * @param casaId o ID da casa
+     * @return a casa, com suas cotas e uso atual
+     * @throws CasaNaoEncontradaException se a casa não for encontrada
+     */
+    @GetMapping("/{casaId}")
+    public Map<String, Object> obterCasa(@PathVariable long casaId) {
+        return casaService.obter(casaId).descrever();
+    }
+
+    /**
+     * Criar uma nova casa, já com os dispositivos e ambientes padrão
+     *
+     * @param body mapa com "nome" e, opcionalmente, "cotas" ("dispositivos",
+     *             "ambientes", "cenarios", "execucoes")
+     * @return a casa criada
+     * @throws CotaExcedidaException    se o número máximo de casas foi atingido
+     * @throws IllegalArgumentException se alguma cota for inválida
+     */
+    @PostMapping
+    @ResponseStatus(HttpStatus.CREATED)
+    public Map<String, Object> criarCasa(@RequestBody(required = false) Map<String, Object> body) {
+        Object nome = body == null ? null : body.get("nome");
+        Object cotas = body == null ? null : body.get("cotas");
+        if (cotas != null && !(cotas instanceof Map)) {
+            throw new IllegalArgumentException("Campo 'cotas' deve ser um objeto.");
+        }
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> mapaCotas = (Map<String, Object>) cotas;
+        return casaService.criarCasa(nome == null ? null : nome.toString(), mapaCotas).descrever();
+    }
+}
+
+@ControllerAdvice
+class CasaExceptionAdvice {
+
+    @ResponseBody
+    @ExceptionHandler(CasaNaoEncontradaException.class)
+    @ResponseStatus(HttpStatus.NOT_FOUND)
+    String casaNaoEncontrada(CasaNaoEncontradaException ex) {
+        return ex.getMessage();
+    }
+
+    @ResponseBody
+    @ExceptionHandler(CotaExcedidaException.class)
+    @ResponseStatus(HttpStatus.TOO_MANY_REQUESTS)
+    String cotaExcedida(CotaExcedidaException ex) {
+        return ex.getMessage();
+    }
+}
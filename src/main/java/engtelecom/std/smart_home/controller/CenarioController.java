@@ -1,47 +1,71 @@
 package engtelecom.std.smart_home.controller;
 
+import java.net.URI;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import engtelecom.std.smart_home.entities.Cenario;
+import engtelecom.std.smart_home.entities.ExecucaoCenario;
 import engtelecom.std.smart_home.exceptions.CenarioNaoEncontradoException;
+import engtelecom.std.smart_home.exceptions.CotaExcedidaException;
 import engtelecom.std.smart_home.exceptions.DispositivoNaoEncontradoException;
 import engtelecom.std.smart_home.exceptions.RotinaInvalidaException;
 import engtelecom.std.smart_home.exceptions.RotinaNaoEncontradaException;
+import engtelecom.std.smart_home.exceptions.FilaDeExecucaoCheiaException;
+import engtelecom.std.smart_home.service.CasaService;
 import engtelecom.std.smart_home.service.CenarioService;
+import engtelecom.std.smart_home.service.ExecucaoService;
+import engtelecom.std.smart_home.service.GemeoDigitalService;
 
 @RestController
-@RequestMapping({ "/cenarios", "/cenarios/" })
+@RequestMapping({ "/cenarios", "/cenarios/", "/casas/{casaId}/cenarios", "/casas/{casaId}/cenarios/" })
 public class CenarioController {
 
+    @Autowired
+    private CasaService casaService;
+
     @Autowired
     private CenarioService cenarioService;
 
+    @Autowired
+    private ExecucaoService execucaoService;
+
+    @Autowired
+    private GemeoDigitalService gemeoDigitalService;
+
+    @Value("${casa.cenarios.prazo-confirmacao-ms:1000}")
+    private long prazoConfirmacaoMs;
+
     /**
      * Listar todos os cenários
      * 
+     * @param casaId o ID da casa (casa padrão se ausente)
      * @return lista de cenários
      */
     @GetMapping
-    public ArrayList<Cenario> obterCenarios() {
-        return this.cenarioService.buscarTodos();
+    public ArrayList<Cenario> obterCenarios(@PathVariable(name = "casaId", required = false) Long casaId) {
+        return this.cenarioService.buscarTodos(casaService.obter(casaId));
     }
 
     /**
      * Obter um cenário pelo id
      * 
+     * @param casaId    o ID da casa (casa padrão se ausente)
      * @param cenarioId o ID do cenário
      * @return o cenário encontrado
      * @throws CenarioNaoEncontradoException se o cenário não for encontrado
      */
     @GetMapping("/{cenarioId}")
-    public Cenario obterCenarioPorId(@PathVariable long cenarioId) {
-        Cenario c = this.cenarioService.buscarPorId(cenarioId);
+    public Cenario obterCenarioPorId(@PathVariable(name = "casaId", required = false) Long casaId,
+            @PathVariable long cenarioId) {
+        Cenario c = this.cenarioService.buscarPorId(casaService.obter(casaId), cenarioId);
         if (c == null) {
             throw new CenarioNaoEncontradoException(cenarioId);
         }
@@ -51,44 +75,136 @@ public class CenarioController {
     /**
      * Cadastrar um novo cenário
      *
+     * @param casaId o ID da casa (casa padrão se ausente)
      * @param c o cenário a ser cadastrado
      * @return o cenário cadastrado
      */
     @PostMapping
     @ResponseStatus(HttpStatus.CREATED)
-    public Cenario cadastrarCenario(@RequestBody Cenario c) {
-        return this.cenarioService.cadastrarCenario(c);
+    public Cenario cadastrarCenario(@PathVariable(name = "casaId", required = false) Long casaId,
+            @RequestBody Cenario c) {
+        return this.cenarioService.cadastrarCenario(casaService.obter(casaId), c);
     }
 
     /**
      * Aplica as ações de uma rotina definida por um cenário
      *
+     * @param casaId    o ID da casa (casa padrão se ausente)
      * @param cenarioId o ID do cenário a ser aplicado
+     * @param confirmar se verdadeiro, espera o hardware confirmar as ações,
+     *                  em paralelo, e informa o desfecho de cada uma
+     * @param prazoMs   prazo da espera pelas confirmações (padrão em
+     *                  {@code casa.cenarios.prazo-confirmacao-ms})
      * @return lista de estados dos dispositivos após a aplicação do cenário
      * 
      * @throws CenarioNaoEncontradoException se o cenário não for encontrado
      */
     @PatchMapping("/{cenarioId}")
     @ResponseStatus(HttpStatus.OK)
-    public List<Map<String, Object>> aplicarCenario(@PathVariable long cenarioId) {
-        var rotina = this.cenarioService.aplicarCenario(cenarioId);
+    public List<Map<String, Object>> aplicarCenario(@PathVariable(name = "casaId", required = false) Long casaId,
+            @PathVariable long cenarioId,
+            @RequestParam(defaultValue = "false") boolean confirmar,
+            @RequestParam(required = false) Long prazoMs) {
+        var casa = casaService.obter(casaId);
+        var rotina = this.cenarioService.aplicarCenario(casa, cenarioId);
         if (rotina == null) {
             throw new CenarioNaoEncontradoException(cenarioId);
         }
+        if (confirmar) {
+            this.gemeoDigitalService.confirmar(casa, rotina, prazoMs == null ? prazoConfirmacaoMs : prazoMs);
+        }
         return rotina;
     }
 
+    /**
+     * Enfileira a aplicação de um cenário sem bloquear a requisição
+     * ({@code PATCH /cenarios/{id}?assincrono=true}).
+     *
+     * O andamento pode ser acompanhado em {@code /casas/{casaId}/execucoes/{id}}.
+     *
+     * @param casaId    o ID da casa (casa padrão se ausente)
+     * @param cenarioId o ID do cenário a ser aplicado
+     * @return a execução criada, com o estado inicial "pendente"
+     * 
+     * @throws CenarioNaoEncontradoException se o cenário não for encontrado
+     * @throws CotaExcedidaException         se a casa já tiver execuções demais em andamento
+     * @throws FilaDeExecucaoCheiaException  se a fila de execuções estiver cheia
+     */
+    @PatchMapping(value = "/{cenarioId}", params = "assincrono=true")
+    public ResponseEntity<ExecucaoCenario> aplicarCenarioAssincrono(
+            @PathVariable(name = "casaId", required = false) Long casaId, @PathVariable long cenarioId) {
+        ExecucaoCenario execucao = this.execucaoService.agendar(casaService.obter(casaId), cenarioId);
+        if (execucao == null) {
+            throw new CenarioNaoEncontradoException(cenarioId);
+        }
+        String local = casaId == null
+                ? "/execucoes/" + execucao.getId()
+                : "/casas/" + casaId + "/execucoes/" + execucao.getId();
+        return ResponseEntity.accepted()
+                .location(URI.create(local))
+                .body(execucao);
+    }
+
+    /**
+     * Simula a aplicação de um cenário sem alterar nenhum dispositivo
+     * ({@code PATCH /cenarios/{id}?simular=true}).
+     *
+     * @param casaId    o ID da casa (casa padrão se ausente)
+     * @param cenarioId o ID do cenário a ser simulado
+     * @return o resultado de cada ação, os erros de validação e o estado
+     *         antes e depois de cada dispositivo que seria alterado
+     *
+     * @throws CenarioNaoEncontradoException se o cenário não for encontrado
+     */
+    @PatchMapping(value = "/{cenarioId}", params = "simular=true")
+    public Map<String, Object> simularCenario(@PathVariable(name = "casaId", required = false) Long casaId,
+            @PathVariable long cenarioId) {
+        Map<String, Object> simulacao = this.cenarioService.simularCenario(casaService.obter(casaId), cenarioId);
+        if (simulacao == null) {
+            throw new CenarioNaoEncontradoException(cenarioId);
+        }
+        return simulacao;
+    }
+
+    /**
+     * Recusa a combinação de {@code assincrono=true} com {@code simular=true}:
+     * a simulação não cria execução. Sem este mapeamento, a requisição
+     * casaria com os dois anteriores e o Spring não teria como escolher.
+     *
+     * @throws IllegalArgumentException sempre
+     */
+    @PatchMapping(value = "/{cenarioId}", params = { "assincrono=true", "simular=true" })
+    public Map<String, Object> simularCenarioAssincrono(@PathVariable long cenarioId) {
+        throw new IllegalArgumentException("'simular' e 'assincrono' não podem ser usados juntos.");
+    }
+
+    /**
+     * Simula a rotina de um cenário ainda não cadastrado, sem alterar nenhum
+     * dispositivo
+     *
+     * @param casaId o ID da casa (casa padrão se ausente)
+     * @param c      o cenário com a rotina a ser simulada
+     * @return o resultado da simulação, como em {@link #simularCenario}
+     */
+    @PostMapping("/simulacao")
+    public Map<String, Object> simularRotina(@PathVariable(name = "casaId", required = false) Long casaId,
+            @RequestBody Cenario c) {
+        return this.cenarioService.simularRotina(casaService.obter(casaId), c.getRotina());
+    }
+
     /**
      * Remove um cenário pelo seu ID 
      * 
+     * @param casaId    o ID da casa (casa padrão se ausente)
      * @param cenarioId o ID do cenário a ser removido
      * @return o cenário removido
      * 
      * @throws CenarioNaoEncontradoException se o cenário não for encontrado
      */
     @DeleteMapping("/{cenarioId}")
-    public Cenario removerCenario(@PathVariable long cenarioId) {
-        Cenario removido = this.cenarioService.removerCenario(cenarioId);
+    public Cenario removerCenario(@PathVariable(name = "casaId", required = false) Long casaId,
+            @PathVariable long cenarioId) {
+        Cenario removido = this.cenarioService.removerCenario(casaService.obter(casaId), cenarioId);
         if (removido == null) {
             throw new CenarioNaoEncontradoException(cenarioId);
         }
@@ -98,6 +214,7 @@ public class CenarioController {
     /**
      * Atualiza um cenário existente.
      * 
+     * @param casaId    o ID da casa (casa padrão se ausente)
      * @param cenarioId o ID do cenário a ser atualizado
      * @param c         os novos dados do cenário
      * @return o cenário atualizado
@@ -105,8 +222,9 @@ public class CenarioController {
      * @throws CenarioNaoEncontradoException se o cenário não for encontrado
      */
     @PutMapping("/{cenarioId}")
-    public Cenario atualizarCenario(@PathVariable long cenarioId, @RequestBody Cenario c) {
-        Cenario atualizado = this.cenarioService.atualizarCenario(cenarioId, c);
+    public Cenario atualizarCenario(@PathVariable(name = "casaId", required = false) Long casaId,
+            @PathVariable long cenarioId, @RequestBody Cenario c) {
+        Cenario atualizado = this.cenarioService.atualizarCenario(casaService.obter(casaId), cenarioId, c);
         if (atualizado == null) {
             throw new CenarioNaoEncontradoException(cenarioId);
         }
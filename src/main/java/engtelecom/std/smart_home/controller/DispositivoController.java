@@ -1,39 +1,195 @@
 package engtelecom.std.smart_home.controller;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.http.converter.HttpMessageNotReadableException;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.method.annotation.MethodArgumentTypeMismatchException;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 import engtelecom.std.smart_home.entities.Dispositivo;
 import engtelecom.std.smart_home.exceptions.AmbienteTipoInvalidoException;
+import engtelecom.std.smart_home.exceptions.DispositivoInvalidoException;
 import engtelecom.std.smart_home.exceptions.DispositivoNaoEncontradoException;
+import engtelecom.std.smart_home.exceptions.SeletorInvalidoException;
 import engtelecom.std.smart_home.exceptions.TelevisaoEventosExclusivosException;
+import engtelecom.std.smart_home.exceptions.TransicaoInvalidaException;
+import engtelecom.std.smart_home.service.Casa;
+import engtelecom.std.smart_home.service.CasaService;
+import engtelecom.std.smart_home.service.CenarioService;
 import engtelecom.std.smart_home.service.DispositivoService;
+import engtelecom.std.smart_home.service.GemeoDigitalService;
+import engtelecom.std.smart_home.service.LeituraCompartilhadaService;
+import engtelecom.std.smart_home.service.SeletorService;
+import engtelecom.std.smart_home.service.TransicaoService;
 
 @RestController
-@RequestMapping({ "/dispositivos", "/dispositivos/" })
+@RequestMapping({ "/dispositivos", "/dispositivos/", "/casas/{casaId}/dispositivos", "/casas/{casaId}/dispositivos/" })
 public class DispositivoController {
+    @Autowired
+    private CasaService casaService;
+
+    @Autowired
+    private CenarioService cenarioService;
+
     @Autowired
     private DispositivoService dispositivoService;
 
+    @Autowired
+    private GemeoDigitalService gemeoDigitalService;
+
+    @Autowired
+    private LeituraCompartilhadaService leituraCompartilhadaService;
+
+    @Autowired
+    private SeletorService seletorService;
+
+    @Autowired
+    private TransicaoService transicaoService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${casa.cenarios.prazo-confirmacao-ms:1000}")
+    private long prazoConfirmacaoMs;
+
+    /**
+     * Obter todos os dispositivos
+     *
+     * Pedidos simultâneos da mesma casa, sem alterações entre eles, recebem a
+     * mesma resposta, montada uma única vez.
+     *
+     * @param casaId o ID da casa (casa padrão se ausente)
+     * @return lista de dispositivos, em JSON
+     */
+    @GetMapping(params = "!seletor", produces = MediaType.APPLICATION_JSON_VALUE)
+    public byte[] obterDispositivos(@PathVariable(name = "casaId", required = false) Long casaId) {
+        Casa casa = casaService.obter(casaId);
+        return this.leituraCompartilhadaService.ler(casa, "dispositivos/" + casa.getId(),
+                () -> this.dispositivoService.buscarTodos(casa));
+    }
+
     /**
-     * Obter os dispositivos 
+     * Obter apenas os dispositivos que atendem a um seletor
+     * (ex.: {@code tipo=lampada e ambiente=sala e intensidade>=50})
      *
+     * @param casaId o ID da casa (casa padrão se ausente)
+     * @param seletor seletor dos dispositivos
      * @return lista de dispositivos
+     *
+     * @throws SeletorInvalidoException se o seletor for inválido
+     */
+    @GetMapping(params = "seletor")
+    public ArrayList<Dispositivo> selecionarDispositivos(@PathVariable(name = "casaId", required = false) Long casaId,
+            @RequestParam(name = "seletor") String seletor) {
+        return this.seletorService.selecionar(casaService.obter(casaId), seletor);
+    }
+
+    /**
+     * Aplicar os mesmos campos a todos os dispositivos que atendem a um seletor
+     *
+     * @param casaId o ID da casa (casa padrão se ausente)
+     * @param seletor seletor dos dispositivos
+     * @param body os campos a aplicar (ex.: {@code {"ligado": false}})
+     * @return número de dispositivos selecionados, alterados, sem efeito,
+     *         ignorados (sem os campos enviados) e com falha
+     *
+     * @throws SeletorInvalidoException se o seletor for inválido
+     */
+    @PatchMapping
+    public Map<String, Object> difundirComando(@PathVariable(name = "casaId", required = false) Long casaId,
+            @RequestParam("seletor") String seletor,
+            @RequestBody Map<String, Object> body) {
+        return this.seletorService.difundir(casaService.obter(casaId), seletor, body);
+    }
+
+    /**
+     * Cadastrar um novo dispositivo
+     *
+     * @param casaId o ID da casa (casa padrão se ausente)
+     * @param body   "tipo" (lampada, ar-condicionado ou televisao) e,
+     *               opcionalmente, o estado inicial
+     * @return o dispositivo cadastrado (com {@code id})
+     *
+     * @throws DispositivoInvalidoException se o tipo ou algum campo for inválido
+     * @throws CotaExcedidaException        se a casa atingiu a cota de dispositivos
      */
-    @GetMapping
-    public ArrayList<Dispositivo> obterDispositivos() {
-        return this.dispositivoService.buscarTodos();
+    @PostMapping
+    @ResponseStatus(HttpStatus.CREATED)
+    public Dispositivo cadastrarDispositivo(@PathVariable(name = "casaId", required = false) Long casaId,
+            @RequestBody Map<String, Object> body) {
+        return this.dispositivoService.cadastrarDispositivo(casaService.obter(casaId),
+                this.dispositivoService.criarDispositivo(body));
+    }
+
+    /**
+     * Cadastrar vários dispositivos de uma vez
+     *
+     * O corpo é lido em fluxo, um dispositivo por vez, sem montar o JSON
+     * inteiro em memória: um array JSON ou um dispositivo por linha
+     * ({@code application/x-ndjson}). O lote é cadastrado inteiro ou, se
+     * algum dispositivo for inválido ou o lote não couber na cota, não é
+     * cadastrado.
+     *
+     * @param casaId o ID da casa (casa padrão se ausente)
+     * @param corpo  corpo da requisição
+     * @return o número de dispositivos criados e o primeiro e o último ID,
+     *         reservados em um bloco contíguo
+     *
+     * @throws DispositivoInvalidoException se algum dispositivo for inválido
+     * @throws CotaExcedidaException        se o lote não couber na cota da casa
+     */
+    @PostMapping(value = "/lote", consumes = { MediaType.APPLICATION_JSON_VALUE, "application/x-ndjson" })
+    @ResponseStatus(HttpStatus.CREATED)
+    public Map<String, Object> provisionarDispositivos(@PathVariable(name = "casaId", required = false) Long casaId,
+            InputStream corpo) {
+        Casa casa = casaService.obter(casaId);
+        List<Dispositivo> criados;
+        try (MappingIterator<Map<String, Object>> itens = objectMapper
+                .readerFor(new TypeReference<Map<String, Object>>() {
+                }).readValues(corpo)) {
+            criados = this.dispositivoService.provisionar(casa, itens);
+        } catch (IOException e) {
+            throw jsonInvalido(e);
+        } catch (RuntimeException e) {
+            // erros de leitura no meio do fluxo chegam embrulhados pelo MappingIterator
+            if (e.getCause() instanceof IOException io) {
+                throw jsonInvalido(io);
+            }
+            throw e;
+        }
+
+        Map<String, Object> obj = new LinkedHashMap<>();
+        obj.put("criados", criados.size());
+        obj.put("primeiroId", criados.get(0).getId());
+        obj.put("ultimoId", criados.get(criados.size() - 1).getId());
+        return obj;
+    }
+
+    private static DispositivoInvalidoException jsonInvalido(IOException e) {
+        String mensagem = e instanceof JsonProcessingException j ? j.getOriginalMessage() : e.getMessage();
+        return new DispositivoInvalidoException("JSON inválido: " + mensagem);
     }
 
     /**
      * Obter um dispositivo pelo id
      * 
+     * @param casaId o ID da casa (casa padrão se ausente)
      * @param id o ID do dispositivo
      * @return o dispositivo encontrado
      * 
@@ -42,8 +198,9 @@ public class DispositivoController {
      */
     @GetMapping("/{dispositivoId}")
     @ResponseStatus(HttpStatus.OK)
-    public Dispositivo obterDispositivo(@PathVariable("dispositivoId") long id) {
-        Dispositivo d = this.dispositivoService.buscarPorId(id);
+    public Dispositivo obterDispositivo(@PathVariable(name = "casaId", required = false) Long casaId,
+            @PathVariable("dispositivoId") long id) {
+        Dispositivo d = this.dispositivoService.buscarPorId(casaService.obter(casaId), id);
         if (d != null) {
             return d;
         }
@@ -53,18 +210,132 @@ public class DispositivoController {
     /**
      * Atualizar um dispositivo pelo id
      * 
+     * @param casaId o ID da casa (casa padrão se ausente)
      * @param dispositivoId o ID do dispositivo
      * @param body os novos dados do dispositivo
+     * @param confirmar se verdadeiro, espera o hardware confirmar o novo
+     *                  estado e informa o desfecho no cabeçalho
+     *                  {@code X-Confirmacao}
+     * @param prazoMs   prazo da espera pela confirmação (padrão em
+     *                  {@code casa.cenarios.prazo-confirmacao-ms})
      * @return o dispositivo atualizado
      * 
      * @throws DispositivoNaoEncontradoException se o dispositivo não for encontrado
      */
     @PutMapping("/{dispositivoId}")
-    @ResponseStatus(HttpStatus.OK)
-    public Dispositivo atualizarDispositivo(
+    public ResponseEntity<Dispositivo> atualizarDispositivo(
+            @PathVariable(name = "casaId", required = false) Long casaId,
             @PathVariable("dispositivoId") Long dispositivoId,
-            @RequestBody Map<String, Object> body) {
-        return dispositivoService.substituirDispositivo(dispositivoId, body);
+            @RequestBody Map<String, Object> body,
+            @RequestParam(defaultValue = "false") boolean confirmar,
+            @RequestParam(required = false) Long prazoMs) {
+        Dispositivo d = dispositivoService.substituirDispositivo(casaService.obter(casaId), dispositivoId, body);
+        if (!confirmar) {
+            return ResponseEntity.ok(d);
+        }
+        String confirmacao = this.gemeoDigitalService.aguardarConfirmacao(d)
+                .completeOnTimeout("expirada", prazoMs == null ? prazoConfirmacaoMs : prazoMs, TimeUnit.MILLISECONDS)
+                .join();
+        return ResponseEntity.ok().header("X-Confirmacao", confirmacao).body(d);
+    }
+
+    /**
+     * Obter o gêmeo digital de um dispositivo: o estado desejado, o estado
+     * reportado pelo hardware e a diferença ainda não confirmada
+     * 
+     * @param casaId o ID da casa (casa padrão se ausente)
+     * @param id o ID do dispositivo
+     * @return mapa com o gêmeo digital do dispositivo
+     * 
+     * @throws DispositivoNaoEncontradoException se o dispositivo não for encontrado
+     */
+    @GetMapping("/{dispositivoId}/gemeo")
+    public Map<String, Object> obterGemeo(@PathVariable(name = "casaId", required = false) Long casaId,
+            @PathVariable("dispositivoId") long id) {
+        Map<String, Object> gemeo = this.gemeoDigitalService.obterGemeo(casaService.obter(casaId), id);
+        if (gemeo == null) {
+            throw new DispositivoNaoEncontradoException(id);
+        }
+        return gemeo;
+    }
+
+    /**
+     * Iniciar uma transição gradual, como um esmaecimento
+     * ({@code {"intensidade": 20, "duracaoMs": 30000}}) ou uma rampa
+     * ({@code {"temperatura": 18, "passo": 1, "intervaloMs": 600000}})
+     *
+     * @param casaId o ID da casa (casa padrão se ausente)
+     * @param id o ID do dispositivo
+     * @param body campos alvo e duração, ou passo e intervalo
+     * @return alterações aplicadas de imediato e transições iniciadas
+     *
+     * @throws DispositivoNaoEncontradoException se o dispositivo não for encontrado
+     * @throws TransicaoInvalidaException se a transição for inválida
+     */
+    @PostMapping("/{dispositivoId}/transicoes")
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public Map<String, Object> iniciarTransicao(@PathVariable(name = "casaId", required = false) Long casaId,
+            @PathVariable("dispositivoId") long id, @RequestBody Map<String, Object> body) {
+        return this.transicaoService.iniciar(casaService.obter(casaId), id, body);
+    }
+
+    /**
+     * Obter as transições em andamento de um dispositivo
+     *
+     * @param casaId o ID da casa (casa padrão se ausente)
+     * @param id o ID do dispositivo
+     * @return lista de transições em andamento
+     *
+     * @throws DispositivoNaoEncontradoException se o dispositivo não for encontrado
+     */
+    @GetMapping("/{dispositivoId}/transicoes")
+    public List<Map<String, Object>> obterTransicoes(@PathVariable(name = "casaId", required = false) Long casaId,
+            @PathVariable("dispositivoId") long id) {
+        Casa casa = casaService.obter(casaId);
+        if (dispositivoService.buscarPorId(casa, id) == null) {
+            throw new DispositivoNaoEncontradoException(id);
+        }
+        return this.transicaoService.buscarTransicoes(casa, id);
+    }
+
+    /**
+     * Cancelar as transições em andamento de um dispositivo, que permanece
+     * com os valores já alcançados
+     *
+     * @param casaId o ID da casa (casa padrão se ausente)
+     * @param id o ID do dispositivo
+     * @return transições canceladas
+     *
+     * @throws DispositivoNaoEncontradoException se o dispositivo não for encontrado
+     */
+    @DeleteMapping("/{dispositivoId}/transicoes")
+    public List<Map<String, Object>> cancelarTransicoes(@PathVariable(name = "casaId", required = false) Long casaId,
+            @PathVariable("dispositivoId") long id) {
+        Casa casa = casaService.obter(casaId);
+        if (dispositivoService.buscarPorId(casa, id) == null) {
+            throw new DispositivoNaoEncontradoException(id);
+        }
+        return this.transicaoService.cancelar(casa, id);
+    }
+
+    /**
+     * Obter os cenários que referenciam um dispositivo, com as posições das
+     * ações sobre ele, para avaliar o impacto de uma mudança no dispositivo
+     *
+     * @param casaId o ID da casa (casa padrão se ausente)
+     * @param id o ID do dispositivo
+     * @return lista de cenários, em ordem de ID
+     *
+     * @throws DispositivoNaoEncontradoException se o dispositivo não for encontrado
+     */
+    @GetMapping("/{dispositivoId}/cenarios")
+    public List<Map<String, Object>> obterCenarios(@PathVariable(name = "casaId", required = false) Long casaId,
+            @PathVariable("dispositivoId") long id) {
+        Casa casa = casaService.obter(casaId);
+        if (dispositivoService.buscarPorId(casa, id) == null) {
+            throw new DispositivoNaoEncontradoException(id);
+        }
+        return this.cenarioService.buscarPorDispositivo(casa, id);
     }
 }
 
@@ -81,7 +352,10 @@ class DispositivoExceptionAdvice {
     @ResponseBody
     @ExceptionHandler({
         AmbienteTipoInvalidoException.class,
-        TelevisaoEventosExclusivosException.class
+        DispositivoInvalidoException.class,
+        SeletorInvalidoException.class,
+        TelevisaoEventosExclusivosException.class,
+        TransicaoInvalidaException.class
     })
     @ResponseStatus(HttpStatus.BAD_REQUEST)
     String erroDeRegraDeNegocio(RuntimeException ex) {
@@ -0,0 +1,77 @@
+package engtelecom.std.smart_home.controller;
+
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+
+import engtelecom.std.smart_home.exceptions.ProjecaoInvalidaException;
+import engtelecom.std.smart_home.service.CasaService;
+import engtelecom.std.smart_home.service.EstadoCasaService;
+
+@RestController
+@RequestMapping({ "/estado", "/estado/", "/casas/{casaId}/estado", "/casas/{casaId}/estado/" })
+public class EstadoController {
+
+    @Autowired
+    private CasaService casaService;
+
+    @Autowired
+    private EstadoCasaService estadoCasaService;
+
+    /**
+     * Obter o estado completo da casa em uma única resposta: ambientes,
+     * dispositivos, cenários e grupos, com cada dispositivo aparecendo uma
+     * única vez e referenciado pelo ID nas demais seções
+     *
+     * @param casaId  o ID da casa (casa padrão se ausente)
+     * @param incluir seções separadas por vírgula (ambientes, dispositivos,
+     *                cenarios, grupos; todas se ausente)
+     * @param campos  campos de estado dos dispositivos separados por vírgula
+     *                (todos se ausente)
+     * @return o estado da casa, em JSON
+     * @throws ProjecaoInvalidaException se alguma seção ou campo for desconhecido
+     */
+    @GetMapping(params = "!desde", produces = MediaType.APPLICATION_JSON_VALUE)
+    public byte[] obterEstado(@PathVariable(name = "casaId", required = false) Long casaId,
+            @RequestParam(name = "incluir", required = false) String incluir,
+            @RequestParam(name = "campos", required = false) String campos) {
+        return estadoCasaService.ler(casaService.obter(casaId), incluir, campos);
+    }
+
+    /**
+     * Obter apenas o que mudou na casa depois de uma sequência do diário:
+     * ambientes, dispositivos, cenários e grupos alterados, com o estado
+     * atual, e os IDs dos removidos. Se a sequência for antiga demais, a
+     * resposta é o estado completo, com "completo" verdadeiro
+     *
+     * @param casaId  o ID da casa (casa padrão se ausente)
+     * @param desde   o campo "sequencia" do último estado ou da última
+     *                diferença recebida
+     * @param incluir seções separadas por vírgula (todas se ausente)
+     * @param campos  campos de estado dos dispositivos separados por vírgula
+     *                (todos se ausente)
+     * @return as alterações ou o estado completo
+     * @throws ProjecaoInvalidaException se alguma seção ou campo for desconhecido
+     */
+    @GetMapping(params = "desde")
+    public Map<String, Object> obterAlteracoes(@PathVariable(name = "casaId", required = false) Long casaId,
+            @RequestParam(name = "desde") long desde,
+            @RequestParam(name = "incluir", required = false) String incluir,
+            @RequestParam(name = "campos", required = false) String campos) {
+        return estadoCasaService.lerAlteracoes(casaService.obter(casaId), desde, incluir, campos);
+    }
+}
+
+@ControllerAdvice
+class ProjecaoInvalidaAdvice {
+
+    @ResponseBody
+    @ExceptionHandler(ProjecaoInvalidaException.class)
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    String projecaoInvalida(ProjecaoInvalidaException ex) {
+        return ex.getMessage();
+    }
+}
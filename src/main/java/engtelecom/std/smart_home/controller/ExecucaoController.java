@@ -0,0 +1,90 @@
+package engtelecom.std.smart_home.controller;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+
+import engtelecom.std.smart_home.entities.ExecucaoCenario;
+import engtelecom.std.smart_home.exceptions.ExecucaoNaoCancelavelException;
+import engtelecom.std.smart_home.exceptions.ExecucaoNaoEncontradaException;
+import engtelecom.std.smart_home.service.CasaService;
+import engtelecom.std.smart_home.service.ExecucaoService;
+
+@RestController
+@RequestMapping({ "/execucoes", "/execucoes/", "/casas/{casaId}/execucoes", "/casas/{casaId}/execucoes/" })
+public class ExecucaoController {
+
+    @Autowired
+    private CasaService casaService;
+
+    @Autowired
+    private ExecucaoService execucaoService;
+
+    /**
+     * Listar as execuções de cenários mantidas no histórico
+     *
+     * @param casaId o ID da casa (casa padrão se ausente)
+     * @return lista de execuções, da mais antiga para a mais recente
+     */
+    @GetMapping
+    public List<ExecucaoCenario> obterExecucoes(@PathVariable(name = "casaId", required = false) Long casaId) {
+        return this.execucaoService.buscarTodas(casaService.obter(casaId));
+    }
+
+    /**
+     * Obter o estado, o progresso e os resultados de uma execução
+     *
+     * @param casaId     o ID da casa (casa padrão se ausente)
+     * @param execucaoId o ID da execução
+     * @return a execução encontrada
+     * @throws ExecucaoNaoEncontradaException se a execução não for encontrada
+     */
+    @GetMapping("/{execucaoId}")
+    public ExecucaoCenario obterExecucao(@PathVariable(name = "casaId", required = false) Long casaId,
+            @PathVariable long execucaoId) {
+        ExecucaoCenario e = this.execucaoService.buscarPorId(casaService.obter(casaId), execucaoId);
+        if (e == null) {
+            throw new ExecucaoNaoEncontradaException(execucaoId);
+        }
+        return e;
+    }
+
+    /**
+     * Cancelar uma execução pendente ou em andamento
+     *
+     * @param casaId     o ID da casa (casa padrão se ausente)
+     * @param execucaoId o ID da execução
+     * @return a execução após a solicitação de cancelamento
+     * @throws ExecucaoNaoEncontradaException se a execução não for encontrada
+     * @throws ExecucaoNaoCancelavelException se a execução já tiver terminado
+     */
+    @DeleteMapping("/{execucaoId}")
+    public ExecucaoCenario cancelarExecucao(@PathVariable(name = "casaId", required = false) Long casaId,
+            @PathVariable long execucaoId) {
+        ExecucaoCenario e = obterExecucao(casaId, execucaoId);
+        if (!e.cancelar()) {
+            throw new ExecucaoNaoCancelavelException(execucaoId);
+        }
+        return e;
+    }
+}
+
+@ControllerAdvice
+class ExecucaoExceptionAdvice {
+
+    @ResponseBody
+    @ExceptionHandler(ExecucaoNaoEncontradaException.class)
+    @ResponseStatus(HttpStatus.NOT_FOUND)
+    String execucaoNaoEncontrada(ExecucaoNaoEncontradaException ex) {
+        return ex.getMessage();
+    }
+
+    @ResponseBody
+    @ExceptionHandler(ExecucaoNaoCancelavelException.class)
+    @ResponseStatus(HttpStatus.CONFLICT)
+    String execucaoNaoCancelavel(ExecucaoNaoCancelavelException ex) {
+        return ex.getMessage();
+    }
+}
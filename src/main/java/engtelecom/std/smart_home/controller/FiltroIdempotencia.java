@@ -0,0 +1,241 @@
+package engtelecom.std.smart_home.controller;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import engtelecom.std.smart_home.service.IdempotenciaService;
+import engtelecom.std.smart_home.service.IdempotenciaService.Reserva;
+import engtelecom.std.smart_home.service.IdempotenciaService.RespostaArmazenada;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Tratamento do cabeçalho {@value #CABECALHO_CHAVE} nas requisições que
+ * alteram o cadastro (POST, PUT, PATCH e DELETE).
+ *
+ * A resposta da primeira requisição com uma chave é guardada e devolvida às
+ * repetições com o cabeçalho {@value #CABECALHO_REPETIDA}, sem executar a
+ * alteração de novo. Repetições que chegam enquanto a primeira ainda está em
+ * andamento esperam por ela. Respostas que não devem ser repetidas (erros
+ * 5xx, recusas do controle de admissão e encaminhamentos ao líder da
+ * replicação) não são guardadas, e a chave fica livre para uma nova tentativa.
+ *
+ * As chaves valem dentro do escopo de um cliente (endereço de origem e
+ * {@value InterceptadorAdmissao#CABECALHO_CLIENTE}) e de uma casa: clientes
+ * diferentes que escolhem a mesma chave não recebem a resposta um do outro.
+ * A requisição é identificada pelo método, pela URI e por um hash do corpo,
+ * que é lido por inteiro antes de a requisição seguir.
+ *
+ * Os erros de uso da chave são escritos aqui mesmo, pois o filtro roda antes
+ * dos controladores e de seus {@code @ControllerAdvice}: HTTP 422 para uma
+ * chave reaproveitada com outro método, outra URI ou outro corpo e HTTP 409
+ * se a primeira requisição não terminar dentro da espera configurada.
+ */
+@Component
+public class FiltroIdempotencia extends OncePerRequestFilter {
+
+    public static final String CABECALHO_CHAVE = "Idempotency-Key";
+    public static final String CABECALHO_REPETIDA = "Idempotent-Replayed";
+
+    private static final int TAMANHO_MAXIMO_CHAVE = 255;
+    private static final String PREFIXO_CASA = "/casas/";
+    private static final Set<String> METODOS = Set.of("POST", "PUT", "PATCH", "DELETE");
+
+    // cabeçalhos que o contêiner gera a cada resposta e não devem ser repetidos
+    private static final Set<String> CABECALHOS_IGNORADOS = Set.of(HttpHeaders.DATE.toLowerCase(),
+            HttpHeaders.TRANSFER_ENCODING.toLowerCase(), HttpHeaders.CONTENT_LENGTH.toLowerCase(),
+            HttpHeaders.CONNECTION.toLowerCase(), HttpHeaders.CONTENT_TYPE.toLowerCase());
+
+    @Autowired
+    private IdempotenciaService idempotenciaService;
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !METODOS.contains(request.getMethod()) || request.getHeader(CABECALHO_CHAVE) == null
+                || request.getRequestURI().startsWith("/replicacao");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String chave = request.getHeader(CABECALHO_CHAVE).trim();
+        if (chave.isEmpty() || chave.length() > TAMANHO_MAXIMO_CHAVE) {
+            escreverErro(response, HttpStatus.BAD_REQUEST, "O cabeçalho " + CABECALHO_CHAVE
+                    + " deve ter entre 1 e " + TAMANHO_MAXIMO_CHAVE + " caracteres.");
+            return;
+        }
+
+        byte[] corpo = request.getInputStream().readAllBytes();
+        request = new CorpoLido(request, corpo);
+        String assinatura = request.getMethod() + " " + request.getRequestURI()
+                + (request.getQueryString() == null ? "" : "?" + request.getQueryString()) + " " + resumo(corpo);
+
+        Reserva reserva;
+        try {
+            reserva = idempotenciaService.reservar(escopo(request) + " " + chave, assinatura);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            escreverErro(response, HttpStatus.SERVICE_UNAVAILABLE, "Requisição interrompida.");
+            return;
+        }
+
+        switch (reserva.situacao()) {
+            case REPETIR -> repetir(reserva.resposta(), response);
+            case CONFLITO -> escreverErro(response, HttpStatus.UNPROCESSABLE_ENTITY, "A chave " + chave
+                    + " já foi usada em outra requisição; cada chave vale para um único método, URI e corpo.");
+            case EM_ANDAMENTO -> escreverErro(response, HttpStatus.CONFLICT, "A requisição com a chave " + chave
+                    + " ainda está em andamento. Tente novamente mais tarde.");
+            case EXECUTAR -> executar(reserva, request, response, chain);
+        }
+    }
+
+    private void executar(Reserva reserva, HttpServletRequest request, HttpServletResponse response,
+            FilterChain chain) throws ServletException, IOException {
+        ContentCachingResponseWrapper capturada = new ContentCachingResponseWrapper(response);
+        RespostaArmazenada resposta = null;
+        try {
+            chain.doFilter(request, capturada);
+            resposta = armazenavel(capturada);
+        } finally {
+            // sem resposta armazenável a chave é liberada, inclusive se a cadeia lançar exceção
+            idempotenciaService.concluir(reserva, resposta);
+            capturada.copyBodyToResponse();
+        }
+    }
+
+    /**
+     * Cliente e casa da requisição, no formato {@code endereço/cliente casa}.
+     */
+    private static String escopo(HttpServletRequest request) {
+        String cliente = request.getHeader(InterceptadorAdmissao.CABECALHO_CLIENTE);
+        String casa = "";
+        String uri = request.getRequestURI();
+        if (uri.startsWith(PREFIXO_CASA)) {
+            int fim = uri.indexOf('/', PREFIXO_CASA.length());
+            casa = fim < 0 ? uri.substring(PREFIXO_CASA.length()) : uri.substring(PREFIXO_CASA.length(), fim);
+        }
+        return request.getRemoteAddr() + "/" + (cliente == null ? "" : cliente.trim()) + " " + casa;
+    }
+
+    private static String resumo(byte[] corpo) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(corpo));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 indisponível", e);
+        }
+    }
+
+    private static RespostaArmazenada armazenavel(ContentCachingResponseWrapper r) {
+        int status = r.getStatus();
+        if (status >= 500 || status == HttpStatus.TEMPORARY_REDIRECT.value()
+                || status == HttpStatus.TOO_MANY_REQUESTS.value()) {
+            return null;
+        }
+
+        Map<String, List<String>> cabecalhos = new LinkedHashMap<>();
+        for (String nome : r.getHeaderNames()) {
+            if (!CABECALHOS_IGNORADOS.contains(nome.toLowerCase())) {
+                cabecalhos.put(nome, new ArrayList<>(r.getHeaders(nome)));
+            }
+        }
+        if (r.getContentType() != null) {
+            cabecalhos.put(HttpHeaders.CONTENT_TYPE, List.of(r.getContentType()));
+        }
+        return new RespostaArmazenada(status, cabecalhos, r.getContentAsByteArray());
+    }
+
+    private static void repetir(RespostaArmazenada r, HttpServletResponse response) throws IOException {
+        response.setStatus(r.status());
+        for (Map.Entry<String, List<String>> c : r.cabecalhos().entrySet()) {
+            for (String valor : c.getValue()) {
+                response.addHeader(c.getKey(), valor);
+            }
+        }
+        response.setHeader(CABECALHO_REPETIDA, "true");
+        response.setContentLength(r.corpo().length);
+        response.getOutputStream().write(r.corpo());
+    }
+
+    private static void escreverErro(HttpServletResponse response, HttpStatus status, String mensagem)
+            throws IOException {
+        response.setStatus(status.value());
+        response.setContentType("text/plain;charset=UTF-8");
+        response.getWriter().write(mensagem);
+    }
+
+    /**
+     * Requisição cujo corpo já foi lido para calcular o hash: os controladores
+     * o leem de novo da memória.
+     */
+    private static final class CorpoLido extends HttpServletRequestWrapper {
+
+        private final byte[] corpo;
+
+        private CorpoLido(HttpServletRequest request, byte[] corpo) {
+            super(request);
+            this.corpo = corpo;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            ByteArrayInputStream entrada = new ByteArrayInputStream(corpo);
+            return new ServletInputStream() {
+                @Override
+                public int read() {
+                    return entrada.read();
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    return entrada.read(b, off, len);
+                }
+
+                @Override
+                public boolean isFinished() {
+                    return entrada.available() == 0;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setReadListener(ReadListener listener) {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() {
+            Charset charset = getCharacterEncoding() == null ? StandardCharsets.UTF_8
+                    : Charset.forName(getCharacterEncoding());
+            return new BufferedReader(new InputStreamReader(getInputStream(), charset));
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package engtelecom.std.smart_home.controller;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import engtelecom.std.smart_home.entities.Prioridade;
+import engtelecom.std.smart_home.exceptions.PrioridadeInvalidaException;
+import engtelecom.std.smart_home.service.PrioridadeAtual;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Tratamento do cabeçalho {@value #CABECALHO_PRIORIDADE}: {@code critica},
+ * {@code interativa} ou {@code lote}.
+ *
+ * A faixa informada vale para toda a requisição ({@link PrioridadeAtual}):
+ * os comandos deixados nas caixas postais e as execuções assíncronas de
+ * cenários criados por ela entram nessa faixa. Sem o cabeçalho, cada rota usa
+ * a sua faixa padrão: lote para os comandos em massa e interativa para as
+ * demais. Uma faixa desconhecida recebe HTTP 400, escrito aqui mesmo, pois o
+ * filtro roda antes dos controladores.
+ *
+ * A faixa crítica fura as filas e não ocupa vaga no limite de requisições
+ * simultâneas, por isso só é aceita dos endereços em
+ * {@code casa.prioridades.clientes-criticos}; dos demais, ela é rebaixada
+ * para a interativa.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class FiltroPrioridade extends OncePerRequestFilter {
+
+    public static final String CABECALHO_PRIORIDADE = "X-Prioridade";
+
+    private final Set<String> clientesCriticos = new HashSet<>();
+
+    /**
+     * @param clientesCriticos endereços IP, separados por vírgula, que podem
+     *                         usar a faixa crítica
+     */
+    public FiltroPrioridade(
+            @Value("${casa.prioridades.clientes-criticos:127.0.0.1,0:0:0:0:0:0:0:1}") String clientesCriticos) {
+        for (String endereco : clientesCriticos.split(",")) {
+            if (!endereco.isBlank()) {
+                this.clientesCriticos.add(endereco.trim());
+            }
+        }
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return request.getHeader(CABECALHO_PRIORIDADE) == null;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        Prioridade prioridade;
+        try {
+            prioridade = Prioridade.getByNome(request.getHeader(CABECALHO_PRIORIDADE).trim());
+        } catch (PrioridadeInvalidaException e) {
+            response.setStatus(HttpStatus.BAD_REQUEST.value());
+            response.setContentType("text/plain;charset=UTF-8");
+            response.getWriter().write(e.getMessage());
+            return;
+        }
+        if (prioridade == Prioridade.CRITICA && !clientesCriticos.contains(request.getRemoteAddr())) {
+            prioridade = Prioridade.INTERATIVA;
+        }
+
+        Prioridade anterior = PrioridadeAtual.definir(prioridade);
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            PrioridadeAtual.restaurar(anterior);
+        }
+    }
+}
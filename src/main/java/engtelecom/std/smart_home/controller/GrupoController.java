@@ -0,0 +1,181 @@
+package engtelecom.std.smart_home.controller;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+
+import engtelecom.std.smart_home.entities.Dispositivo;
+import engtelecom.std.smart_home.entities.Grupo;
+import engtelecom.std.smart_home.exceptions.DispositivoNaoEncontradoException;
+import engtelecom.std.smart_home.exceptions.GrupoInvalidoException;
+import engtelecom.std.smart_home.exceptions.GrupoNaoEncontradoException;
+import engtelecom.std.smart_home.service.Casa;
+import engtelecom.std.smart_home.service.CasaService;
+import engtelecom.std.smart_home.service.GrupoService;
+
+@RestController
+@RequestMapping({ "/grupos", "/grupos/", "/casas/{casaId}/grupos", "/casas/{casaId}/grupos/" })
+public class GrupoController {
+
+    @Autowired
+    private CasaService casaService;
+
+    @Autowired
+    private GrupoService grupoService;
+
+    /**
+     * Listar todos os grupos
+     *
+     * @param casaId o ID da casa (casa padrão se ausente)
+     * @return lista de grupos, com o total de membros de cada um
+     */
+    @GetMapping
+    public List<Map<String, Object>> obterGrupos(@PathVariable(name = "casaId", required = false) Long casaId) {
+        Casa casa = casaService.obter(casaId);
+        List<Map<String, Object>> grupos = new ArrayList<>();
+        for (Grupo g : grupoService.buscarTodos(casa)) {
+            grupos.add(grupoService.descrever(casa, g));
+        }
+        return grupos;
+    }
+
+    /**
+     * Obter um grupo pelo id
+     *
+     * @param casaId  o ID da casa (casa padrão se ausente)
+     * @param grupoId o ID do grupo
+     * @return o grupo encontrado
+     * @throws GrupoNaoEncontradoException se o grupo não for encontrado
+     */
+    @GetMapping("/{grupoId}")
+    public Map<String, Object> obterGrupoPorId(@PathVariable(name = "casaId", required = false) Long casaId,
+            @PathVariable long grupoId) {
+        Casa casa = casaService.obter(casaId);
+        Grupo g = grupoService.buscarPorId(casa, grupoId);
+        if (g == null) {
+            throw new GrupoNaoEncontradoException(grupoId);
+        }
+        return grupoService.descrever(casa, g);
+    }
+
+    /**
+     * Cadastrar um novo grupo
+     *
+     * @param casaId o ID da casa (casa padrão se ausente)
+     * @param body   mapa com "nome", "dispositivos" e "subgrupos"
+     * @return o grupo cadastrado
+     * @throws GrupoInvalidoException            se o corpo for inválido ou um subgrupo não existir
+     * @throws DispositivoNaoEncontradoException se algum dispositivo não existir
+     */
+    @PostMapping
+    @ResponseStatus(HttpStatus.CREATED)
+    public Map<String, Object> cadastrarGrupo(@PathVariable(name = "casaId", required = false) Long casaId,
+            @RequestBody Map<String, Object> body) {
+        Casa casa = casaService.obter(casaId);
+        return grupoService.descrever(casa, grupoService.cadastrarGrupo(casa, body));
+    }
+
+    /**
+     * Atualiza um grupo existente.
+     *
+     * @param casaId  o ID da casa (casa padrão se ausente)
+     * @param grupoId o ID do grupo a ser atualizado
+     * @param body    mapa com "nome", "dispositivos" e "subgrupos"
+     * @return o grupo atualizado
+     * @throws GrupoNaoEncontradoException se o grupo não for encontrado
+     * @throws GrupoInvalidoException      se o corpo for inválido ou criar um ciclo
+     */
+    @PutMapping("/{grupoId}")
+    public Map<String, Object> atualizarGrupo(@PathVariable(name = "casaId", required = false) Long casaId,
+            @PathVariable long grupoId, @RequestBody Map<String, Object> body) {
+        Casa casa = casaService.obter(casaId);
+        Grupo atualizado = grupoService.atualizarGrupo(casa, grupoId, body);
+        if (atualizado == null) {
+            throw new GrupoNaoEncontradoException(grupoId);
+        }
+        return grupoService.descrever(casa, atualizado);
+    }
+
+    /**
+     * Remove um grupo pelo seu ID, retirando-o dos grupos que o continham.
+     * Os dispositivos não são afetados.
+     *
+     * @param casaId  o ID da casa (casa padrão se ausente)
+     * @param grupoId o ID do grupo a ser removido
+     * @return o grupo removido
+     * @throws GrupoNaoEncontradoException se o grupo não for encontrado
+     */
+    @DeleteMapping("/{grupoId}")
+    public Grupo removerGrupo(@PathVariable(name = "casaId", required = false) Long casaId,
+            @PathVariable long grupoId) {
+        Grupo removido = grupoService.removerGrupo(casaService.obter(casaId), grupoId);
+        if (removido == null) {
+            throw new GrupoNaoEncontradoException(grupoId);
+        }
+        return removido;
+    }
+
+    /**
+     * Lista os dispositivos de um grupo, incluindo os de todos os seus
+     * subgrupos.
+     *
+     * @param casaId  o ID da casa (casa padrão se ausente)
+     * @param grupoId o ID do grupo
+     * @return dispositivos do grupo, em ordem de ID
+     * @throws GrupoNaoEncontradoException se o grupo não for encontrado
+     */
+    @GetMapping("/{grupoId}/dispositivos")
+    public ArrayList<Dispositivo> obterDispositivos(@PathVariable(name = "casaId", required = false) Long casaId,
+            @PathVariable long grupoId) {
+        ArrayList<Dispositivo> dispositivos = grupoService.buscarDispositivos(casaService.obter(casaId), grupoId);
+        if (dispositivos == null) {
+            throw new GrupoNaoEncontradoException(grupoId);
+        }
+        return dispositivos;
+    }
+
+    /**
+     * Aplica um comando a todos os dispositivos de um grupo e dos seus
+     * subgrupos ({@code PATCH /grupos/{id}/dispositivos?tipo=lampada}).
+     *
+     * @param casaId  o ID da casa (casa padrão se ausente)
+     * @param grupoId o ID do grupo
+     * @param tipo    tipo dos dispositivos a comandar (todos se ausente)
+     * @param body    campos a aplicar
+     * @return totais e resultado de cada dispositivo
+     * @throws GrupoNaoEncontradoException se o grupo não for encontrado
+     */
+    @PatchMapping("/{grupoId}/dispositivos")
+    public Map<String, Object> executarComando(@PathVariable(name = "casaId", required = false) Long casaId,
+            @PathVariable long grupoId, @RequestParam(name = "tipo", required = false) String tipo,
+            @RequestBody Map<String, Object> body) {
+        Map<String, Object> resultado = grupoService.executarComando(casaService.obter(casaId), grupoId, tipo,
+                body);
+        if (resultado == null) {
+            throw new GrupoNaoEncontradoException(grupoId);
+        }
+        return resultado;
+    }
+}
+
+@ControllerAdvice
+class GrupoNaoEncontradoAdvice {
+
+    @ResponseBody
+    @ExceptionHandler(GrupoNaoEncontradoException.class)
+    @ResponseStatus(HttpStatus.NOT_FOUND)
+    String grupoNaoEncontrado(GrupoNaoEncontradoException ex) {
+        return ex.getMessage();
+    }
+
+    @ResponseBody
+    @ExceptionHandler(GrupoInvalidoException.class)
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    String grupoInvalido(GrupoInvalidoException ex) {
+        return ex.getMessage();
+    }
+}
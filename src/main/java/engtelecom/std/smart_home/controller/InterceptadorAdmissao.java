@@ -0,0 +1,101 @@
+package engtelecom.std.smart_home.controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import engtelecom.std.smart_home.exceptions.RequisicaoRecusadaException;
+import engtelecom.std.smart_home.service.ControleAdmissaoService;
+import engtelecom.std.smart_home.service.ControleAdmissaoService.Admissao;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Controle de admissão antes dos controladores.
+ *
+ * O limite de cada cliente vale para o seu endereço de origem; o cabeçalho
+ * {@value #CABECALHO_CLIENTE}, que o próprio cliente escolhe, apenas separa
+ * os limites por rota dos clientes de um mesmo endereço. A rota é o método
+ * com o padrão do mapeamento, sem o prefixo {@code /casas/{casaId}}, de modo
+ * que o mesmo limite vale para a casa padrão e para as demais. Requisições recusadas
+ * recebem HTTP 429 com o cabeçalho {@code Retry-After}.
+ *
+ * Roda depois do {@link InterceptadorReplicacao}, para que a espera de uma
+ * leitura pela posição da replicação não seja contada como latência.
+ */
+@Component
+public class InterceptadorAdmissao implements HandlerInterceptor, WebMvcConfigurer {
+
+    public static final String CABECALHO_CLIENTE = "X-Cliente";
+
+    private static final String ATRIBUTO_ADMISSAO = InterceptadorAdmissao.class.getName() + ".admissao";
+    private static final String PREFIXO_CASA = "/casas/{casaId}";
+
+    @Autowired
+    private ControleAdmissaoService controleAdmissaoService;
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(this).excludePathPatterns("/replicacao/**", "/metricas/**").order(1);
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (!(handler instanceof HandlerMethod)) {
+            return true;
+        }
+        Admissao admissao = controleAdmissaoService.admitir(request.getRemoteAddr(), rotulo(request),
+                rota(request));
+        if (admissao != null) {
+            request.setAttribute(ATRIBUTO_ADMISSAO, admissao);
+        }
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+            Exception ex) {
+        if (request.getAttribute(ATRIBUTO_ADMISSAO) instanceof Admissao admissao) {
+            request.removeAttribute(ATRIBUTO_ADMISSAO);
+            controleAdmissaoService.liberar(admissao);
+        }
+    }
+
+    private static String rotulo(HttpServletRequest request) {
+        String cliente = request.getHeader(CABECALHO_CLIENTE);
+        return cliente == null || cliente.isBlank() ? null : cliente.trim();
+    }
+
+    private static String rota(HttpServletRequest request) {
+        Object padrao = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        String rota = padrao == null ? request.getRequestURI() : padrao.toString();
+        if (rota.startsWith(PREFIXO_CASA)) {
+            rota = rota.substring(PREFIXO_CASA.length());
+        }
+        if (rota.length() > 1 && rota.endsWith("/")) {
+            rota = rota.substring(0, rota.length() - 1);
+        }
+        return request.getMethod() + " " + rota;
+    }
+}
+
+@ControllerAdvice
+class AdmissaoExceptionAdvice {
+
+    @ExceptionHandler(RequisicaoRecusadaException.class)
+    ResponseEntity<String> requisicaoRecusada(RequisicaoRecusadaException ex) {
+        long segundos = Math.max(1, (ex.getEsperaMs() + 999) / 1000);
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, Long.toString(segundos))
+                .body(ex.getMessage());
+    }
+}
@@ -0,0 +1,100 @@
+package engtelecom.std.smart_home.controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import engtelecom.std.smart_home.service.DiarioAlteracoes.Alcance;
+import engtelecom.std.smart_home.service.DiarioAlteracoes.Posicao;
+import engtelecom.std.smart_home.service.ReplicacaoService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Encaminhamento das requisições conforme o papel do nó na replicação.
+ *
+ * Em um seguidor, as escritas são respondidas com HTTP 307 apontando para o
+ * líder (o cliente repete o mesmo método e corpo lá) e as leituras que trazem
+ * o cabeçalho {@value #CABECALHO_POSICAO} esperam o nó alcançar aquela
+ * posição do diário; se ele não alcançar a tempo, a leitura também é
+ * encaminhada ao líder. Sem líder conhecido, as escritas recebem HTTP 503.
+ *
+ * A posição vem no formato {@code termo:sequencia}. Se o registro daquela
+ * posição for de outro termo, a escrita do cliente foi confirmada por um
+ * líder que caiu antes de replicá-la e se perdeu na troca de líder: a leitura
+ * recebe HTTP 409 em vez de um estado que não a inclui. O líder faz a mesma
+ * verificação, sem esperar.
+ */
+@Component
+public class InterceptadorReplicacao implements HandlerInterceptor, WebMvcConfigurer {
+
+    public static final String CABECALHO_POSICAO = "X-Replicacao-Posicao";
+
+    @Autowired
+    private ReplicacaoService replicacaoService;
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(this).excludePathPatterns("/replicacao/**", "/metricas/**");
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
+            throws Exception {
+        if (!replicacaoService.isHabilitada() || !(handler instanceof HandlerMethod)) {
+            return true;
+        }
+
+        boolean lider = replicacaoService.isLider();
+        String metodo = request.getMethod();
+        if (metodo.equals("GET") || metodo.equals("HEAD")) {
+            String cabecalho = request.getHeader(CABECALHO_POSICAO);
+            if (cabecalho == null) {
+                return true;
+            }
+            Posicao posicao;
+            try {
+                posicao = Posicao.ler(cabecalho);
+            } catch (IllegalArgumentException e) {
+                response.sendError(HttpStatus.BAD_REQUEST.value(), "Cabeçalho " + CABECALHO_POSICAO + " inválido.");
+                return false;
+            }
+            Alcance alcance = replicacaoService.aguardarPosicao(posicao);
+            if (alcance == Alcance.ALCANCADA) {
+                return true;
+            }
+            if (alcance == Alcance.PERDIDA || lider) {
+                response.setStatus(HttpStatus.CONFLICT.value());
+                response.setContentType("text/plain;charset=UTF-8");
+                response.getWriter().write("A escrita da posição " + posicao
+                        + " não está no histórico da replicação: ela pode ter sido perdida em uma troca de líder.");
+                return false;
+            }
+        } else if (lider) {
+            return true;
+        }
+
+        return encaminharAoLider(request, response);
+    }
+
+    private boolean encaminharAoLider(HttpServletRequest request, HttpServletResponse response) throws Exception {
+        String lider = replicacaoService.urlLider();
+        if (lider == null) {
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            response.setContentType("text/plain;charset=UTF-8");
+            response.getWriter().write("Nenhum líder da replicação disponível no momento. Tente novamente.");
+            return false;
+        }
+
+        String destino = lider + request.getRequestURI()
+                + (request.getQueryString() == null ? "" : "?" + request.getQueryString());
+        response.setStatus(HttpStatus.TEMPORARY_REDIRECT.value());
+        response.setHeader(HttpHeaders.LOCATION, destino);
+        return false;
+    }
+}
@@ -0,0 +1,263 @@
+package engtelecom.std.smart_home.controller;
+
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.*;
+
+import engtelecom.std.smart_home.service.AquecimentoService;
+import engtelecom.std.smart_home.service.CaixaPostalService;
+import engtelecom.std.smart_home.service.CasaService;
+import engtelecom.std.smart_home.service.CoalescedorService;
+import engtelecom.std.smart_home.service.ControleAdmissaoService;
+import engtelecom.std.smart_home.service.DispositivoService;
+import engtelecom.std.smart_home.service.EstadoCasaService;
+import engtelecom.std.smart_home.service.ExecucaoService;
+import engtelecom.std.smart_home.service.GemeoDigitalService;
+import engtelecom.std.smart_home.service.GrupoService;
+import engtelecom.std.smart_home.service.IdempotenciaService;
+import engtelecom.std.smart_home.service.LeituraCompartilhadaService;
+import engtelecom.std.smart_home.service.ReplicacaoService;
+import engtelecom.std.smart_home.service.SeletorService;
+import engtelecom.std.smart_home.service.TelemetriaService;
+import engtelecom.std.smart_home.service.TransicaoService;
+import engtelecom.std.smart_home.service.WebhookService;
+
+@RestController
+@RequestMapping({ "/metricas", "/metricas/" })
+public class MetricasController {
+
+    @Autowired
+    private AquecimentoService aquecimentoService;
+
+    @Autowired
+    private CaixaPostalService caixaPostalService;
+
+    @Autowired
+    private CasaService casaService;
+
+    @Autowired
+    private CoalescedorService coalescedorService;
+
+    @Autowired
+    private ControleAdmissaoService controleAdmissaoService;
+
+    @Autowired
+    private DispositivoService dispositivoService;
+
+    @Autowired
+    private EstadoCasaService estadoCasaService;
+
+    @Autowired
+    private ExecucaoService execucaoService;
+
+    @Autowired
+    private GemeoDigitalService gemeoDigitalService;
+
+    @Autowired
+    private GrupoService grupoService;
+
+    @Autowired
+    private IdempotenciaService idempotenciaService;
+
+    @Autowired
+    private LeituraCompartilhadaService leituraCompartilhadaService;
+
+    @Autowired
+    private ReplicacaoService replicacaoService;
+
+    @Autowired
+    private SeletorService seletorService;
+
+    @Autowired
+    private TelemetriaService telemetriaService;
+
+    @Autowired
+    private TransicaoService transicaoService;
+
+    @Autowired
+    private WebhookService webhookService;
+
+    /**
+     * Obter as métricas das caixas postais de comandos dos dispositivos
+     *
+     * @return totais de comandos processados e rejeitados, espera de cada
+     *         faixa de prioridade e a profundidade de cada caixa
+     */
+    @GetMapping("/caixas")
+    public Map<String, Object> obterMetricasCaixas() {
+        return this.caixaPostalService.metricas();
+    }
+
+    /**
+     * Obter as métricas de coalescência das atualizações de dispositivos
+     *
+     * @return comandos recebidos, aplicados e colapsados
+     */
+    @GetMapping("/coalescencia")
+    public Map<String, Object> obterMetricasCoalescencia() {
+        return this.coalescedorService.metricas();
+    }
+
+    /**
+     * Obter as métricas dos comandos enviados aos dispositivos
+     *
+     * @return número de comandos aplicados e de comandos descartados por não terem efeito
+     */
+    @GetMapping("/comandos")
+    public Map<String, Object> obterMetricasComandos() {
+        return this.dispositivoService.metricas();
+    }
+
+    /**
+     * Obter as métricas da reconciliação entre estado desejado e reportado
+     *
+     * @return comandos enviados, confirmados, com falha e expirados, vazão do
+     *         driver e tempo de convergência
+     */
+    @GetMapping("/reconciliacao")
+    public Map<String, Object> obterMetricasReconciliacao() {
+        return this.gemeoDigitalService.metricas();
+    }
+
+    /**
+     * Obter as métricas da telemetria recebida dos dispositivos
+     *
+     * @return relatórios recebidos, aplicados e descartados e vazão de recepção
+     */
+    @GetMapping("/telemetria")
+    public Map<String, Object> obterMetricasTelemetria() {
+        return this.telemetriaService.metricas();
+    }
+
+    /**
+     * Obter as métricas das casas atendidas por esta instância
+     *
+     * @return número de casas e uso total de dispositivos, cenários e execuções
+     */
+    @GetMapping("/casas")
+    public Map<String, Object> obterMetricasCasas() {
+        return this.casaService.metricas();
+    }
+
+    /**
+     * Obter as métricas da replicação entre nós
+     *
+     * @return papel e termo do nó, atraso dos registros aplicados, instantâneos,
+     *         eleições e duração da última troca de líder
+     */
+    @GetMapping("/replicacao")
+    public Map<String, Object> obterMetricasReplicacao() {
+        return this.replicacaoService.metricas();
+    }
+
+    /**
+     * Obter as métricas do cache de respostas das chaves de idempotência
+     *
+     * @return taxa de acerto, esperas por requisições em andamento, entradas e
+     *         memória estimada frente aos limites configurados
+     */
+    @GetMapping("/idempotencia")
+    public Map<String, Object> obterMetricasIdempotencia() {
+        return this.idempotenciaService.metricas();
+    }
+
+    /**
+     * Obter as métricas da inicialização da aplicação
+     *
+     * @return tempo até a aplicação ficar pronta, uso de AOT e CDS e duração do
+     *         aquecimento em segundo plano
+     */
+    @GetMapping("/inicializacao")
+    public Map<String, Object> obterMetricasInicializacao() {
+        return this.aquecimentoService.metricas();
+    }
+
+    /**
+     * Obter as métricas do controle de admissão
+     *
+     * @return requisições admitidas e recusadas por motivo e o limite atual de
+     *         requisições simultâneas
+     */
+    @GetMapping("/admissao")
+    public Map<String, Object> obterMetricasAdmissao() {
+        return this.controleAdmissaoService.metricas();
+    }
+
+    /**
+     * Obter as métricas das consultas e comandos em massa por seletor
+     *
+     * @return consultas e comandos atendidos, dispositivos selecionados, tempo
+     *         médio de avaliação e tamanho dos índices em bitmap
+     */
+    @GetMapping("/seletores")
+    public Map<String, Object> obterMetricasSeletores() {
+        return this.seletorService.metricas();
+    }
+
+    /**
+     * Obter as métricas do cache de membros dos grupos
+     *
+     * @return número de grupos e de grupos em cache, acertos, cálculos e
+     *         invalidações do cache
+     */
+    @GetMapping("/grupos")
+    public Map<String, Object> obterMetricasGrupos() {
+        return this.grupoService.metricas();
+    }
+
+    /**
+     * Obter as métricas das transições graduais
+     *
+     * @return transições ativas, iniciadas, concluídas e canceladas, passos
+     *         enviados e recusados e o custo dos tiques do relógio
+     */
+    @GetMapping("/transicoes")
+    public Map<String, Object> obterMetricasTransicoes() {
+        return this.transicaoService.metricas();
+    }
+
+    /**
+     * Obter as métricas das notificações por webhook
+     *
+     * @return assinaturas, eventos distribuídos, pendentes, entregues,
+     *         descartados e em falha e envios falhos
+     */
+    @GetMapping("/webhooks")
+    public Map<String, Object> obterMetricasWebhooks() {
+        return this.webhookService.metricas();
+    }
+
+    /**
+     * Obter as métricas das leituras compartilhadas
+     *
+     * @return leituras pedidas, calculadas, colapsadas e reaproveitadas e o
+     *         tempo médio de um cálculo
+     */
+    @GetMapping("/leituras")
+    public Map<String, Object> obterMetricasLeituras() {
+        return this.leituraCompartilhadaService.metricas();
+    }
+
+    /**
+     * Obter as métricas das montagens do estado completo das casas
+     *
+     * @return montagens, repetições por alterações no meio da montagem e
+     *         montagens sem fotografia consistente
+     */
+    @GetMapping("/estado")
+    public Map<String, Object> obterMetricasEstado() {
+        return this.estadoCasaService.metricas();
+    }
+
+    /**
+     * Obter as métricas das execuções assíncronas de cenários
+     *
+     * @return execuções aguardando em cada faixa de prioridade e preempções
+     *         por execuções críticas
+     */
+    @GetMapping("/execucoes")
+    public Map<String, Object> obterMetricasExecucoes() {
+        return this.execucaoService.metricas();
+    }
+}
@@ -0,0 +1,107 @@
+package engtelecom.std.smart_home.controller;
+
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+import engtelecom.std.smart_home.exceptions.NoNaoLiderException;
+import engtelecom.std.smart_home.service.DiarioAlteracoes;
+import engtelecom.std.smart_home.service.LoteReplicacao;
+import engtelecom.std.smart_home.service.ReplicacaoService;
+
+@RestController
+@RequestMapping({ "/replicacao", "/replicacao/" })
+public class ReplicacaoController {
+
+    @Autowired
+    private ReplicacaoService replicacaoService;
+
+    /**
+     * Obter o estado deste nó na replicação
+     *
+     * @return papel, termo, líder conhecido e posição do diário
+     */
+    @GetMapping
+    public Map<String, Object> obterEstado() {
+        return replicacaoService.estado();
+    }
+
+    /**
+     * Obter os registros do diário posteriores a uma posição (usado pelos
+     * seguidores; a resposta espera por registros novos)
+     *
+     * @param no         posição do seguidor na lista de nós
+     * @param termo      termo conhecido pelo seguidor
+     * @param desde      última sequência do diário do seguidor
+     * @param termoDesde termo do registro {@code desde} no seguidor
+     * @return os registros seguintes ou um instantâneo do cadastro
+     * @throws NoNaoLiderException se este nó não for o líder
+     */
+    @GetMapping("/registros")
+    public LoteReplicacao obterRegistros(@RequestParam(defaultValue = "-1") int no,
+            @RequestParam(defaultValue = "0") long termo,
+            @RequestParam(defaultValue = "0") long desde,
+            @RequestParam(defaultValue = "-1") long termoDesde) throws InterruptedException {
+        return replicacaoService.servirRegistros(no, termo, desde, termoDesde);
+    }
+
+    /**
+     * Pedir o voto deste nó em uma eleição de líder
+     *
+     * @param termo       termo da eleição
+     * @param candidato   posição do candidato na lista de nós
+     * @param sequencia   última sequência do diário do candidato
+     * @param termoUltimo termo do último registro do candidato
+     * @return termo deste nó e se o voto foi concedido
+     */
+    @PostMapping("/votos")
+    public Map<String, Object> votar(@RequestParam long termo, @RequestParam int candidato,
+            @RequestParam long sequencia, @RequestParam long termoUltimo) {
+        return replicacaoService.votar(termo, candidato, sequencia, termoUltimo);
+    }
+}
+
+@ControllerAdvice
+class ReplicacaoExceptionAdvice {
+
+    @ResponseBody
+    @ExceptionHandler(NoNaoLiderException.class)
+    @ResponseStatus(HttpStatus.CONFLICT)
+    String noNaoLider(NoNaoLiderException ex) {
+        return ex.getMessage();
+    }
+}
+
+/**
+ * Acrescenta a todas as respostas a posição do diário deste nó, que o cliente
+ * pode reenviar em leituras seguintes para ler as próprias escritas em
+ * qualquer nó.
+ */
+@ControllerAdvice
+class PosicaoReplicacaoAdvice implements ResponseBodyAdvice<Object> {
+
+    @Autowired
+    private DiarioAlteracoes diario;
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return true;
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+            Class<? extends HttpMessageConverter<?>> selectedConverterType, ServerHttpRequest request,
+            ServerHttpResponse response) {
+        response.getHeaders().set(InterceptadorReplicacao.CABECALHO_POSICAO,
+                diario.posicao().toString());
+        return body;
+    }
+}
@@ -0,0 +1,129 @@
+package engtelecom.std.smart_home.controller;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+
+import engtelecom.std.smart_home.exceptions.WebhookInvalidoException;
+import engtelecom.std.smart_home.exceptions.WebhookNaoEncontradoException;
+import engtelecom.std.smart_home.service.WebhookService;
+
+@RestController
+@RequestMapping({ "/webhooks", "/webhooks/" })
+public class WebhookController {
+
+    @Autowired
+    private WebhookService webhookService;
+
+    /**
+     * Listar todas as assinaturas de webhook
+     *
+     * @return lista de assinaturas, com os contadores de entrega de cada uma
+     */
+    @GetMapping
+    public List<Map<String, Object>> obterWebhooks() {
+        return webhookService.buscarTodas();
+    }
+
+    /**
+     * Obter uma assinatura pelo id
+     *
+     * @param id o ID da assinatura
+     * @return a assinatura encontrada
+     * @throws WebhookNaoEncontradoException se a assinatura não for encontrada
+     */
+    @GetMapping("/{id}")
+    public Map<String, Object> obterWebhookPorId(@PathVariable long id) {
+        Map<String, Object> assinatura = webhookService.buscarPorId(id);
+        if (assinatura == null) {
+            throw new WebhookNaoEncontradoException(id);
+        }
+        return assinatura;
+    }
+
+    /**
+     * Assinar as alterações de uma casa
+     *
+     * @param body mapa com "url", "casaId" e, opcionalmente, "recursos"
+     * @return a assinatura criada
+     * @throws WebhookInvalidoException se o corpo for inválido
+     */
+    @PostMapping
+    @ResponseStatus(HttpStatus.CREATED)
+    public Map<String, Object> cadastrarWebhook(@RequestBody Map<String, Object> body) {
+        return webhookService.assinar(body);
+    }
+
+    /**
+     * Remover uma assinatura
+     *
+     * @param id o ID da assinatura
+     * @return a assinatura removida
+     * @throws WebhookNaoEncontradoException se a assinatura não for encontrada
+     */
+    @DeleteMapping("/{id}")
+    public Map<String, Object> removerWebhook(@PathVariable long id) {
+        Map<String, Object> removida = webhookService.cancelar(id);
+        if (removida == null) {
+            throw new WebhookNaoEncontradoException(id);
+        }
+        return removida;
+    }
+
+    /**
+     * Listar os lotes que esgotaram as tentativas de envio
+     *
+     * @param id o ID da assinatura
+     * @return lotes com o instante, as tentativas, o último erro e os eventos
+     * @throws WebhookNaoEncontradoException se a assinatura não for encontrada
+     */
+    @GetMapping("/{id}/falhas")
+    public List<Map<String, Object>> obterFalhas(@PathVariable long id) {
+        List<Map<String, Object>> falhas = webhookService.buscarFalhas(id);
+        if (falhas == null) {
+            throw new WebhookNaoEncontradoException(id);
+        }
+        return falhas;
+    }
+
+    /**
+     * Devolver à fila de envio os eventos dos lotes que falharam
+     *
+     * @param id o ID da assinatura
+     * @return número de eventos devolvidos à fila
+     * @throws WebhookNaoEncontradoException se a assinatura não for encontrada
+     */
+    @PostMapping("/{id}/falhas/reenviar")
+    public Map<String, Object> reenviarFalhas(@PathVariable long id) {
+        int reenviados = webhookService.reenviarFalhas(id);
+        if (reenviados < 0) {
+            throw new WebhookNaoEncontradoException(id);
+        }
+        Map<String, Object> obj = new LinkedHashMap<>();
+        obj.put("id", id);
+        obj.put("reenviados", reenviados);
+        return obj;
+    }
+}
+
+@ControllerAdvice
+class WebhookNaoEncontradoAdvice {
+
+    @ResponseBody
+    @ExceptionHandler(WebhookNaoEncontradoException.class)
+    @ResponseStatus(HttpStatus.NOT_FOUND)
+    String webhookNaoEncontrado(WebhookNaoEncontradoException ex) {
+        return ex.getMessage();
+    }
+
+    @ResponseBody
+    @ExceptionHandler(WebhookInvalidoException.class)
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    String webhookInvalido(WebhookInvalidoException ex) {
+        return ex.getMessage();
+    }
+}
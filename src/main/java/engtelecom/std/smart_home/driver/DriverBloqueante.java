@@ -0,0 +1,104 @@
+package engtelecom.std.smart_home.driver;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import engtelecom.std.smart_home.exceptions.ComunicacaoDispositivoException;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Driver TCP ingênuo: abre um socket bloqueante por comando, envia, espera a
+ * resposta e fecha a conexão.
+ *
+ * Mantido como referência de comparação para o {@link DriverNio}; cada comando
+ * ocupa uma thread do pool durante toda a ida e volta.
+ */
+@Component
+@ConditionalOnProperty(name = "casa.driver.tipo", havingValue = "bloqueante")
+public class DriverBloqueante implements DriverDispositivo {
+
+    private final List<InetSocketAddress> gateways;
+    private final ExecutorService executor;
+    private final int timeoutMs;
+    private final AtomicLong sequencia = new AtomicLong();
+
+    /**
+     * Cria o driver bloqueante.
+     *
+     * @param gateways  lista {@code host:porta} dos gateways, separados por vírgula
+     * @param threads   número de comandos simultâneos
+     * @param timeoutMs prazo de conexão e de resposta
+     */
+    public DriverBloqueante(
+            @Value("${casa.driver.nio.gateways:localhost:9500}") String gateways,
+            @Value("${casa.driver.bloqueante.threads:16}") int threads,
+            @Value("${casa.driver.nio.timeout-ms:5000}") int timeoutMs) {
+        this.gateways = ProtocoloGateway.lerEnderecos(gateways);
+        this.timeoutMs = timeoutMs;
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "driver-bloqueante");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Map<String, Object>> enviar(long dispositivoId, Map<String, Object> alteracoes) {
+        Map<String, Object> comando = new LinkedHashMap<>(alteracoes);
+        InetSocketAddress gateway = gateways.get(gateway(dispositivoId));
+
+        return CompletableFuture.supplyAsync(() -> {
+            long seq = sequencia.incrementAndGet();
+            try (Socket socket = new Socket()) {
+                socket.connect(gateway, timeoutMs);
+                socket.setSoTimeout(timeoutMs);
+
+                OutputStream out = socket.getOutputStream();
+                out.write(ProtocoloGateway.codificarComando(seq, dispositivoId, comando));
+                out.flush();
+
+                BufferedReader in = new BufferedReader(
+                        new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                String resposta = in.readLine();
+                if (resposta == null || !resposta.startsWith(seq + " OK")) {
+                    throw new ComunicacaoDispositivoException(dispositivoId, String.valueOf(resposta));
+                }
+                return comando;
+            } catch (ComunicacaoDispositivoException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new ComunicacaoDispositivoException(dispositivoId, e.getMessage());
+            }
+        }, executor);
+    }
+
+    @Override
+    public int gateway(long dispositivoId) {
+        return (int) Math.floorMod(dispositivoId, (long) gateways.size());
+    }
+
+    @Override
+    public String getNome() {
+        return "bloqueante";
+    }
+
+    @PreDestroy
+    public void encerrar() {
+        executor.shutdownNow();
+    }
+}
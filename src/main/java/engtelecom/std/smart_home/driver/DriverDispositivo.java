@@ -0,0 +1,53 @@
+package engtelecom.std.smart_home.driver;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import engtelecom.std.smart_home.entities.Dispositivo;
+
+/**
+ * Interface para os drivers que levam o estado desejado até os dispositivos físicos.
+ *
+ * Um driver recebe apenas os campos que precisam mudar e devolve, de forma
+ * assíncrona, os campos que o dispositivo confirmou ter aplicado. Falhas de
+ * comunicação completam o futuro excepcionalmente; comandos perdidos podem
+ * simplesmente nunca ser completados, cabendo a quem chama impor um prazo.
+ */
+public interface DriverDispositivo {
+
+    /**
+     * Envia alterações de estado para um dispositivo.
+     *
+     * @param dispositivoId chave global do dispositivo (casa e ID, ver {@link Dispositivo#chave()})
+     * @param alteracoes    campos a alterar, com os mesmos nomes do JSON do dispositivo
+     * @return futuro completado com os campos confirmados pelo dispositivo
+     */
+    CompletableFuture<Map<String, Object>> enviar(long dispositivoId, Map<String, Object> alteracoes);
+
+    /**
+     * Gateway pelo qual o driver fala com um dispositivo, usado para agrupar
+     * as falhas dos dispositivos que dependem do mesmo equipamento.
+     *
+     * @param dispositivoId chave global do dispositivo
+     * @return índice do gateway, 0 por padrão
+     */
+    default int gateway(long dispositivoId) {
+        return 0;
+    }
+
+    /**
+     * Nome do driver, exibido nas métricas.
+     *
+     * @return nome do driver
+     */
+    String getNome();
+
+    /**
+     * Métricas específicas do driver (conexões, comandos em andamento etc.).
+     *
+     * @return mapa com as métricas, vazio por padrão
+     */
+    default Map<String, Object> metricas() {
+        return Map.of();
+    }
+}
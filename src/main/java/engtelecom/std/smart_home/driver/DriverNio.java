@@ -0,0 +1,392 @@
+package engtelecom.std.smart_home.driver;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import engtelecom.std.smart_home.exceptions.ComunicacaoDispositivoException;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Driver de dispositivos baseado em canais NIO não bloqueantes.
+ *
+ * Os dispositivos são distribuídos entre os gateways configurados pelo seu ID.
+ * Para cada gateway é mantido um pequeno conjunto de conexões TCP persistentes,
+ * usadas em rodízio; vários comandos são enviados pela mesma conexão sem
+ * esperar as respostas anteriores (pipelining). Uma única thread com um
+ * {@link Selector} faz todas as conexões, escritas e leituras, de forma que
+ * quem chama {@link #enviar} nunca bloqueia.
+ *
+ * Comandos sem resposta dentro do prazo são descartados e falham, para que a
+ * tabela de comandos em andamento não cresça indefinidamente.
+ */
+@Component
+@ConditionalOnProperty(name = "casa.driver.tipo", havingValue = "nio")
+public class DriverNio implements DriverDispositivo {
+
+    private static final int TAMANHO_BUFFER = 64 * 1024;
+
+    private final List<InetSocketAddress> gateways;
+    private final Conexao[][] conexoes;
+    private final AtomicInteger rodizio = new AtomicInteger();
+    private final AtomicLong sequencia = new AtomicLong();
+    private final long timeoutNanos;
+
+    private final Selector seletor;
+    private final Thread laco;
+    private volatile boolean ativo = true;
+
+    // conexões com escrita pendente, a serem tratadas pela thread do seletor
+    private final Queue<Conexao> sinalizadas = new ConcurrentLinkedQueue<>();
+
+    private final LongAdder enviados = new LongAdder();
+    private final LongAdder respondidos = new LongAdder();
+    private final LongAdder expirados = new LongAdder();
+    private final LongAdder conexoesAbertas = new LongAdder();
+
+    /**
+     * Cria o driver NIO.
+     *
+     * @param gateways           lista {@code host:porta} dos gateways, separados por vírgula
+     * @param conexoesPorGateway número de conexões mantidas com cada gateway
+     * @param timeoutMs          prazo para a resposta de um comando
+     * @throws IOException se o seletor não puder ser aberto
+     */
+    public DriverNio(
+            @Value("${casa.driver.nio.gateways:localhost:9500}") String gateways,
+            @Value("${casa.driver.nio.conexoes-por-gateway:4}") int conexoesPorGateway,
+            @Value("${casa.driver.nio.timeout-ms:5000}") long timeoutMs) throws IOException {
+        this.gateways = ProtocoloGateway.lerEnderecos(gateways);
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        this.conexoes = new Conexao[this.gateways.size()][conexoesPorGateway];
+        for (int g = 0; g < conexoes.length; g++) {
+            for (int i = 0; i < conexoesPorGateway; i++) {
+                conexoes[g][i] = new Conexao(this.gateways.get(g));
+            }
+        }
+
+        this.seletor = Selector.open();
+        this.laco = new Thread(this::executarLaco, "driver-nio");
+        this.laco.setDaemon(true);
+        this.laco.start();
+    }
+
+    @Override
+    public CompletableFuture<Map<String, Object>> enviar(long dispositivoId, Map<String, Object> alteracoes) {
+        Conexao[] pool = conexoes[gateway(dispositivoId)];
+        Conexao c = pool[Math.floorMod(rodizio.getAndIncrement(), pool.length)];
+
+        long seq = sequencia.incrementAndGet();
+        CompletableFuture<Map<String, Object>> resposta = new CompletableFuture<>();
+        Map<String, Object> comando = new LinkedHashMap<>(alteracoes);
+
+        c.emAndamento.put(seq, new Pendente(dispositivoId, resposta, comando, System.nanoTime()));
+        c.saida.add(ByteBuffer.wrap(ProtocoloGateway.codificarComando(seq, dispositivoId, comando)));
+        enviados.increment();
+
+        // só acorda o seletor se a conexão ainda não estiver com escrita agendada
+        if (c.escritaAgendada.compareAndSet(false, true)) {
+            sinalizadas.add(c);
+            seletor.wakeup();
+        }
+
+        return resposta;
+    }
+
+    @Override
+    public int gateway(long dispositivoId) {
+        return (int) Math.floorMod(dispositivoId, (long) conexoes.length);
+    }
+
+    @Override
+    public String getNome() {
+        return "nio";
+    }
+
+    @Override
+    public Map<String, Object> metricas() {
+        int emAndamento = 0;
+        for (Conexao[] pool : conexoes) {
+            for (Conexao c : pool) {
+                emAndamento += c.emAndamento.size();
+            }
+        }
+
+        Map<String, Object> obj = new LinkedHashMap<>();
+        obj.put("gateways", gateways.size());
+        obj.put("conexoesPorGateway", conexoes[0].length);
+        obj.put("conexoesAbertas", conexoesAbertas.sum());
+        obj.put("enviados", enviados.sum());
+        obj.put("respondidos", respondidos.sum());
+        obj.put("expirados", expirados.sum());
+        obj.put("emAndamento", emAndamento);
+        return obj;
+    }
+
+    /**
+     * Laço da thread do seletor.
+     */
+    private void executarLaco() {
+        long proximaVarredura = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+
+        while (ativo) {
+            try {
+                seletor.select(500);
+
+                Conexao c;
+                while ((c = sinalizadas.poll()) != null) {
+                    prepararEscrita(c);
+                }
+
+                Iterator<SelectionKey> it = seletor.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey chave = it.next();
+                    it.remove();
+                    tratar(chave);
+                }
+
+                if (System.nanoTime() - proximaVarredura > 0) {
+                    descartarExpirados();
+                    proximaVarredura = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+                }
+            } catch (IOException e) {
+                // erro no seletor: tenta novamente na próxima volta
+            }
+        }
+    }
+
+    /**
+     * Abre a conexão, se necessário, e passa a observar a possibilidade de escrita.
+     */
+    private void prepararEscrita(Conexao c) {
+        try {
+            if (c.canal == null) {
+                SocketChannel canal = SocketChannel.open();
+                canal.configureBlocking(false);
+                c.canal = canal;
+                if (canal.connect(c.endereco)) {
+                    c.chave = canal.register(seletor, SelectionKey.OP_READ | SelectionKey.OP_WRITE, c);
+                    c.conectada = true;
+                    conexoesAbertas.increment();
+                } else {
+                    c.chave = canal.register(seletor, SelectionKey.OP_CONNECT, c);
+                }
+                return;
+            }
+            if (c.chave != null && c.chave.isValid() && c.canal.isConnected()) {
+                c.chave.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            }
+        } catch (IOException e) {
+            fechar(c, e.getMessage());
+        }
+    }
+
+    /**
+     * Trata um evento do seletor.
+     */
+    private void tratar(SelectionKey chave) {
+        Conexao c = (Conexao) chave.attachment();
+        try {
+            if (chave.isConnectable()) {
+                c.canal.finishConnect();
+                c.conectada = true;
+                conexoesAbertas.increment();
+                chave.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            }
+            if (chave.isValid() && chave.isReadable()) {
+                ler(c);
+            }
+            if (chave.isValid() && chave.isWritable()) {
+                escrever(c);
+            }
+        } catch (IOException e) {
+            fechar(c, e.getMessage());
+        }
+    }
+
+    /**
+     * Escreve os comandos pendentes da conexão até esvaziar a fila ou o socket encher.
+     */
+    private void escrever(Conexao c) throws IOException {
+        ByteBuffer b;
+        while ((b = c.saida.peek()) != null) {
+            c.canal.write(b);
+            if (b.hasRemaining()) {
+                return;
+            }
+            c.saida.poll();
+        }
+
+        c.escritaAgendada.set(false);
+        if (c.saida.isEmpty()) {
+            c.chave.interestOps(SelectionKey.OP_READ);
+        } else {
+            // um comando chegou entre o último poll e a limpeza da flag
+            c.escritaAgendada.set(true);
+        }
+    }
+
+    /**
+     * Lê as respostas disponíveis e completa os comandos correspondentes.
+     */
+    private void ler(Conexao c) throws IOException {
+        int lidos = c.canal.read(c.entrada);
+        if (lidos < 0) {
+            fechar(c, "conexão encerrada pelo gateway");
+            return;
+        }
+
+        ByteBuffer buf = c.entrada;
+        int inicio = 0;
+        for (int i = 0; i < buf.position(); i++) {
+            if (buf.get(i) != ProtocoloGateway.FIM_DE_LINHA) {
+                continue;
+            }
+            long seq = ProtocoloGateway.lerSequencia(buf, inicio, i);
+            Pendente p = seq < 0 ? null : c.emAndamento.remove(seq);
+            if (p != null) {
+                respondidos.increment();
+                if (ProtocoloGateway.respostaOk(buf, inicio, i)) {
+                    p.resposta.complete(p.comando);
+                } else {
+                    p.resposta.completeExceptionally(new ComunicacaoDispositivoException(
+                            p.dispositivoId, ProtocoloGateway.lerMotivo(buf, inicio, i)));
+                }
+            }
+            inicio = i + 1;
+        }
+
+        // buffer cheio sem nenhum fim de linha: a leitura seguinte não teria onde
+        // guardar nada e o seletor acordaria sem parar com a conexão legível
+        if (inicio == 0 && !buf.hasRemaining()) {
+            fechar(c, "resposta do gateway com mais de " + TAMANHO_BUFFER + " bytes sem fim de linha");
+            return;
+        }
+
+        // mantém no buffer apenas a linha incompleta
+        buf.limit(buf.position());
+        buf.position(inicio);
+        buf.compact();
+    }
+
+    /**
+     * Fecha a conexão e falha todos os comandos que estavam nela. A conexão será
+     * reaberta no próximo envio.
+     */
+    private void fechar(Conexao c, String motivo) {
+        if (c.chave != null) {
+            c.chave.cancel();
+        }
+        if (c.canal != null) {
+            try {
+                c.canal.close();
+            } catch (IOException e) {
+                // já está sendo descartado
+            }
+        }
+        if (c.conectada) {
+            conexoesAbertas.decrement();
+        }
+        c.conectada = false;
+        c.canal = null;
+        c.chave = null;
+        c.entrada.clear();
+        c.saida.clear();
+        c.escritaAgendada.set(false);
+
+        for (Long seq : c.emAndamento.keySet()) {
+            Pendente p = c.emAndamento.remove(seq);
+            if (p != null) {
+                p.resposta.completeExceptionally(
+                        new ComunicacaoDispositivoException(p.dispositivoId, String.valueOf(motivo)));
+            }
+        }
+    }
+
+    /**
+     * Falha os comandos que passaram do prazo sem resposta.
+     */
+    private void descartarExpirados() {
+        long agora = System.nanoTime();
+        for (Conexao[] pool : conexoes) {
+            for (Conexao c : pool) {
+                c.emAndamento.entrySet().removeIf(e -> {
+                    if (agora - e.getValue().enviadoEm > timeoutNanos) {
+                        expirados.increment();
+                        e.getValue().resposta.completeExceptionally(new ComunicacaoDispositivoException(
+                                e.getValue().dispositivoId, "sem resposta do gateway"));
+                        return true;
+                    }
+                    return false;
+                });
+            }
+        }
+    }
+
+    @PreDestroy
+    public void encerrar() {
+        ativo = false;
+        seletor.wakeup();
+        try {
+            laco.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Conexao[] pool : conexoes) {
+            for (Conexao c : pool) {
+                fechar(c, "driver encerrado");
+            }
+        }
+        try {
+            seletor.close();
+        } catch (IOException e) {
+            // nada a fazer no encerramento
+        }
+    }
+
+    /**
+     * Comando aguardando resposta do gateway.
+     */
+    private record Pendente(long dispositivoId, CompletableFuture<Map<String, Object>> resposta,
+            Map<String, Object> comando, long enviadoEm) {
+    }
+
+    /**
+     * Conexão persistente com um gateway. O canal, a chave e o buffer de entrada
+     * só são usados pela thread do seletor.
+     */
+    private static final class Conexao {
+        private final InetSocketAddress endereco;
+        private final Queue<ByteBuffer> saida = new ConcurrentLinkedQueue<>();
+        private final ConcurrentHashMap<Long, Pendente> emAndamento = new ConcurrentHashMap<>();
+        private final AtomicBoolean escritaAgendada = new AtomicBoolean();
+        private final ByteBuffer entrada = ByteBuffer.allocateDirect(TAMANHO_BUFFER);
+        private SocketChannel canal;
+        private SelectionKey chave;
+        private boolean conectada;
+
+        private Conexao(InetSocketAddress endereco) {
+            this.endereco = endereco;
+        }
+    }
+}
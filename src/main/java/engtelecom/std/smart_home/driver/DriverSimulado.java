@@ -0,0 +1,139 @@
+package engtelecom.std.smart_home.driver;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import engtelecom.std.smart_home.exceptions.ComunicacaoDispositivoException;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Driver que simula dispositivos físicos dentro do próprio processo.
+ *
+ * Cada comando é confirmado após uma latência aleatória. Uma fração dos
+ * comandos é perdida (nunca recebe resposta), outra falha com erro e outra
+ * demora muito mais que as demais, permitindo observar a reconciliação sob
+ * perda de pacotes e latência de cauda. Os dispositivos são distribuídos
+ * entre gateways simulados; uma fração fixa dos dispositivos e os primeiros
+ * gateways podem estar mortos, sem responder a nenhum comando. As respostas
+ * são agendadas em um único relógio compartilhado, sem uma thread por comando.
+ */
+@Component
+@ConditionalOnProperty(name = "casa.driver.tipo", havingValue = "simulado", matchIfMissing = true)
+public class DriverSimulado implements DriverDispositivo {
+
+    private final ScheduledExecutorService relogio;
+
+    private final long latenciaMinimaMs;
+    private final long latenciaMaximaMs;
+    private final double taxaPerda;
+    private final double taxaFalha;
+    private final double taxaLenta;
+    private final long latenciaLentaMs;
+    private final double fracaoMortos;
+    private final int gateways;
+    private final int gatewaysMortos;
+
+    /**
+     * Cria o driver simulado.
+     *
+     * @param latenciaMinimaMs latência mínima de resposta, em milissegundos
+     * @param latenciaMaximaMs latência máxima de resposta, em milissegundos
+     * @param taxaPerda        probabilidade (0 a 1) de um comando ser perdido
+     * @param taxaFalha        probabilidade (0 a 1) de um comando falhar com erro
+     * @param taxaLenta        probabilidade (0 a 1) de um comando demorar {@code latenciaLentaMs}
+     * @param latenciaLentaMs  latência dos comandos lentos, em milissegundos
+     * @param fracaoMortos     fração (0 a 1) dos dispositivos que nunca respondem
+     * @param gateways         número de gateways simulados
+     * @param gatewaysMortos   número de gateways (os primeiros) que nunca respondem
+     */
+    public DriverSimulado(
+            @Value("${casa.driver.simulado.latencia-min-ms:5}") long latenciaMinimaMs,
+            @Value("${casa.driver.simulado.latencia-max-ms:50}") long latenciaMaximaMs,
+            @Value("${casa.driver.simulado.taxa-perda:0.0}") double taxaPerda,
+            @Value("${casa.driver.simulado.taxa-falha:0.0}") double taxaFalha,
+            @Value("${casa.driver.simulado.taxa-lenta:0.0}") double taxaLenta,
+            @Value("${casa.driver.simulado.latencia-lenta-ms:1000}") long latenciaLentaMs,
+            @Value("${casa.driver.simulado.mortos:0.0}") double fracaoMortos,
+            @Value("${casa.driver.simulado.gateways:1}") int gateways,
+            @Value("${casa.driver.simulado.gateways-mortos:0}") int gatewaysMortos) {
+        this.latenciaMinimaMs = latenciaMinimaMs;
+        this.latenciaMaximaMs = Math.max(latenciaMinimaMs, latenciaMaximaMs);
+        this.taxaPerda = taxaPerda;
+        this.taxaFalha = taxaFalha;
+        this.taxaLenta = taxaLenta;
+        this.latenciaLentaMs = latenciaLentaMs;
+        this.fracaoMortos = fracaoMortos;
+        this.gateways = Math.max(1, gateways);
+        this.gatewaysMortos = gatewaysMortos;
+        this.relogio = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "driver-simulado");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Map<String, Object>> enviar(long dispositivoId, Map<String, Object> alteracoes) {
+        CompletableFuture<Map<String, Object>> resposta = new CompletableFuture<>();
+        ThreadLocalRandom aleatorio = ThreadLocalRandom.current();
+
+        // dispositivo ou gateway morto, ou pacote perdido: o dispositivo nunca responde
+        if (isMorto(dispositivoId) || aleatorio.nextDouble() < taxaPerda) {
+            return resposta;
+        }
+
+        boolean falhar = aleatorio.nextDouble() < taxaFalha;
+        long latencia = aleatorio.nextDouble() < taxaLenta ? latenciaLentaMs
+                : latenciaMinimaMs + aleatorio.nextLong(latenciaMaximaMs - latenciaMinimaMs + 1);
+        Map<String, Object> comando = new HashMap<>(alteracoes);
+
+        relogio.schedule(() -> {
+            if (falhar) {
+                resposta.completeExceptionally(new ComunicacaoDispositivoException(dispositivoId, "falha simulada"));
+                return;
+            }
+            resposta.complete(comando);
+        }, latencia, TimeUnit.MILLISECONDS);
+
+        return resposta;
+    }
+
+    /**
+     * Verifica se um dispositivo está morto: a escolha é fixa para cada
+     * dispositivo, espalhada pelas chaves, ou vem do seu gateway.
+     *
+     * @param dispositivoId chave global do dispositivo
+     * @return true se o dispositivo nunca responde
+     */
+    public boolean isMorto(long dispositivoId) {
+        if (gateway(dispositivoId) < gatewaysMortos) {
+            return true;
+        }
+        double sorteio = ((dispositivoId * 0x9E3779B97F4A7C15L) >>> 11) / (double) (1L << 53);
+        return sorteio < fracaoMortos;
+    }
+
+    @Override
+    public int gateway(long dispositivoId) {
+        return (int) Math.floorMod(dispositivoId, (long) gateways);
+    }
+
+    @Override
+    public String getNome() {
+        return "simulado";
+    }
+
+    @PreDestroy
+    void encerrar() {
+        relogio.shutdownNow();
+    }
+}
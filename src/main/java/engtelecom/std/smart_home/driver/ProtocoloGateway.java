@@ -0,0 +1,139 @@
+package engtelecom.std.smart_home.driver;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import engtelecom.std.smart_home.entities.Dispositivo;
+
+/**
+ * Protocolo de texto, orientado a linhas, usado entre os drivers TCP e os
+ * gateways de dispositivos.
+ *
+ * Comando: {@code <seq> <casaId>/<dispositivoId> <campo>=<valor>[;<campo>=<valor>...]\n}
+ * Resposta: {@code <seq> OK\n} ou {@code <seq> ERRO <motivo>\n}
+ *
+ * O número de sequência permite enviar vários comandos pela mesma conexão sem
+ * esperar as respostas (pipelining) e associar cada resposta ao seu comando.
+ */
+public final class ProtocoloGateway {
+
+    public static final byte FIM_DE_LINHA = '\n';
+
+    private ProtocoloGateway() {
+    }
+
+    /**
+     * Codifica um comando.
+     *
+     * @param seq           número de sequência do comando na conexão
+     * @param dispositivoId chave global do dispositivo
+     * @param alteracoes    campos a alterar
+     * @return bytes do comando, terminados em fim de linha
+     */
+    public static byte[] codificarComando(long seq, long dispositivoId, Map<String, Object> alteracoes) {
+        StringBuilder sb = new StringBuilder(32 + alteracoes.size() * 16);
+        sb.append(seq).append(' ').append(Dispositivo.descreverChave(dispositivoId)).append(' ');
+        boolean primeiro = true;
+        for (Map.Entry<String, Object> campo : alteracoes.entrySet()) {
+            if (!primeiro) {
+                sb.append(';');
+            }
+            sb.append(campo.getKey()).append('=').append(campo.getValue());
+            primeiro = false;
+        }
+        sb.append('\n');
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Codifica uma resposta.
+     *
+     * @param seq    número de sequência do comando respondido
+     * @param motivo motivo da falha, ou null para sucesso
+     * @return bytes da resposta, terminados em fim de linha
+     */
+    public static byte[] codificarResposta(long seq, String motivo) {
+        String linha = motivo == null ? seq + " OK\n" : seq + " ERRO " + motivo + "\n";
+        return linha.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Lê o número de sequência no início de uma linha, sem alocar objetos.
+     *
+     * @param buffer buffer com a linha
+     * @param inicio posição do primeiro byte da linha
+     * @param fim    posição do fim de linha
+     * @return o número de sequência, ou -1 se a linha for inválida
+     */
+    public static long lerSequencia(ByteBuffer buffer, int inicio, int fim) {
+        long seq = 0;
+        int i = inicio;
+        for (; i < fim; i++) {
+            byte b = buffer.get(i);
+            if (b == ' ') {
+                break;
+            }
+            if (b < '0' || b > '9') {
+                return -1;
+            }
+            seq = seq * 10 + (b - '0');
+        }
+        return i == inicio ? -1 : seq;
+    }
+
+    /**
+     * Indica se a resposta contida na linha é de sucesso.
+     *
+     * @param buffer buffer com a linha
+     * @param inicio posição do primeiro byte da linha
+     * @param fim    posição do fim de linha
+     * @return true se a resposta for "OK"
+     */
+    public static boolean respostaOk(ByteBuffer buffer, int inicio, int fim) {
+        int i = inicio;
+        while (i < fim && buffer.get(i) != ' ') {
+            i++;
+        }
+        return i + 2 < fim && buffer.get(i + 1) == 'O' && buffer.get(i + 2) == 'K';
+    }
+
+    /**
+     * Lê o motivo de uma resposta de erro.
+     *
+     * @param buffer buffer com a linha
+     * @param inicio posição do primeiro byte da linha
+     * @param fim    posição do fim de linha
+     * @return o motivo informado pelo gateway
+     */
+    public static String lerMotivo(ByteBuffer buffer, int inicio, int fim) {
+        byte[] linha = new byte[fim - inicio];
+        buffer.get(inicio, linha);
+        String texto = new String(linha, StandardCharsets.UTF_8);
+        int i = texto.indexOf(" ERRO ");
+        return i < 0 ? texto : texto.substring(i + 6);
+    }
+
+    /**
+     * Converte uma lista no formato {@code host:porta,host:porta} em endereços.
+     *
+     * @param lista lista de endereços separados por vírgula
+     * @return endereços lidos
+     * @throws IllegalArgumentException se algum endereço for inválido
+     */
+    public static List<InetSocketAddress> lerEnderecos(String lista) {
+        List<InetSocketAddress> enderecos = new ArrayList<>();
+        for (String item : lista.split(",")) {
+            String s = item.trim();
+            int i = s.lastIndexOf(':');
+            if (i <= 0) {
+                throw new IllegalArgumentException("Endereço de gateway inválido: " + s);
+            }
+            enderecos.add(new InetSocketAddress(s.substring(0, i), Integer.parseInt(s.substring(i + 1))));
+        }
+        return enderecos;
+    }
+}
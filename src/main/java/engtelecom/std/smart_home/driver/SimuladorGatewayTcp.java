@@ -0,0 +1,168 @@
+package engtelecom.std.smart_home.driver;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Simulador local de gateways de dispositivos, falando o {@link ProtocoloGateway}
+ * sobre TCP.
+ *
+ * Escuta em cada endereço configurado e responde a todos os comandos recebidos,
+ * na ordem de chegada, com "OK" (ou "ERRO", de acordo com a taxa de falha).
+ * Usado no lugar de hardware real para exercitar os drivers TCP localmente.
+ */
+@Component
+@ConditionalOnProperty(name = "casa.driver.nio.simulador", havingValue = "true")
+public class SimuladorGatewayTcp {
+
+    private static final int TAMANHO_BUFFER = 64 * 1024;
+
+    private final Selector seletor;
+    private final List<ServerSocketChannel> servidores = new ArrayList<>();
+    private final Thread laco;
+    private final double taxaFalha;
+    private volatile boolean ativo = true;
+
+    /**
+     * Cria o simulador e começa a escutar nos endereços informados.
+     *
+     * @param enderecos lista {@code host:porta} separada por vírgula
+     * @param taxaFalha probabilidade (0 a 1) de responder um comando com erro
+     * @throws IOException se algum endereço não puder ser aberto
+     */
+    public SimuladorGatewayTcp(
+            @Value("${casa.driver.nio.gateways:localhost:9500}") String enderecos,
+            @Value("${casa.driver.nio.simulador-taxa-falha:0.0}") double taxaFalha) throws IOException {
+        this.taxaFalha = taxaFalha;
+        this.seletor = Selector.open();
+        for (InetSocketAddress endereco : ProtocoloGateway.lerEnderecos(enderecos)) {
+            ServerSocketChannel servidor = ServerSocketChannel.open();
+            servidor.bind(endereco);
+            servidor.configureBlocking(false);
+            servidor.register(seletor, SelectionKey.OP_ACCEPT);
+            servidores.add(servidor);
+        }
+
+        this.laco = new Thread(this::executarLaco, "simulador-gateway");
+        this.laco.setDaemon(true);
+        this.laco.start();
+    }
+
+    private void executarLaco() {
+        while (ativo) {
+            try {
+                seletor.select(500);
+                Iterator<SelectionKey> it = seletor.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey chave = it.next();
+                    it.remove();
+                    try {
+                        tratar(chave);
+                    } catch (IOException e) {
+                        chave.cancel();
+                        chave.channel().close();
+                    }
+                }
+            } catch (IOException e) {
+                // erro no seletor: tenta novamente na próxima volta
+            }
+        }
+    }
+
+    private void tratar(SelectionKey chave) throws IOException {
+        if (chave.isAcceptable()) {
+            SocketChannel cliente = ((ServerSocketChannel) chave.channel()).accept();
+            if (cliente != null) {
+                cliente.configureBlocking(false);
+                cliente.register(seletor, SelectionKey.OP_READ, new Sessao());
+            }
+            return;
+        }
+
+        SocketChannel canal = (SocketChannel) chave.channel();
+        Sessao s = (Sessao) chave.attachment();
+
+        if (chave.isReadable()) {
+            if (canal.read(s.entrada) < 0) {
+                chave.cancel();
+                canal.close();
+                return;
+            }
+            responder(s);
+        }
+
+        // envia as respostas acumuladas; se o socket encher, espera poder escrever
+        s.saida.flip();
+        canal.write(s.saida);
+        s.saida.compact();
+        chave.interestOps(s.saida.position() > 0
+                ? SelectionKey.OP_READ | SelectionKey.OP_WRITE
+                : SelectionKey.OP_READ);
+    }
+
+    /**
+     * Gera uma resposta para cada linha completa recebida.
+     */
+    private void responder(Sessao s) {
+        ByteBuffer buf = s.entrada;
+        int inicio = 0;
+        for (int i = 0; i < buf.position(); i++) {
+            if (buf.get(i) != ProtocoloGateway.FIM_DE_LINHA) {
+                continue;
+            }
+            // sem espaço para mais respostas: o resto da entrada espera a próxima leitura
+            if (s.saida.remaining() < 64) {
+                break;
+            }
+            long seq = ProtocoloGateway.lerSequencia(buf, inicio, i);
+            boolean falhar = taxaFalha > 0 && ThreadLocalRandom.current().nextDouble() < taxaFalha;
+            s.saida.put(ProtocoloGateway.codificarResposta(seq, falhar ? "falha simulada" : null));
+            inicio = i + 1;
+        }
+        buf.limit(buf.position());
+        buf.position(inicio);
+        buf.compact();
+    }
+
+    @PreDestroy
+    public void encerrar() {
+        ativo = false;
+        seletor.wakeup();
+        try {
+            laco.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            for (SelectionKey chave : seletor.keys()) {
+                chave.channel().close();
+            }
+            seletor.close();
+        } catch (IOException e) {
+            // nada a fazer no encerramento
+        }
+    }
+
+    /**
+     * Buffers de uma conexão aceita.
+     */
+    private static final class Sessao {
+        private final ByteBuffer entrada = ByteBuffer.allocateDirect(TAMANHO_BUFFER);
+        private final ByteBuffer saida = ByteBuffer.allocateDirect(TAMANHO_BUFFER);
+    }
+}
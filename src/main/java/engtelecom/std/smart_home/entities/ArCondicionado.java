@@ -41,12 +41,16 @@ public class ArCondicionado extends Dispositivo {
      * @param velocidade 0 - fraco, 1 - médio, 2 - forte
      */
     public void setVelocidade(int velocidade) {
+        this.velocidade = limitarVelocidade(velocidade);
+    }
+
+    private static int limitarVelocidade(int velocidade) {
         if (velocidade < 0)
             velocidade = 0;
         if (velocidade > 2)
             velocidade = 2;
 
-        this.velocidade = velocidade;
+        return velocidade;
     }
 
     public boolean isAutoLimpeza() {
@@ -65,6 +69,34 @@ public class ArCondicionado extends Dispositivo {
         this.modoSilencioso = modoSilencioso;
     }
 
+    @Override
+    protected void preencherEstado(Map<String, Object> estado) {
+        estado.put("temperatura", temperatura);
+        estado.put("velocidade", velocidade);
+        estado.put("autoLimpeza", autoLimpeza);
+        estado.put("modoSilencioso", modoSilencioso);
+    }
+
+    @Override
+    protected void normalizarPropriedades(Map<String, Object> body, Map<String, Object> normalizado) {
+        if (body.containsKey("temperatura")) {
+            normalizado.put("temperatura", Integer.parseInt(String.valueOf(body.get("temperatura"))));
+        }
+
+        if (body.containsKey("velocidade")) {
+            int vel = Integer.parseInt(String.valueOf(body.get("velocidade")));
+            normalizado.put("velocidade", limitarVelocidade(vel));
+        }
+
+        if (body.containsKey("autoLimpeza")) {
+            normalizado.put("autoLimpeza", Boolean.parseBoolean(String.valueOf(body.get("autoLimpeza"))));
+        }
+
+        if (body.containsKey("modoSilencioso")) {
+            normalizado.put("modoSilencioso", Boolean.parseBoolean(String.valueOf(body.get("modoSilencioso"))));
+        }
+    }
+
     @Override
     protected boolean atualizarPropriedades(Map<String, Object> body) {
         boolean atualizado = false;
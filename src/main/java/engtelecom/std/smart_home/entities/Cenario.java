@@ -22,6 +22,7 @@ public class Cenario {
     private ArrayList<Map<String, Object>> rotina;
     
     private long id;
+    private long casaId;
     private String nome;
 
     public Cenario() {
@@ -35,6 +36,14 @@ public class Cenario {
         this.id = id;
     }
 
+    public long getCasaId() {
+        return casaId;
+    }
+
+    public void setCasaId(long casaId) {
+        this.casaId = casaId;
+    }
+
     public String getNome() {
         return nome;
     }
@@ -1,6 +1,8 @@
 package engtelecom.std.smart_home.entities;
 
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Objects;
 
 /**
  * Classe para representar um dispositivo genérico em um sistema de casa
@@ -9,6 +11,7 @@ import java.util.Map;
 public abstract class Dispositivo {
     private boolean ligado;
     private long id;
+    private long casaId;
     private String tipo;
 
     public Dispositivo(String tipo) {
@@ -40,6 +43,46 @@ public abstract class Dispositivo {
         return this.id;
     }
 
+    public void setCasaId(long casaId) {
+        this.casaId = casaId;
+    }
+
+    public long getCasaId() {
+        return this.casaId;
+    }
+
+    /**
+     * Identificador do dispositivo único entre todas as casas, usado como chave
+     * pelos serviços compartilhados (caixas postais, gêmeos digitais, drivers).
+     *
+     * @return chave formada pelo ID da casa e pelo ID do dispositivo
+     */
+    public long chave() {
+        return chave(this.casaId, this.id);
+    }
+
+    /**
+     * Monta a chave global de um dispositivo. Os IDs de dispositivo cabem em
+     * 32 bits, pois cada casa tem cota de dispositivos.
+     *
+     * @param casaId ID da casa
+     * @param id     ID do dispositivo na casa
+     * @return chave global
+     */
+    public static long chave(long casaId, long id) {
+        return (casaId << 32) | (id & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Representação legível de uma chave global, no formato {@code casa/dispositivo}.
+     *
+     * @param chave chave global
+     * @return texto com o ID da casa e do dispositivo
+     */
+    public static String descreverChave(long chave) {
+        return (chave >>> 32) + "/" + (chave & 0xFFFFFFFFL);
+    }
+
     public String getTipo() {
         if (tipo == null) {
             return null;
@@ -113,6 +156,89 @@ public abstract class Dispositivo {
         return true;
     }
 
+    /**
+     * Retorna uma cópia do estado atual do dispositivo, com os mesmos nomes de
+     * campos usados no JSON (sem "id" e "tipo").
+     *
+     * @return mapa com o estado atual
+     */
+    public Map<String, Object> obterEstado() {
+        Map<String, Object> estado = new LinkedHashMap<>();
+        estado.put("ligado", this.ligado);
+        preencherEstado(estado);
+        return estado;
+    }
+
+    /**
+     * Calcula quais campos do mapa realmente alteram o estado do dispositivo.
+     *
+     * Os valores são normalizados da mesma forma que na atualização (limites de
+     * intensidade, volume e velocidade, nomes em minúsculas, exclusividade entre
+     * aplicativo e canal da televisão) antes de serem comparados com o estado atual.
+     *
+     * @param body mapa contendo os dados desejados para o dispositivo
+     * @return mapa apenas com os campos alterados (vazio se a atualização não
+     *         tiver efeito), ou null se o mapa for nulo, vazio ou não contiver
+     *         nenhuma chave reconhecida
+     */
+    public Map<String, Object> calcularDiferenca(Map<String, Object> body) {
+        return calcularDiferenca(body, null);
+    }
+
+    /**
+     * Calcula quais campos do mapa alterariam um estado informado, em vez do
+     * estado atual do dispositivo. Usado na simulação de cenários, em que as
+     * ações anteriores da rotina já alteraram uma cópia do estado.
+     *
+     * @param body  mapa contendo os dados desejados para o dispositivo
+     * @param atual estado de referência, no formato de {@link #obterEstado()}
+     *              (null para o estado atual do dispositivo)
+     * @return mapa apenas com os campos alterados, como em
+     *         {@link #calcularDiferenca(Map)}
+     */
+    public Map<String, Object> calcularDiferenca(Map<String, Object> body, Map<String, Object> atual) {
+        if (body == null || body.isEmpty()) {
+            return null;
+        }
+
+        Map<String, Object> desejado = new LinkedHashMap<>();
+        if (body.containsKey("ligado")) {
+            desejado.put("ligado", Boolean.parseBoolean(String.valueOf(body.get("ligado"))));
+        }
+        normalizarPropriedades(body, desejado);
+
+        if (desejado.isEmpty()) {
+            return null;
+        }
+
+        if (atual == null) {
+            atual = obterEstado();
+        }
+        Map<String, Object> diferenca = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> campo : desejado.entrySet()) {
+            if (!Objects.equals(atual.get(campo.getKey()), campo.getValue())) {
+                diferenca.put(campo.getKey(), campo.getValue());
+            }
+        }
+        return diferenca;
+    }
+
+    /**
+     * Adiciona ao mapa os atributos específicos do dispositivo.
+     *
+     * @param estado mapa que recebe os atributos
+     */
+    protected abstract void preencherEstado(Map<String, Object> estado);
+
+    /**
+     * Converte os atributos específicos presentes no mapa para os valores que
+     * seriam efetivamente aplicados ao dispositivo.
+     *
+     * @param body        mapa contendo os dados para atualização do dispositivo
+     * @param normalizado mapa que recebe os valores normalizados
+     */
+    protected abstract void normalizarPropriedades(Map<String, Object> body, Map<String, Object> normalizado);
+
     /**
      * Atualiza os atributos específicos do dispositivo.
      *
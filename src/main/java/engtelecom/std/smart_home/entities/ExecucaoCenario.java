@@ -0,0 +1,208 @@
+package engtelecom.std.smart_home.entities;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+
+/**
+ * Classe para representar uma execução assíncrona de um cenário.
+ *
+ * Guarda o estado da execução, o progresso (ações concluídas em relação ao
+ * total da rotina) e o resultado individual de cada ação já processada.
+ * Os campos podem ser lidos por requisições HTTP enquanto a execução avança
+ * em outra thread, por isso são voláteis ou de coleções concorrentes.
+ */
+public class ExecucaoCenario {
+
+    private final long id;
+    private final long casaId;
+    private final long cenarioId;
+    private final int totalAcoes;
+    private final Prioridade prioridade;
+    private final Instant criadaEm = Instant.now();
+
+    private volatile ExecucaoEstado estado = ExecucaoEstado.PENDENTE;
+    private volatile int acoesConcluidas;
+    private volatile String erro;
+    private volatile Instant iniciadaEm;
+    private volatile Instant finalizadaEm;
+    private volatile boolean cancelamentoSolicitado;
+    // a rotina parou antes do fim por causa do cancelamento
+    private volatile boolean interrompida;
+
+    private final List<Map<String, Object>> resultados = new CopyOnWriteArrayList<>();
+
+    // tarefa agendada no executor, usada apenas para cancelar execuções pendentes
+    private volatile Future<?> tarefa;
+
+    // ação executada uma única vez, quando a execução chega a um estado final
+    private volatile Runnable aoFinalizar;
+
+    public ExecucaoCenario(long id, long casaId, long cenarioId, int totalAcoes, Prioridade prioridade) {
+        this.id = id;
+        this.casaId = casaId;
+        this.cenarioId = cenarioId;
+        this.totalAcoes = totalAcoes;
+        this.prioridade = prioridade;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public long getCasaId() {
+        return casaId;
+    }
+
+    public long getCenarioId() {
+        return cenarioId;
+    }
+
+    public String getPrioridade() {
+        return prioridade.getNome();
+    }
+
+    public Prioridade prioridade() {
+        return prioridade;
+    }
+
+    public String getEstado() {
+        return estado.getNome();
+    }
+
+    public int getTotalAcoes() {
+        return totalAcoes;
+    }
+
+    public int getAcoesConcluidas() {
+        return acoesConcluidas;
+    }
+
+    /**
+     * Progresso da execução, entre 0 e 100.
+     *
+     * @return percentual de ações concluídas
+     */
+    public int getProgresso() {
+        if (totalAcoes == 0) {
+            return 100;
+        }
+        return acoesConcluidas * 100 / totalAcoes;
+    }
+
+    public List<Map<String, Object>> getResultados() {
+        return resultados;
+    }
+
+    public String getErro() {
+        return erro;
+    }
+
+    public Instant getCriadaEm() {
+        return criadaEm;
+    }
+
+    public Instant getIniciadaEm() {
+        return iniciadaEm;
+    }
+
+    public Instant getFinalizadaEm() {
+        return finalizadaEm;
+    }
+
+    public boolean isFinalizada() {
+        return estado.isFinal();
+    }
+
+    public boolean isCancelamentoSolicitado() {
+        return cancelamentoSolicitado;
+    }
+
+    public boolean isInterrompida() {
+        return interrompida;
+    }
+
+    public void setTarefa(Future<?> tarefa) {
+        this.tarefa = tarefa;
+    }
+
+    public void setAoFinalizar(Runnable aoFinalizar) {
+        this.aoFinalizar = aoFinalizar;
+    }
+
+    /**
+     * Marca o início da execução.
+     *
+     * @return true se a execução pode começar, false se já foi cancelada
+     */
+    public synchronized boolean iniciar() {
+        if (cancelamentoSolicitado) {
+            return false;
+        }
+        this.iniciadaEm = Instant.now();
+        this.estado = ExecucaoEstado.EXECUTANDO;
+        return true;
+    }
+
+    /**
+     * Registra o resultado de uma ação da rotina e avança o progresso.
+     *
+     * @param resultado mapa descrevendo o resultado da ação
+     */
+    public void registrarResultado(Map<String, Object> resultado) {
+        resultados.add(resultado);
+        acoesConcluidas++;
+    }
+
+    /**
+     * Registra que a rotina deixou de executar as ações restantes porque o
+     * cancelamento foi solicitado. Um cancelamento que chega depois da última
+     * ação não interrompe nada, e a execução termina concluída.
+     */
+    public void interromper() {
+        this.interrompida = true;
+    }
+
+    /**
+     * Finaliza a execução com o estado informado.
+     *
+     * @param estadoFinal estado final da execução
+     * @param mensagem    mensagem de erro (pode ser null)
+     */
+    public void finalizar(ExecucaoEstado estadoFinal, String mensagem) {
+        this.erro = mensagem;
+        this.finalizadaEm = Instant.now();
+        this.estado = estadoFinal;
+
+        Runnable acao = aoFinalizar;
+        aoFinalizar = null;
+        if (acao != null) {
+            acao.run();
+        }
+    }
+
+    /**
+     * Solicita o cancelamento da execução.
+     *
+     * Uma execução pendente é retirada da fila imediatamente; uma execução em
+     * andamento é interrompida antes da próxima ação da rotina.
+     *
+     * @return true se o cancelamento foi aceito, false se a execução já terminou
+     */
+    public synchronized boolean cancelar() {
+        if (estado.isFinal()) {
+            return false;
+        }
+        cancelamentoSolicitado = true;
+
+        if (estado == ExecucaoEstado.PENDENTE) {
+            if (tarefa != null) {
+                tarefa.cancel(false);
+            }
+            finalizar(ExecucaoEstado.CANCELADA, null);
+        }
+        return true;
+    }
+}
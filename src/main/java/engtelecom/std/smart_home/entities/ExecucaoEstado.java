@@ -0,0 +1,32 @@
+package engtelecom.std.smart_home.entities;
+
+/**
+ * Enum para representar os estados possíveis de uma execução assíncrona de cenário.
+ */
+public enum ExecucaoEstado {
+
+    PENDENTE("pendente"),
+    EXECUTANDO("executando"),
+    CONCLUIDA("concluida"),
+    FALHOU("falhou"),
+    CANCELADA("cancelada");
+
+    private final String nome;
+
+    ExecucaoEstado(String nome) {
+        this.nome = nome;
+    }
+
+    public String getNome() {
+        return nome;
+    }
+
+    /**
+     * Indica se a execução já terminou (com sucesso, falha ou cancelamento).
+     *
+     * @return true se o estado for final
+     */
+    public boolean isFinal() {
+        return this == CONCLUIDA || this == FALHOU || this == CANCELADA;
+    }
+}
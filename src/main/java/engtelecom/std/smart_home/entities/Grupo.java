@@ -0,0 +1,63 @@
+package engtelecom.std.smart_home.entities;
+
+import java.util.ArrayList;
+
+/**
+ * Classe para representar um grupo de dispositivos definido pelo usuário
+ * (exemplo: "Segundo andar", "Luzes externas", "Ala leste").
+ *
+ * Um grupo tem dispositivos próprios e pode conter outros grupos
+ * (subgrupos), formando uma hierarquia sem ciclos. Os membros de um grupo são
+ * os seus dispositivos mais os membros de todos os seus subgrupos.
+ */
+public class Grupo {
+
+    private long id;
+    private long casaId;
+    private String nome;
+    private ArrayList<Long> dispositivos = new ArrayList<>();
+    private ArrayList<Long> subgrupos = new ArrayList<>();
+
+    public Grupo() {
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public long getCasaId() {
+        return casaId;
+    }
+
+    public void setCasaId(long casaId) {
+        this.casaId = casaId;
+    }
+
+    public String getNome() {
+        return nome;
+    }
+
+    public void setNome(String nome) {
+        this.nome = nome;
+    }
+
+    public ArrayList<Long> getDispositivos() {
+        return dispositivos;
+    }
+
+    public void setDispositivos(ArrayList<Long> dispositivos) {
+        this.dispositivos = dispositivos;
+    }
+
+    public ArrayList<Long> getSubgrupos() {
+        return subgrupos;
+    }
+
+    public void setSubgrupos(ArrayList<Long> subgrupos) {
+        this.subgrupos = subgrupos;
+    }
+}
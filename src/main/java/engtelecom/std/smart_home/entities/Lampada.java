@@ -38,11 +38,33 @@ public class Lampada extends Dispositivo {
     }
 
     public void setIntensidade(int intensidade) {
+        this.intensidade = limitarIntensidade(intensidade);
+    }
+
+    private static int limitarIntensidade(int intensidade) {
         if (intensidade < 0)
             intensidade = 0;
         if (intensidade > 100)
             intensidade = 100;
-        this.intensidade = intensidade;
+        return intensidade;
+    }
+
+    @Override
+    protected void preencherEstado(Map<String, Object> estado) {
+        estado.put("cor", getCor());
+        estado.put("intensidade", intensidade);
+    }
+
+    @Override
+    protected void normalizarPropriedades(Map<String, Object> body, Map<String, Object> normalizado) {
+        if (body.containsKey("cor")) {
+            normalizado.put("cor", LampadaCor.getByNome(String.valueOf(body.get("cor"))).getNome().toLowerCase());
+        }
+
+        if (body.containsKey("intensidade")) {
+            int valor = Integer.parseInt(String.valueOf(body.get("intensidade")));
+            normalizado.put("intensidade", limitarIntensidade(valor));
+        }
     }
 
     @Override
@@ -0,0 +1,37 @@
+package engtelecom.std.smart_home.entities;
+
+import engtelecom.std.smart_home.exceptions.PrioridadeInvalidaException;
+
+/**
+ * Enum para representar as faixas de prioridade dos comandos e das execuções
+ * de cenários, da mais urgente para a menos urgente.
+ *
+ * A faixa crítica (desligar tudo, alarmes) passa na frente das demais; as
+ * faixas interativa (pedidos de uma pessoa no aplicativo) e de lote (painéis,
+ * comandos em massa, transições graduais) dividem o tempo restante por peso.
+ */
+public enum Prioridade {
+
+    CRITICA("critica"),
+    INTERATIVA("interativa"),
+    LOTE("lote");
+
+    private final String nome;
+
+    Prioridade(String nome) {
+        this.nome = nome;
+    }
+
+    public String getNome() {
+        return nome;
+    }
+
+    public static Prioridade getByNome(String nome) {
+        for (Prioridade p : values()) {
+            if (p.getNome().equalsIgnoreCase(nome)) {
+                return p;
+            }
+        }
+        throw new PrioridadeInvalidaException(nome);
+    }
+}
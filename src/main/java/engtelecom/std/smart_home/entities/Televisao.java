@@ -70,11 +70,54 @@ public class Televisao extends Dispositivo {
      * @param volume o volume a ser definido
      */
     public void setVolume(int volume) {
+        this.volume = limitarVolume(volume);
+    }
+
+    private static int limitarVolume(int volume) {
         if (volume < 0)
             volume = 0;
         if (volume > 100)
             volume = 100;
-        this.volume = volume;
+        return volume;
+    }
+
+    @Override
+    protected void preencherEstado(Map<String, Object> estado) {
+        estado.put("volume", volume);
+        estado.put("appAtual", getAppAtual());
+        estado.put("canalAtual", getCanalAtual());
+    }
+
+    @Override
+    protected void normalizarPropriedades(Map<String, Object> body, Map<String, Object> normalizado) {
+        boolean temApp = body.containsKey("appAtual") && body.get("appAtual") != null;
+        boolean temCanal = body.containsKey("canalAtual") && body.get("canalAtual") != null;
+
+        if (temApp && temCanal) {
+            throw new TelevisaoEventosExclusivosException();
+        }
+
+        // definir um aplicativo desliga o canal e vice-versa
+        if (temApp) {
+            String valor = body.get("appAtual").toString().trim();
+            if (!valor.isEmpty()) {
+                normalizado.put("appAtual", TelevisaoApp.getByNome(valor).getNome().toLowerCase());
+                normalizado.put("canalAtual", null);
+            }
+        }
+
+        if (temCanal) {
+            String valor = body.get("canalAtual").toString().trim();
+            if (!valor.isEmpty()) {
+                normalizado.put("canalAtual", TelevisaoCanal.getByNome(valor).getNome().toLowerCase());
+                normalizado.put("appAtual", null);
+            }
+        }
+
+        if (body.containsKey("volume") && body.get("volume") != null) {
+            int valor = Integer.parseInt(body.get("volume").toString());
+            normalizado.put("volume", limitarVolume(valor));
+        }
     }
 
     @Override
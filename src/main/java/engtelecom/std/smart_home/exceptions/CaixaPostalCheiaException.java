@@ -0,0 +1,15 @@
+package engtelecom.std.smart_home.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Exceção lançada quando a caixa postal de comandos de um dispositivo atingiu
+ * sua capacidade máxima e não aceita novos comandos.
+ */
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class CaixaPostalCheiaException extends RuntimeException {
+    public CaixaPostalCheiaException(String dispositivo) {
+        super("Dispositivo " + dispositivo + " com muitos comandos pendentes. Tente novamente mais tarde.");
+    }
+}
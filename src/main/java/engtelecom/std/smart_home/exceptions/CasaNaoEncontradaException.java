@@ -0,0 +1,14 @@
+package engtelecom.std.smart_home.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Exceção lançada quando uma casa com o ID especificado não é encontrada.
+ */
+@ResponseStatus(HttpStatus.NOT_FOUND)
+public class CasaNaoEncontradaException extends RuntimeException {
+    public CasaNaoEncontradaException(long id) {
+        super("Não foi possível encontrar uma casa com o id: " + id);
+    }
+}
@@ -0,0 +1,12 @@
+package engtelecom.std.smart_home.exceptions;
+
+import engtelecom.std.smart_home.entities.Dispositivo;
+
+/**
+ * Exceção lançada quando um driver não consegue entregar um comando ao dispositivo físico.
+ */
+public class ComunicacaoDispositivoException extends RuntimeException {
+    public ComunicacaoDispositivoException(long chave, String motivo) {
+        super("Falha de comunicação com o dispositivo " + Dispositivo.descreverChave(chave) + ": " + motivo);
+    }
+}
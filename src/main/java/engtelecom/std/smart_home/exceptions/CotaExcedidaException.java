@@ -0,0 +1,19 @@
+package engtelecom.std.smart_home.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Exceção lançada quando uma casa atinge a cota de algum recurso (dispositivos,
+ * ambientes, cenários ou execuções simultâneas).
+ */
+@ResponseStatus(HttpStatus.TOO_MANY_REQUESTS)
+public class CotaExcedidaException extends RuntimeException {
+    public CotaExcedidaException(long casaId, String recurso, int cota) {
+        super("A casa " + casaId + " atingiu a cota de " + cota + " " + recurso + ".");
+    }
+
+    public CotaExcedidaException(String mensagem) {
+        super(mensagem);
+    }
+}
@@ -0,0 +1,11 @@
+package engtelecom.std.smart_home.exceptions;
+
+/**
+ * Exceção lançada quando os dados de um dispositivo a ser cadastrado são
+ * inválidos: tipo ausente ou desconhecido, ou campos com valores inválidos.
+ */
+public class DispositivoInvalidoException extends RuntimeException {
+    public DispositivoInvalidoException(String mensagem) {
+        super(mensagem);
+    }
+}
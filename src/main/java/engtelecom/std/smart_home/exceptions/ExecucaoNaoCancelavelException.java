@@ -0,0 +1,14 @@
+package engtelecom.std.smart_home.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Exceção lançada quando há tentativa de cancelar uma execução que já terminou.
+ */
+@ResponseStatus(HttpStatus.CONFLICT)
+public class ExecucaoNaoCancelavelException extends RuntimeException {
+    public ExecucaoNaoCancelavelException(long id) {
+        super("A execução " + id + " já foi finalizada e não pode ser cancelada.");
+    }
+}
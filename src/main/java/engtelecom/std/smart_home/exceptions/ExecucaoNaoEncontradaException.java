@@ -0,0 +1,10 @@
+package engtelecom.std.smart_home.exceptions;
+
+/**
+ * Exceção lançada quando uma execução de cenário com o ID especificado não é encontrada.
+ */
+public class ExecucaoNaoEncontradaException extends RuntimeException {
+    public ExecucaoNaoEncontradaException(long id) {
+        super("Não foi possível encontrar uma execução com o id: " + id);
+    }
+}
@@ -0,0 +1,14 @@
+package engtelecom.std.smart_home.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Exceção lançada quando a fila de execuções assíncronas de cenários está cheia.
+ */
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class FilaDeExecucaoCheiaException extends RuntimeException {
+    public FilaDeExecucaoCheiaException() {
+        super("A fila de execuções de cenários está cheia. Tente novamente mais tarde.");
+    }
+}
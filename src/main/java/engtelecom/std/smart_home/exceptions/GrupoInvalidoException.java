@@ -0,0 +1,11 @@
+package engtelecom.std.smart_home.exceptions;
+
+/**
+ * Exceção lançada quando a definição de um grupo é inválida: campos ausentes,
+ * subgrupo inexistente ou um subgrupo que criaria um ciclo na hierarquia.
+ */
+public class GrupoInvalidoException extends RuntimeException {
+    public GrupoInvalidoException(String msg) {
+        super("Grupo inválido: " + msg);
+    }
+}
@@ -0,0 +1,10 @@
+package engtelecom.std.smart_home.exceptions;
+
+/**
+ * Exceção lançada quando um grupo com o ID especificado não é encontrado.
+ */
+public class GrupoNaoEncontradoException extends RuntimeException {
+    public GrupoNaoEncontradoException(long id) {
+        super("Não foi possível encontrar um grupo com o id: " + id);
+    }
+}
@@ -0,0 +1,11 @@
+package engtelecom.std.smart_home.exceptions;
+
+/**
+ * Exceção lançada quando um nó que não é o líder da replicação recebe um
+ * pedido que só o líder pode atender.
+ */
+public class NoNaoLiderException extends RuntimeException {
+    public NoNaoLiderException(long termo) {
+        super("Este nó não é o líder da replicação (termo " + termo + ").");
+    }
+}
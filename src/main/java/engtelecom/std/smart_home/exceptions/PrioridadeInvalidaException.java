@@ -0,0 +1,11 @@
+package engtelecom.std.smart_home.exceptions;
+
+/**
+ * Exceção lançada quando a faixa de prioridade informada é inválida.
+ * Faixas válidas: "critica", "interativa" e "lote" (definidas em entities/Prioridade.java).
+ */
+public class PrioridadeInvalidaException extends RuntimeException {
+    public PrioridadeInvalidaException(String nome) {
+        super("Prioridade inválida: " + nome + "; use critica, interativa ou lote");
+    }
+}
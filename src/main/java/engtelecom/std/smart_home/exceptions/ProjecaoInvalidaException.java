@@ -0,0 +1,11 @@
+package engtelecom.std.smart_home.exceptions;
+
+/**
+ * Exceção lançada quando a projeção pedida ao estado da casa é inválida:
+ * seção ou campo de dispositivo desconhecido.
+ */
+public class ProjecaoInvalidaException extends RuntimeException {
+    public ProjecaoInvalidaException(String msg) {
+        super("Projeção inválida: " + msg);
+    }
+}
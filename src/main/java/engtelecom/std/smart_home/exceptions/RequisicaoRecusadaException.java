@@ -0,0 +1,24 @@
+package engtelecom.std.smart_home.exceptions;
+
+/**
+ * Exceção lançada quando o controle de admissão recusa uma requisição, seja
+ * porque o cliente excedeu sua taxa, seja porque o serviço está sobrecarregado.
+ */
+public class RequisicaoRecusadaException extends RuntimeException {
+
+    private final long esperaMs;
+
+    public RequisicaoRecusadaException(String mensagem, long esperaMs) {
+        super(mensagem);
+        this.esperaMs = esperaMs;
+    }
+
+    /**
+     * Tempo sugerido até uma nova tentativa.
+     *
+     * @return a espera em milissegundos
+     */
+    public long getEsperaMs() {
+        return esperaMs;
+    }
+}
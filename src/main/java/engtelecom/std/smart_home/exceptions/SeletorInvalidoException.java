@@ -0,0 +1,11 @@
+package engtelecom.std.smart_home.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class SeletorInvalidoException extends RuntimeException {
+    public SeletorInvalidoException(String msg) {
+        super("Seletor inválido: " + msg);
+    }
+}
@@ -0,0 +1,15 @@
+package engtelecom.std.smart_home.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Exceção lançada quando uma transição gradual não pode ser iniciada: duração
+ * ou passo inválidos, ou nenhum campo que admita transição no dispositivo.
+ */
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class TransicaoInvalidaException extends RuntimeException {
+    public TransicaoInvalidaException(String msg) {
+        super("Transição inválida: " + msg);
+    }
+}
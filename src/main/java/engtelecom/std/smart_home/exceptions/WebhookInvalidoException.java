@@ -0,0 +1,12 @@
+package engtelecom.std.smart_home.exceptions;
+
+/**
+ * Exceção lançada quando uma assinatura de webhook é inválida: URL ou casa
+ * ausente ou malformada, destino interno não permitido, ou recurso
+ * desconhecido.
+ */
+public class WebhookInvalidoException extends RuntimeException {
+    public WebhookInvalidoException(String msg) {
+        super("Webhook inválido: " + msg);
+    }
+}
@@ -0,0 +1,11 @@
+package engtelecom.std.smart_home.exceptions;
+
+/**
+ * Exceção lançada quando uma assinatura de webhook com o ID especificado não
+ * é encontrada.
+ */
+public class WebhookNaoEncontradoException extends RuntimeException {
+    public WebhookNaoEncontradoException(long id) {
+        super("Não foi possível encontrar um webhook com o id: " + id);
+    }
+}
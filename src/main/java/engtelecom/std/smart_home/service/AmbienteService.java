@@ -1,10 +1,9 @@
 package engtelecom.std.smart_home.service;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicLong;
 
 import org.springframework.stereotype.Component;
 
@@ -12,68 +11,80 @@ import engtelecom.std.smart_home.entities.Ambiente;
 import engtelecom.std.smart_home.entities.AmbienteTipo;
 import engtelecom.std.smart_home.entities.Dispositivo;
 import engtelecom.std.smart_home.exceptions.AmbienteAtualizacaoInvalidaException;
+import engtelecom.std.smart_home.exceptions.CotaExcedidaException;
 import engtelecom.std.smart_home.exceptions.DispositivoNaoEncontradoException;
 
 /**
  * Serviço responsável por gerenciar ambientes.
  *
  * Mantém os ambientes em memória e permite consultar, criar, remover e associar
- * dispositivos a cada ambiente.
+ * dispositivos a cada ambiente. Os ambientes de cada casa ficam na partição da
+ * própria {@link Casa}.
  */
 @Component
 public class AmbienteService {
 
-    private final Map<Long, Ambiente> ambientes = new HashMap<>();
-    private static final AtomicLong contador = new AtomicLong();
     private final DispositivoService dispositivoService;
+    private final DiarioAlteracoes diario;
 
     /**
-     * Cria o serviço e inicializa ambientes padrão para todos os tipos definidos em
-     * {@link AmbienteTipo}.
+     * Cria o serviço. Toda casa nova começa com um ambiente para cada tipo
+     * definido em {@link AmbienteTipo}.
      *
      * @param dispositivoService serviço usado para validar e consultar dispositivos
      *                           existentes
+     * @param casaService        serviço das casas, avisado para preencher as casas novas
+     * @param diario             diário onde as alterações são registradas
      */
-    public AmbienteService(DispositivoService dispositivoService) {
+    public AmbienteService(DispositivoService dispositivoService, CasaService casaService,
+            DiarioAlteracoes diario) {
         this.dispositivoService = dispositivoService;
+        this.diario = diario;
 
         // cria um ambiente inicial para cada tipo disponível
-        for (AmbienteTipo tipo : AmbienteTipo.values()) {
-            long id = contador.incrementAndGet();
-            ambientes.put(id, new Ambiente(tipo));
-        }
+        casaService.adicionarInicializador(casa -> {
+            for (AmbienteTipo tipo : AmbienteTipo.values()) {
+                cadastrarAmbiente(casa, new Ambiente(tipo));
+            }
+        });
     }
 
     /**
      * Instala um dispositivo em um ambiente específico.
      */
-    public boolean instalarDispositivoNoAmbiente(Long dispositivoId, long ambienteId) {
-        Ambiente a = ambientes.get(ambienteId);
-        if (a == null) {
-            return false;
+    public boolean instalarDispositivoNoAmbiente(Casa casa, Long dispositivoId, long ambienteId) {
+        synchronized (casa) {
+            Ambiente a = casa.ambientes.get(ambienteId);
+            if (a == null) {
+                return false;
+            }
+            a.adicionarDispositivo(dispositivoId);
+            casa.indice.marcarNoAmbiente(ambienteId, a.getNome(), dispositivoId, true);
+            diario.registrarAmbiente(casa, ambienteId, a);
         }
-
-        a.adicionarDispositivo(dispositivoId);
         return true;
     }
 
     /**
      * Busca um ambiente pelo seu ID.
      */
-    public Ambiente buscarPorId(Long id) {
-        return ambientes.get(id);
+    public Ambiente buscarPorId(Casa casa, Long id) {
+        if (id == null) {
+            return null;
+        }
+        return casa.ambientes.get(id);
     }
 
     /**
      * Busca os dispositivos associados a um determinado tipo de ambiente.
      */
-    public ArrayList<Dispositivo> buscarPorAmbiente(AmbienteTipo tipo) {
+    public ArrayList<Dispositivo> buscarPorAmbiente(Casa casa, AmbienteTipo tipo) {
         ArrayList<Dispositivo> dispositivosNoAmbiente = new ArrayList<>();
 
-        for (Ambiente a : ambientes.values()) {
+        for (Ambiente a : casa.ambientes.values()) {
             if (a.tipo() == tipo) {
                 for (Long dispositivoId : a.getDispositivos()) {
-                    Dispositivo d = dispositivoService.buscarPorId(dispositivoId);
+                    Dispositivo d = dispositivoService.buscarPorId(casa, dispositivoId);
                     if (d != null) {
                         dispositivosNoAmbiente.add(d);
                     }
@@ -84,60 +95,155 @@ public class AmbienteService {
         return dispositivosNoAmbiente;
     }
 
+    /**
+     * Aplica um comando a todos os dispositivos de um ambiente, ou apenas aos
+     * de um tipo, em paralelo (ver {@link DispositivoService#aplicarEmParalelo}).
+     *
+     * @param casa       casa do ambiente
+     * @param ambienteId ID do ambiente
+     * @param tipo       tipo dos dispositivos a comandar (todos se null)
+     * @param body       campos a aplicar
+     * @return mapa com os totais e o resultado de cada dispositivo, ou null se
+     *         o ambiente não existir
+     * @throws IllegalArgumentException se o comando estiver vazio ou o tipo for desconhecido
+     */
+    public Map<String, Object> executarComando(Casa casa, long ambienteId, String tipo, Map<String, Object> body) {
+        Ambiente a = casa.ambientes.get(ambienteId);
+        if (a == null) {
+            return null;
+        }
+
+        // a lista do ambiente só é alterada com o monitor da casa
+        List<Long> ids;
+        synchronized (casa) {
+            ids = new ArrayList<>(a.getDispositivos());
+        }
+
+        Map<String, Object> obj = new LinkedHashMap<>();
+        obj.put("ambienteId", ambienteId);
+        obj.put("ambiente", a.getNome());
+        obj.putAll(dispositivoService.aplicarEmParalelo(casa, ids, tipo, body));
+        return obj;
+    }
+
     /**
      * Busca todos os ambientes cadastrados.
      */
-    public ArrayList<Ambiente> buscarTodos() {
-        return new ArrayList<>(ambientes.values());
+    public ArrayList<Ambiente> buscarTodos(Casa casa) {
+        return new ArrayList<>(casa.ambientes.values());
     }
 
     /**
      * Busca todos os ambientes cadastrados com seus IDs.
      */
-    public Map<Long, Ambiente> buscarTodosComId() {
-        return new HashMap<>(ambientes);
+    public Map<Long, Ambiente> buscarTodosComId(Casa casa) {
+        return new LinkedHashMap<>(casa.ambientes);
     }
 
     /**
      * Remove um ambiente pelo seu ID.
      */
-    public boolean removerAmbiente(long id) {
-        return ambientes.remove(id) != null;
+    public boolean removerAmbiente(Casa casa, long id) {
+        synchronized (casa) {
+            if (casa.ambientes.remove(id) == null) {
+                return false;
+            }
+            casa.indice.removerAmbiente(id);
+            diario.registrarRemocaoAmbiente(casa, id);
+            return true;
+        }
     }
 
     /**
      * Remove um dispositivo de um ambiente específico.
      */
-    public boolean removerDispositivoDoAmbiente(Long dispositivoId, long ambienteId) {
-        Ambiente a = ambientes.get(ambienteId);
-        if (a == null) {
-            return false;
+    public boolean removerDispositivoDoAmbiente(Casa casa, Long dispositivoId, long ambienteId) {
+        synchronized (casa) {
+            Ambiente a = casa.ambientes.get(ambienteId);
+            if (a == null) {
+                return false;
+            }
+            boolean removido = a.getDispositivos().remove(dispositivoId);
+            if (removido) {
+                // o ambiente pode ter o mesmo dispositivo mais de uma vez
+                casa.indice.marcarNoAmbiente(ambienteId, a.getNome(), dispositivoId,
+                        a.getDispositivos().contains(dispositivoId));
+                diario.registrarAmbiente(casa, ambienteId, a);
+            }
+            return removido;
         }
-        return a.getDispositivos().remove(dispositivoId);
     }
 
     /**
      * Cria um novo ambiente de um determinado tipo.
+     *
+     * @throws CotaExcedidaException se a casa atingiu sua cota de ambientes
      */
-    public long criarAmbientePorTipo(String nomeTipo) {
+    public long criarAmbientePorTipo(Casa casa, String nomeTipo) {
         AmbienteTipo tipo = AmbienteTipo.getByNome(nomeTipo);
+        return cadastrarAmbiente(casa, new Ambiente(tipo));
+    }
 
-        long id = contador.incrementAndGet();
-        ambientes.put(id, new Ambiente(tipo));
-        return id;
+    /**
+     * Cadastra um ambiente na casa, respeitando a cota de ambientes.
+     */
+    private long cadastrarAmbiente(Casa casa, Ambiente ambiente) {
+        synchronized (casa) {
+            if (casa.ambientes.size() >= casa.getCotaAmbientes()) {
+                throw new CotaExcedidaException(casa.getId(), "ambientes", casa.getCotaAmbientes());
+            }
+            long id = casa.contadorAmbientes.incrementAndGet();
+            casa.ambientes.put(id, ambiente);
+            casa.indice.indexarAmbiente(id, ambiente.getNome(), ambiente.getDispositivos());
+            diario.registrarAmbiente(casa, id, ambiente);
+            return id;
+        }
+    }
+
+    /**
+     * Aplica um ambiente recebido pela replicação, com o mesmo ID do nó de
+     * origem, substituindo o ambiente local se houver.
+     *
+     * @param casa  casa do ambiente
+     * @param id    ID do ambiente na casa
+     * @param dados tipo e dispositivos do ambiente, no formato de {@link DiarioAlteracoes}
+     */
+    void restaurarAmbiente(Casa casa, long id, Map<String, Object> dados) {
+        Ambiente ambiente = new Ambiente(AmbienteTipo.getByNome(String.valueOf(dados.get("tipo"))));
+        for (Object dispositivoId : (List<?>) dados.get("dispositivos")) {
+            ambiente.adicionarDispositivo(Long.parseLong(dispositivoId.toString()));
+        }
+        synchronized (casa) {
+            casa.ambientes.put(id, ambiente);
+            casa.indice.indexarAmbiente(id, ambiente.getNome(), ambiente.getDispositivos());
+            casa.contadorAmbientes.accumulateAndGet(id, Math::max);
+        }
+    }
+
+    /**
+     * Remove um ambiente por ordem da replicação, junto com o seu bitmap nos
+     * índices dos seletores.
+     */
+    void restaurarRemocao(Casa casa, long id) {
+        synchronized (casa) {
+            casa.ambientes.remove(id);
+            casa.indice.removerAmbiente(id);
+        }
     }
 
     /**
      * Modifica a lista de dispositivos atual do ambiente.
      * 
+     * @param casa       casa do ambiente.
      * @param ambienteId ID do ambiente a ser atualizado.
      * @param body       corpo da requisição com os novos dados do ambiente.
-     * @return o ambiente atualizado, ou null se o ambiente não existir.
+     * @return o ambiente atualizado, ou null se o ambiente não existir (ou
+     *         tiver sido removido durante a validação).
      * @throws AmbienteAtualizacaoInvalidaException se o corpo da requisição for
      * 
      */
-    public Ambiente atualizarAmbiente(long ambienteId, Map<String, Object> body) {
-        Ambiente ambiente = ambientes.get(ambienteId);
+    public Ambiente atualizarAmbiente(Casa casa, long ambienteId, Map<String, Object> body) {
+        Ambiente ambiente = casa.ambientes.get(ambienteId);
         if (ambiente == null) {
             return null;
         }
@@ -147,9 +253,16 @@ public class AmbienteService {
             throw new AmbienteAtualizacaoInvalidaException("corpo da requisição é inválido");
         }
 
-        List<Long> ids = obterIdentificadoresDeDispositivos(body.get("dispositivos"));
-        ambiente.getDispositivos().clear();
-        ambiente.getDispositivos().addAll(ids);
+        List<Long> ids = obterIdentificadoresDeDispositivos(casa, body.get("dispositivos"));
+        synchronized (casa) {
+            if (casa.ambientes.get(ambienteId) != ambiente) {
+                return null;
+            }
+            ambiente.getDispositivos().clear();
+            ambiente.getDispositivos().addAll(ids);
+            casa.indice.indexarAmbiente(ambienteId, ambiente.getNome(), ambiente.getDispositivos());
+            diario.registrarAmbiente(casa, ambienteId, ambiente);
+        }
 
         return ambiente;
     }
@@ -212,13 +325,14 @@ public class AmbienteService {
     /**
      * Extrai e valida os IDs de dispositivos.
      * 
+     * @param casa            casa dos dispositivos.
      * @param dispositivosObj objeto genérico representando a lista de dispositivos.
      * @return lista de IDs de dispositivos.
      * @throws AmbienteAtualizacaoInvalidaException se o formato for inválido ou se
      *                                              algum dispositivo não existir.
      * 
      */
-    private List<Long> obterIdentificadoresDeDispositivos(Object dispositivosObj) {
+    private List<Long> obterIdentificadoresDeDispositivos(Casa casa, Object dispositivosObj) {
         // o campo "dispositivos" já foi validado como lista
         @SuppressWarnings("unchecked")
         List<Object> lista = (List<Object>) dispositivosObj;
@@ -243,7 +357,7 @@ public class AmbienteService {
             }
 
             // verifica se o dispositivo realmente existe
-            if (dispositivoService.buscarPorId(identificador) == null) {
+            if (dispositivoService.buscarPorId(casa, identificador) == null) {
                 throw new DispositivoNaoEncontradoException(identificador);
             }
 
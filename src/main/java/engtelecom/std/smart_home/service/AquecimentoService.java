@@ -0,0 +1,148 @@
+package engtelecom.std.smart_home.service;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.aot.AotDetector;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Aquecimento da aplicação logo depois que ela fica pronta.
+ *
+ * Em segundo plano, com prioridade baixa, percorre o cadastro de todas as
+ * casas serializando cada recurso (o que preenche os caches de serializadores
+ * do Jackson) e faz leituras locais nas rotas mais usadas, para que as
+ * classes do caminho de atendimento já estejam carregadas e compiladas quando
+ * chegarem as requisições dos clientes. O aquecimento só lê: nada é alterado
+ * nem gravado no diário.
+ */
+@Component
+public class AquecimentoService {
+
+    // rotas lidas a cada rodada; a casa padrão sempre existe
+    private static final List<String> ROTAS = List.of("/casas", "/dispositivos", "/dispositivos/1",
+            "/dispositivos/1/gemeo", "/ambientes", "/cenarios", "/execucoes");
+
+    private final CasaService casaService;
+    private final ObjectMapper json;
+    private final boolean habilitado;
+    private final int rodadas;
+
+    private volatile long prontoEmMs = -1;
+    private volatile long aquecimentoMs = -1;
+    private volatile long recursosSerializados;
+    private volatile long requisicoes;
+
+    /**
+     * Cria o serviço de aquecimento.
+     *
+     * @param casaService serviço das casas
+     * @param json        conversor JSON usado pelos controladores
+     * @param habilitado  se o aquecimento deve ser feito
+     * @param rodadas     número de leituras de cada rota
+     */
+    public AquecimentoService(CasaService casaService, ObjectMapper json,
+            @Value("${casa.aquecimento.habilitado:true}") boolean habilitado,
+            @Value("${casa.aquecimento.rodadas:200}") int rodadas) {
+        this.casaService = casaService;
+        this.json = json;
+        this.habilitado = habilitado;
+        this.rodadas = rodadas;
+    }
+
+    /**
+     * Registra o tempo até a aplicação ficar pronta e inicia o aquecimento.
+     *
+     * @param evento evento de aplicação pronta, com a porta do servidor
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    void iniciar(ApplicationReadyEvent evento) {
+        prontoEmMs = ManagementFactory.getRuntimeMXBean().getUptime();
+        if (!habilitado) {
+            return;
+        }
+        int porta = evento.getApplicationContext().getEnvironment().getProperty("local.server.port", Integer.class, 0);
+        Thread t = new Thread(() -> aquecer(porta), "aquecimento");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        t.start();
+    }
+
+    private void aquecer(int porta) {
+        long inicio = System.nanoTime();
+        try {
+            serializarCadastro();
+            if (porta > 0) {
+                lerRotas(porta);
+            }
+        } catch (IOException | InterruptedException e) {
+            // o aquecimento é só uma otimização: uma falha não afeta o atendimento
+        }
+        aquecimentoMs = (System.nanoTime() - inicio) / 1_000_000;
+    }
+
+    private void serializarCadastro() throws JsonProcessingException {
+        long total = 0;
+        for (Casa casa : casaService.buscarTodas()) {
+            for (Collection<?> recursos : List.of(casa.dispositivos.values(), casa.ambientes.values(),
+                    casa.cenarios.values())) {
+                for (Object recurso : recursos) {
+                    json.writeValueAsBytes(recurso);
+                    total++;
+                }
+            }
+        }
+        recursosSerializados = total;
+    }
+
+    private void lerRotas(int porta) throws IOException, InterruptedException {
+        HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(1)).build();
+        for (int i = 0; i < rodadas; i++) {
+            for (String rota : ROTAS) {
+                HttpRequest requisicao = HttpRequest.newBuilder(URI.create("http://localhost:" + porta + rota))
+                        .header("X-Cliente", "aquecimento").build();
+                HttpResponse<Void> resposta = http.send(requisicao, HttpResponse.BodyHandlers.discarding());
+                requisicoes++;
+                // respeita o controle de admissão como qualquer outro cliente
+                if (resposta.statusCode() == 429) {
+                    Thread.sleep(1000 * resposta.headers().firstValueAsLong("Retry-After").orElse(1));
+                }
+            }
+        }
+    }
+
+    /**
+     * Métricas da inicialização.
+     *
+     * @return tempo até a aplicação ficar pronta, duração do aquecimento e
+     *         otimizações de inicialização em uso
+     */
+    public Map<String, Object> metricas() {
+        List<String> argumentos = ManagementFactory.getRuntimeMXBean().getInputArguments();
+
+        Map<String, Object> obj = new LinkedHashMap<>();
+        obj.put("prontoEmMs", prontoEmMs);
+        obj.put("aot", AotDetector.useGeneratedArtifacts());
+        obj.put("cds", argumentos.stream().anyMatch(a -> a.startsWith("-XX:SharedArchiveFile")));
+        obj.put("aquecimentoHabilitado", habilitado);
+        obj.put("aquecimentoMs", aquecimentoMs);
+        obj.put("recursosSerializados", recursosSerializados);
+        obj.put("requisicoesAquecimento", requisicoes);
+        return obj;
+    }
+}
@@ -0,0 +1,335 @@
+package engtelecom.std.smart_home.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import engtelecom.std.smart_home.entities.Dispositivo;
+import engtelecom.std.smart_home.entities.Prioridade;
+import engtelecom.std.smart_home.exceptions.CaixaPostalCheiaException;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Serviço que serializa os comandos enviados a cada dispositivo.
+ *
+ * Cada dispositivo possui uma caixa postal própria (fila limitada de comandos)
+ * consumida por no máximo uma thread de cada vez. Assim, comandos para o mesmo
+ * dispositivo são aplicados na ordem de chegada, enquanto dispositivos
+ * diferentes avançam em paralelo, sem nenhuma trava global.
+ *
+ * Cada comando tem uma {@link Prioridade}. As caixas com comandos pendentes
+ * esperam a vez em uma {@link FilaPrioridades}, na faixa do comando mais
+ * urgente que contêm, e são drenadas por um {@link ForkJoinPool} compartilhado
+ * (com roubo de tarefas): cada caixa agendada gera uma tarefa, e cada tarefa
+ * drena a caixa mais urgente da fila no momento em que roda, e não
+ * necessariamente a que a criou. Assim, caixas com comandos críticos passam
+ * na frente, e as faixas interativa e de lote dividem as threads por peso.
+ * Cada rodada processa um lote limitado de comandos e é interrompida entre
+ * dois comandos quando há uma caixa crítica esperando; se ainda houver
+ * pendências, a caixa é reagendada. Dentro de uma mesma caixa a ordem de
+ * chegada é mantida, para que um comando antigo de menor prioridade nunca
+ * desfaça um mais novo.
+ */
+@Component
+public class CaixaPostalService {
+
+    private static final Prioridade[] FAIXAS = Prioridade.values();
+
+    private final ConcurrentHashMap<Long, CaixaPostal> caixas = new ConcurrentHashMap<>();
+    private final FilaPrioridades<CaixaPostal> prontas;
+    private final ForkJoinPool executor;
+    private final int capacidade;
+    private final int lote;
+
+    // dispositivo cuja caixa está sendo drenada pela thread atual
+    private static final ThreadLocal<Long> dispositivoAtual = new ThreadLocal<>();
+
+    private final LongAdder processados = new LongAdder();
+    private final LongAdder rejeitados = new LongAdder();
+    private final LongAdder interrompidas = new LongAdder();
+    private final LongAdder[] processadosPorFaixa = new LongAdder[FAIXAS.length];
+    private final LongAdder[] esperaPorFaixa = new LongAdder[FAIXAS.length];
+    private final LongAccumulator[] esperaMaximaPorFaixa = new LongAccumulator[FAIXAS.length];
+
+    /**
+     * Cria o serviço de caixas postais.
+     *
+     * @param capacidade     número máximo de comandos pendentes por dispositivo
+     * @param lote           número máximo de comandos processados por rodada de uma caixa
+     * @param numeroThreads  paralelismo do pool que drena as caixas
+     * @param pesoInterativa peso da faixa interativa na divisão das threads
+     * @param pesoLote       peso da faixa de lote na divisão das threads
+     */
+    public CaixaPostalService(
+            @Value("${casa.caixas.capacidade:256}") int capacidade,
+            @Value("${casa.caixas.lote:32}") int lote,
+            @Value("${casa.caixas.threads:4}") int numeroThreads,
+            @Value("${casa.prioridades.peso-interativa:8}") int pesoInterativa,
+            @Value("${casa.prioridades.peso-lote:1}") int pesoLote) {
+        this.capacidade = capacidade;
+        this.lote = lote;
+        this.prontas = new FilaPrioridades<>(pesoInterativa, pesoLote);
+        for (int i = 0; i < FAIXAS.length; i++) {
+            processadosPorFaixa[i] = new LongAdder();
+            esperaPorFaixa[i] = new LongAdder();
+            esperaMaximaPorFaixa[i] = new LongAccumulator(Math::max, 0);
+        }
+
+        this.executor = new ForkJoinPool(Math.max(1, numeroThreads), pool -> {
+            ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            t.setName("caixa-postal-" + t.getPoolIndex());
+            t.setDaemon(true);
+            return t;
+        }, null, true);
+    }
+
+    /**
+     * Envia um comando para a caixa postal de um dispositivo, na faixa da
+     * thread atual ({@link PrioridadeAtual}, interativa se nenhuma estiver
+     * definida).
+     *
+     * @param dispositivoId chave global do dispositivo ({@link Dispositivo#chave()})
+     * @param comando       comando a ser aplicado
+     * @return futuro completado com o resultado do comando
+     *
+     * @throws CaixaPostalCheiaException se a caixa do dispositivo estiver cheia
+     */
+    public <T> CompletableFuture<T> enviar(long dispositivoId, Supplier<T> comando) {
+        return enviar(dispositivoId, PrioridadeAtual.obter(Prioridade.INTERATIVA), comando);
+    }
+
+    /**
+     * Envia um comando para a caixa postal de um dispositivo.
+     *
+     * @param dispositivoId chave global do dispositivo ({@link Dispositivo#chave()})
+     * @param prioridade    faixa do comando
+     * @param comando       comando a ser aplicado
+     * @return futuro completado com o resultado do comando
+     *
+     * @throws CaixaPostalCheiaException se a caixa do dispositivo estiver cheia
+     */
+    public <T> CompletableFuture<T> enviar(long dispositivoId, Prioridade prioridade, Supplier<T> comando) {
+        CaixaPostal caixa = caixas.computeIfAbsent(dispositivoId, CaixaPostal::new);
+
+        int profundidade = caixa.profundidade.incrementAndGet();
+        if (profundidade > capacidade) {
+            caixa.profundidade.decrementAndGet();
+            rejeitados.increment();
+            throw new CaixaPostalCheiaException(Dispositivo.descreverChave(dispositivoId));
+        }
+        caixa.profundidadeMaxima.accumulateAndGet(profundidade, Math::max);
+
+        CompletableFuture<T> resultado = new CompletableFuture<>();
+        caixa.pendentesPorFaixa.incrementAndGet(prioridade.ordinal());
+        caixa.fila.add(new Comando(prioridade, System.nanoTime(), () -> {
+            try {
+                resultado.complete(comando.get());
+            } catch (Throwable e) {
+                resultado.completeExceptionally(e);
+            }
+        }));
+        agendar(caixa, prioridade);
+
+        return resultado;
+    }
+
+    /**
+     * Envia um comando para a caixa postal de um dispositivo e aguarda o
+     * resultado, na faixa da thread atual.
+     *
+     * Se a thread atual já estiver drenando a caixa do mesmo dispositivo, o
+     * comando é aplicado diretamente (a ordem já está garantida).
+     *
+     * @param dispositivoId chave global do dispositivo ({@link Dispositivo#chave()})
+     * @param comando       comando a ser aplicado
+     * @return o resultado do comando
+     *
+     * @throws CaixaPostalCheiaException se a caixa do dispositivo estiver cheia
+     */
+    public <T> T executar(long dispositivoId, Supplier<T> comando) {
+        Long atual = dispositivoAtual.get();
+        if (atual != null && atual == dispositivoId) {
+            return comando.get();
+        }
+
+        try {
+            return enviar(dispositivoId, comando).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException re) {
+                throw re;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Métricas das caixas postais: totais, espera de cada faixa e profundidade
+     * de cada caixa.
+     *
+     * @return mapa com as métricas
+     */
+    public Map<String, Object> metricas() {
+        Map<String, Object> obj = new LinkedHashMap<>();
+        Map<String, Map<String, Integer>> porDispositivo = new LinkedHashMap<>();
+        int profundidadeTotal = 0;
+
+        for (CaixaPostal caixa : caixas.values()) {
+            int profundidade = caixa.profundidade.get();
+            profundidadeTotal += profundidade;
+            porDispositivo.put(Dispositivo.descreverChave(caixa.dispositivoId), Map.of(
+                    "profundidade", profundidade,
+                    "profundidadeMaxima", caixa.profundidadeMaxima.get()));
+        }
+
+        Map<String, Object> faixas = new LinkedHashMap<>();
+        for (Prioridade p : FAIXAS) {
+            int i = p.ordinal();
+            long n = processadosPorFaixa[i].sum();
+            Map<String, Object> faixa = new LinkedHashMap<>();
+            faixa.put("caixasEsperando", prontas.tamanho(p));
+            faixa.put("processados", n);
+            faixa.put("esperaMediaMs", n == 0 ? 0.0 : esperaPorFaixa[i].sum() / 1e6 / n);
+            faixa.put("esperaMaximaMs", esperaMaximaPorFaixa[i].get() / 1e6);
+            faixas.put(p.getNome(), faixa);
+        }
+
+        obj.put("capacidade", capacidade);
+        obj.put("threads", executor.getParallelism());
+        obj.put("caixas", caixas.size());
+        obj.put("profundidadeTotal", profundidadeTotal);
+        obj.put("processados", processados.sum());
+        obj.put("rejeitados", rejeitados.sum());
+        obj.put("rodadasInterrompidas", interrompidas.sum());
+        obj.put("faixas", faixas);
+        obj.put("dispositivos", porDispositivo);
+        return obj;
+    }
+
+    /**
+     * Põe a caixa na fila de caixas prontas, na faixa informada, caso ela
+     * ainda não esteja esperando nessa faixa, e entrega ao pool uma tarefa
+     * para drenar uma caixa. Uma caixa pode esperar em mais de uma faixa; a
+     * primeira tarefa que a retirar drena os seus comandos, e as demais
+     * entradas são ignoradas.
+     */
+    private void agendar(CaixaPostal caixa, Prioridade prioridade) {
+        if (caixa.naFila.compareAndSet(prioridade.ordinal(), 0, 1)) {
+            prontas.adicionar(prioridade, caixa, 0);
+            executor.execute(this::drenarProxima);
+        }
+    }
+
+    /**
+     * Tarefa do pool: drena a caixa mais urgente entre as prontas. Há uma
+     * tarefa para cada entrada da fila, então nenhuma entrada fica sem quem a
+     * retire.
+     */
+    private void drenarProxima() {
+        CaixaPostal caixa = prontas.retirar();
+        if (caixa != null) {
+            drenar(caixa);
+        }
+    }
+
+    /**
+     * Processa um lote de comandos da caixa. Apenas uma thread drena cada caixa
+     * por vez, garantida pela flag {@code drenando}.
+     */
+    private void drenar(CaixaPostal caixa) {
+        // a entrada foi retirada; chegadas a partir daqui agendam a caixa de novo
+        for (int i = 0; i < FAIXAS.length; i++) {
+            caixa.naFila.set(i, 0);
+        }
+        if (!caixa.drenando.compareAndSet(false, true)) {
+            // quem está drenando reagenda a caixa no fim, se restar algo
+            return;
+        }
+
+        dispositivoAtual.set(caixa.dispositivoId);
+        try {
+            Comando comando;
+            int n = 0;
+            while (n < lote && (comando = caixa.fila.poll()) != null) {
+                int faixa = comando.prioridade().ordinal();
+                long espera = System.nanoTime() - comando.criadoEm();
+                esperaPorFaixa[faixa].add(espera);
+                esperaMaximaPorFaixa[faixa].accumulate(espera);
+
+                PrioridadeAtual.executar(comando.prioridade(), comando.acao());
+                caixa.pendentesPorFaixa.decrementAndGet(faixa);
+                caixa.profundidade.decrementAndGet();
+                processados.increment();
+                processadosPorFaixa[faixa].increment();
+                n++;
+
+                // cede a thread a uma caixa crítica, a não ser que esta também tenha comandos críticos
+                if (prontas.temCritico() && caixa.pendentesPorFaixa.get(Prioridade.CRITICA.ordinal()) == 0
+                        && !caixa.fila.isEmpty()) {
+                    interrompidas.increment();
+                    break;
+                }
+            }
+        } finally {
+            dispositivoAtual.remove();
+            caixa.drenando.set(false);
+        }
+
+        // um comando pode ter chegado depois do último poll, ou enquanto outra thread retirava a caixa
+        if (!caixa.fila.isEmpty()) {
+            agendar(caixa, caixa.faixaMaisUrgente());
+        }
+    }
+
+    @PreDestroy
+    void encerrar() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Comando deixado em uma caixa postal.
+     */
+    private record Comando(Prioridade prioridade, long criadoEm, Runnable acao) {
+    }
+
+    /**
+     * Caixa postal de um único dispositivo.
+     */
+    private static final class CaixaPostal {
+        private final long dispositivoId;
+        private final Queue<Comando> fila = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger profundidade = new AtomicInteger();
+        private final AtomicInteger profundidadeMaxima = new AtomicInteger();
+        private final AtomicIntegerArray pendentesPorFaixa = new AtomicIntegerArray(FAIXAS.length);
+        // 1 se a caixa já espera na faixa correspondente da fila de caixas prontas
+        private final AtomicIntegerArray naFila = new AtomicIntegerArray(FAIXAS.length);
+        private final AtomicBoolean drenando = new AtomicBoolean();
+
+        private CaixaPostal(long dispositivoId) {
+            this.dispositivoId = dispositivoId;
+        }
+
+        private Prioridade faixaMaisUrgente() {
+            for (Prioridade p : FAIXAS) {
+                if (pendentesPorFaixa.get(p.ordinal()) > 0) {
+                    return p;
+                }
+            }
+            return Prioridade.LOTE;
+        }
+    }
+}
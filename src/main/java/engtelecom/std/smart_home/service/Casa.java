@@ -0,0 +1,151 @@
+package engtelecom.std.smart_home.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import engtelecom.std.smart_home.entities.Ambiente;
+import engtelecom.std.smart_home.entities.Cenario;
+import engtelecom.std.smart_home.entities.Dispositivo;
+import engtelecom.std.smart_home.entities.Grupo;
+
+/**
+ * Partição do cadastro em memória correspondente a uma casa.
+ *
+ * Cada casa tem seus próprios dispositivos, ambientes e cenários, com índices
+ * por ID e contadores de ID independentes, de modo que os IDs começam em 1 em
+ * todas as casas. Consultas não usam trava; cadastros e alterações compostas
+ * (verificação de cota seguida de inserção, troca da lista de um ambiente)
+ * são feitas com o monitor da própria casa, sem afetar as demais.
+ */
+public final class Casa {
+
+    private final long id;
+    private final String nome;
+    private final int cotaDispositivos;
+    private final int cotaAmbientes;
+    private final int cotaCenarios;
+    private final int cotaExecucoes;
+
+    final ConcurrentSkipListMap<Long, Dispositivo> dispositivos = new ConcurrentSkipListMap<>();
+    // substituídos de uma vez quando a replicação instala um instantâneo
+    volatile ConcurrentSkipListMap<Long, Ambiente> ambientes = new ConcurrentSkipListMap<>();
+    volatile ConcurrentSkipListMap<Long, Cenario> cenarios = new ConcurrentSkipListMap<>();
+    volatile ConcurrentSkipListMap<Long, Grupo> grupos = new ConcurrentSkipListMap<>();
+
+    // membros achatados dos grupos, com as arestas da hierarquia
+    volatile HierarquiaGrupos hierarquia = new HierarquiaGrupos();
+
+    // bitmaps dos dispositivos por tipo, ambiente e estado, para os seletores
+    final IndiceDispositivos indice = new IndiceDispositivos();
+
+    // cenários e posições das ações que referenciam cada dispositivo
+    volatile ReferenciasCenarios referencias = new ReferenciasCenarios();
+
+    // transições graduais em andamento, por "dispositivo/campo"
+    final ConcurrentHashMap<String, Transicao> transicoes = new ConcurrentHashMap<>();
+
+    final AtomicLong contadorDispositivos = new AtomicLong();
+    final AtomicLong contadorAmbientes = new AtomicLong();
+    final AtomicLong contadorCenarios = new AtomicLong();
+    final AtomicLong contadorGrupos = new AtomicLong();
+
+    // execuções assíncronas pendentes ou em andamento
+    final AtomicInteger execucoesAtivas = new AtomicInteger();
+
+    Casa(long id, String nome, int cotaDispositivos, int cotaAmbientes, int cotaCenarios, int cotaExecucoes) {
+        this.id = id;
+        this.nome = nome;
+        this.cotaDispositivos = cotaDispositivos;
+        this.cotaAmbientes = cotaAmbientes;
+        this.cotaCenarios = cotaCenarios;
+        this.cotaExecucoes = cotaExecucoes;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getNome() {
+        return nome;
+    }
+
+    public int getCotaDispositivos() {
+        return cotaDispositivos;
+    }
+
+    public int getCotaAmbientes() {
+        return cotaAmbientes;
+    }
+
+    public int getCotaCenarios() {
+        return cotaCenarios;
+    }
+
+    public int getCotaExecucoes() {
+        return cotaExecucoes;
+    }
+
+    /**
+     * Partição vazia com a mesma identificação e cotas, onde a replicação
+     * monta os ambientes, cenários e grupos de um instantâneo antes de
+     * instalá-los com {@link #substituirCadastro}.
+     *
+     * @return a partição vazia
+     */
+    Casa particaoVazia() {
+        return new Casa(id, nome, cotaDispositivos, cotaAmbientes, cotaCenarios, cotaExecucoes);
+    }
+
+    /**
+     * Troca os ambientes, cenários e grupos desta casa, com os seus índices,
+     * pelos de uma partição montada à parte. Deve ser chamado com o monitor
+     * da casa; as leituras sem trava veem o cadastro antigo ou o novo, nunca
+     * uma casa vazia. Os dispositivos não são trocados.
+     *
+     * @param montada partição com o novo cadastro
+     */
+    void substituirCadastro(Casa montada) {
+        ambientes = montada.ambientes;
+        indice.substituirAmbientes(montada.indice);
+        cenarios = montada.cenarios;
+        referencias = montada.referencias;
+        grupos = montada.grupos;
+        hierarquia = montada.hierarquia;
+        contadorAmbientes.accumulateAndGet(montada.contadorAmbientes.get(), Math::max);
+        contadorCenarios.accumulateAndGet(montada.contadorCenarios.get(), Math::max);
+        contadorGrupos.accumulateAndGet(montada.contadorGrupos.get(), Math::max);
+    }
+
+    /**
+     * Representação da casa para as respostas da API: identificação, cotas e
+     * uso atual.
+     *
+     * @return mapa com os dados da casa
+     */
+    public Map<String, Object> descrever() {
+        Map<String, Object> cotas = new LinkedHashMap<>();
+        cotas.put("dispositivos", cotaDispositivos);
+        cotas.put("ambientes", cotaAmbientes);
+        cotas.put("cenarios", cotaCenarios);
+        cotas.put("execucoes", cotaExecucoes);
+
+        Map<String, Object> uso = new LinkedHashMap<>();
+        uso.put("dispositivos", dispositivos.size());
+        uso.put("ambientes", ambientes.size());
+        uso.put("cenarios", cenarios.size());
+        uso.put("grupos", grupos.size());
+        uso.put("transicoes", transicoes.size());
+        uso.put("execucoes", execucoesAtivas.get());
+
+        Map<String, Object> obj = new LinkedHashMap<>();
+        obj.put("id", id);
+        obj.put("nome", nome);
+        obj.put("cotas", cotas);
+        obj.put("uso", uso);
+        return obj;
+    }
+}
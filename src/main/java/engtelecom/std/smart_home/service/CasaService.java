@@ -0,0 +1,242 @@
+package engtelecom.std.smart_home.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import engtelecom.std.smart_home.exceptions.CasaNaoEncontradaException;
+import engtelecom.std.smart_home.exceptions.CotaExcedidaException;
+
+/**
+ * Serviço responsável pelas casas atendidas por esta instância.
+ *
+ * Cada casa é uma partição independente do cadastro ({@link Casa}). As rotas
+ * sem o prefixo {@code /casas/{casaId}} operam sobre a casa padrão (ID 1),
+ * criada na inicialização.
+ *
+ * Os demais serviços registram inicializadores para preencher cada casa nova
+ * com seus dados padrão (dispositivos e ambientes). Eles são executados fora
+ * do lock das casas: criar uma casa não bloqueia a criação de outras.
+ */
+@Component
+public class CasaService implements SmartInitializingSingleton {
+
+    public static final long CASA_PADRAO = 1;
+
+    private final ConcurrentSkipListMap<Long, Casa> casas = new ConcurrentSkipListMap<>();
+    private final AtomicLong contador = new AtomicLong();
+    // casas publicadas mais as que ainda estão sendo inicializadas; monitor de casas
+    private int reservadas;
+    private final List<Consumer<Casa>> inicializadores = new CopyOnWriteArrayList<>();
+    private final DiarioAlteracoes diario;
+
+    private final int maximoCasas;
+    private final int cotaDispositivos;
+    private final int cotaAmbientes;
+    private final int cotaCenarios;
+    private final int cotaExecucoes;
+
+    /**
+     * Cria o serviço de casas.
+     *
+     * @param maximoCasas      número máximo de casas nesta instância
+     * @param cotaDispositivos cota padrão de dispositivos por casa
+     * @param cotaAmbientes    cota padrão de ambientes por casa
+     * @param cotaCenarios     cota padrão de cenários por casa
+     * @param cotaExecucoes    cota padrão de execuções assíncronas simultâneas por casa
+     * @param diario           diário onde as casas criadas são registradas
+     */
+    public CasaService(
+            @Value("${casa.casas.maximo:10000}") int maximoCasas,
+            @Value("${casa.casas.cota-dispositivos:1000}") int cotaDispositivos,
+            @Value("${casa.casas.cota-ambientes:100}") int cotaAmbientes,
+            @Value("${casa.casas.cota-cenarios:100}") int cotaCenarios,
+            @Value("${casa.casas.cota-execucoes:10}") int cotaExecucoes,
+            DiarioAlteracoes diario) {
+        this.diario = diario;
+        this.maximoCasas = maximoCasas;
+        this.cotaDispositivos = cotaDispositivos;
+        this.cotaAmbientes = cotaAmbientes;
+        this.cotaCenarios = cotaCenarios;
+        this.cotaExecucoes = cotaExecucoes;
+    }
+
+    /**
+     * Cria a casa padrão depois que todos os serviços registraram seus
+     * inicializadores.
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        criarCasa("Casa padrão", null);
+    }
+
+    /**
+     * Registra uma ação executada para cada casa criada.
+     *
+     * @param inicializador ação que recebe a casa recém-criada
+     */
+    public void adicionarInicializador(Consumer<Casa> inicializador) {
+        inicializadores.add(inicializador);
+    }
+
+    /**
+     * Cria uma nova casa, já preenchida com os dados padrão.
+     *
+     * O ID e a vaga na cota de casas são reservados com o lock das casas; os
+     * inicializadores rodam fora dele, e a casa só aparece nas consultas
+     * depois de inicializada.
+     *
+     * @param nome  nome da casa
+     * @param cotas cotas específicas ("dispositivos", "ambientes", "cenarios",
+     *              "execucoes"); as ausentes usam o valor padrão. Pode ser null.
+     * @return a casa criada
+     *
+     * @throws CotaExcedidaException    se o número máximo de casas foi atingido
+     * @throws IllegalArgumentException se alguma cota não for um inteiro positivo
+     */
+    public Casa criarCasa(String nome, Map<String, Object> cotas) {
+        int cotaDispositivosCasa = lerCota(cotas, "dispositivos", cotaDispositivos);
+        int cotaAmbientesCasa = lerCota(cotas, "ambientes", cotaAmbientes);
+        int cotaCenariosCasa = lerCota(cotas, "cenarios", cotaCenarios);
+        int cotaExecucoesCasa = lerCota(cotas, "execucoes", cotaExecucoes);
+
+        long id;
+        synchronized (casas) {
+            if (reservadas >= maximoCasas) {
+                throw new CotaExcedidaException("Número máximo de casas atingido: " + maximoCasas + ".");
+            }
+            reservadas++;
+            id = contador.incrementAndGet();
+        }
+
+        Casa casa = new Casa(id, nome == null || nome.isBlank() ? "Casa " + id : nome,
+                cotaDispositivosCasa, cotaAmbientesCasa, cotaCenariosCasa, cotaExecucoesCasa);
+        try {
+            // a casa vem antes, no diário, dos dispositivos e ambientes padrão
+            diario.registrarCasa(casa);
+            for (Consumer<Casa> inicializador : inicializadores) {
+                inicializador.accept(casa);
+            }
+        } catch (RuntimeException e) {
+            synchronized (casas) {
+                reservadas--;
+            }
+            throw e;
+        }
+        casas.put(id, casa);
+        return casa;
+    }
+
+    /**
+     * Recria uma casa recebida pela replicação, com o mesmo ID e as mesmas
+     * cotas do nó de origem. Os dados padrão não são criados: eles chegam nos
+     * registros seguintes do diário.
+     *
+     * @param id    ID da casa
+     * @param dados nome e cotas da casa, no formato de {@link DiarioAlteracoes}
+     * @return a casa, nova ou já existente
+     */
+    Casa restaurarCasa(long id, Map<String, Object> dados) {
+        @SuppressWarnings("unchecked")
+        Map<String, Object> cotas = (Map<String, Object>) dados.get("cotas");
+        synchronized (casas) {
+            Casa casa = casas.get(id);
+            if (casa == null) {
+                casa = new Casa(id, String.valueOf(dados.get("nome")),
+                        lerCota(cotas, "dispositivos", cotaDispositivos),
+                        lerCota(cotas, "ambientes", cotaAmbientes),
+                        lerCota(cotas, "cenarios", cotaCenarios),
+                        lerCota(cotas, "execucoes", cotaExecucoes));
+                casas.put(id, casa);
+                reservadas++;
+            }
+            contador.accumulateAndGet(id, Math::max);
+            return casa;
+        }
+    }
+
+    /**
+     * Busca uma casa pelo seu ID.
+     *
+     * @param id ID da casa
+     * @return a casa, ou null se não existir
+     */
+    public Casa buscarPorId(long id) {
+        return casas.get(id);
+    }
+
+    /**
+     * Obtém a casa indicada na rota.
+     *
+     * @param id ID da casa, ou null para a casa padrão
+     * @return a casa
+     *
+     * @throws CasaNaoEncontradaException se a casa não existir
+     */
+    public Casa obter(Long id) {
+        long casaId = id == null ? CASA_PADRAO : id;
+        Casa casa = casas.get(casaId);
+        if (casa == null) {
+            throw new CasaNaoEncontradaException(casaId);
+        }
+        return casa;
+    }
+
+    /**
+     * Retorna todas as casas, em ordem de ID.
+     *
+     * @return lista de casas
+     */
+    public List<Casa> buscarTodas() {
+        return new ArrayList<>(casas.values());
+    }
+
+    /**
+     * Métricas das casas: quantidade e uso total em relação às cotas.
+     *
+     * @return mapa com as métricas
+     */
+    public Map<String, Object> metricas() {
+        long dispositivos = 0;
+        long cenarios = 0;
+        long execucoes = 0;
+        for (Casa c : casas.values()) {
+            dispositivos += c.dispositivos.size();
+            cenarios += c.cenarios.size();
+            execucoes += c.execucoesAtivas.get();
+        }
+
+        Map<String, Object> obj = new LinkedHashMap<>();
+        obj.put("casas", casas.size());
+        obj.put("maximoCasas", maximoCasas);
+        obj.put("dispositivos", dispositivos);
+        obj.put("cenarios", cenarios);
+        obj.put("execucoesAtivas", execucoes);
+        return obj;
+    }
+
+    private static int lerCota(Map<String, Object> cotas, String nome, int padrao) {
+        if (cotas == null || cotas.get(nome) == null) {
+            return padrao;
+        }
+        int valor;
+        try {
+            valor = Integer.parseInt(cotas.get(nome).toString());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Cota '" + nome + "' deve ser inteira.");
+        }
+        if (valor <= 0) {
+            throw new IllegalArgumentException("Cota '" + nome + "' deve ser positiva.");
+        }
+        return valor;
+    }
+}
@@ -2,14 +2,21 @@ package engtelecom.std.smart_home.service;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.Set;
 import org.springframework.stereotype.Component;
 import engtelecom.std.smart_home.entities.Cenario;
+import engtelecom.std.smart_home.entities.Dispositivo;
+import engtelecom.std.smart_home.entities.ExecucaoCenario;
+import engtelecom.std.smart_home.exceptions.CenarioNaoEncontradoException;
+import engtelecom.std.smart_home.exceptions.CotaExcedidaException;
 import engtelecom.std.smart_home.exceptions.DispositivoNaoEncontradoException;
 import engtelecom.std.smart_home.exceptions.RotinaInvalidaException;
 import engtelecom.std.smart_home.exceptions.RotinaNaoEncontradaException;
+import engtelecom.std.smart_home.exceptions.TelevisaoEventosExclusivosException;
+import engtelecom.std.smart_home.exceptions.TransicaoInvalidaException;
 
 /**
  * Serviço para gerenciar cenários em uma casa inteligente.
@@ -19,76 +26,170 @@ public class CenarioService {
 
     /**
      * Atributos:
-     * - Uma lista para armazenar os cenários cadastrados.
-     * - Um contador atômico para gerar IDs únicos para os cenários.
      * - Uma referência ao DispositivoService para aplicar ações nos dispositivos.
+     * - Uma referência ao TransicaoService para as ações graduais (com "duracaoMs"
+     *   ou "intervaloMs"), que terminam depois de a rotina ser aplicada.
+     *
+     * Os cenários e o contador de IDs ficam na partição de cada {@link Casa}.
      */
-    private final ArrayList<Cenario> cenarios = new ArrayList<>();
-    private static final AtomicLong contador = new AtomicLong();
     private final DispositivoService dispositivoService;
+    private final TransicaoService transicaoService;
+    private final DiarioAlteracoes diario;
+
+    // parâmetros de uma ação gradual que não são campos do dispositivo
+    private static final Set<String> PARAMETROS_TRANSICAO = Set.of("duracaoMs", "intervaloMs", "passo");
 
-    public CenarioService(DispositivoService dispositivoService) {
+    public CenarioService(DispositivoService dispositivoService, TransicaoService transicaoService,
+            DiarioAlteracoes diario) {
         this.dispositivoService = dispositivoService;
+        this.transicaoService = transicaoService;
+        this.diario = diario;
     }
 
     /**
-     * Cadastra um novo cenário na lista.
+     * Cadastra um novo cenário na casa.
+     *
+     * Todas as ações da rotina são validadas antes do cadastro
+     * ({@link #validarRotina}), e o cenário entra no índice reverso de
+     * dispositivos da casa.
      * 
+     * @param casa    a casa do cenário.
      * @param cenario o cenário a ser cadastrado.
      * @return o cenário cadastrado com o ID atribuído.
+     * @throws CotaExcedidaException   se a casa atingiu sua cota de cenários.
+     * @throws RotinaInvalidaException se alguma ação da rotina for inválida.
      */
-    public Cenario cadastrarCenario(Cenario cenario) {
-        cenario.setId(contador.incrementAndGet());
-        cenarios.add(cenario);
+    public Cenario cadastrarCenario(Casa casa, Cenario cenario) {
+        validarRotina(casa, cenario.getRotina());
+        synchronized (casa) {
+            if (casa.cenarios.size() >= casa.getCotaCenarios()) {
+                throw new CotaExcedidaException(casa.getId(), "cenários", casa.getCotaCenarios());
+            }
+            cenario.setCasaId(casa.getId());
+            cenario.setId(casa.contadorCenarios.incrementAndGet());
+            casa.cenarios.put(cenario.getId(), cenario);
+            casa.referencias.definir(cenario.getId(), cenario.getRotina());
+            diario.registrarCenario(cenario);
+        }
         return cenario;
     }
 
     /**
-     * Busca todos os cenários cadastrados.
+     * Aplica um cenário recebido pela replicação, com o mesmo ID do nó de
+     * origem, substituindo o cenário local se houver.
+     *
+     * @param casa  a casa do cenário.
+     * @param id    o ID do cenário na casa.
+     * @param dados nome e rotina do cenário, no formato de {@link DiarioAlteracoes}.
+     */
+    @SuppressWarnings("unchecked")
+    void restaurarCenario(Casa casa, long id, Map<String, Object> dados) {
+        Cenario cenario = new Cenario();
+        cenario.setCasaId(casa.getId());
+        cenario.setId(id);
+        cenario.setNome((String) dados.get("nome"));
+        Object rotina = dados.get("rotina");
+        cenario.setRotina(rotina == null ? null : new ArrayList<>((List<Map<String, Object>>) rotina));
+        synchronized (casa) {
+            casa.cenarios.put(id, cenario);
+            casa.referencias.definir(id, cenario.getRotina());
+            casa.contadorCenarios.accumulateAndGet(id, Math::max);
+        }
+    }
+
+    /**
+     * Remove um cenário por ordem da replicação, junto com as suas entradas
+     * no índice reverso.
+     *
+     * @param casa a casa do cenário.
+     * @param id   o ID do cenário removido.
+     */
+    void restaurarRemocao(Casa casa, long id) {
+        synchronized (casa) {
+            casa.cenarios.remove(id);
+            casa.referencias.remover(id);
+        }
+    }
+
+    /**
+     * Busca todos os cenários cadastrados na casa.
      * 
+     * @param casa a casa consultada.
      * @return a lista de cenários.
      */
-    public ArrayList<Cenario> buscarTodos() {
-        return cenarios;
+    public ArrayList<Cenario> buscarTodos(Casa casa) {
+        return new ArrayList<>(casa.cenarios.values());
     }
 
     /**
      * Busca um cenário pelo seu ID.
      * 
-     * @param id o ID do cenário.
+     * @param casa a casa do cenário.
+     * @param id   o ID do cenário.
      * @return o cenário encontrado ou null se não existir.
      */
-    public Cenario buscarPorId(long id) {
-        return cenarios.stream()
-                .filter(c -> c.getId() == id)
-                .findFirst()
-                .orElse(null);
+    public Cenario buscarPorId(Casa casa, long id) {
+        return casa.cenarios.get(id);
+    }
+
+    /**
+     * Busca os cenários que referenciam um dispositivo, pelo índice reverso
+     * da casa: o custo é proporcional ao número de cenários encontrados, e
+     * não ao total de cenários e ações da casa.
+     *
+     * @param casa          a casa do dispositivo.
+     * @param dispositivoId o ID do dispositivo.
+     * @return para cada cenário, em ordem de ID, o "cenarioId", o "nome" e as
+     *         posições das ações sobre o dispositivo (começando em 1).
+     */
+    public List<Map<String, Object>> buscarPorDispositivo(Casa casa, long dispositivoId) {
+        List<Map<String, Object>> cenarios = new ArrayList<>();
+        for (Map.Entry<Long, List<Integer>> r : casa.referencias.cenariosDe(dispositivoId).entrySet()) {
+            Cenario c = casa.cenarios.get(r.getKey());
+            if (c == null) {
+                continue; // removido depois da consulta ao índice
+            }
+            Map<String, Object> obj = new LinkedHashMap<>();
+            obj.put("cenarioId", c.getId());
+            obj.put("nome", c.getNome());
+            obj.put("acoes", r.getValue());
+            cenarios.add(obj);
+        }
+        return cenarios;
     }
 
     /**
      * Remove um cenário pelo seu ID.
      * 
-     * @param id o ID do cenário a ser removido.
-     * @return true se o cenário foi removido com sucesso, false caso contrário.
+     * @param casa a casa do cenário.
+     * @param id   o ID do cenário a ser removido.
+     * @return o cenário removido, ou null se não existir.
      */
-    public Cenario removerCenario(long id) {
-        Cenario c = buscarPorId(id);
-        if (c == null) {
-            return null;
+    public Cenario removerCenario(Casa casa, long id) {
+        synchronized (casa) {
+            Cenario removido = casa.cenarios.remove(id);
+            if (removido != null) {
+                casa.referencias.remover(id);
+                diario.registrarRemocaoCenario(casa, id);
+            }
+            return removido;
         }
-        cenarios.remove(c);
-        return c;
     }
 
     /**
      * Aplica um cenário, executando sua rotina de ações.
+     *
+     * Apenas os campos que diferem do estado atual de cada dispositivo são
+     * aplicados; as ações cujos valores já estavam em vigor são marcadas com
+     * {@code "semEfeito": true} na resposta.
      * 
-     * @param id o ID do cenário a ser aplicado.
-     * @return true se a rotina do cenário foi aplicada, false caso o cenário não
-     *         exista.
+     * @param casa a casa do cenário.
+     * @param id   o ID do cenário a ser aplicado.
+     * @return as ações da rotina, cada uma indicando se teve efeito, ou null caso
+     *         o cenário não exista.
      */
-    public List<Map<String, Object>> aplicarCenario(long id) {
-        Cenario c = buscarPorId(id);
+    public List<Map<String, Object>> aplicarCenario(Casa casa, long id) {
+        Cenario c = buscarPorId(casa, id);
         if (c == null) {
             return null;
         }
@@ -97,87 +198,394 @@ public class CenarioService {
             throw new RotinaNaoEncontradaException();
         }
 
-        processarRotina(c.getRotina());
-
         // retorna exatamente o que foi aplicado
-        return c.getRotina();
+        return processarRotina(casa, c.getRotina(), null, null);
+    }
+
+    /**
+     * Simula a aplicação de um cenário cadastrado, sem alterar nenhum
+     * dispositivo ({@link #simularRotina}).
+     *
+     * @param casa a casa do cenário.
+     * @param id   o ID do cenário a ser simulado.
+     * @return o resultado da simulação, ou null caso o cenário não exista.
+     * @throws RotinaNaoEncontradaException se a rotina for nula ou vazia.
+     */
+    public Map<String, Object> simularCenario(Casa casa, long id) {
+        Cenario c = buscarPorId(casa, id);
+        if (c == null) {
+            return null;
+        }
+
+        Map<String, Object> simulacao = new LinkedHashMap<>();
+        simulacao.put("cenarioId", c.getId());
+        simulacao.putAll(simularRotina(casa, c.getRotina()));
+        return simulacao;
+    }
+
+    /**
+     * Simula a aplicação de uma rotina sobre uma sobreposição do estado da
+     * casa ({@link SobreposicaoCasa}), sem alterar nenhum dispositivo, sem
+     * enviar comandos e sem gravar nada no diário.
+     *
+     * Cada ação é validada e comparada com o estado projetado pelas ações
+     * anteriores. Diferente da aplicação real, que para na primeira ação
+     * inválida, a simulação registra o erro e segue, para que todos os erros
+     * apareçam de uma vez. As ações graduais são projetadas com os seus
+     * valores finais.
+     *
+     * @param casa   casa dos dispositivos da rotina.
+     * @param rotina ações a simular.
+     * @return mapa com "valida", o número de "erros", o resultado de cada ação
+     *         e o estado antes e depois de cada dispositivo alterado.
+     * @throws RotinaNaoEncontradaException se a rotina for nula ou vazia.
+     */
+    public Map<String, Object> simularRotina(Casa casa, List<Map<String, Object>> rotina) {
+        if (rotina == null || rotina.isEmpty()) {
+            throw new RotinaNaoEncontradaException();
+        }
+
+        SobreposicaoCasa sobreposicao = new SobreposicaoCasa();
+        List<Map<String, Object>> acoes = new ArrayList<>();
+        int erros = 0;
+        int numeroAcao = 1;
+
+        for (Map<String, Object> acao : rotina) {
+            Object dispositivoId = acao == null ? null : acao.get("dispositivoId");
+            try {
+                AcaoLida lida = lerAcao(casa, acao, numeroAcao);
+                Map<String, Object> parametros = lida.parametros();
+                boolean gradual = TransicaoService.ehTransicao(parametros);
+                if (gradual) {
+                    parametros.keySet().removeAll(PARAMETROS_TRANSICAO);
+                }
+                Map<String, Object> alteracoes = parametros.isEmpty() ? null
+                        : sobreposicao.aplicar(lida.dispositivo(), parametros);
+                if (alteracoes == null) {
+                    throw new RotinaInvalidaException(lida.mensagem());
+                }
+
+                Map<String, Object> resultado = resultadoAcao(numeroAcao, dispositivoId,
+                        alteracoes.isEmpty() ? "sem-efeito" : "aplicada", null);
+                resultado.put("alteracoes", alteracoes);
+                if (gradual) {
+                    resultado.put("gradual", true);
+                }
+                acoes.add(resultado);
+            } catch (RuntimeException e) {
+                erros++;
+                acoes.add(resultadoAcao(numeroAcao, dispositivoId, "invalida", e.getMessage()));
+            }
+            numeroAcao++;
+        }
+
+        Map<String, Object> simulacao = new LinkedHashMap<>();
+        simulacao.put("valida", erros == 0);
+        simulacao.put("erros", erros);
+        simulacao.put("acoes", acoes);
+        simulacao.put("dispositivos", sobreposicao.alterados());
+        return simulacao;
+    }
+
+    /**
+     * Executa a rotina de um cenário registrando o progresso em uma execução
+     * assíncrona.
+     *
+     * A execução é interrompida antes da próxima ação caso seu cancelamento
+     * tenha sido solicitado.
+     *
+     * @param casa       casa do cenário
+     * @param execucao   execução que acompanha o progresso da rotina
+     * @param entreAcoes chamado entre duas ações, para que execuções mais
+     *                   urgentes possam tomar a vez da thread (pode ser null)
+     * 
+     * @throws CenarioNaoEncontradoException se o cenário foi removido antes da execução começar
+     * @throws RotinaInvalidaException       se alguma ação na rotina for inválida
+     */
+    public void executarCenario(Casa casa, ExecucaoCenario execucao, Runnable entreAcoes) {
+        Cenario c = buscarPorId(casa, execucao.getCenarioId());
+        if (c == null) {
+            throw new CenarioNaoEncontradoException(execucao.getCenarioId());
+        }
+
+        processarRotina(casa, c.getRotina(), execucao, entreAcoes);
     }
 
     /**
      * Atualiza um cenário existente pelo seu ID
+     *
+     * A nova rotina é validada como no cadastro, e apenas as entradas do
+     * índice reverso dos dispositivos da rotina antiga e da nova são
+     * refeitas. Se o cenário for removido durante a validação, nada é
+     * alterado nem gravado no diário.
      * 
+     * @param casa              a casa do cenário.
      * @param id                o ID do cenário a ser atualizado.
      * @param cenarioAtualizado os novos dados do cenário.
      * @return o cenário atualizado ou null se não existir.
+     * @throws RotinaInvalidaException se alguma ação da nova rotina for inválida.
      */
-    public Cenario atualizarCenario(long id, Cenario cenarioAtualizado) {
-        Cenario existente = buscarPorId(id);
+    public Cenario atualizarCenario(Casa casa, long id, Cenario cenarioAtualizado) {
+        Cenario existente = buscarPorId(casa, id);
         if (existente == null) {
             return null;
         }
 
-        existente.setNome(cenarioAtualizado.getNome());
-        existente.setRotina(cenarioAtualizado.getRotina());
+        validarRotina(casa, cenarioAtualizado.getRotina());
+        synchronized (casa) {
+            // removido (ou substituído) enquanto a rotina era validada
+            if (casa.cenarios.get(id) != existente) {
+                return null;
+            }
+            existente.setNome(cenarioAtualizado.getNome());
+            existente.setRotina(cenarioAtualizado.getRotina());
+            casa.referencias.definir(id, existente.getRotina());
+            diario.registrarCenario(existente);
+        }
 
         return existente;
     }
 
+    /**
+     * Valida todas as ações de uma rotina em uma única passagem, antes de o
+     * cenário ser cadastrado ou atualizado.
+     *
+     * Cada ação precisa apontar para um dispositivo existente na casa e ter
+     * ao menos um campo reconhecido pelo tipo dele (os parâmetros de uma ação
+     * gradual não contam). Os erros de todas as ações são reunidos em uma
+     * única exceção. Uma rotina nula ou vazia é aceita: o erro só aparece ao
+     * aplicar o cenário.
+     *
+     * @param casa   casa dos dispositivos da rotina
+     * @param rotina ações a validar
+     * @throws RotinaInvalidaException se alguma ação for inválida
+     */
+    private void validarRotina(Casa casa, List<Map<String, Object>> rotina) {
+        if (rotina == null || rotina.isEmpty()) {
+            return;
+        }
+
+        List<String> erros = new ArrayList<>();
+        int numeroAcao = 1;
+        for (Map<String, Object> acao : rotina) {
+            try {
+                AcaoLida lida = lerAcao(casa, acao, numeroAcao);
+                Map<String, Object> parametros = lida.parametros();
+                if (TransicaoService.ehTransicao(parametros)) {
+                    parametros.keySet().removeAll(PARAMETROS_TRANSICAO);
+                }
+                if (parametros.isEmpty() || lida.dispositivo().calcularDiferenca(parametros) == null) {
+                    erros.add(lida.mensagem());
+                }
+            } catch (RotinaInvalidaException e) {
+                erros.add(e.getMessage());
+            } catch (DispositivoNaoEncontradoException | TelevisaoEventosExclusivosException
+                    | IllegalArgumentException e) {
+                // IllegalArgumentException inclui o NumberFormatException de um valor numérico malformado
+                erros.add("Rotina inválida na ação número " + numeroAcao + ". " + e.getMessage());
+            }
+            numeroAcao++;
+        }
+
+        if (!erros.isEmpty()) {
+            throw new RotinaInvalidaException(String.join(" ", erros));
+        }
+    }
+
     /**
      * Processa a rotina de ações de um cenário.
      *
-     * @param rotina lista de ações a serem executadas
+     * @param casa     casa dos dispositivos da rotina
+     * @param rotina   lista de ações a serem executadas
+     * @param execucao execução assíncrona que acompanha o progresso, ou null
+     *                 quando a rotina é aplicada de forma síncrona
+     * @param entreAcoes chamado entre duas ações (pode ser null)
+     * @return cópia das ações processadas, com o campo "semEfeito" indicando as
+     *         ações que não alteraram o dispositivo
      * 
      * @throws RotinaNaoEncontradaException se a rotina for nula ou vazia
      * @throws RotinaInvalidaException       se alguma ação na rotina for inválida
      * @throws DispositivoNaoEncontradoException se algum dispositivo na rotina não for encontrado
      * 
      */
-    private void processarRotina(List<Map<String, Object>> rotina) {
+    private List<Map<String, Object>> processarRotina(Casa casa, List<Map<String, Object>> rotina,
+            ExecucaoCenario execucao, Runnable entreAcoes) {
 
         if (rotina == null || rotina.isEmpty()) {
             throw new RotinaNaoEncontradaException();
         }
 
+        List<Map<String, Object>> processadas = new ArrayList<>();
         int numeroAcao = 1;
 
         for (Map<String, Object> acao : rotina) {
 
-            // Mensagem padrão usada em qualquer erro da ação
-            String mensagem = "Rotina inválida na ação número " + numeroAcao + ".";
-
-            if (acao == null) {
-                throw new RotinaInvalidaException(mensagem);
+            // o cancelamento e a preempção só acontecem entre ações, nunca no meio de uma
+            if (entreAcoes != null && numeroAcao > 1) {
+                entreAcoes.run();
             }
-
-            // Toda ação tem um dispositivo alvo
-            Object identificador = acao.get("dispositivoId");
-            if (identificador == null) {
-                throw new RotinaInvalidaException(mensagem);
+            if (execucao != null && execucao.isCancelamentoSolicitado()) {
+                execucao.interromper();
+                return processadas;
             }
 
-            long dispositivoId;
             try {
-                dispositivoId = Long.parseLong(identificador.toString());
-            } catch (NumberFormatException e) {
-                throw new RotinaInvalidaException(mensagem);
-            }
+                AcaoProcessada resultado = processarAcao(casa, acao, numeroAcao);
+                boolean semEfeito = resultado.alteracoes().isEmpty();
 
-            if (dispositivoService.buscarPorId(dispositivoId) == null) {
-                throw new DispositivoNaoEncontradoException(dispositivoId);
+                Map<String, Object> processada = new LinkedHashMap<>(acao);
+                processada.put("semEfeito", semEfeito);
+                processadas.add(processada);
+
+                if (execucao != null) {
+                    execucao.registrarResultado(resultadoAcao(numeroAcao, resultado.dispositivoId(),
+                            semEfeito ? "sem-efeito" : "aplicada", null));
+                }
+            } catch (RuntimeException e) {
+                if (execucao != null) {
+                    Object dispositivoId = acao == null ? null : acao.get("dispositivoId");
+                    execucao.registrarResultado(resultadoAcao(numeroAcao, dispositivoId, "falhou", e.getMessage()));
+                }
+                throw e;
             }
 
-            // Parâmetros da ação (tudo exceto o id do dispositivo)
-            Map<String, Object> parametros = new HashMap<>(acao);
-            parametros.remove("dispositivoId");
+            numeroAcao++;
+        }
+
+        return processadas;
+    }
+
+    /**
+     * Valida e aplica uma única ação da rotina.
+     *
+     * @param casa       casa do dispositivo alvo
+     * @param acao       ação a ser aplicada
+     * @param numeroAcao posição da ação na rotina (começando em 1)
+     * @return o ID do dispositivo alvo e as alterações efetivamente aplicadas
+     * 
+     * @throws RotinaInvalidaException           se a ação for inválida
+     * @throws DispositivoNaoEncontradoException se o dispositivo não for encontrado
+     */
+    private AcaoProcessada processarAcao(Casa casa, Map<String, Object> acao, int numeroAcao) {
+        AcaoLida lida = lerAcao(casa, acao, numeroAcao);
+        long dispositivoId = lida.dispositivo().getId();
+        Map<String, Object> parametros = lida.parametros();
+        String mensagem = lida.mensagem();
 
-            // deve haver ao menos uma ação válida para aplicar ao dispositivo
-            if (parametros.isEmpty()
-                    || dispositivoService.atualizarDispositivo(dispositivoId, parametros) == null) {
-                throw new RotinaInvalidaException(mensagem);
+        // ações graduais iniciam uma transição; os valores alvo contam como alterações
+        if (TransicaoService.ehTransicao(parametros)) {
+            try {
+                return new AcaoProcessada(dispositivoId, iniciarTransicao(casa, dispositivoId, parametros));
+            } catch (TransicaoInvalidaException e) {
+                throw new RotinaInvalidaException(mensagem + " " + e.getMessage());
             }
+        }
 
-            numeroAcao++;
+        // apenas o que difere do estado atual é aplicado
+        Map<String, Object> alteracoes = dispositivoService.aplicarDiferenca(casa, dispositivoId, parametros);
+        if (alteracoes == null) {
+            throw new RotinaInvalidaException(mensagem);
+        }
+
+        return new AcaoProcessada(dispositivoId, alteracoes);
+    }
+
+    /**
+     * Valida uma ação da rotina e separa o dispositivo alvo dos parâmetros.
+     *
+     * @param casa       casa do dispositivo alvo
+     * @param acao       ação da rotina
+     * @param numeroAcao posição da ação na rotina (começando em 1)
+     * @return o dispositivo alvo, uma cópia dos parâmetros (tudo exceto o
+     *         "dispositivoId") e a mensagem usada nos erros da ação
+     *
+     * @throws RotinaInvalidaException           se a ação for inválida
+     * @throws DispositivoNaoEncontradoException se o dispositivo não for encontrado
+     */
+    private AcaoLida lerAcao(Casa casa, Map<String, Object> acao, int numeroAcao) {
+        // Mensagem padrão usada em qualquer erro da ação
+        String mensagem = "Rotina inválida na ação número " + numeroAcao + ".";
+
+        if (acao == null) {
+            throw new RotinaInvalidaException(mensagem);
+        }
+
+        // Toda ação tem um dispositivo alvo
+        Object identificador = acao.get("dispositivoId");
+        if (identificador == null) {
+            throw new RotinaInvalidaException(mensagem);
+        }
+
+        long dispositivoId;
+        try {
+            dispositivoId = Long.parseLong(identificador.toString());
+        } catch (NumberFormatException e) {
+            throw new RotinaInvalidaException(mensagem);
+        }
+
+        Dispositivo dispositivo = dispositivoService.buscarPorId(casa, dispositivoId);
+        if (dispositivo == null) {
+            throw new DispositivoNaoEncontradoException(dispositivoId);
+        }
+
+        // Parâmetros da ação (tudo exceto o id do dispositivo)
+        Map<String, Object> parametros = new HashMap<>(acao);
+        parametros.remove("dispositivoId");
+
+        // deve haver ao menos uma ação válida para aplicar ao dispositivo
+        if (parametros.isEmpty()) {
+            throw new RotinaInvalidaException(mensagem);
+        }
+        return new AcaoLida(dispositivo, parametros, mensagem);
+    }
+
+    /**
+     * Inicia as transições de uma ação gradual.
+     *
+     * @return as alterações aplicadas de imediato e o alvo de cada transição iniciada
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> iniciarTransicao(Casa casa, long dispositivoId, Map<String, Object> parametros) {
+        Map<String, Object> resultado = transicaoService.iniciar(casa, dispositivoId, parametros);
+        Map<String, Object> alteracoes = new LinkedHashMap<>((Map<String, Object>) resultado.get("alteracoes"));
+        for (Map<String, Object> t : (List<Map<String, Object>>) resultado.get("transicoes")) {
+            alteracoes.put((String) t.get("campo"), t.get("alvo"));
+        }
+        return alteracoes;
+    }
+
+    /**
+     * Monta o resultado de uma ação para o acompanhamento de uma execução.
+     *
+     * @param numeroAcao    posição da ação na rotina
+     * @param dispositivoId dispositivo alvo da ação
+     * @param resultado     "aplicada", "sem-efeito" ou "falhou"
+     * @param erro          mensagem de erro (pode ser null)
+     * @return mapa com o resultado da ação
+     */
+    private Map<String, Object> resultadoAcao(int numeroAcao, Object dispositivoId, String resultado, String erro) {
+        Map<String, Object> obj = new LinkedHashMap<>();
+        obj.put("acao", numeroAcao);
+        obj.put("dispositivoId", dispositivoId);
+        obj.put("resultado", resultado);
+        if (erro != null) {
+            obj.put("erro", erro);
         }
+        return obj;
+    }
+
+    /**
+     * Resultado da aplicação de uma ação: o dispositivo alvo e os campos que
+     * realmente mudaram.
+     */
+    private record AcaoProcessada(long dispositivoId, Map<String, Object> alteracoes) {
+    }
+
+    /**
+     * Ação da rotina já validada: o dispositivo alvo, os campos desejados e a
+     * mensagem usada nos erros da ação.
+     */
+    private record AcaoLida(Dispositivo dispositivo, Map<String, Object> parametros, String mensagem) {
     }
 
 }
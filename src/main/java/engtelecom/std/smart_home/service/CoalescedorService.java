@@ -0,0 +1,239 @@
+package engtelecom.std.smart_home.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import engtelecom.std.smart_home.entities.Dispositivo;
+import engtelecom.std.smart_home.entities.Prioridade;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Serviço que agrupa atualizações consecutivas de um mesmo dispositivo.
+ *
+ * A primeira atualização de um dispositivo abre uma janela de tempo; as que
+ * chegam durante a janela são mescladas a ela, mantendo o último valor de cada
+ * campo. Ao fim da janela apenas o resultado mesclado é aplicado e todas as
+ * requisições envolvidas recebem o mesmo dispositivo atualizado.
+ *
+ * Se a atualização mesclada falhar, os comandos são aplicados um a um, para que
+ * um comando inválido não derrube os demais.
+ *
+ * Atualizações na faixa crítica ({@link PrioridadeAtual}) não esperam a
+ * janela; as mescladas são aplicadas na faixa mais urgente entre as suas. Uma
+ * atualização crítica aplica antes a atualização que estava pendente para o
+ * mesmo dispositivo, que é mais antiga: ao fechar a janela, ela não desfaria
+ * o comando crítico.
+ */
+@Component
+public class CoalescedorService {
+
+    private final long janelaMs;
+    private final ConcurrentHashMap<Long, Pendente> pendentes = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService agendador;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final LongAdder recebidos = new LongAdder();
+    private final LongAdder aplicados = new LongAdder();
+    private final LongAdder colapsados = new LongAdder();
+
+    /**
+     * Cria o serviço de coalescência.
+     *
+     * @param janelaMs duração da janela de agrupamento, em milissegundos (0 desativa)
+     */
+    public CoalescedorService(@Value("${casa.coalescencia.janela-ms:0}") long janelaMs) {
+        this.janelaMs = janelaMs;
+        this.agendador = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "coalescedor");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Submete uma atualização de dispositivo e aguarda sua aplicação.
+     *
+     * @param id       chave global do dispositivo ({@link Dispositivo#chave()})
+     * @param body     campos a atualizar
+     * @param aplicar  função que efetivamente aplica uma atualização ao dispositivo
+     * @return o dispositivo após a aplicação da atualização (possivelmente mesclada)
+     */
+    public Dispositivo submeter(long id, Map<String, Object> body,
+            BiFunction<Long, Map<String, Object>, Dispositivo> aplicar) {
+        recebidos.increment();
+
+        Prioridade prioridade = PrioridadeAtual.obter(Prioridade.INTERATIVA);
+        if (janelaMs <= 0 || prioridade == Prioridade.CRITICA) {
+            descarregarAgora(id);
+            aplicados.increment();
+            return aplicar.apply(id, body);
+        }
+
+        CompletableFuture<Dispositivo> resultado = new CompletableFuture<>();
+
+        pendentes.compute(id, (chave, p) -> {
+            if (p == null) {
+                Pendente novo = new Pendente(aplicar);
+                agendador.schedule(() -> executor.execute(() -> fecharJanela(chave, novo)), janelaMs,
+                        TimeUnit.MILLISECONDS);
+                p = novo;
+            }
+            p.adicionar(body, prioridade, resultado);
+            return p;
+        });
+
+        try {
+            return resultado.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException re) {
+                throw re;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Métricas de coalescência.
+     *
+     * @return mapa com comandos recebidos, aplicados e colapsados
+     */
+    public Map<String, Object> metricas() {
+        Map<String, Object> obj = new LinkedHashMap<>();
+        obj.put("janelaMs", janelaMs);
+        obj.put("recebidos", recebidos.sum());
+        obj.put("aplicados", aplicados.sum());
+        obj.put("colapsados", colapsados.sum());
+        obj.put("pendentes", pendentes.size());
+        return obj;
+    }
+
+    /**
+     * Fecha antes do tempo a janela de um dispositivo, aplicando na thread
+     * atual a atualização pendente, se houver. Quem espera por ela recebe o
+     * resultado normalmente.
+     *
+     * @param id chave global do dispositivo ({@link Dispositivo#chave()})
+     */
+    public void descarregarAgora(long id) {
+        Pendente p = pendentes.remove(id);
+        if (p != null) {
+            PrioridadeAtual.executar(p.prioridade, () -> descarregar(id, p));
+        }
+    }
+
+    /**
+     * Fecha a janela de um dispositivo ao fim do tempo e aplica a atualização
+     * mesclada, se ela ainda não tiver sido aplicada antes.
+     *
+     * @param id chave global do dispositivo
+     * @param p  atualização pendente que abriu a janela
+     */
+    private void fecharJanela(long id, Pendente p) {
+        if (pendentes.remove(id, p)) {
+            PrioridadeAtual.executar(p.prioridade, () -> descarregar(id, p));
+        }
+    }
+
+    private void descarregar(long id, Pendente p) {
+        try {
+            Dispositivo d = p.aplicar.apply(id, p.mesclado);
+            aplicados.increment();
+            colapsados.add(p.comandos.size() - 1);
+            for (Comando c : p.comandos) {
+                c.resultado.complete(d);
+            }
+            return;
+        } catch (RuntimeException e) {
+            if (p.comandos.size() == 1) {
+                aplicados.increment();
+                p.comandos.get(0).resultado.completeExceptionally(e);
+                return;
+            }
+        }
+
+        // a versão mesclada falhou: aplica cada comando isoladamente, em ordem
+        for (Comando c : p.comandos) {
+            try {
+                c.resultado.complete(p.aplicar.apply(id, c.body));
+            } catch (RuntimeException e) {
+                c.resultado.completeExceptionally(e);
+            }
+            aplicados.increment();
+        }
+    }
+
+    /**
+     * Mescla um comando à atualização pendente, mantendo o último valor de cada
+     * campo.
+     *
+     * "appAtual" e "canalAtual" da televisão são mutuamente exclusivos: definir um
+     * deles descarta o outro que estava pendente.
+     *
+     * @param mesclado atualização pendente
+     * @param body     novo comando
+     */
+    private static void mesclar(Map<String, Object> mesclado, Map<String, Object> body) {
+        if (preenchido(body.get("appAtual"))) {
+            mesclado.remove("canalAtual");
+        }
+        if (preenchido(body.get("canalAtual"))) {
+            mesclado.remove("appAtual");
+        }
+        mesclado.putAll(body);
+    }
+
+    private static boolean preenchido(Object valor) {
+        return valor != null && !valor.toString().trim().isEmpty();
+    }
+
+    @PreDestroy
+    void encerrar() {
+        agendador.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    /**
+     * Comando individual aguardando o fim da janela.
+     */
+    private record Comando(Map<String, Object> body, CompletableFuture<Dispositivo> resultado) {
+    }
+
+    /**
+     * Atualizações pendentes de um dispositivo. Só é modificada dentro de
+     * {@code pendentes.compute}, e lida depois de removida do mapa.
+     */
+    private static final class Pendente {
+        private final BiFunction<Long, Map<String, Object>, Dispositivo> aplicar;
+        private final Map<String, Object> mesclado = new HashMap<>();
+        private final List<Comando> comandos = new ArrayList<>();
+        private Prioridade prioridade = Prioridade.LOTE;
+
+        private Pendente(BiFunction<Long, Map<String, Object>, Dispositivo> aplicar) {
+            this.aplicar = aplicar;
+        }
+
+        private void adicionar(Map<String, Object> body, Prioridade faixa,
+                CompletableFuture<Dispositivo> resultado) {
+            mesclar(mesclado, body);
+            if (faixa.ordinal() < prioridade.ordinal()) {
+                prioridade = faixa;
+            }
+            comandos.add(new Comando(body, resultado));
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package engtelecom.std.smart_home.service;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import engtelecom.std.smart_home.entities.Prioridade;
+import engtelecom.std.smart_home.exceptions.RequisicaoRecusadaException;
+
+/**
+ * Controle de admissão das requisições, antes dos controladores.
+ *
+ * Cada endereço de origem tem um balde de fichas para todas as suas
+ * requisições, e cada cliente desse endereço (o rótulo informado por ele) tem
+ * um balde para cada rota, de modo que um cliente que inunda uma rota cara
+ * (como a execução de cenários) é contido sem afetar os demais nem as suas
+ * outras rotas. O rótulo é escolhido pelo próprio cliente, por isso não cria
+ * um limite novo: todos os rótulos de um endereço dividem o balde dele. Os
+ * baldes seguem o algoritmo GCRA: o estado de cada um é um único
+ * {@link AtomicLong} com o instante teórico da próxima chegada, atualizado por
+ * CAS, sem bloqueio. O número de baldes é limitado; com a tabela cheia, os
+ * clientes novos dividem um balde até a próxima limpeza.
+ *
+ * Depois dos baldes, um {@link LimiteAdaptativo} limita as requisições
+ * simultâneas conforme a latência observada, recusando o excesso em vez de
+ * deixar a fila crescer. Requisições da faixa crítica ({@link PrioridadeAtual})
+ * passam pelos baldes, mas não disputam vaga nesse limite: desligar tudo
+ * durante um alarme não pode ser recusado porque os painéis lotaram o serviço.
+ *
+ * Requisições recusadas recebem {@link RequisicaoRecusadaException}, com o
+ * tempo sugerido até uma nova tentativa.
+ */
+@Component
+public class ControleAdmissaoService {
+
+    /**
+     * Vaga ocupada por uma requisição admitida, a ser devolvida com
+     * {@link ControleAdmissaoService#liberar} ao fim do atendimento.
+     *
+     * @param inicio       instante da admissão ({@link System#nanoTime})
+     * @param emAndamento  requisições em andamento no momento da admissão
+     */
+    public record Admissao(long inicio, int emAndamento) {
+    }
+
+    // chave dos baldes divididos pelos clientes que não couberam na tabela
+    private static final String EXCEDENTE = "*";
+
+    private final ConcurrentHashMap<String, Balde> baldes = new ConcurrentHashMap<>();
+    private final int maximoBaldes;
+
+    private final boolean habilitado;
+    private final double taxaCliente;
+    private final int rajadaCliente;
+    private final double taxaRota;
+    private final int rajadaRota;
+    private final Map<String, double[]> rotasLimitadas = new HashMap<>();
+    private final LimiteAdaptativo limite;
+
+    private final LongAdder admitidas = new LongAdder();
+    private final LongAdder criticas = new LongAdder();
+    private final LongAdder recusadasCliente = new LongAdder();
+    private final LongAdder recusadasRota = new LongAdder();
+    private final LongAdder recusadasConcorrencia = new LongAdder();
+    private final LongAdder excedentes = new LongAdder();
+
+    /**
+     * Cria o controle de admissão.
+     *
+     * @param habilitado         se as requisições devem passar pelo controle
+     * @param taxaCliente        requisições por segundo de cada endereço de origem
+     * @param rajadaCliente      requisições seguidas aceitas de um endereço de origem
+     * @param taxaRota           requisições por segundo de cada cliente em cada rota
+     * @param rajadaRota         requisições seguidas aceitas de um cliente em cada rota
+     * @param rotasLimitadas     limites específicos, no formato
+     *                           {@code METODO /rota=taxa/rajada}, separados por vírgula
+     * @param concorrencia       limite inicial de requisições simultâneas
+     * @param concorrenciaMinima menor limite de requisições simultâneas
+     * @param concorrenciaMaxima maior limite de requisições simultâneas
+     * @param tolerancia         aumento tolerado da latência antes de reduzir o limite
+     * @param maximoBaldes       número máximo de baldes mantidos
+     */
+    public ControleAdmissaoService(@Value("${casa.admissao.habilitado:true}") boolean habilitado,
+            @Value("${casa.admissao.cliente.taxa:200}") double taxaCliente,
+            @Value("${casa.admissao.cliente.rajada:400}") int rajadaCliente,
+            @Value("${casa.admissao.rota.taxa:100}") double taxaRota,
+            @Value("${casa.admissao.rota.rajada:200}") int rajadaRota,
+            @Value("${casa.admissao.rotas-limitadas:}") String rotasLimitadas,
+            @Value("${casa.admissao.concorrencia.inicial:20}") int concorrencia,
+            @Value("${casa.admissao.concorrencia.minima:4}") int concorrenciaMinima,
+            @Value("${casa.admissao.concorrencia.maxima:200}") int concorrenciaMaxima,
+            @Value("${casa.admissao.concorrencia.tolerancia:2.0}") double tolerancia,
+            @Value("${casa.admissao.maximo-baldes:100000}") int maximoBaldes) {
+        this.habilitado = habilitado;
+        this.maximoBaldes = maximoBaldes;
+        this.taxaCliente = taxaCliente;
+        this.rajadaCliente = rajadaCliente;
+        this.taxaRota = taxaRota;
+        this.rajadaRota = rajadaRota;
+        this.limite = new LimiteAdaptativo(concorrencia, concorrenciaMinima, concorrenciaMaxima, tolerancia);
+
+        for (String item : rotasLimitadas.split(",")) {
+            if (item.isBlank()) {
+                continue;
+            }
+            String[] partes = item.trim().split("=");
+            String[] valores = partes[1].trim().split("/");
+            this.rotasLimitadas.put(partes[0].trim(),
+                    new double[] { Double.parseDouble(valores[0]), Double.parseDouble(valores[1]) });
+        }
+    }
+
+    /**
+     * Decide se uma requisição pode ser atendida.
+     *
+     * @param endereco endereço de origem da requisição
+     * @param rotulo   rótulo informado pelo cliente, ou null
+     * @param rota     método e padrão da rota (ex.: {@code PATCH /cenarios/{cenarioId}})
+     * @return a vaga ocupada, a ser liberada com {@link #liberar}; null se o
+     *         controle estiver desabilitado ou a requisição for crítica
+     * @throws RequisicaoRecusadaException se o cliente excedeu sua taxa ou o
+     *                                     limite de requisições simultâneas foi atingido
+     */
+    public Admissao admitir(String endereco, String rotulo, String rota) {
+        if (!habilitado) {
+            return null;
+        }
+        long agora = System.nanoTime();
+
+        String cliente = rotulo == null ? endereco : rotulo + " (" + endereco + ")";
+        long espera = balde(endereco, null, taxaCliente, rajadaCliente).consumir(agora);
+        if (espera > 0) {
+            recusadasCliente.increment();
+            throw new RequisicaoRecusadaException("O cliente " + cliente
+                    + " excedeu o limite de requisições. Tente novamente mais tarde.", espera / 1_000_000);
+        }
+
+        String chaveCliente = rotulo == null ? endereco : endereco + "/" + rotulo;
+        double[] especifico = rotasLimitadas.get(rota);
+        espera = especifico == null
+                ? balde(chaveCliente, rota, taxaRota, rajadaRota).consumir(agora)
+                : balde(chaveCliente, rota, especifico[0], (int) especifico[1]).consumir(agora);
+        if (espera > 0) {
+            recusadasRota.increment();
+            throw new RequisicaoRecusadaException("O cliente " + cliente + " excedeu o limite de requisições em "
+                    + rota + ". Tente novamente mais tarde.", espera / 1_000_000);
+        }
+
+        if (PrioridadeAtual.obter(Prioridade.INTERATIVA) == Prioridade.CRITICA) {
+            admitidas.increment();
+            criticas.increment();
+            return null;
+        }
+
+        int emAndamento = limite.adquirir();
+        if (emAndamento < 0) {
+            recusadasConcorrencia.increment();
+            throw new RequisicaoRecusadaException(
+                    "Serviço sobrecarregado. Tente novamente mais tarde.", 1000);
+        }
+        admitidas.increment();
+        return new Admissao(agora, emAndamento);
+    }
+
+    /**
+     * Devolve a vaga de uma requisição admitida, usando sua duração para
+     * ajustar o limite de requisições simultâneas.
+     *
+     * @param admissao vaga devolvida por {@link #admitir}
+     */
+    public void liberar(Admissao admissao) {
+        limite.liberar(System.nanoTime() - admissao.inicio(), admissao.emAndamento());
+    }
+
+    private Balde balde(String cliente, String rota, double taxa, int rajada) {
+        String chave = rota == null ? cliente : cliente + " " + rota;
+        Balde b = baldes.get(chave);
+        if (b != null) {
+            return b;
+        }
+        if (baldes.size() >= maximoBaldes) {
+            excedentes.increment();
+            chave = rota == null ? EXCEDENTE : EXCEDENTE + " " + rota;
+        }
+        return baldes.computeIfAbsent(chave, c -> new Balde(taxa, rajada));
+    }
+
+    /**
+     * Remove os baldes cheios: um balde novo teria o mesmo efeito.
+     */
+    @Scheduled(fixedDelayString = "${casa.admissao.intervalo-limpeza-ms:10000}")
+    public void descartarBaldesCheios() {
+        long agora = System.nanoTime();
+        baldes.values().removeIf(b -> b.cheio(agora));
+    }
+
+    /**
+     * Métricas do controle de admissão.
+     *
+     * @return requisições admitidas e recusadas por motivo, limite de
+     *         requisições simultâneas e latências usadas para ajustá-lo
+     */
+    public Map<String, Object> metricas() {
+        Map<String, Object> recusadas = new LinkedHashMap<>();
+        recusadas.put("taxaCliente", recusadasCliente.sum());
+        recusadas.put("taxaRota", recusadasRota.sum());
+        recusadas.put("concorrencia", recusadasConcorrencia.sum());
+
+        Map<String, Object> concorrencia = new LinkedHashMap<>();
+        concorrencia.put("limite", limite.getLimite());
+        concorrencia.put("emAndamento", limite.getEmAndamento());
+        concorrencia.put("latenciaCurtaMs", limite.getRttCurtoMs());
+        concorrencia.put("latenciaLongaMs", limite.getRttLongoMs());
+
+        Map<String, Object> obj = new LinkedHashMap<>();
+        obj.put("habilitado", habilitado);
+        obj.put("admitidas", admitidas.sum());
+        obj.put("criticasForaDoLimite", criticas.sum());
+        obj.put("recusadas", recusadas);
+        obj.put("concorrencia", concorrencia);
+        obj.put("baldes", baldes.size());
+        obj.put("maximoBaldes", maximoBaldes);
+        obj.put("clientesNoBaldeExcedente", excedentes.sum());
+        return obj;
+    }
+
+    /**
+     * Balde de fichas no formato GCRA: cada requisição adianta o instante
+     * teórico de chegada em um intervalo de emissão; a requisição é recusada
+     * se esse instante estiver mais à frente do que a rajada permite.
+     */
+    private static final class Balde {
+        private final long intervalo;
+        private final long tolerancia;
+        private final AtomicLong proximaChegada = new AtomicLong(Long.MIN_VALUE);
+
+        Balde(double taxa, int rajada) {
+            this.intervalo = (long) (1e9 / taxa);
+            this.tolerancia = intervalo * (rajada - 1);
+        }
+
+        /**
+         * @return 0 se a ficha foi consumida, ou a espera em nanossegundos
+         *         até haver uma ficha
+         */
+        long consumir(long agora) {
+            while (true) {
+                long atual = proximaChegada.get();
+                long base = atual == Long.MIN_VALUE || atual - agora < 0 ? agora : atual;
+                long adiantamento = base - agora;
+                if (adiantamento > tolerancia) {
+                    return adiantamento - tolerancia;
+                }
+                if (proximaChegada.compareAndSet(atual, base + intervalo)) {
+                    return 0;
+                }
+            }
+        }
+
+        boolean cheio(long agora) {
+            long atual = proximaChegada.get();
+            return atual == Long.MIN_VALUE || atual - agora <= 0;
+        }
+    }
+}
@@ -0,0 +1,527 @@
+package engtelecom.std.smart_home.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import engtelecom.std.smart_home.entities.Ambiente;
+import engtelecom.std.smart_home.entities.Cenario;
+import engtelecom.std.smart_home.entities.Dispositivo;
+import engtelecom.std.smart_home.entities.Grupo;
+
+/**
+ * Diário (log) ordenado das alterações do cadastro: casas, dispositivos,
+ * ambientes, cenários e grupos.
+ *
+ * Os serviços gravam aqui cada alteração efetiva, no mesmo ponto em que ela é
+ * aplicada (na caixa postal do dispositivo ou com o monitor da casa), de modo
+ * que as alterações de um mesmo recurso aparecem na ordem em que aconteceram.
+ * Os registros recebem uma sequência crescente e ficam em um buffer circular
+ * de tamanho fixo; quem precisar de registros mais antigos que o buffer deve
+ * partir de um instantâneo do cadastro.
+ *
+ * O buffer só é mantido enquanto alguém o lê ({@link #acompanhar}): a
+ * replicação, quando habilitada, e os webhooks, enquanto houver assinaturas.
+ * Sem leitores, gravar um registro toma apenas o monitor da casa no índice, e
+ * alterações em casas diferentes não disputam nenhum lock; com leitores, o
+ * monitor do diário ordena a gravação no buffer.
+ *
+ * Em um nó seguidor da replicação as alterações não nascem localmente: os
+ * serviços não gravam nada ({@link #setOrigemLocal}) e os registros do líder
+ * são anexados com a sua sequência original por {@link #anexar}.
+ *
+ * Além do buffer, o diário mantém um {@link IndiceAlteracoes} com a sequência
+ * da última alteração de cada recurso, de onde são lidos os recursos de uma
+ * casa alterados depois de uma sequência, mesmo que os registros já tenham
+ * saído do buffer, e com a versão do cadastro de cada casa.
+ */
+@Component
+public class DiarioAlteracoes {
+
+    private final RegistroAlteracao[] registros;
+    private final IndiceAlteracoes indice;
+
+    // última sequência atribuída, guardada ou não no buffer
+    private final AtomicLong sequencias = new AtomicLong();
+
+    // sequência do registro mais antigo mantido e do último guardado no buffer
+    private long primeira = 1;
+    private volatile long ultima;
+
+    // leitores do buffer; sem nenhum, os registros só entram no índice
+    private int consumidores;
+    private volatile boolean mantido;
+
+    // termo do registro anterior ao primeiro mantido (após um instantâneo)
+    private long termoBase;
+
+    private volatile long termo = 1;
+
+    // termo e sequência do último registro, publicados juntos
+    private volatile Posicao posicao = new Posicao(0, 0);
+    private volatile boolean origemLocal = true;
+
+    /**
+     * Cria o diário.
+     *
+     * @param capacidade     número de registros mantidos em memória
+     * @param maximoRemocoes número de remoções mantidas no índice de cada casa
+     */
+    public DiarioAlteracoes(@Value("${casa.diario.capacidade:100000}") int capacidade,
+            @Value("${casa.diario.maximo-remocoes:1000}") int maximoRemocoes) {
+        this.registros = new RegistroAlteracao[capacidade];
+        this.indice = new IndiceAlteracoes(maximoRemocoes);
+    }
+
+    void registrarCasa(Casa casa) {
+        registrar(casa.getId(), RegistroAlteracao.CASA, RegistroAlteracao.SALVAR, casa.getId(), dadosCasa(casa));
+    }
+
+    void registrarDispositivo(Dispositivo d) {
+        registrar(d.getCasaId(), RegistroAlteracao.DISPOSITIVO, RegistroAlteracao.SALVAR, d.getId(),
+                dadosDispositivo(d));
+    }
+
+    /**
+     * Grava o cadastro de um lote de dispositivos com o monitor do diário
+     * (quando o buffer é mantido) tomado uma única vez; os registros recebem
+     * sequências seguidas.
+     */
+    void registrarDispositivos(List<Dispositivo> dispositivos) {
+        if (!origemLocal) {
+            return;
+        }
+        if (!mantido) {
+            for (Dispositivo d : dispositivos) {
+                registrarDispositivo(d);
+            }
+            return;
+        }
+        synchronized (this) {
+            for (Dispositivo d : dispositivos) {
+                guardar(indice.registrar(d.getCasaId(), () -> novo(d.getCasaId(), RegistroAlteracao.DISPOSITIVO,
+                        RegistroAlteracao.SALVAR, d.getId(), dadosDispositivo(d))));
+            }
+        }
+    }
+
+    void registrarAmbiente(Casa casa, long id, Ambiente a) {
+        registrar(casa.getId(), RegistroAlteracao.AMBIENTE, RegistroAlteracao.SALVAR, id, dadosAmbiente(a));
+    }
+
+    void registrarRemocaoAmbiente(Casa casa, long id) {
+        registrar(casa.getId(), RegistroAlteracao.AMBIENTE, RegistroAlteracao.REMOVER, id, Map.of());
+    }
+
+    void registrarCenario(Cenario c) {
+        registrar(c.getCasaId(), RegistroAlteracao.CENARIO, RegistroAlteracao.SALVAR, c.getId(), dadosCenario(c));
+    }
+
+    void registrarRemocaoCenario(Casa casa, long id) {
+        registrar(casa.getId(), RegistroAlteracao.CENARIO, RegistroAlteracao.REMOVER, id, Map.of());
+    }
+
+    void registrarGrupo(Grupo g) {
+        registrar(g.getCasaId(), RegistroAlteracao.GRUPO, RegistroAlteracao.SALVAR, g.getId(), dadosGrupo(g));
+    }
+
+    void registrarRemocaoGrupo(Casa casa, long id) {
+        registrar(casa.getId(), RegistroAlteracao.GRUPO, RegistroAlteracao.REMOVER, id, Map.of());
+    }
+
+    private void registrar(long casaId, String recurso, String operacao, long id, Map<String, Object> dados) {
+        if (!origemLocal) {
+            return;
+        }
+        if (!mantido) {
+            indice.registrar(casaId, () -> novo(casaId, recurso, operacao, id, dados));
+            return;
+        }
+        synchronized (this) {
+            guardar(indice.registrar(casaId, () -> novo(casaId, recurso, operacao, id, dados)));
+        }
+    }
+
+    // chamado com o monitor da casa no índice, que ordena as sequências da casa
+    private RegistroAlteracao novo(long casaId, String recurso, String operacao, long id,
+            Map<String, Object> dados) {
+        return new RegistroAlteracao(sequencias.incrementAndGet(), termo, System.currentTimeMillis(), casaId,
+                recurso, operacao, id, dados);
+    }
+
+    /**
+     * Anexa um registro recebido de outro nó, mantendo sua sequência e termo.
+     * Registros já conhecidos são ignorados.
+     *
+     * @param registro registro a ser anexado
+     */
+    synchronized void anexar(RegistroAlteracao registro) {
+        if (registro.sequencia() <= sequencias.get()) {
+            return;
+        }
+        indice.registrar(registro);
+        sequencias.set(registro.sequencia());
+        guardar(registro);
+    }
+
+    private void guardar(RegistroAlteracao registro) {
+        // buffer cheio: o registro novo ocupa a posição do mais antigo
+        while (registro.sequencia() - primeira >= registros.length) {
+            RegistroAlteracao antigo = registros[(int) (primeira % registros.length)];
+            if (antigo != null && antigo.sequencia() == primeira) {
+                termoBase = antigo.termo();
+            }
+            primeira++;
+        }
+        registros[(int) (registro.sequencia() % registros.length)] = registro;
+        ultima = registro.sequencia();
+        posicao = new Posicao(registro.termo(), registro.sequencia());
+        notifyAll();
+    }
+
+    /**
+     * Descarta todos os registros e recomeça o diário a partir de um
+     * instantâneo do cadastro.
+     *
+     * @param sequencia sequência do último registro contido no instantâneo
+     * @param termo     termo desse registro
+     */
+    synchronized void reiniciar(long sequencia, long termo) {
+        Arrays.fill(registros, null);
+        indice.reiniciar(sequencia);
+        sequencias.set(sequencia);
+        this.primeira = sequencia + 1;
+        this.ultima = sequencia;
+        this.termoBase = termo;
+        this.posicao = new Posicao(termo, sequencia);
+        notifyAll();
+    }
+
+    /**
+     * Passa a manter o buffer para mais um leitor. Se ninguém o lia, o buffer
+     * recomeça depois da última sequência atribuída: os registros gravados
+     * enquanto ele estava parado só estão no índice.
+     *
+     * @return a última sequência já gravada, a partir da qual o leitor
+     *         encontra todos os registros no buffer
+     */
+    synchronized long acompanhar() {
+        if (consumidores++ == 0) {
+            long sequencia = sequencias.get();
+            long termoSequencia = termoDe(sequencia);
+            termoBase = termoSequencia >= 0 ? termoSequencia : termo;
+            primeira = sequencia + 1;
+            ultima = sequencia;
+            posicao = new Posicao(termoBase, sequencia);
+            mantido = true;
+        }
+        return ultima;
+    }
+
+    /**
+     * Um leitor deixa de ler o buffer; sem nenhum, o buffer deixa de ser
+     * mantido.
+     */
+    synchronized void deixarDeAcompanhar() {
+        if (--consumidores == 0) {
+            mantido = false;
+        }
+    }
+
+    /**
+     * Termo do registro de uma sequência, usado para verificar se o histórico
+     * de outro nó coincide com o deste até aquele ponto.
+     *
+     * @param sequencia sequência consultada
+     * @return o termo, ou -1 se o registro não estiver mais (ou ainda) no diário
+     */
+    synchronized long termoDe(long sequencia) {
+        if (sequencia == primeira - 1) {
+            return termoBase;
+        }
+        if (sequencia < primeira || sequencia > ultima) {
+            return -1;
+        }
+        RegistroAlteracao registro = registros[(int) (sequencia % registros.length)];
+        return registro != null && registro.sequencia() == sequencia ? registro.termo() : -1;
+    }
+
+    /**
+     * Lê os registros posteriores a uma sequência, esperando até
+     * {@code esperaMs} se ainda não houver nenhum.
+     *
+     * @param sequencia última sequência já conhecida pelo leitor
+     * @param maximo    número máximo de registros retornados
+     * @param esperaMs  tempo máximo de espera por um registro novo
+     * @return os registros em ordem (possivelmente vazia), ou null se parte
+     *         deles já saiu do buffer
+     * @throws InterruptedException se a espera for interrompida
+     */
+    synchronized List<RegistroAlteracao> lerDesde(long sequencia, int maximo, long esperaMs)
+            throws InterruptedException {
+        aguardar(sequencia + 1, esperaMs);
+        if (sequencia + 1 < primeira) {
+            return null;
+        }
+        List<RegistroAlteracao> lidos = new ArrayList<>();
+        for (long s = sequencia + 1; s <= ultima && lidos.size() < maximo; s++) {
+            RegistroAlteracao registro = registros[(int) (s % registros.length)];
+            // falta apenas o que foi gravado enquanto o buffer voltava a ser mantido
+            if (registro != null && registro.sequencia() == s) {
+                lidos.add(registro);
+            }
+        }
+        return lidos;
+    }
+
+    /**
+     * Recursos de uma casa alterados depois de uma sequência
+     * ({@link IndiceAlteracoes}), com a última alteração de cada um.
+     *
+     * @param casaId casa consultada
+     * @param desde  última sequência conhecida pelo leitor
+     * @return as alterações, ou null se o leitor estiver atrasado demais (ou
+     *         adiantado em relação a este nó) e precisar partir do estado
+     *         completo
+     */
+    public AlteracoesDesde alteracoesDesde(long casaId, long desde) {
+        return indice.desde(casaId, desde, sequencias::get);
+    }
+
+    /**
+     * Alterações de uma casa lidas do índice.
+     *
+     * @param sequencia  última sequência do diário no momento da leitura
+     * @param alteracoes última alteração de cada recurso alterado, em ordem
+     */
+    public record AlteracoesDesde(long sequencia, List<Alteracao> alteracoes) {
+    }
+
+    /**
+     * Última alteração de um recurso: o recurso ({@link RegistroAlteracao#DISPOSITIVO},
+     * ...), o seu ID e se ele foi removido. O estado atual é lido do cadastro.
+     */
+    public record Alteracao(String recurso, long id, boolean removido) {
+    }
+
+    /**
+     * Espera até que o diário alcance uma sequência.
+     *
+     * @param sequencia sequência esperada
+     * @param esperaMs  tempo máximo de espera
+     * @return true se a sequência foi alcançada
+     * @throws InterruptedException se a espera for interrompida
+     */
+    public synchronized boolean aguardar(long sequencia, long esperaMs) throws InterruptedException {
+        long limite = System.nanoTime() + esperaMs * 1_000_000;
+        while (ultima < sequencia) {
+            long restante = (limite - System.nanoTime()) / 1_000_000;
+            if (restante <= 0) {
+                return false;
+            }
+            wait(restante);
+        }
+        return true;
+    }
+
+    /**
+     * Espera até que o diário alcance uma posição e verifica se o registro
+     * daquela posição é o mesmo, isto é, do mesmo termo.
+     *
+     * Depois de uma troca de líder, o novo líder pode reutilizar as
+     * sequências de escritas que o anterior confirmou mas não chegou a
+     * replicar; o termo distingue esses registros. Se a posição já saiu do
+     * buffer, só o termo do registro anterior ao primeiro mantido é
+     * conhecido: como os termos nunca diminuem ao longo do diário, um termo
+     * maior que ele indica um registro perdido, e um termo menor não pode
+     * mais ser verificado.
+     *
+     * @param alvo     posição informada pelo cliente
+     * @param esperaMs tempo máximo de espera
+     * @return {@link Alcance#ALCANCADA} se o registro está no diário,
+     *         {@link Alcance#PERDIDA} se a posição foi ocupada por outro
+     *         registro, ou {@link Alcance#PENDENTE} se ela não foi alcançada
+     *         dentro da espera ou não pode ser verificada
+     * @throws InterruptedException se a espera for interrompida
+     */
+    public synchronized Alcance aguardar(Posicao alvo, long esperaMs) throws InterruptedException {
+        if (!aguardar(alvo.sequencia(), esperaMs)) {
+            return Alcance.PENDENTE;
+        }
+        long termoLocal = termoDe(alvo.sequencia());
+        if (termoLocal >= 0) {
+            return termoLocal == alvo.termo() ? Alcance.ALCANCADA : Alcance.PERDIDA;
+        }
+        if (alvo.termo() > termoBase) {
+            return Alcance.PERDIDA;
+        }
+        return alvo.termo() == termoBase ? Alcance.ALCANCADA : Alcance.PENDENTE;
+    }
+
+    /**
+     * Resultado da espera por uma posição do diário.
+     */
+    public enum Alcance {
+        ALCANCADA, PENDENTE, PERDIDA
+    }
+
+    /**
+     * Posição de um registro no histórico da replicação: o termo em que ele
+     * foi gravado e a sua sequência. É o valor do cabeçalho de leitura das
+     * próprias escritas, no formato {@code termo:sequencia}.
+     *
+     * @param termo     termo do registro
+     * @param sequencia sequência do registro
+     */
+    public record Posicao(long termo, long sequencia) {
+
+        /**
+         * Lê uma posição no formato {@code termo:sequencia}.
+         *
+         * @param texto valor do cabeçalho
+         * @return a posição
+         * @throws IllegalArgumentException se o formato for inválido
+         */
+        public static Posicao ler(String texto) {
+            int separador = texto.indexOf(':');
+            if (separador < 0) {
+                throw new IllegalArgumentException("posição sem termo: " + texto);
+            }
+            return new Posicao(Long.parseLong(texto.substring(0, separador).trim()),
+                    Long.parseLong(texto.substring(separador + 1).trim()));
+        }
+
+        @Override
+        public String toString() {
+            return termo + ":" + sequencia;
+        }
+    }
+
+    /**
+     * Sequência do registro mais antigo ainda mantido no buffer.
+     *
+     * @return a sequência (a seguinte à última se o diário estiver vazio)
+     */
+    synchronized long primeiraSequencia() {
+        return primeira;
+    }
+
+    /**
+     * Sequência do último registro gravado ou anexado.
+     *
+     * @return a sequência (0 se o diário estiver vazio)
+     */
+    public long ultimaSequencia() {
+        return sequencias.get();
+    }
+
+    /**
+     * Termo e sequência do último registro gravado ou anexado, lidos juntos.
+     *
+     * @return a posição
+     */
+    public Posicao posicao() {
+        // sem o buffer não há replicação, e o termo não muda
+        return mantido ? posicao : new Posicao(termo, sequencias.get());
+    }
+
+    /**
+     * Versão do cadastro de uma casa: muda sempre que um registro da casa é
+     * gravado ou anexado e quando o diário recomeça de um instantâneo, sempre
+     * depois de a alteração correspondente ter sido aplicada. Respostas
+     * calculadas com uma mesma versão refletem, no mínimo, o estado daquela
+     * versão. Alterações em outras casas não mudam a versão.
+     *
+     * @param casaId casa consultada
+     * @return a versão atual
+     */
+    public long versao(long casaId) {
+        return indice.versao(casaId);
+    }
+
+    long getTermo() {
+        return termo;
+    }
+
+    void setTermo(long termo) {
+        this.termo = termo;
+    }
+
+    /**
+     * Define se as alterações feitas pelos serviços neste nó devem ser
+     * gravadas (nó líder ou sem replicação) ou ignoradas (nó seguidor).
+     *
+     * @param origemLocal true para gravar as alterações locais
+     */
+    void setOrigemLocal(boolean origemLocal) {
+        this.origemLocal = origemLocal;
+    }
+
+    boolean isOrigemLocal() {
+        return origemLocal;
+    }
+
+    /**
+     * Métricas do diário.
+     *
+     * @return mapa com a capacidade e as sequências mantidas
+     */
+    public synchronized Map<String, Object> metricas() {
+        Map<String, Object> obj = new LinkedHashMap<>();
+        obj.put("capacidade", registros.length);
+        obj.put("mantido", mantido);
+        obj.put("primeira", primeira);
+        obj.put("ultima", sequencias.get());
+        obj.put("termo", termo);
+        obj.put("indice", indice.tamanho());
+        return obj;
+    }
+
+    static Map<String, Object> dadosCasa(Casa casa) {
+        Map<String, Object> cotas = new LinkedHashMap<>();
+        cotas.put("dispositivos", casa.getCotaDispositivos());
+        cotas.put("ambientes", casa.getCotaAmbientes());
+        cotas.put("cenarios", casa.getCotaCenarios());
+        cotas.put("execucoes", casa.getCotaExecucoes());
+
+        Map<String, Object> dados = new LinkedHashMap<>();
+        dados.put("nome", casa.getNome());
+        dados.put("cotas", cotas);
+        return dados;
+    }
+
+    static Map<String, Object> dadosDispositivo(Dispositivo d) {
+        Map<String, Object> dados = new LinkedHashMap<>();
+        dados.put("tipo", d.getTipo());
+        dados.put("estado", d.obterEstado());
+        return dados;
+    }
+
+    static Map<String, Object> dadosAmbiente(Ambiente a) {
+        Map<String, Object> dados = new LinkedHashMap<>();
+        dados.put("tipo", a.getNome());
+        dados.put("dispositivos", new ArrayList<>(a.getDispositivos()));
+        return dados;
+    }
+
+    static Map<String, Object> dadosCenario(Cenario c) {
+        Map<String, Object> dados = new LinkedHashMap<>();
+        dados.put("nome", c.getNome());
+        dados.put("rotina", c.getRotina() == null ? null : new ArrayList<>(c.getRotina()));
+        return dados;
+    }
+
+    static Map<String, Object> dadosGrupo(Grupo g) {
+        Map<String, Object> dados = new LinkedHashMap<>();
+        dados.put("nome", g.getNome());
+        dados.put("dispositivos", new ArrayList<>(g.getDispositivos()));
+        dados.put("subgrupos", new ArrayList<>(g.getSubgrupos()));
+        return dados;
+    }
+}
@@ -0,0 +1,94 @@
+package engtelecom.std.smart_home.service;
+
+/**
+ * Disjuntor (circuit breaker) de um dispositivo ou de um gateway.
+ *
+ * Fechado, deixa passar todos os comandos. Depois de {@code limiar} falhas
+ * seguidas ele abre: os comandos deixam de ser enviados e quem espera uma
+ * confirmação desiste na hora, em vez de esperar o prazo. Aberto, o disjuntor
+ * deixa passar um único comando de sondagem a cada {@code abertoNanos}
+ * (meio-aberto); uma confirmação o fecha e uma falha o mantém aberto.
+ */
+final class Disjuntor {
+
+    enum Estado {
+        FECHADO, ABERTO, MEIO_ABERTO
+    }
+
+    private final int limiar;
+    private final long abertoNanos;
+
+    private Estado estado = Estado.FECHADO;
+    private int falhasSeguidas;
+    private long proximaSondagem;
+    private long aberturas;
+
+    /**
+     * @param limiar      falhas seguidas que abrem o disjuntor
+     * @param abertoNanos intervalo entre duas sondagens com o disjuntor aberto
+     */
+    Disjuntor(int limiar, long abertoNanos) {
+        this.limiar = limiar;
+        this.abertoNanos = abertoNanos;
+    }
+
+    /**
+     * Verifica se um comando pode ser enviado. Com o disjuntor aberto, a
+     * primeira chamada depois do intervalo é a sondagem; a seguinte só depois
+     * de outro intervalo, mesmo que a sondagem não tenha sido respondida.
+     *
+     * @param agora instante atual ({@link System#nanoTime()})
+     * @return true se o comando pode ser enviado
+     */
+    synchronized boolean permitir(long agora) {
+        if (estado == Estado.FECHADO) {
+            return true;
+        }
+        if (agora - proximaSondagem < 0) {
+            return false;
+        }
+        estado = Estado.MEIO_ABERTO;
+        proximaSondagem = agora + abertoNanos;
+        return true;
+    }
+
+    synchronized void sucesso() {
+        estado = Estado.FECHADO;
+        falhasSeguidas = 0;
+    }
+
+    /**
+     * Registra uma falha.
+     *
+     * @param agora instante atual ({@link System#nanoTime()})
+     * @return true se a falha abriu o disjuntor
+     */
+    synchronized boolean falha(long agora) {
+        falhasSeguidas++;
+        if (estado == Estado.MEIO_ABERTO || (estado == Estado.FECHADO && falhasSeguidas >= limiar)) {
+            boolean abriu = estado == Estado.FECHADO;
+            estado = Estado.ABERTO;
+            proximaSondagem = agora + abertoNanos;
+            if (abriu) {
+                aberturas++;
+            }
+            return abriu;
+        }
+        return false;
+    }
+
+    /**
+     * @return true se o disjuntor não estiver fechado
+     */
+    synchronized boolean isAberto() {
+        return estado != Estado.FECHADO;
+    }
+
+    synchronized Estado getEstado() {
+        return estado;
+    }
+
+    synchronized long getAberturas() {
+        return aberturas;
+    }
+}
@@ -1,87 +1,293 @@
 package engtelecom.std.smart_home.service;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.springframework.stereotype.Component;
 
 import engtelecom.std.smart_home.entities.ArCondicionado;
 import engtelecom.std.smart_home.entities.Dispositivo;
 import engtelecom.std.smart_home.entities.Lampada;
+import engtelecom.std.smart_home.entities.Prioridade;
 import engtelecom.std.smart_home.entities.Televisao;
+import engtelecom.std.smart_home.exceptions.CaixaPostalCheiaException;
+import engtelecom.std.smart_home.exceptions.CotaExcedidaException;
+import engtelecom.std.smart_home.exceptions.DispositivoInvalidoException;
 import engtelecom.std.smart_home.exceptions.DispositivoNaoEncontradoException;
+import engtelecom.std.smart_home.exceptions.TelevisaoEventosExclusivosException;
+import jakarta.annotation.PostConstruct;
 
 /**
  * Serviço responsável por gerenciar os dispositivos cadastrados no sistema.
  * O cadastro é mantido em memória.
  *
  * Mantém os dispositivos em memória e oferece operações de cadastro, consulta e
- * atualização. 
+ * atualização. Os dispositivos de cada casa ficam na partição da própria
+ * {@link Casa}, com IDs próprios.
  */
 @Component
 public class DispositivoService {
 
-    private final ArrayList<Dispositivo> dispositivos = new ArrayList<>();
-    private static final AtomicLong contador = new AtomicLong();
+    private static final Set<String> TIPOS = Set.of("lampada", "ar-condicionado", "televisao");
+
+    private final CaixaPostalService caixaPostalService;
+    private final CoalescedorService coalescedorService;
+    private final CasaService casaService;
+    private final DiarioAlteracoes diario;
+
+    // comandos que alteraram algum campo e comandos descartados por não terem efeito
+    private final LongAdder comandosAplicados = new LongAdder();
+    private final LongAdder comandosSemEfeito = new LongAdder();
+
+    private final List<OuvinteDispositivo> ouvintes = new CopyOnWriteArrayList<>();
+
+    /**
+     * Cria o serviço. Toda casa nova começa com alguns dispositivos padrão.
+     *
+     * @param caixaPostalService serviço que serializa os comandos de cada dispositivo
+     * @param coalescedorService serviço que agrupa atualizações seguidas de um mesmo dispositivo
+     * @param casaService        serviço das casas, avisado para preencher as casas novas
+     * @param diario             diário onde as alterações efetivas são registradas
+     */
+    public DispositivoService(CaixaPostalService caixaPostalService, CoalescedorService coalescedorService,
+            CasaService casaService, DiarioAlteracoes diario) {
+        this.caixaPostalService = caixaPostalService;
+        this.coalescedorService = coalescedorService;
+        this.casaService = casaService;
+        this.diario = diario;
+    }
+
+    /**
+     * Passa a preencher cada casa nova com os dispositivos padrão. Fica fora
+     * do construtor para que o serviço não seja entregue ao
+     * {@link CasaService} antes de estar pronto.
+     */
+    @PostConstruct
+    public void registrarDispositivosPadrao() {
+        casaService.adicionarInicializador(this::cadastrarDispositivosPadrao);
+    }
 
     /**
-     * Inicializa o serviço com alguns dispositivos padrão.
+     * Cadastra os dispositivos padrão em uma casa nova.
+     *
+     * @param casa casa recém-criada
      */
-    public DispositivoService() {
-        cadastrarDispositivo(new Lampada("branca", 50));
-        cadastrarDispositivo(new Lampada("branca", 75));
-        cadastrarDispositivo(new Lampada("amarela", 75));
-        cadastrarDispositivo(new Lampada("amarela", 75));
-        cadastrarDispositivo(new Lampada("amarela", 75));
-        cadastrarDispositivo(new ArCondicionado());
-        cadastrarDispositivo(new ArCondicionado());
-        cadastrarDispositivo(new Televisao());
-        cadastrarDispositivo(new Televisao());
+    private void cadastrarDispositivosPadrao(Casa casa) {
+        cadastrarDispositivo(casa, new Lampada("branca", 50));
+        cadastrarDispositivo(casa, new Lampada("branca", 75));
+        cadastrarDispositivo(casa, new Lampada("amarela", 75));
+        cadastrarDispositivo(casa, new Lampada("amarela", 75));
+        cadastrarDispositivo(casa, new Lampada("amarela", 75));
+        cadastrarDispositivo(casa, new ArCondicionado());
+        cadastrarDispositivo(casa, new ArCondicionado());
+        cadastrarDispositivo(casa, new Televisao());
+        cadastrarDispositivo(casa, new Televisao());
     }
 
     /**
-     * Cadastra um novo dispositivo no serviço.
+     * Cadastra um novo dispositivo em uma casa.
      *
-     * O identificador do dispositivo é gerado automaticamente e atribuído ao objeto.
+     * O identificador do dispositivo é gerado automaticamente pela casa e
+     * atribuído ao objeto.
      *
+     * @param casa        casa do dispositivo
      * @param dispositivo dispositivo a ser cadastrado
      * @return o dispositivo cadastrado, já contendo o id gerado
+     *
+     * @throws CotaExcedidaException se a casa atingiu sua cota de dispositivos
      */
-    public Dispositivo cadastrarDispositivo(Dispositivo dispositivo) {
-        dispositivo.setId(contador.incrementAndGet());
-        dispositivos.add(dispositivo);
+    public Dispositivo cadastrarDispositivo(Casa casa, Dispositivo dispositivo) {
+        synchronized (casa) {
+            if (casa.dispositivos.size() >= casa.getCotaDispositivos()) {
+                throw new CotaExcedidaException(casa.getId(), "dispositivos", casa.getCotaDispositivos());
+            }
+            dispositivo.setCasaId(casa.getId());
+            dispositivo.setId(casa.contadorDispositivos.incrementAndGet());
+            casa.dispositivos.put(dispositivo.getId(), dispositivo);
+            casa.indice.indexar(dispositivo);
+            diario.registrarDispositivo(dispositivo);
+        }
+
+        for (OuvinteDispositivo ouvinte : ouvintes) {
+            ouvinte.dispositivoCadastrado(dispositivo);
+        }
         return dispositivo;
     }
 
     /**
-     * Retorna todos os dispositivos cadastrados.
+     * Cadastra vários dispositivos de uma vez (provisionamento em lote).
+     *
+     * Os IDs são reservados em um único bloco contíguo do contador da casa, e
+     * os dispositivos entram no cadastro, no índice dos seletores e no diário
+     * de uma vez, com o monitor da casa tomado uma única vez. O lote é
+     * cadastrado inteiro ou, se não couber na cota, não é cadastrado.
+     *
+     * @param casa  casa dos dispositivos
+     * @param novos dispositivos a cadastrar
+     * @return os mesmos dispositivos, com os IDs gerados
+     *
+     * @throws CotaExcedidaException se o lote não couber na cota de dispositivos da casa
+     */
+    public List<Dispositivo> cadastrarDispositivos(Casa casa, List<Dispositivo> novos) {
+        if (novos.isEmpty()) {
+            return novos;
+        }
+        synchronized (casa) {
+            if (casa.dispositivos.size() + novos.size() > casa.getCotaDispositivos()) {
+                throw new CotaExcedidaException(casa.getId(), "dispositivos", casa.getCotaDispositivos());
+            }
+            long id = casa.contadorDispositivos.getAndAdd(novos.size()) + 1;
+            for (Dispositivo d : novos) {
+                d.setCasaId(casa.getId());
+                d.setId(id++);
+                casa.dispositivos.put(d.getId(), d);
+            }
+            casa.indice.indexar(novos);
+            diario.registrarDispositivos(novos);
+        }
+
+        for (OuvinteDispositivo ouvinte : ouvintes) {
+            for (Dispositivo d : novos) {
+                ouvinte.dispositivoCadastrado(d);
+            }
+        }
+        return novos;
+    }
+
+    /**
+     * Provisiona os dispositivos descritos por uma sequência de mapas, lida
+     * aos poucos (por exemplo, de um JSON recebido em fluxo): cada mapa vira
+     * um dispositivo do tipo informado, e o lote é cadastrado de uma vez por
+     * {@link #cadastrarDispositivos}. Nenhum dispositivo é cadastrado se algum
+     * for inválido.
+     *
+     * A leitura para assim que o lote deixa de caber na cota da casa, sem
+     * consumir o restante da sequência.
+     *
+     * @param casa  casa dos dispositivos
+     * @param dados mapas com "tipo" e, opcionalmente, o estado inicial
+     * @return os dispositivos cadastrados, em ordem
+     *
+     * @throws DispositivoInvalidoException se algum mapa for inválido
+     * @throws CotaExcedidaException        se o lote não couber na cota da casa
+     */
+    public List<Dispositivo> provisionar(Casa casa, Iterator<Map<String, Object>> dados) {
+        List<Dispositivo> novos = new ArrayList<>();
+        int disponiveis = casa.getCotaDispositivos() - casa.dispositivos.size();
+        while (dados.hasNext()) {
+            Map<String, Object> item = dados.next();
+            if (novos.size() >= disponiveis) {
+                throw new CotaExcedidaException(casa.getId(), "dispositivos", casa.getCotaDispositivos());
+            }
+            try {
+                novos.add(criarDispositivo(item));
+            } catch (DispositivoInvalidoException e) {
+                throw new DispositivoInvalidoException("Dispositivo " + (novos.size() + 1) + " do lote: "
+                        + e.getMessage());
+            }
+        }
+        if (novos.isEmpty()) {
+            throw new DispositivoInvalidoException("O lote não contém nenhum dispositivo.");
+        }
+        return cadastrarDispositivos(casa, novos);
+    }
+
+    /**
+     * Cria, sem cadastrar, um dispositivo a partir do tipo e do estado
+     * inicial informados. Campos não informados ficam com os valores padrão
+     * do tipo; "id" e "casaId", se presentes, são ignorados, pois são
+     * atribuídos no cadastro.
      *
+     * @param dados mapa com "tipo" (lampada, ar-condicionado ou televisao) e
+     *              os campos de estado
+     * @return o dispositivo criado
+     *
+     * @throws DispositivoInvalidoException se o tipo for ausente ou desconhecido,
+     *                                      ou se algum campo tiver valor inválido
+     */
+    public Dispositivo criarDispositivo(Map<String, Object> dados) {
+        if (dados == null || dados.get("tipo") == null) {
+            throw new DispositivoInvalidoException("Campo 'tipo' é obrigatório; use " + TIPOS + ".");
+        }
+        Dispositivo novo = instanciar(dados.get("tipo").toString().trim().toLowerCase());
+
+        Map<String, Object> estado = new HashMap<>(dados);
+        estado.remove("tipo");
+        estado.remove("id");
+        estado.remove("casaId");
+        if (estado.isEmpty()) {
+            return novo;
+        }
+        try {
+            if (novo.atualizar(estado) == null) {
+                throw new DispositivoInvalidoException("Nenhum campo reconhecido para o tipo '"
+                        + novo.getTipo() + "'.");
+            }
+        } catch (IllegalArgumentException | TelevisaoEventosExclusivosException e) {
+            throw new DispositivoInvalidoException(e.getMessage());
+        }
+        return novo;
+    }
+
+    /**
+     * Cria um dispositivo do tipo informado, com os valores padrão do tipo.
+     *
+     * @throws DispositivoInvalidoException se o tipo for desconhecido
+     */
+    private static Dispositivo instanciar(String tipo) {
+        return switch (tipo) {
+            case "lampada" -> new Lampada("branca", 50);
+            case "ar-condicionado" -> new ArCondicionado();
+            case "televisao" -> new Televisao();
+            default -> throw new DispositivoInvalidoException("Tipo de dispositivo desconhecido: " + tipo
+                    + "; use " + TIPOS + ".");
+        };
+    }
+
+    /**
+     * Retorna todos os dispositivos de uma casa, em ordem de ID.
+     *
+     * @param casa casa consultada
      * @return lista de dispositivos
      */
-    public ArrayList<Dispositivo> buscarTodos() {
-        return dispositivos;
+    public ArrayList<Dispositivo> buscarTodos(Casa casa) {
+        return new ArrayList<>(casa.dispositivos.values());
     }
 
     /**
      * Busca um dispositivo pelo seu identificador.
      *
-     * @param id identificador do dispositivo
+     * @param casa casa do dispositivo
+     * @param id   identificador do dispositivo
      * @return o dispositivo encontrado, ou null se não existir
      */
-    public Dispositivo buscarPorId(Long id) {
-        return this.dispositivos.stream()
-                .filter(d -> Long.valueOf(d.getId()).equals(id))
-                .findFirst()
-                .orElse(null);
+    public Dispositivo buscarPorId(Casa casa, Long id) {
+        if (id == null) {
+            return null;
+        }
+        return casa.dispositivos.get(id);
     }
 
     /**
      * Modifica todos os campos do dispositivo existente.
+     *
+     * Substituições seguidas do mesmo dispositivo (por exemplo, um controle
+     * deslizante de intensidade) são mescladas pelo {@link CoalescedorService} e
+     * aplicadas uma única vez.
      * 
+     * @param casa casa do dispositivo
      * @param id   identificador do dispositivo (informado na URI)
      * @param body mapa com os dados completos do dispositivo
      * @return o dispositivo após a substituição
@@ -89,8 +295,8 @@ public class DispositivoService {
      * @throws DispositivoNaoEncontradoException se o dispositivo não existir
      * @throws IllegalArgumentException se o mapa estiver inválido para substituição completa
      */
-    public Dispositivo substituirDispositivo(Long id, Map<String, Object> body) {
-        Dispositivo existente = buscarPorId(id);
+    public Dispositivo substituirDispositivo(Casa casa, Long id, Map<String, Object> body) {
+        Dispositivo existente = buscarPorId(casa, id);
         if (existente == null) {
             throw new DispositivoNaoEncontradoException(id);
         }
@@ -100,8 +306,9 @@ public class DispositivoService {
         // Valida primeiro
         validarSubstituicaoCompleta(existente, payload);
 
-        // Depois aplica a atualização
-        Dispositivo atualizado = atualizarDispositivo(id, payload);
+        // Depois aplica a atualização, agrupada com outras que chegarem na mesma janela
+        Dispositivo atualizado = coalescedorService.submeter(existente.chave(), payload,
+                (chave, mesclado) -> atualizarDispositivo(casa, id, mesclado));
 
         if (atualizado != null) {
             return atualizado;
@@ -112,13 +319,59 @@ public class DispositivoService {
 
     /**
      * Atualiza parcialmente um dispositivo existente.
+     *
+     * A atualização passa pela caixa postal do dispositivo, de modo que comandos
+     * concorrentes para o mesmo dispositivo são aplicados em ordem, e apenas os
+     * campos que mudam são aplicados (ver {@link #aplicarDiferenca}).
      * 
+     * @param casa casa do dispositivo
      * @param id   identificador do dispositivo
      * @param body mapa com os campos a atualizar
      * @return o dispositivo atualizado, ou null se a atualização não puder ser aplicada
      */
-    public Dispositivo atualizarDispositivo(Long id, Map<String, Object> body) {
-        Dispositivo d = buscarPorId(id);
+    public Dispositivo atualizarDispositivo(Casa casa, Long id, Map<String, Object> body) {
+        Dispositivo d = buscarPorId(casa, id);
+        if (d == null || body == null || body.isEmpty()) {
+            return null;
+        }
+
+        // chamado pelo coalescedor com a atualização já retirada da janela: não descarrega outra
+        return caixaPostalService.executar(d.chave(), () -> aplicarNaCaixaPostal(casa, d, body, null)) == null
+                ? null : d;
+    }
+
+    /**
+     * Aplica já a substituição do dispositivo que estiver esperando a janela
+     * do {@link CoalescedorService}. Chamado antes de toda escrita que não
+     * passa pelo coalescedor (cenários, comandos em massa, transições): a
+     * substituição chegou antes e precisa ser aplicada antes, e não por cima
+     * da escrita mais nova quando a janela fechar.
+     *
+     * @param d dispositivo que vai ser alterado
+     */
+    void descarregarCoalescido(Dispositivo d) {
+        coalescedorService.descarregarAgora(d.chave());
+    }
+
+    /**
+     * Aplica ao dispositivo apenas os campos que diferem do seu estado atual.
+     * Uma substituição do mesmo dispositivo que ainda esperava a janela do
+     * coalescedor é aplicada antes.
+     *
+     * O cálculo da diferença e a aplicação acontecem juntos na caixa postal do
+     * dispositivo. Uma ação cujos valores já são os atuais não altera o
+     * dispositivo, é contabilizada como "sem efeito" e não é repassada aos
+     * ouvintes registrados.
+     *
+     * @param casa casa do dispositivo
+     * @param id   identificador do dispositivo
+     * @param body mapa com os campos desejados
+     * @return mapa com as alterações efetivamente aplicadas (vazio quando a ação
+     *         não tem efeito), ou null se o dispositivo não existir ou o mapa
+     *         não contiver nenhum campo reconhecido
+     */
+    public Map<String, Object> aplicarDiferenca(Casa casa, Long id, Map<String, Object> body) {
+        Dispositivo d = buscarPorId(casa, id);
         if (d == null) {
             return null;
         }
@@ -126,7 +379,207 @@ public class DispositivoService {
             return null;
         }
 
-        return d.atualizar(body);
+        descarregarCoalescido(d);
+        return caixaPostalService.executar(d.chave(), () -> aplicarNaCaixaPostal(casa, d, body, null));
+    }
+
+    /**
+     * Versão assíncrona de {@link #aplicarDiferenca}: o comando é deixado na
+     * caixa postal do dispositivo e o resultado chega pelo futuro, de modo que
+     * comandos para muitos dispositivos são aplicados em paralelo. Por ser
+     * usada pelos comandos em massa, a faixa padrão é a de lote.
+     *
+     * @param casa casa do dispositivo
+     * @param d    dispositivo já cadastrado na casa
+     * @param body mapa com os campos desejados
+     * @return futuro completado com as alterações aplicadas, como em {@link #aplicarDiferenca}
+     *
+     * @throws CaixaPostalCheiaException se a caixa do dispositivo estiver cheia
+     */
+    CompletableFuture<Map<String, Object>> enviarDiferenca(Casa casa, Dispositivo d, Map<String, Object> body) {
+        descarregarCoalescido(d);
+        return caixaPostalService.enviar(d.chave(), PrioridadeAtual.obter(Prioridade.LOTE),
+                () -> aplicarNaCaixaPostal(casa, d, body, null));
+    }
+
+    /**
+     * Deixa um passo de uma transição gradual na caixa postal do dispositivo.
+     * O passo não tem efeito se a transição for cancelada antes de ele ser
+     * aplicado, e não cancela a própria transição como um comando comum. Os
+     * passos seguem na faixa de lote.
+     *
+     * @param t    transição do passo
+     * @param body campo da transição com o valor do passo
+     * @return futuro completado com as alterações aplicadas
+     *
+     * @throws CaixaPostalCheiaException se a caixa do dispositivo estiver cheia
+     */
+    CompletableFuture<Map<String, Object>> enviarPasso(Transicao t, Map<String, Object> body) {
+        return caixaPostalService.enviar(t.dispositivo.chave(), Prioridade.LOTE,
+                () -> t.isCancelada() ? Map.of() : aplicarNaCaixaPostal(t.casa, t.dispositivo, body, t));
+    }
+
+    // "transicao" é a transição que enviou o passo, ou null para um comando comum
+    private Map<String, Object> aplicarNaCaixaPostal(Casa casa, Dispositivo d, Map<String, Object> body,
+            Transicao transicao) {
+        Map<String, Object> diferenca = d.calcularDiferenca(body);
+        if (diferenca == null) {
+            return null;
+        }
+        if (transicao == null) {
+            // um comando comum substitui as transições em andamento dos mesmos campos
+            Transicao.cancelar(casa, d.getId(), body.keySet());
+        }
+        if (diferenca.isEmpty()) {
+            comandosSemEfeito.increment();
+            return diferenca;
+        }
+        d.atualizar(diferenca);
+        casa.indice.atualizar(d, diferenca);
+        comandosAplicados.increment();
+        diario.registrarDispositivo(d);
+        for (OuvinteDispositivo ouvinte : ouvintes) {
+            ouvinte.dispositivoAlterado(d, diferenca);
+        }
+        return diferenca;
+    }
+
+    /**
+     * Aplica o mesmo comando a um conjunto de dispositivos (de um ambiente,
+     * de um grupo...), ou apenas aos de um tipo.
+     *
+     * O comando é deixado de uma vez na caixa postal de cada dispositivo, de
+     * modo que os dispositivos são atualizados em paralelo; cada um recebe
+     * apenas a diferença em relação ao seu estado, como em
+     * {@link #aplicarDiferenca}. Dispositivos sem nenhum dos campos do comando
+     * (por exemplo, {@code volume} para uma lâmpada) são ignorados, e a falha
+     * de um dispositivo não interrompe os demais.
+     *
+     * @param casa casa dos dispositivos
+     * @param ids  IDs dos dispositivos; repetições e IDs inexistentes são desconsiderados
+     * @param tipo tipo dos dispositivos a comandar (todos se null)
+     * @param body campos a aplicar
+     * @return mapa com os totais e o resultado de cada dispositivo
+     *         (alterado, semEfeito, ignorado ou falha)
+     * @throws IllegalArgumentException se o comando estiver vazio ou o tipo for desconhecido
+     */
+    public Map<String, Object> aplicarEmParalelo(Casa casa, Collection<Long> ids, String tipo,
+            Map<String, Object> body) {
+        if (body == null || body.isEmpty()) {
+            throw new IllegalArgumentException("Comando vazio.");
+        }
+        if (tipo != null && !TIPOS.contains(tipo.toLowerCase())) {
+            throw new IllegalArgumentException("Tipo de dispositivo desconhecido: " + tipo);
+        }
+
+        List<Dispositivo> alvos = new ArrayList<>(ids.size());
+        List<CompletableFuture<Map<String, Object>>> pendentes = new ArrayList<>(ids.size());
+        for (Long id : new LinkedHashSet<>(ids)) {
+            Dispositivo d = buscarPorId(casa, id);
+            if (d == null || (tipo != null && !tipo.equalsIgnoreCase(d.getTipo()))) {
+                continue;
+            }
+            alvos.add(d);
+            try {
+                pendentes.add(enviarDiferenca(casa, d, body));
+            } catch (RuntimeException e) {
+                pendentes.add(CompletableFuture.failedFuture(e));
+            }
+        }
+
+        int[] contagem = new int[4]; // alterados, sem efeito, ignorados, falhas
+        List<Map<String, Object>> resultados = new ArrayList<>(alvos.size());
+        for (int i = 0; i < alvos.size(); i++) {
+            Dispositivo d = alvos.get(i);
+            Map<String, Object> resultado = new LinkedHashMap<>();
+            resultado.put("id", d.getId());
+            resultado.put("tipo", d.getTipo());
+            try {
+                Map<String, Object> diferenca = pendentes.get(i).join();
+                if (diferenca == null) {
+                    resultado.put("resultado", "ignorado");
+                    contagem[2]++;
+                } else if (diferenca.isEmpty()) {
+                    resultado.put("resultado", "semEfeito");
+                    contagem[1]++;
+                } else {
+                    resultado.put("resultado", "alterado");
+                    resultado.put("alteracoes", diferenca);
+                    contagem[0]++;
+                }
+            } catch (CompletionException e) {
+                resultado.put("resultado", "falha");
+                resultado.put("erro", e.getCause().getMessage());
+                contagem[3]++;
+            }
+            resultados.add(resultado);
+        }
+
+        Map<String, Object> obj = new LinkedHashMap<>();
+        obj.put("tipo", tipo == null ? null : tipo.toLowerCase());
+        obj.put("total", alvos.size());
+        obj.put("alterados", contagem[0]);
+        obj.put("semEfeito", contagem[1]);
+        obj.put("ignorados", contagem[2]);
+        obj.put("falhas", contagem[3]);
+        obj.put("dispositivos", resultados);
+        return obj;
+    }
+
+    /**
+     * Aplica um dispositivo recebido pela replicação: cria o dispositivo com
+     * o mesmo ID do nó de origem ou, se ele já existir, leva-o ao estado
+     * recebido. Os ouvintes são avisados como em um cadastro ou alteração
+     * local.
+     *
+     * @param casa  casa do dispositivo
+     * @param id    ID do dispositivo na casa
+     * @param dados tipo e estado do dispositivo, no formato de {@link DiarioAlteracoes}
+     */
+    void restaurarDispositivo(Casa casa, long id, Map<String, Object> dados) {
+        @SuppressWarnings("unchecked")
+        Map<String, Object> estado = (Map<String, Object>) dados.get("estado");
+
+        Dispositivo existente = casa.dispositivos.get(id);
+        if (existente != null) {
+            aplicarDiferenca(casa, id, estado);
+            return;
+        }
+
+        Dispositivo novo = instanciar(String.valueOf(dados.get("tipo")));
+        novo.setCasaId(casa.getId());
+        novo.setId(id);
+        novo.atualizar(estado);
+        synchronized (casa) {
+            casa.dispositivos.put(id, novo);
+            casa.indice.indexar(novo);
+            casa.contadorDispositivos.accumulateAndGet(id, Math::max);
+        }
+
+        for (OuvinteDispositivo ouvinte : ouvintes) {
+            ouvinte.dispositivoCadastrado(novo);
+        }
+    }
+
+    /**
+     * Registra um ouvinte das alterações efetivas de estado dos dispositivos.
+     *
+     * @param ouvinte ouvinte a ser avisado
+     */
+    public void adicionarOuvinte(OuvinteDispositivo ouvinte) {
+        ouvintes.add(ouvinte);
+    }
+
+    /**
+     * Métricas dos comandos enviados aos dispositivos.
+     *
+     * @return mapa com o número de comandos aplicados e sem efeito
+     */
+    public Map<String, Object> metricas() {
+        Map<String, Object> obj = new LinkedHashMap<>();
+        obj.put("aplicados", comandosAplicados.sum());
+        obj.put("semEfeito", comandosSemEfeito.sum());
+        return obj;
     }
 
     /**
@@ -0,0 +1,405 @@
+package engtelecom.std.smart_home.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.stereotype.Component;
+
+import engtelecom.std.smart_home.entities.Ambiente;
+import engtelecom.std.smart_home.entities.ArCondicionado;
+import engtelecom.std.smart_home.entities.Cenario;
+import engtelecom.std.smart_home.entities.Dispositivo;
+import engtelecom.std.smart_home.entities.Grupo;
+import engtelecom.std.smart_home.entities.Lampada;
+import engtelecom.std.smart_home.entities.Televisao;
+import engtelecom.std.smart_home.exceptions.ProjecaoInvalidaException;
+import engtelecom.std.smart_home.service.DiarioAlteracoes.Alteracao;
+import engtelecom.std.smart_home.service.DiarioAlteracoes.AlteracoesDesde;
+
+/**
+ * Monta o estado completo de uma casa em uma única resposta: ambientes,
+ * dispositivos, cenários e grupos.
+ *
+ * Cada dispositivo aparece uma única vez, na seção {@code dispositivos};
+ * ambientes e grupos trazem apenas os IDs dos seus dispositivos, e as ações
+ * dos cenários já os referenciam por {@code dispositivoId}. O cliente escolhe
+ * as seções ({@code incluir}) e os campos de estado dos dispositivos
+ * ({@code campos}).
+ *
+ * A resposta é uma fotografia consistente: ela é montada entre duas leituras
+ * da versão do cadastro da casa ({@link DiarioAlteracoes#versao(long)}) e
+ * montada de novo se alguma alteração da casa acontecer no meio. Em uma casa alterada sem parar, a
+ * montagem desiste depois de {@link #TENTATIVAS} tentativas e responde com a
+ * última, o que é contado nas métricas.
+ *
+ * O estado traz a {@code sequencia} do diário que ele reflete. Com ela, o
+ * cliente pede depois só o que mudou ({@link #lerAlteracoes}): os recursos
+ * alterados desde então, lidos do índice de alterações do diário, e os IDs
+ * dos removidos. Se o cliente estiver atrasado demais para isso, recebe o
+ * estado completo de novo.
+ */
+@Component
+public class EstadoCasaService {
+
+    /**
+     * Seções do estado, na ordem em que aparecem na resposta.
+     */
+    public static final List<String> SECOES = List.of("ambientes", "dispositivos", "cenarios", "grupos");
+
+    private static final int TENTATIVAS = 5;
+
+    // campos de estado de todos os tipos de dispositivo, além de "id" e "tipo"
+    private static final Set<String> CAMPOS = new LinkedHashSet<>();
+
+    static {
+        CAMPOS.addAll(new Lampada("branca", 0).obterEstado().keySet());
+        CAMPOS.addAll(new ArCondicionado().obterEstado().keySet());
+        CAMPOS.addAll(new Televisao().obterEstado().keySet());
+    }
+
+    private final DispositivoService dispositivoService;
+    private final AmbienteService ambienteService;
+    private final CenarioService cenarioService;
+    private final GrupoService grupoService;
+    private final DiarioAlteracoes diario;
+    private final LeituraCompartilhadaService leituraCompartilhadaService;
+
+    private final LongAdder montagens = new LongAdder();
+    private final LongAdder repeticoes = new LongAdder();
+    private final LongAdder inconsistentes = new LongAdder();
+    private final LongAdder diferencas = new LongAdder();
+    private final LongAdder diferencasCompletas = new LongAdder();
+    private final LongAdder recursosEnviados = new LongAdder();
+
+    public EstadoCasaService(DispositivoService dispositivoService, AmbienteService ambienteService,
+            CenarioService cenarioService, GrupoService grupoService, DiarioAlteracoes diario,
+            LeituraCompartilhadaService leituraCompartilhadaService) {
+        this.dispositivoService = dispositivoService;
+        this.ambienteService = ambienteService;
+        this.cenarioService = cenarioService;
+        this.grupoService = grupoService;
+        this.diario = diario;
+        this.leituraCompartilhadaService = leituraCompartilhadaService;
+    }
+
+    /**
+     * Estado da casa em JSON. Pedidos simultâneos com a mesma projeção são
+     * atendidos por uma única montagem ({@link LeituraCompartilhadaService}).
+     *
+     * @param casa    casa consultada
+     * @param incluir seções separadas por vírgula (todas se ausente)
+     * @param campos  campos de estado dos dispositivos separados por vírgula
+     *                (todos se ausente); "id" e "tipo" sempre aparecem
+     * @return o estado em JSON
+     *
+     * @throws ProjecaoInvalidaException se alguma seção ou campo for desconhecido
+     */
+    public byte[] ler(Casa casa, String incluir, String campos) {
+        Set<String> secoes = lerSecoes(incluir);
+        Set<String> camposDispositivo = lerCampos(campos);
+        String chave = "estado/" + casa.getId() + "/" + String.join(",", secoes) + "/"
+                + (camposDispositivo == null ? "*" : String.join(",", camposDispositivo));
+        return leituraCompartilhadaService.ler(casa, chave, () -> montar(casa, secoes, camposDispositivo));
+    }
+
+    /**
+     * Monta o estado da casa, repetindo a montagem se o cadastro mudar no meio.
+     *
+     * @param casa   casa consultada
+     * @param secoes seções incluídas (de {@link #SECOES})
+     * @param campos campos de estado dos dispositivos, ou null para todos
+     * @return mapa com o ID e o nome da casa, a versão do cadastro, a
+     *         sequência do diário e as seções
+     */
+    public Map<String, Object> montar(Casa casa, Set<String> secoes, Set<String> campos) {
+        montagens.increment();
+        Map<String, Object> estado = null;
+        for (int tentativa = 1; tentativa <= TENTATIVAS; tentativa++) {
+            long versao = diario.versao(casa.getId());
+            long sequencia = diario.ultimaSequencia();
+            estado = montarUmaVez(casa, versao, sequencia, secoes, campos);
+            if (diario.versao(casa.getId()) == versao) {
+                return estado;
+            }
+            repeticoes.increment();
+        }
+        inconsistentes.increment();
+        return estado;
+    }
+
+    private Map<String, Object> montarUmaVez(Casa casa, long versao, long sequencia, Set<String> secoes,
+            Set<String> campos) {
+        Map<String, Object> estado = new LinkedHashMap<>();
+        estado.put("id", casa.getId());
+        estado.put("nome", casa.getNome());
+        estado.put("versao", versao);
+        estado.put("sequencia", sequencia);
+        List<Map<String, Object>> ambientes = null;
+        List<Map<String, Object>> dispositivos = null;
+        List<Map<String, Object>> cenarios = null;
+        List<Map<String, Object>> grupos = null;
+
+        // ambientes, cenários e grupos são alterados com o monitor da casa
+        synchronized (casa) {
+            if (secoes.contains("ambientes")) {
+                ambientes = new ArrayList<>();
+                for (Map.Entry<Long, Ambiente> e : ambienteService.buscarTodosComId(casa).entrySet()) {
+                    ambientes.add(ambiente(casa, e.getKey(), e.getValue()));
+                }
+            }
+            if (secoes.contains("cenarios")) {
+                cenarios = new ArrayList<>();
+                for (Cenario c : cenarioService.buscarTodos(casa)) {
+                    cenarios.add(cenario(c));
+                }
+            }
+            if (secoes.contains("grupos")) {
+                grupos = new ArrayList<>();
+                for (Grupo g : grupoService.buscarTodos(casa)) {
+                    grupos.add(grupo(casa, g));
+                }
+            }
+        }
+
+        if (secoes.contains("dispositivos")) {
+            dispositivos = new ArrayList<>();
+            for (Dispositivo d : dispositivoService.buscarTodos(casa)) {
+                dispositivos.add(dispositivo(d.getId(), d.getTipo(), d.obterEstado(), campos));
+            }
+        }
+
+        if (ambientes != null) {
+            estado.put("ambientes", ambientes);
+        }
+        if (dispositivos != null) {
+            estado.put("dispositivos", dispositivos);
+        }
+        if (cenarios != null) {
+            estado.put("cenarios", cenarios);
+        }
+        if (grupos != null) {
+            estado.put("grupos", grupos);
+        }
+        return estado;
+    }
+
+    private static Map<String, Object> ambiente(Casa casa, long id, Ambiente a) {
+        Map<String, Object> obj = new LinkedHashMap<>();
+        obj.put("id", id);
+        obj.put("tipo", a.tipo().getNome());
+        obj.put("dispositivos", existentes(casa, a.getDispositivos()));
+        return obj;
+    }
+
+    private static Map<String, Object> cenario(Cenario c) {
+        Map<String, Object> obj = new LinkedHashMap<>();
+        obj.put("id", c.getId());
+        obj.put("nome", c.getNome());
+        obj.put("rotina", c.getRotina() == null ? List.of() : new ArrayList<>(c.getRotina()));
+        return obj;
+    }
+
+    private static Map<String, Object> grupo(Casa casa, Grupo g) {
+        Map<String, Object> obj = new LinkedHashMap<>();
+        obj.put("id", g.getId());
+        obj.put("nome", g.getNome());
+        obj.put("dispositivos", existentes(casa, g.getDispositivos()));
+        obj.put("subgrupos", new ArrayList<>(g.getSubgrupos()));
+        return obj;
+    }
+
+    private static Map<String, Object> dispositivo(long id, String tipo, Map<String, Object> estado,
+            Set<String> campos) {
+        Map<String, Object> obj = new LinkedHashMap<>();
+        obj.put("id", id);
+        obj.put("tipo", tipo);
+        for (Map.Entry<String, Object> campo : estado.entrySet()) {
+            if (campos == null || campos.contains(campo.getKey())) {
+                obj.put(campo.getKey(), campo.getValue());
+            }
+        }
+        return obj;
+    }
+
+    /**
+     * Alterações da casa posteriores a uma sequência do diário, na mesma
+     * forma do estado completo: cada seção traz apenas os recursos alterados,
+     * com o seu estado atual, lido do cadastro, e {@code removidos} traz os
+     * IDs dos recursos removidos de cada seção. A resposta traz {@code completo: false} e a
+     * {@code sequencia} a usar no próximo pedido.
+     *
+     * Se as alterações não puderem mais ser reconstituídas a partir de
+     * {@code desde}, a resposta é o estado completo, com {@code completo: true}.
+     *
+     * @param casa    casa consultada
+     * @param desde   sequência recebida no último estado ou na última diferença
+     * @param incluir seções separadas por vírgula (todas se ausente)
+     * @param campos  campos de estado dos dispositivos separados por vírgula
+     *                (todos se ausente)
+     * @return as alterações ou o estado completo
+     *
+     * @throws ProjecaoInvalidaException se alguma seção ou campo for desconhecido
+     */
+    public Map<String, Object> lerAlteracoes(Casa casa, long desde, String incluir, String campos) {
+        Set<String> secoes = lerSecoes(incluir);
+        Set<String> camposDispositivo = lerCampos(campos);
+        AlteracoesDesde alteracoes = diario.alteracoesDesde(casa.getId(), desde);
+        if (alteracoes == null) {
+            diferencasCompletas.increment();
+            Map<String, Object> estado = montar(casa, secoes, camposDispositivo);
+            estado.put("completo", true);
+            return estado;
+        }
+        diferencas.increment();
+
+        Map<String, List<Map<String, Object>>> alterados = new LinkedHashMap<>();
+        Map<String, List<Long>> removidos = new LinkedHashMap<>();
+        for (String secao : secoes) {
+            alterados.put(secao, new ArrayList<>());
+            if (!secao.equals("dispositivos")) {
+                removidos.put(secao, new ArrayList<>());
+            }
+        }
+        // ambientes, cenários e grupos são lidos com o monitor da casa, como no estado completo
+        synchronized (casa) {
+            for (Alteracao a : alteracoes.alteracoes()) {
+                String secao = secao(a.recurso());
+                if (!secoes.contains(secao)) {
+                    continue;
+                }
+                // um recurso removido depois da leitura do índice também conta como removido
+                Map<String, Object> atual = a.removido() ? null : recurso(casa, a, camposDispositivo);
+                if (atual != null) {
+                    alterados.get(secao).add(atual);
+                } else if (removidos.containsKey(secao)) {
+                    removidos.get(secao).add(a.id());
+                }
+                recursosEnviados.increment();
+            }
+        }
+
+        Map<String, Object> resposta = new LinkedHashMap<>();
+        resposta.put("id", casa.getId());
+        resposta.put("nome", casa.getNome());
+        resposta.put("desde", desde);
+        resposta.put("sequencia", alteracoes.sequencia());
+        resposta.put("completo", false);
+        resposta.putAll(alterados);
+        resposta.put("removidos", removidos);
+        return resposta;
+    }
+
+    private static String secao(String recurso) {
+        return switch (recurso) {
+            case RegistroAlteracao.AMBIENTE -> "ambientes";
+            case RegistroAlteracao.DISPOSITIVO -> "dispositivos";
+            case RegistroAlteracao.CENARIO -> "cenarios";
+            default -> "grupos";
+        };
+    }
+
+    /**
+     * Estado atual de um recurso alterado, na forma usada no estado completo.
+     *
+     * @return o recurso, ou null se ele não existir mais
+     */
+    private static Map<String, Object> recurso(Casa casa, Alteracao a, Set<String> campos) {
+        long id = a.id();
+        switch (a.recurso()) {
+            case RegistroAlteracao.DISPOSITIVO -> {
+                Dispositivo d = casa.dispositivos.get(id);
+                return d == null ? null : dispositivo(id, d.getTipo(), d.obterEstado(), campos);
+            }
+            case RegistroAlteracao.AMBIENTE -> {
+                Ambiente ambiente = casa.ambientes.get(id);
+                return ambiente == null ? null : ambiente(casa, id, ambiente);
+            }
+            case RegistroAlteracao.CENARIO -> {
+                Cenario c = casa.cenarios.get(id);
+                return c == null ? null : cenario(c);
+            }
+            default -> {
+                Grupo g = casa.grupos.get(id);
+                return g == null ? null : grupo(casa, g);
+            }
+        }
+    }
+
+    private static List<Long> existentes(Casa casa, List<Long> ids) {
+        List<Long> existentes = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            if (casa.dispositivos.containsKey(id)) {
+                existentes.add(id);
+            }
+        }
+        return existentes;
+    }
+
+    private static Set<String> lerSecoes(String incluir) {
+        if (incluir == null || incluir.isBlank()) {
+            return new LinkedHashSet<>(SECOES);
+        }
+        Set<String> pedidas = new LinkedHashSet<>();
+        for (String s : incluir.split(",")) {
+            String secao = s.trim().toLowerCase();
+            if (!SECOES.contains(secao)) {
+                throw new ProjecaoInvalidaException("seção desconhecida '" + s.trim() + "'; use " + SECOES);
+            }
+            pedidas.add(secao);
+        }
+        Set<String> secoes = new LinkedHashSet<>();
+        for (String secao : SECOES) {
+            if (pedidas.contains(secao)) {
+                secoes.add(secao);
+            }
+        }
+        return secoes;
+    }
+
+    private static Set<String> lerCampos(String campos) {
+        if (campos == null || campos.isBlank()) {
+            return null;
+        }
+        Set<String> pedidos = new LinkedHashSet<>();
+        for (String c : campos.split(",")) {
+            String campo = c.trim();
+            if (campo.equals("id") || campo.equals("tipo")) {
+                continue;
+            }
+            if (!CAMPOS.contains(campo)) {
+                throw new ProjecaoInvalidaException("campo de dispositivo desconhecido '" + campo + "'; use " + CAMPOS);
+            }
+            pedidos.add(campo);
+        }
+        Set<String> selecionados = new LinkedHashSet<>();
+        for (String campo : CAMPOS) {
+            if (pedidos.contains(campo)) {
+                selecionados.add(campo);
+            }
+        }
+        return selecionados;
+    }
+
+    /**
+     * Métricas das montagens do estado.
+     *
+     * @return montagens, repetições por alterações no meio da montagem,
+     *         montagens que desistiram de uma fotografia consistente e
+     *         sincronizações por diferença
+     */
+    public Map<String, Object> metricas() {
+        Map<String, Object> obj = new LinkedHashMap<>();
+        obj.put("montagens", montagens.sum());
+        obj.put("repeticoes", repeticoes.sum());
+        obj.put("inconsistentes", inconsistentes.sum());
+        obj.put("diferencas", diferencas.sum());
+        obj.put("diferencasCompletas", diferencasCompletas.sum());
+        obj.put("recursosEnviados", recursosEnviados.sum());
+        return obj;
+    }
+}
@@ -0,0 +1,266 @@
+package engtelecom.std.smart_home.service;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import engtelecom.std.smart_home.entities.Cenario;
+import engtelecom.std.smart_home.entities.ExecucaoCenario;
+import engtelecom.std.smart_home.entities.ExecucaoEstado;
+import engtelecom.std.smart_home.entities.Prioridade;
+import engtelecom.std.smart_home.exceptions.CotaExcedidaException;
+import engtelecom.std.smart_home.exceptions.FilaDeExecucaoCheiaException;
+import engtelecom.std.smart_home.exceptions.RotinaNaoEncontradaException;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Serviço responsável pelas execuções assíncronas de cenários.
+ *
+ * As rotinas são enfileiradas em uma {@link FilaPrioridades} consumida por um
+ * número fixo de threads, liberando a thread da requisição HTTP. Cada faixa
+ * de prioridade tem a sua fila limitada, para que execuções em lote nunca
+ * ocupem o lugar das críticas. Entre duas ações, uma execução que não é
+ * crítica cede a sua thread às execuções críticas que estiverem esperando,
+ * que rodam ali mesmo antes de ela continuar. O acompanhamento de cada
+ * execução fica em um histórico limitado: quando a capacidade é atingida, as
+ * execuções finalizadas mais antigas são descartadas.
+ *
+ * O executor é compartilhado por todas as casas; para que uma casa não ocupe a
+ * fila sozinha, cada casa tem uma cota de execuções pendentes ou em andamento.
+ */
+@Component
+public class ExecucaoService {
+
+    private final CenarioService cenarioService;
+    private final FilaPrioridades<FutureTask<?>> fila;
+    private final List<Thread> threads = new ArrayList<>();
+    private final int tamanhoFila;
+    private final int capacidadeHistorico;
+
+    private final LongAdder preempcoes = new LongAdder();
+
+    // histórico em ordem de criação; acesso sempre sincronizado no próprio mapa
+    private final LinkedHashMap<Long, ExecucaoCenario> execucoes = new LinkedHashMap<>();
+    private static final AtomicLong contador = new AtomicLong();
+
+    /**
+     * Cria o serviço de execuções.
+     *
+     * A capacidade do histórico nunca é menor que o número de execuções que podem
+     * estar pendentes ou em andamento ao mesmo tempo (threads + filas), garantindo
+     * que sempre exista uma execução finalizada para ser descartada.
+     *
+     * @param cenarioService      serviço usado para executar as rotinas
+     * @param numeroThreads       número de threads que executam as rotinas
+     * @param tamanhoFila         número máximo de execuções aguardando em cada faixa
+     * @param capacidadeHistorico número máximo de execuções mantidas em memória
+     * @param pesoInterativa      peso da faixa interativa na divisão das threads
+     * @param pesoLote            peso da faixa de lote na divisão das threads
+     */
+    public ExecucaoService(CenarioService cenarioService,
+            @Value("${casa.execucoes.threads:2}") int numeroThreads,
+            @Value("${casa.execucoes.fila:100}") int tamanhoFila,
+            @Value("${casa.execucoes.historico:500}") int capacidadeHistorico,
+            @Value("${casa.prioridades.peso-interativa:8}") int pesoInterativa,
+            @Value("${casa.prioridades.peso-lote:1}") int pesoLote) {
+        this.cenarioService = cenarioService;
+        this.tamanhoFila = tamanhoFila;
+        this.capacidadeHistorico = Math.max(capacidadeHistorico,
+                numeroThreads + tamanhoFila * Prioridade.values().length);
+        this.fila = new FilaPrioridades<>(pesoInterativa, pesoLote);
+
+        for (int i = 1; i <= numeroThreads; i++) {
+            Thread t = new Thread(this::consumir, "execucao-cenario-" + i);
+            t.setDaemon(true);
+            threads.add(t);
+            t.start();
+        }
+    }
+
+    /**
+     * Enfileira a execução de um cenário, na faixa da thread atual
+     * ({@link PrioridadeAtual}, interativa se nenhuma estiver definida).
+     *
+     * @param casa      a casa do cenário
+     * @param cenarioId o ID do cenário a ser executado
+     * @return a execução criada, ou null se o cenário não existir
+     *
+     * @throws RotinaNaoEncontradaException se o cenário não possuir rotina
+     * @throws CotaExcedidaException        se a casa já tiver execuções demais pendentes ou em andamento
+     * @throws FilaDeExecucaoCheiaException se a fila de execuções da faixa estiver cheia
+     */
+    public ExecucaoCenario agendar(Casa casa, long cenarioId) {
+        Cenario c = cenarioService.buscarPorId(casa, cenarioId);
+        if (c == null) {
+            return null;
+        }
+
+        if (c.getRotina() == null || c.getRotina().isEmpty()) {
+            throw new RotinaNaoEncontradaException();
+        }
+
+        if (casa.execucoesAtivas.incrementAndGet() > casa.getCotaExecucoes()) {
+            casa.execucoesAtivas.decrementAndGet();
+            throw new CotaExcedidaException(casa.getId(), "execuções simultâneas", casa.getCotaExecucoes());
+        }
+
+        Prioridade prioridade = PrioridadeAtual.obter(Prioridade.INTERATIVA);
+        ExecucaoCenario execucao = new ExecucaoCenario(contador.incrementAndGet(), casa.getId(), cenarioId,
+                c.getRotina().size(), prioridade);
+        // a cota é liberada quando a execução termina, inclusive se for cancelada antes de começar
+        execucao.setAoFinalizar(casa.execucoesAtivas::decrementAndGet);
+
+        synchronized (execucoes) {
+            FutureTask<?> tarefa = new FutureTask<>(() -> executar(casa, execucao), null);
+            if (!fila.adicionar(prioridade, tarefa, tamanhoFila)) {
+                casa.execucoesAtivas.decrementAndGet();
+                throw new FilaDeExecucaoCheiaException();
+            }
+            execucao.setTarefa(tarefa);
+            execucoes.put(execucao.getId(), execucao);
+            descartarExcedentes();
+        }
+
+        return execucao;
+    }
+
+    /**
+     * Busca uma execução pelo seu ID.
+     *
+     * @param casa a casa da execução
+     * @param id   o ID da execução
+     * @return a execução encontrada ou null se não existir, for de outra casa
+     *         ou já tiver sido descartada
+     */
+    public ExecucaoCenario buscarPorId(Casa casa, long id) {
+        ExecucaoCenario e;
+        synchronized (execucoes) {
+            e = execucoes.get(id);
+        }
+        return e != null && e.getCasaId() == casa.getId() ? e : null;
+    }
+
+    /**
+     * Busca as execuções de uma casa mantidas no histórico, da mais antiga para
+     * a mais recente.
+     *
+     * @param casa a casa consultada
+     * @return lista de execuções
+     */
+    public List<ExecucaoCenario> buscarTodas(Casa casa) {
+        List<ExecucaoCenario> lista = new ArrayList<>();
+        synchronized (execucoes) {
+            for (ExecucaoCenario e : execucoes.values()) {
+                if (e.getCasaId() == casa.getId()) {
+                    lista.add(e);
+                }
+            }
+        }
+        return lista;
+    }
+
+    /**
+     * Número de execuções aguardando na fila, somando todas as faixas.
+     *
+     * @return tamanho atual da fila
+     */
+    public int tamanhoFila() {
+        return fila.tamanho();
+    }
+
+    /**
+     * Métricas das execuções assíncronas.
+     *
+     * @return execuções aguardando em cada faixa e vezes em que uma execução
+     *         cedeu a sua thread a uma execução crítica
+     */
+    public Map<String, Object> metricas() {
+        Map<String, Object> aguardando = new LinkedHashMap<>();
+        for (Prioridade p : Prioridade.values()) {
+            aguardando.put(p.getNome(), fila.tamanho(p));
+        }
+        Map<String, Object> obj = new LinkedHashMap<>();
+        obj.put("threads", threads.size());
+        obj.put("aguardando", aguardando);
+        obj.put("preempcoes", preempcoes.sum());
+        return obj;
+    }
+
+    /**
+     * Laço das threads que executam as rotinas.
+     */
+    private void consumir() {
+        try {
+            while (true) {
+                fila.aguardar().run();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Executa, na thread atual, as execuções críticas que estiverem esperando.
+     * Chamado entre duas ações de uma execução que não é crítica.
+     */
+    private void cederVez() {
+        FutureTask<?> tarefa;
+        while ((tarefa = fila.retirarCritico()) != null) {
+            preempcoes.increment();
+            tarefa.run();
+        }
+    }
+
+    /**
+     * Executa a rotina do cenário na faixa da execução, atualizando o seu estado.
+     *
+     * @param casa     casa do cenário
+     * @param execucao execução a ser processada
+     */
+    private void executar(Casa casa, ExecucaoCenario execucao) {
+        if (!execucao.iniciar()) {
+            return;
+        }
+
+        Runnable entreAcoes = execucao.prioridade() == Prioridade.CRITICA ? null : this::cederVez;
+        try {
+            PrioridadeAtual.executar(execucao.prioridade(),
+                    () -> cenarioService.executarCenario(casa, execucao, entreAcoes));
+            if (execucao.isInterrompida()) {
+                execucao.finalizar(ExecucaoEstado.CANCELADA, null);
+            } else {
+                execucao.finalizar(ExecucaoEstado.CONCLUIDA, null);
+            }
+        } catch (RuntimeException e) {
+            execucao.finalizar(ExecucaoEstado.FALHOU, e.getMessage());
+        }
+    }
+
+    /**
+     * Remove as execuções finalizadas mais antigas até o histórico voltar à sua
+     * capacidade. Deve ser chamado com o monitor de {@code execucoes}.
+     */
+    private void descartarExcedentes() {
+        Iterator<ExecucaoCenario> it = execucoes.values().iterator();
+        while (execucoes.size() > capacidadeHistorico && it.hasNext()) {
+            if (it.next().isFinalizada()) {
+                it.remove();
+            }
+        }
+    }
+
+    @PreDestroy
+    void encerrar() {
+        for (Thread t : threads) {
+            t.interrupt();
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package engtelecom.std.smart_home.service;
+
+import java.util.ArrayDeque;
+
+import engtelecom.std.smart_home.entities.Prioridade;
+
+/**
+ * Fila com uma faixa por {@link Prioridade}, consumida por um conjunto de
+ * threads.
+ *
+ * A faixa crítica é sempre atendida primeiro. As faixas interativa e de lote
+ * dividem o restante por peso (escalonamento por passos): com pesos 8 e 1,
+ * a cada 9 itens retirados com as duas faixas ocupadas, 8 são interativos. Uma
+ * faixa que fica vazia não acumula crédito para depois.
+ */
+final class FilaPrioridades<T> {
+
+    private static final long PASSO_BASE = 1L << 20;
+
+    private final ArrayDeque<T>[] faixas;
+    private final long[] passo;
+    private final long[] passe;
+    private long tempoVirtual;
+
+    // lido sem o monitor pelos consumidores que verificam se devem ceder a vez
+    private volatile int criticos;
+
+    /**
+     * @param pesoInterativa peso da faixa interativa
+     * @param pesoLote       peso da faixa de lote
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    FilaPrioridades(int pesoInterativa, int pesoLote) {
+        int n = Prioridade.values().length;
+        this.faixas = new ArrayDeque[n];
+        for (int i = 0; i < n; i++) {
+            faixas[i] = new ArrayDeque<>();
+        }
+        this.passo = new long[n];
+        this.passe = new long[n];
+        passo[Prioridade.INTERATIVA.ordinal()] = PASSO_BASE / Math.max(1, pesoInterativa);
+        passo[Prioridade.LOTE.ordinal()] = PASSO_BASE / Math.max(1, pesoLote);
+    }
+
+    /**
+     * Adiciona um item ao fim da sua faixa.
+     *
+     * @param prioridade faixa do item
+     * @param item       item adicionado
+     * @param capacidade tamanho máximo da faixa (0 para ilimitado)
+     * @return false se a faixa estiver cheia
+     */
+    synchronized boolean adicionar(Prioridade prioridade, T item, int capacidade) {
+        int i = prioridade.ordinal();
+        ArrayDeque<T> faixa = faixas[i];
+        if (capacidade > 0 && faixa.size() >= capacidade) {
+            return false;
+        }
+        if (faixa.isEmpty()) {
+            passe[i] = Math.max(passe[i], tempoVirtual);
+        }
+        faixa.add(item);
+        if (prioridade == Prioridade.CRITICA) {
+            criticos++;
+        }
+        notify();
+        return true;
+    }
+
+    /**
+     * Retira o próximo item, sem esperar.
+     *
+     * @return o item, ou null se todas as faixas estiverem vazias
+     */
+    synchronized T retirar() {
+        T item = retirarCritico();
+        if (item != null) {
+            return item;
+        }
+        int escolhida = -1;
+        for (int i = Prioridade.INTERATIVA.ordinal(); i < faixas.length; i++) {
+            if (!faixas[i].isEmpty() && (escolhida < 0 || passe[i] < passe[escolhida])) {
+                escolhida = i;
+            }
+        }
+        if (escolhida < 0) {
+            return null;
+        }
+        tempoVirtual = passe[escolhida];
+        passe[escolhida] += passo[escolhida];
+        return faixas[escolhida].poll();
+    }
+
+    /**
+     * Retira o próximo item, esperando se todas as faixas estiverem vazias.
+     */
+    synchronized T aguardar() throws InterruptedException {
+        T item;
+        while ((item = retirar()) == null) {
+            wait();
+        }
+        return item;
+    }
+
+    /**
+     * Retira o próximo item da faixa crítica, sem esperar.
+     *
+     * @return o item, ou null se a faixa crítica estiver vazia
+     */
+    synchronized T retirarCritico() {
+        T item = faixas[Prioridade.CRITICA.ordinal()].poll();
+        if (item != null) {
+            criticos--;
+        }
+        return item;
+    }
+
+    /**
+     * @return true se houver itens críticos esperando
+     */
+    boolean temCritico() {
+        return criticos > 0;
+    }
+
+    synchronized int tamanho(Prioridade prioridade) {
+        return faixas[prioridade.ordinal()].size();
+    }
+
+    synchronized int tamanho() {
+        int total = 0;
+        for (ArrayDeque<T> faixa : faixas) {
+            total += faixa.size();
+        }
+        return total;
+    }
+}
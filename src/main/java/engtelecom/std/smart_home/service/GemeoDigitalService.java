@@ -0,0 +1,551 @@
+package engtelecom.std.smart_home.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import engtelecom.std.smart_home.driver.DriverDispositivo;
+import engtelecom.std.smart_home.entities.Dispositivo;
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Serviço que mantém o gêmeo digital de cada dispositivo e reconcilia o estado
+ * desejado com o estado reportado pelo hardware.
+ *
+ * O estado desejado é o próprio {@link Dispositivo}, alterado pelas requisições
+ * HTTP e pelos cenários. O estado reportado é o que o driver confirmou ter
+ * aplicado no dispositivo físico. Um laço periódico envia, em lotes, a
+ * diferença entre os dois para os dispositivos pendentes; comandos que falham
+ * ou expiram são reenviados com espera exponencial.
+ *
+ * Cada dispositivo e cada gateway do driver têm um {@link Disjuntor}: depois
+ * de muitas falhas seguidas, os comandos deixam de ser enviados (a não ser
+ * uma sondagem de tempos em tempos) e quem espera uma confirmação desiste na
+ * hora. Opcionalmente, um comando sem resposta depois de {@code hedgeMs} é
+ * enviado de novo, valendo a primeira confirmação, o que corta a cauda de
+ * latência de dispositivos lentos; os comandos carregam o estado absoluto, e
+ * repeti-los não tem efeito colateral.
+ *
+ * Com a replicação ativa, só o líder fala com o hardware; nos seguidores os
+ * gêmeos acompanham o estado desejado, mas a reconciliação fica parada.
+ */
+@Component
+public class GemeoDigitalService implements OuvinteDispositivo {
+
+    private final DispositivoService dispositivoService;
+    private final DriverDispositivo driver;
+    private final ReplicacaoService replicacaoService;
+
+    // gêmeos indexados pela chave global do dispositivo (casa e ID)
+    private final ConcurrentHashMap<Long, Gemeo> gemeos = new ConcurrentHashMap<>();
+    private final Set<Long> pendentes = ConcurrentHashMap.newKeySet();
+    private final ConcurrentHashMap<Integer, Disjuntor> disjuntoresGateway = new ConcurrentHashMap<>();
+
+    private final int lote;
+    private final long timeoutMs;
+    private final long backoffInicialMs;
+    private final long backoffMaximoMs;
+    private final int limiarDispositivo;
+    private final int limiarGateway;
+    private final long abertoNanos;
+    private final long hedgeMs;
+
+    private final long inicio = System.nanoTime();
+    private final LongAdder enviados = new LongAdder();
+    private final LongAdder confirmados = new LongAdder();
+    private final LongAdder falhas = new LongAdder();
+    private final LongAdder expirados = new LongAdder();
+    private final LongAdder convergencias = new LongAdder();
+    private final LongAdder somaConvergenciaNanos = new LongAdder();
+    private final LongAccumulator maximaConvergenciaNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder bloqueados = new LongAdder();
+    private final LongAdder aberturasDispositivo = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder hedgesVencedores = new LongAdder();
+    private final Map<String, LongAdder> confirmacoes = new ConcurrentHashMap<>();
+
+    /**
+     * Cria o serviço de gêmeos digitais.
+     *
+     * @param dispositivoService serviço com o estado desejado dos dispositivos
+     * @param driver             driver usado para falar com os dispositivos físicos
+     * @param replicacaoService  replicação, consultada para saber se este nó é o líder
+     * @param lote               número máximo de comandos enviados por rodada
+     * @param timeoutMs          prazo para o dispositivo confirmar um comando
+     * @param backoffInicialMs   espera antes da primeira nova tentativa
+     * @param backoffMaximoMs    espera máxima entre tentativas
+     * @param limiarDispositivo  falhas seguidas que abrem o disjuntor de um dispositivo
+     * @param limiarGateway      falhas seguidas que abrem o disjuntor de um gateway
+     * @param abertoMs           intervalo entre sondagens com o disjuntor aberto
+     * @param hedgeMs            espera antes de repetir um comando sem resposta (0 desativa)
+     */
+    public GemeoDigitalService(DispositivoService dispositivoService, DriverDispositivo driver,
+            ReplicacaoService replicacaoService,
+            @Value("${casa.reconciliacao.lote:256}") int lote,
+            @Value("${casa.reconciliacao.timeout-ms:2000}") long timeoutMs,
+            @Value("${casa.reconciliacao.backoff-inicial-ms:100}") long backoffInicialMs,
+            @Value("${casa.reconciliacao.backoff-maximo-ms:10000}") long backoffMaximoMs,
+            @Value("${casa.reconciliacao.disjuntor.falhas:5}") int limiarDispositivo,
+            @Value("${casa.reconciliacao.disjuntor.falhas-gateway:50}") int limiarGateway,
+            @Value("${casa.reconciliacao.disjuntor.aberto-ms:5000}") long abertoMs,
+            @Value("${casa.reconciliacao.hedge-ms:0}") long hedgeMs) {
+        this.dispositivoService = dispositivoService;
+        this.driver = driver;
+        this.replicacaoService = replicacaoService;
+        this.lote = lote;
+        this.timeoutMs = timeoutMs;
+        this.backoffInicialMs = backoffInicialMs;
+        this.backoffMaximoMs = backoffMaximoMs;
+        this.limiarDispositivo = limiarDispositivo;
+        this.limiarGateway = limiarGateway;
+        this.abertoNanos = TimeUnit.MILLISECONDS.toNanos(abertoMs);
+        this.hedgeMs = hedgeMs;
+    }
+
+    /**
+     * Passa a ouvir os cadastros e as alterações dos dispositivos.
+     */
+    @PostConstruct
+    void iniciar() {
+        dispositivoService.adicionarOuvinte(this);
+    }
+
+    /**
+     * O estado reportado de um dispositivo recém-cadastrado é desconhecido,
+     * então ele começa pendente.
+     */
+    @Override
+    public void dispositivoCadastrado(Dispositivo dispositivo) {
+        marcarPendente(dispositivo);
+    }
+
+    @Override
+    public void dispositivoAlterado(Dispositivo dispositivo, Map<String, Object> alteracoes) {
+        marcarPendente(dispositivo);
+    }
+
+    /**
+     * Obtém o gêmeo digital de um dispositivo: estado desejado, estado reportado
+     * e a diferença ainda não confirmada.
+     *
+     * @param casa casa do dispositivo
+     * @param id   ID do dispositivo
+     * @return mapa com o gêmeo digital, ou null se o dispositivo não existir
+     */
+    public Map<String, Object> obterGemeo(Casa casa, long id) {
+        Dispositivo d = dispositivoService.buscarPorId(casa, id);
+        if (d == null) {
+            return null;
+        }
+
+        Gemeo g = gemeos.computeIfAbsent(d.chave(), chave -> novoGemeo(d));
+        Map<String, Object> desejado = d.obterEstado();
+        Map<String, Object> obj = new LinkedHashMap<>();
+
+        synchronized (g) {
+            Map<String, Object> pendente = diferenca(desejado, g.reportado);
+            obj.put("casaId", casa.getId());
+            obj.put("dispositivoId", id);
+            obj.put("desejado", desejado);
+            obj.put("reportado", new HashMap<>(g.reportado));
+            obj.put("pendente", pendente);
+            obj.put("sincronizado", pendente.isEmpty());
+            obj.put("tentativas", g.tentativas);
+            obj.put("ultimaFalha", g.ultimaFalha);
+            obj.put("disjuntor", g.disjuntor.getEstado().name().toLowerCase());
+            obj.put("gateway", g.gateway);
+        }
+
+        return obj;
+    }
+
+    /**
+     * Registra um valor informado espontaneamente pelo dispositivo (telemetria)
+     * no estado reportado.
+     *
+     * Se o valor mudou, o dispositivo volta a ficar pendente: caso o estado
+     * reportado tenha se afastado do desejado, a reconciliação reenvia a
+     * diferença.
+     *
+     * @param dispositivo dispositivo que enviou o relatório
+     * @param campo       nome do campo, igual ao usado no JSON
+     * @param valor       valor reportado
+     * @return false se o dispositivo não tiver gêmeo digital
+     */
+    public boolean registrarReportado(Dispositivo dispositivo, String campo, Object valor) {
+        Gemeo g = gemeos.get(dispositivo.chave());
+        if (g == null) {
+            return false;
+        }
+
+        synchronized (g) {
+            Object anterior = g.reportado.put(campo, valor);
+            if (!valor.equals(anterior)) {
+                marcarPendente(dispositivo);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Espera o hardware confirmar o estado desejado atual de um dispositivo.
+     *
+     * @param dispositivo dispositivo aguardado
+     * @return futuro completado com "confirmada" quando o gêmeo convergir, ou
+     *         com "circuito-aberto" se o disjuntor do dispositivo ou do seu
+     *         gateway estiver (ou ficar) aberto; nunca completa sozinho por
+     *         prazo, o que fica a cargo de quem espera
+     */
+    public CompletableFuture<String> aguardarConfirmacao(Dispositivo dispositivo) {
+        Gemeo g = gemeos.computeIfAbsent(dispositivo.chave(), chave -> novoGemeo(dispositivo));
+        synchronized (g) {
+            if (diferenca(dispositivo.obterEstado(), g.reportado).isEmpty()) {
+                return CompletableFuture.completedFuture("confirmada");
+            }
+            if (g.disjuntor.isAberto() || disjuntorGateway(g.gateway).isAberto()) {
+                return CompletableFuture.completedFuture("circuito-aberto");
+            }
+            // esperas vencidas pelo prazo são descartadas aqui, sem crescer sem limite
+            g.aguardando.removeIf(CompletableFuture::isDone);
+            CompletableFuture<String> confirmacao = new CompletableFuture<>();
+            g.aguardando.add(confirmacao);
+            return confirmacao;
+        }
+    }
+
+    /**
+     * Espera, em paralelo e com um único prazo, a confirmação dos dispositivos
+     * de um conjunto de ações já aplicadas, e registra o desfecho de cada uma
+     * no campo "confirmacao": "confirmada", "circuito-aberto" ou "expirada".
+     *
+     * O prazo vale para o conjunto inteiro: um dispositivo morto custa no
+     * máximo {@code prazoMs}, e um dispositivo com o disjuntor aberto não custa
+     * nada.
+     *
+     * @param casa    casa dos dispositivos
+     * @param acoes   ações com "dispositivoId", alteradas no lugar
+     * @param prazoMs prazo máximo de espera, em milissegundos
+     */
+    public void confirmar(Casa casa, List<Map<String, Object>> acoes, long prazoMs) {
+        List<CompletableFuture<String>> esperas = new ArrayList<>(acoes.size());
+        for (Map<String, Object> acao : acoes) {
+            Dispositivo d = dispositivoService.buscarPorId(casa, Long.parseLong(acao.get("dispositivoId").toString()));
+            CompletableFuture<String> espera = d == null
+                    ? CompletableFuture.completedFuture("expirada")
+                    : aguardarConfirmacao(d).copy();
+            esperas.add(espera.completeOnTimeout("expirada", prazoMs, TimeUnit.MILLISECONDS));
+        }
+        CompletableFuture.allOf(esperas.toArray(CompletableFuture[]::new)).join();
+        for (int i = 0; i < acoes.size(); i++) {
+            String confirmacao = esperas.get(i).join();
+            confirmacoes.computeIfAbsent(confirmacao, k -> new LongAdder()).increment();
+            acoes.get(i).put("confirmacao", confirmacao);
+        }
+    }
+
+    /**
+     * Métricas da reconciliação e do driver.
+     *
+     * @return mapa com as métricas
+     */
+    public Map<String, Object> metricas() {
+        double segundos = Math.max(1e-9, (System.nanoTime() - inicio) / 1e9);
+        long n = convergencias.sum();
+
+        Map<String, Object> obj = new LinkedHashMap<>();
+        obj.put("driver", driver.getNome());
+        obj.put("pendentes", pendentes.size());
+        obj.put("enviados", enviados.sum());
+        obj.put("confirmados", confirmados.sum());
+        obj.put("falhas", falhas.sum());
+        obj.put("expirados", expirados.sum());
+        obj.put("confirmadosPorSegundo", confirmados.sum() / segundos);
+        obj.put("convergencias", n);
+        obj.put("tempoMedioConvergenciaMs", n == 0 ? 0 : somaConvergenciaNanos.sum() / n / 1_000_000.0);
+        obj.put("tempoMaximoConvergenciaMs", maximaConvergenciaNanos.get() / 1_000_000.0);
+        obj.put("bloqueadosPorDisjuntor", bloqueados.sum());
+        long abertos = 0;
+        for (Gemeo g : gemeos.values()) {
+            if (g.disjuntor.isAberto()) {
+                abertos++;
+            }
+        }
+        obj.put("disjuntoresAbertos", abertos);
+        obj.put("aberturasDisjuntor", aberturasDispositivo.sum());
+        Map<String, Object> gateways = new LinkedHashMap<>();
+        for (Map.Entry<Integer, Disjuntor> e : disjuntoresGateway.entrySet()) {
+            gateways.put(String.valueOf(e.getKey()), Map.of(
+                    "estado", e.getValue().getEstado().name().toLowerCase(),
+                    "aberturas", e.getValue().getAberturas()));
+        }
+        obj.put("gateways", gateways);
+        obj.put("hedges", hedges.sum());
+        obj.put("hedgesVencedores", hedgesVencedores.sum());
+        Map<String, Object> porDesfecho = new LinkedHashMap<>();
+        confirmacoes.forEach((k, v) -> porDesfecho.put(k, v.sum()));
+        obj.put("confirmacoes", porDesfecho);
+        obj.put("metricasDriver", driver.metricas());
+        return obj;
+    }
+
+    /**
+     * Rodada de reconciliação: para cada dispositivo pendente que não tenha
+     * comando em andamento nem esteja aguardando nova tentativa, envia a
+     * diferença entre o estado desejado e o reportado.
+     */
+    @Scheduled(fixedDelayString = "${casa.reconciliacao.intervalo-ms:100}")
+    public void reconciliar() {
+        if (!replicacaoService.isLider()) {
+            return;
+        }
+        long agora = System.nanoTime();
+        int enviadosNaRodada = 0;
+
+        for (Long chave : pendentes) {
+            if (enviadosNaRodada >= lote) {
+                break;
+            }
+
+            Gemeo g = gemeos.get(chave);
+            if (g == null) {
+                pendentes.remove(chave);
+                continue;
+            }
+            Dispositivo d = g.dispositivo;
+
+            Map<String, Object> alteracoes;
+            synchronized (g) {
+                if (g.emVoo || g.proximaTentativa - agora > 0) {
+                    continue;
+                }
+                alteracoes = diferenca(d.obterEstado(), g.reportado);
+                if (alteracoes.isEmpty()) {
+                    convergiu(g);
+                    continue;
+                }
+                // o disjuntor do dispositivo vem primeiro, para não gastar a sondagem do gateway
+                if (!g.disjuntor.permitir(agora) || !disjuntorGateway(g.gateway).permitir(agora)) {
+                    bloqueados.increment();
+                    continue;
+                }
+                g.emVoo = true;
+            }
+
+            enviar(g, alteracoes);
+            enviadosNaRodada++;
+        }
+    }
+
+    /**
+     * Marca um dispositivo como pendente de reconciliação.
+     *
+     * @param d dispositivo
+     */
+    private void marcarPendente(Dispositivo d) {
+        Gemeo g = gemeos.computeIfAbsent(d.chave(), chave -> novoGemeo(d));
+        synchronized (g) {
+            if (g.pendenteDesde == 0) {
+                g.pendenteDesde = System.nanoTime();
+            }
+            pendentes.add(g.chave);
+        }
+    }
+
+    private Gemeo novoGemeo(Dispositivo d) {
+        return new Gemeo(d, new Disjuntor(limiarDispositivo, abertoNanos), driver.gateway(d.chave()));
+    }
+
+    private Disjuntor disjuntorGateway(int gateway) {
+        return disjuntoresGateway.computeIfAbsent(gateway, k -> new Disjuntor(limiarGateway, abertoNanos));
+    }
+
+    /**
+     * Envia as alterações pelo driver e trata a resposta. Com o hedge ativo,
+     * um comando ainda sem resposta depois de {@code hedgeMs} é enviado de
+     * novo; vale a primeira confirmação, e a falha da cópia é ignorada.
+     */
+    private void enviar(Gemeo g, Map<String, Object> alteracoes) {
+        enviados.increment();
+
+        CompletableFuture<Map<String, Object>> resposta = new CompletableFuture<>();
+        driver.enviar(g.chave, alteracoes).whenComplete((confirmado, erro) -> {
+            if (erro != null) {
+                resposta.completeExceptionally(erro);
+            } else {
+                resposta.complete(confirmado);
+            }
+        });
+        if (hedgeMs > 0 && hedgeMs < timeoutMs) {
+            CompletableFuture.delayedExecutor(hedgeMs, TimeUnit.MILLISECONDS).execute(() -> {
+                if (resposta.isDone()) {
+                    return;
+                }
+                hedges.increment();
+                enviados.increment();
+                driver.enviar(g.chave, alteracoes).thenAccept(confirmado -> {
+                    if (resposta.complete(confirmado)) {
+                        hedgesVencedores.increment();
+                    }
+                });
+            });
+        }
+
+        resposta.orTimeout(timeoutMs, TimeUnit.MILLISECONDS)
+                .whenComplete((confirmado, erro) -> {
+                    boolean gatewayAbriu = false;
+                    synchronized (g) {
+                        g.emVoo = false;
+                        Disjuntor gateway = disjuntorGateway(g.gateway);
+
+                        if (erro != null) {
+                            registrarFalha(g, erro);
+                            long agora = System.nanoTime();
+                            if (g.disjuntor.falha(agora)) {
+                                aberturasDispositivo.increment();
+                            }
+                            gatewayAbriu = gateway.falha(agora);
+                            if (g.disjuntor.isAberto() || gateway.isAberto()) {
+                                liberar(g, "circuito-aberto");
+                            }
+                        } else {
+                            g.disjuntor.sucesso();
+                            gateway.sucesso();
+                        }
+                    }
+                    if (gatewayAbriu) {
+                        liberarGateway(g.gateway);
+                    }
+                    if (erro != null) {
+                        return;
+                    }
+
+                    synchronized (g) {
+                        confirmados.increment();
+                        g.tentativas = 0;
+                        g.ultimaFalha = null;
+                        g.proximaTentativa = 0;
+                        g.reportado.putAll(confirmado);
+
+                        // verifica a convergência já na confirmação, sem esperar a próxima rodada
+                        if (diferenca(g.dispositivo.obterEstado(), g.reportado).isEmpty()) {
+                            convergiu(g);
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Entrega um desfecho a quem espera a confirmação de um gêmeo. Deve ser
+     * chamado com o monitor do gêmeo.
+     */
+    private static void liberar(Gemeo g, String desfecho) {
+        for (CompletableFuture<String> espera : g.aguardando) {
+            espera.complete(desfecho);
+        }
+        g.aguardando.clear();
+    }
+
+    /**
+     * Libera quem espera por dispositivos de um gateway cujo disjuntor acabou
+     * de abrir. Os monitores dos gêmeos são tomados um de cada vez.
+     */
+    private void liberarGateway(int gateway) {
+        for (Gemeo g : gemeos.values()) {
+            if (g.gateway == gateway) {
+                synchronized (g) {
+                    liberar(g, "circuito-aberto");
+                }
+            }
+        }
+    }
+
+    /**
+     * Registra uma falha e agenda a próxima tentativa com espera exponencial e
+     * variação aleatória. Deve ser chamado com o monitor do gêmeo.
+     */
+    private void registrarFalha(Gemeo g, Throwable erro) {
+        Throwable causa = erro.getCause() != null ? erro.getCause() : erro;
+        if (causa instanceof TimeoutException) {
+            expirados.increment();
+            g.ultimaFalha = "sem resposta do dispositivo";
+        } else {
+            falhas.increment();
+            g.ultimaFalha = causa.getMessage();
+        }
+
+        g.tentativas++;
+        long espera = Math.min(backoffMaximoMs, backoffInicialMs << Math.min(g.tentativas - 1, 20));
+        espera = espera / 2 + ThreadLocalRandom.current().nextLong(espera / 2 + 1);
+        g.proximaTentativa = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(espera);
+    }
+
+    /**
+     * Registra a convergência do gêmeo e o retira dos pendentes. Deve ser
+     * chamado com o monitor do gêmeo.
+     */
+    private void convergiu(Gemeo g) {
+        if (g.pendenteDesde != 0) {
+            long tempo = System.nanoTime() - g.pendenteDesde;
+            convergencias.increment();
+            somaConvergenciaNanos.add(tempo);
+            maximaConvergenciaNanos.accumulate(tempo);
+            g.pendenteDesde = 0;
+        }
+        pendentes.remove(g.chave);
+        liberar(g, "confirmada");
+    }
+
+    /**
+     * Campos do estado desejado que ainda não constam (ou diferem) no estado reportado.
+     */
+    private static Map<String, Object> diferenca(Map<String, Object> desejado, Map<String, Object> reportado) {
+        Map<String, Object> diferenca = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> campo : desejado.entrySet()) {
+            if (!reportado.containsKey(campo.getKey())
+                    || !Objects.equals(reportado.get(campo.getKey()), campo.getValue())) {
+                diferenca.put(campo.getKey(), campo.getValue());
+            }
+        }
+        return diferenca;
+    }
+
+    /**
+     * Gêmeo digital de um dispositivo. Todos os campos são protegidos pelo
+     * monitor do próprio objeto.
+     */
+    private static final class Gemeo {
+        private final long chave;
+        private final Dispositivo dispositivo;
+        private final Disjuntor disjuntor;
+        private final int gateway;
+        private final Map<String, Object> reportado = new HashMap<>();
+        private final List<CompletableFuture<String>> aguardando = new ArrayList<>();
+        private long pendenteDesde;
+        private long proximaTentativa;
+        private int tentativas;
+        private boolean emVoo;
+        private String ultimaFalha;
+
+        private Gemeo(Dispositivo dispositivo, Disjuntor disjuntor, int gateway) {
+            this.chave = dispositivo.chave();
+            this.dispositivo = dispositivo;
+            this.disjuntor = disjuntor;
+            this.gateway = gateway;
+        }
+    }
+}
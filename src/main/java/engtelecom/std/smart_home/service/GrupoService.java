@@ -0,0 +1,331 @@
+package engtelecom.std.smart_home.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.stereotype.Component;
+
+import engtelecom.std.smart_home.entities.Dispositivo;
+import engtelecom.std.smart_home.entities.Grupo;
+import engtelecom.std.smart_home.exceptions.DispositivoNaoEncontradoException;
+import engtelecom.std.smart_home.exceptions.GrupoInvalidoException;
+
+/**
+ * Serviço para gerenciar os grupos de dispositivos definidos pelo usuário,
+ * que podem conter outros grupos em vários níveis.
+ *
+ * Os grupos de cada casa ficam na partição da própria {@link Casa}, e as
+ * alterações são feitas com o monitor da casa. Os membros achatados de cada
+ * grupo são mantidos em cache pela {@link HierarquiaGrupos} da casa, de modo
+ * que listar ou comandar um grupo custa o número de membros, não a
+ * profundidade da hierarquia.
+ */
+@Component
+public class GrupoService {
+
+    private final CasaService casaService;
+    private final DispositivoService dispositivoService;
+    private final DiarioAlteracoes diario;
+
+    public GrupoService(CasaService casaService, DispositivoService dispositivoService, DiarioAlteracoes diario) {
+        this.casaService = casaService;
+        this.dispositivoService = dispositivoService;
+        this.diario = diario;
+    }
+
+    /**
+     * Cadastra um novo grupo na casa.
+     *
+     * @param casa casa do grupo
+     * @param body mapa com "nome" e, opcionalmente, "dispositivos" e "subgrupos" (listas de IDs)
+     * @return o grupo cadastrado, com o ID atribuído
+     *
+     * @throws GrupoInvalidoException            se o corpo for inválido ou um subgrupo não existir
+     * @throws DispositivoNaoEncontradoException se algum dispositivo não existir
+     */
+    public Grupo cadastrarGrupo(Casa casa, Map<String, Object> body) {
+        Grupo grupo = new Grupo();
+        preencher(casa, grupo, body);
+        synchronized (casa) {
+            verificarSubgrupos(casa, grupo);
+            grupo.setCasaId(casa.getId());
+            grupo.setId(casa.contadorGrupos.incrementAndGet());
+            // um grupo novo não é subgrupo de ninguém, logo não pode formar ciclo
+            casa.hierarquia.definir(grupo.getId(), grupo.getDispositivos(), grupo.getSubgrupos(), false);
+            casa.grupos.put(grupo.getId(), grupo);
+            diario.registrarGrupo(grupo);
+        }
+        return grupo;
+    }
+
+    /**
+     * Substitui o nome, os dispositivos e os subgrupos de um grupo.
+     *
+     * @param casa casa do grupo
+     * @param id   ID do grupo
+     * @param body mapa com "nome" e, opcionalmente, "dispositivos" e "subgrupos"
+     * @return o grupo atualizado, ou null se não existir
+     *
+     * @throws GrupoInvalidoException            se o corpo for inválido, um subgrupo não
+     *                                           existir ou criar um ciclo
+     * @throws DispositivoNaoEncontradoException se algum dispositivo não existir
+     */
+    public Grupo atualizarGrupo(Casa casa, long id, Map<String, Object> body) {
+        Grupo novo = new Grupo();
+        preencher(casa, novo, body);
+        synchronized (casa) {
+            Grupo existente = casa.grupos.get(id);
+            if (existente == null) {
+                return null;
+            }
+            verificarSubgrupos(casa, novo);
+            casa.hierarquia.definir(id, novo.getDispositivos(), novo.getSubgrupos(), true);
+            existente.setNome(novo.getNome());
+            existente.setDispositivos(novo.getDispositivos());
+            existente.setSubgrupos(novo.getSubgrupos());
+            diario.registrarGrupo(existente);
+            return existente;
+        }
+    }
+
+    /**
+     * Remove um grupo, retirando-o também dos grupos que o continham.
+     *
+     * @param casa casa do grupo
+     * @param id   ID do grupo
+     * @return o grupo removido, ou null se não existir
+     */
+    public Grupo removerGrupo(Casa casa, long id) {
+        synchronized (casa) {
+            Grupo removido = casa.grupos.remove(id);
+            if (removido == null) {
+                return null;
+            }
+            casa.hierarquia.remover(id);
+            diario.registrarRemocaoGrupo(casa, id);
+
+            for (Grupo pai : casa.grupos.values()) {
+                if (pai.getSubgrupos().contains(id)) {
+                    ArrayList<Long> subgrupos = new ArrayList<>(pai.getSubgrupos());
+                    subgrupos.removeIf(s -> s == id);
+                    pai.setSubgrupos(subgrupos);
+                    casa.hierarquia.definir(pai.getId(), pai.getDispositivos(), subgrupos, false);
+                    diario.registrarGrupo(pai);
+                }
+            }
+            return removido;
+        }
+    }
+
+    /**
+     * Aplica um grupo recebido pela replicação, com o mesmo ID do nó de
+     * origem, substituindo o grupo local se houver. Os subgrupos podem chegar
+     * depois do grupo que os contém.
+     *
+     * @param casa  casa do grupo
+     * @param id    ID do grupo na casa
+     * @param dados nome, dispositivos e subgrupos, no formato de {@link DiarioAlteracoes}
+     */
+    void restaurarGrupo(Casa casa, long id, Map<String, Object> dados) {
+        Grupo grupo = new Grupo();
+        grupo.setCasaId(casa.getId());
+        grupo.setId(id);
+        grupo.setNome(String.valueOf(dados.get("nome")));
+        grupo.setDispositivos(lerIds(dados.get("dispositivos")));
+        grupo.setSubgrupos(lerIds(dados.get("subgrupos")));
+        synchronized (casa) {
+            casa.hierarquia.definir(id, grupo.getDispositivos(), grupo.getSubgrupos(), false);
+            casa.grupos.put(id, grupo);
+            casa.contadorGrupos.accumulateAndGet(id, Math::max);
+        }
+    }
+
+    /**
+     * Remove um grupo por ordem da replicação; os grupos que o continham
+     * chegam em registros próprios.
+     */
+    void restaurarRemocao(Casa casa, long id) {
+        synchronized (casa) {
+            casa.grupos.remove(id);
+            casa.hierarquia.remover(id);
+        }
+    }
+
+    /**
+     * Busca todos os grupos da casa, em ordem de ID.
+     */
+    public ArrayList<Grupo> buscarTodos(Casa casa) {
+        return new ArrayList<>(casa.grupos.values());
+    }
+
+    /**
+     * Busca um grupo pelo seu ID.
+     *
+     * @return o grupo encontrado, ou null se não existir
+     */
+    public Grupo buscarPorId(Casa casa, long id) {
+        return casa.grupos.get(id);
+    }
+
+    /**
+     * IDs de todos os dispositivos de um grupo, incluindo os de seus
+     * subgrupos em qualquer nível.
+     *
+     * @param casa casa do grupo
+     * @param id   ID do grupo
+     * @return bitmap somente leitura com os IDs, ou null se o grupo não existir
+     */
+    public RoaringBitmap membros(Casa casa, long id) {
+        if (!casa.grupos.containsKey(id)) {
+            return null;
+        }
+        return casa.hierarquia.membros(id);
+    }
+
+    /**
+     * Dispositivos de um grupo, incluindo os de seus subgrupos, em ordem de ID.
+     *
+     * @param casa casa do grupo
+     * @param id   ID do grupo
+     * @return lista de dispositivos, ou null se o grupo não existir
+     */
+    public ArrayList<Dispositivo> buscarDispositivos(Casa casa, long id) {
+        RoaringBitmap membros = membros(casa, id);
+        if (membros == null) {
+            return null;
+        }
+        ArrayList<Dispositivo> dispositivos = new ArrayList<>(membros.getCardinality());
+        IntIterator it = membros.getIntIterator();
+        while (it.hasNext()) {
+            Dispositivo d = casa.dispositivos.get(Integer.toUnsignedLong(it.next()));
+            if (d != null) {
+                dispositivos.add(d);
+            }
+        }
+        return dispositivos;
+    }
+
+    /**
+     * Aplica um comando a todos os dispositivos de um grupo (incluindo os
+     * subgrupos), ou apenas aos de um tipo, em paralelo (ver
+     * {@link DispositivoService#aplicarEmParalelo}).
+     *
+     * @param casa casa do grupo
+     * @param id   ID do grupo
+     * @param tipo tipo dos dispositivos a comandar (todos se null)
+     * @param body campos a aplicar
+     * @return mapa com os totais e o resultado de cada dispositivo, ou null se
+     *         o grupo não existir
+     * @throws IllegalArgumentException se o comando estiver vazio ou o tipo for desconhecido
+     */
+    public Map<String, Object> executarComando(Casa casa, long id, String tipo, Map<String, Object> body) {
+        Grupo grupo = casa.grupos.get(id);
+        RoaringBitmap membros = membros(casa, id);
+        if (grupo == null || membros == null) {
+            return null;
+        }
+
+        List<Long> ids = new ArrayList<>(membros.getCardinality());
+        IntIterator it = membros.getIntIterator();
+        while (it.hasNext()) {
+            ids.add(Integer.toUnsignedLong(it.next()));
+        }
+
+        Map<String, Object> obj = new LinkedHashMap<>();
+        obj.put("grupoId", id);
+        obj.put("grupo", grupo.getNome());
+        obj.putAll(dispositivoService.aplicarEmParalelo(casa, ids, tipo, body));
+        return obj;
+    }
+
+    /**
+     * Representação de um grupo para as respostas da API, com o número de
+     * membros já achatado.
+     *
+     * @param casa  casa do grupo
+     * @param grupo grupo representado
+     * @return mapa com id, nome, dispositivos e subgrupos diretos e total de membros
+     */
+    public Map<String, Object> descrever(Casa casa, Grupo grupo) {
+        Map<String, Object> obj = new LinkedHashMap<>();
+        obj.put("id", grupo.getId());
+        obj.put("nome", grupo.getNome());
+        obj.put("dispositivos", grupo.getDispositivos());
+        obj.put("subgrupos", grupo.getSubgrupos());
+        obj.put("totalMembros", casa.hierarquia.membros(grupo.getId()).getCardinality());
+        return obj;
+    }
+
+    /**
+     * Métricas do cache de membros dos grupos de todas as casas.
+     *
+     * @return número de grupos e grupos em cache, acertos, cálculos e invalidações do cache
+     */
+    public Map<String, Object> metricas() {
+        Map<String, Object> obj = new LinkedHashMap<>();
+        for (String campo : List.of("grupos", "emCache", "acertos", "calculos", "invalidacoes")) {
+            obj.put(campo, 0L);
+        }
+        for (Casa casa : casaService.buscarTodas()) {
+            casa.hierarquia.metricas().forEach((campo, valor) -> obj.merge(campo, valor,
+                    (a, b) -> (Long) a + (Long) b));
+        }
+        return obj;
+    }
+
+    /**
+     * Lê e valida o corpo de um cadastro ou atualização.
+     */
+    private void preencher(Casa casa, Grupo grupo, Map<String, Object> body) {
+        if (body == null || !(body.get("nome") instanceof String nome) || nome.isBlank()) {
+            throw new GrupoInvalidoException("o campo 'nome' é obrigatório.");
+        }
+        for (String campo : body.keySet()) {
+            if (!campo.equals("id") && !campo.equals("nome") && !campo.equals("dispositivos")
+                    && !campo.equals("subgrupos")) {
+                throw new GrupoInvalidoException("campo não permitido: " + campo);
+            }
+        }
+        grupo.setNome(nome.trim());
+        grupo.setDispositivos(lerIds(body.get("dispositivos")));
+        grupo.setSubgrupos(lerIds(body.get("subgrupos")));
+
+        for (Long d : grupo.getDispositivos()) {
+            if (dispositivoService.buscarPorId(casa, d) == null) {
+                throw new DispositivoNaoEncontradoException(d);
+            }
+        }
+    }
+
+    private static void verificarSubgrupos(Casa casa, Grupo grupo) {
+        for (Long s : grupo.getSubgrupos()) {
+            if (!casa.grupos.containsKey(s)) {
+                throw new GrupoInvalidoException("o subgrupo " + s + " não existe.");
+            }
+        }
+    }
+
+    private static ArrayList<Long> lerIds(Object valor) {
+        if (valor == null) {
+            return new ArrayList<>();
+        }
+        if (!(valor instanceof List<?> lista)) {
+            throw new GrupoInvalidoException("'dispositivos' e 'subgrupos' devem ser listas de IDs.");
+        }
+        Set<Long> ids = new LinkedHashSet<>();
+        for (Object item : lista) {
+            try {
+                ids.add(Long.parseLong(String.valueOf(item)));
+            } catch (NumberFormatException e) {
+                throw new GrupoInvalidoException("ID inválido: " + item);
+            }
+        }
+        return new ArrayList<>(ids);
+    }
+}
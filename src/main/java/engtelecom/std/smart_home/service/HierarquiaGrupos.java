@@ -0,0 +1,214 @@
+package engtelecom.std.smart_home.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.roaringbitmap.FastAggregation;
+import org.roaringbitmap.RoaringBitmap;
+
+import engtelecom.std.smart_home.exceptions.GrupoInvalidoException;
+
+/**
+ * Hierarquia dos grupos de dispositivos de uma casa, com os membros de cada
+ * grupo já achatados em cache.
+ *
+ * Os membros achatados de um grupo são um bitmap (Roaring) com os IDs dos
+ * seus dispositivos e dos dispositivos de todos os seus subgrupos, calculado
+ * como a união dos dispositivos próprios com os bitmaps (também em cache) dos
+ * subgrupos diretos. Assim, resolver um grupo já calculado custa apenas
+ * percorrer os seus membros, independentemente da profundidade.
+ *
+ * Para a invalidação, a hierarquia mantém também as arestas no sentido
+ * inverso (de cada grupo para os grupos que o contêm): quando um grupo muda,
+ * apenas ele e os seus ancestrais saem do cache. Um subgrupo que criaria um
+ * ciclo é recusado antes de qualquer alteração.
+ *
+ * Os bitmaps devolvidos são compartilhados com o cache e não devem ser
+ * alterados. Todos os métodos usam o monitor da própria hierarquia.
+ */
+final class HierarquiaGrupos {
+
+    private final Map<Long, RoaringBitmap> diretos = new HashMap<>();
+    private final Map<Long, long[]> filhos = new HashMap<>();
+    private final Map<Long, Set<Long>> pais = new HashMap<>();
+    private final Map<Long, RoaringBitmap> cache = new HashMap<>();
+
+    private long acertos;
+    private long calculos;
+    private long invalidacoes;
+
+    /**
+     * Define (ou redefine) os dispositivos e subgrupos diretos de um grupo.
+     *
+     * @param id             ID do grupo
+     * @param dispositivos   IDs dos dispositivos próprios do grupo
+     * @param subgrupos      IDs dos subgrupos diretos
+     * @param verificarCiclo false apenas para dados já verificados no nó de origem
+     *
+     * @throws GrupoInvalidoException se algum subgrupo criaria um ciclo
+     */
+    synchronized void definir(long id, Collection<Long> dispositivos, Collection<Long> subgrupos,
+            boolean verificarCiclo) {
+        if (verificarCiclo) {
+            for (Long s : subgrupos) {
+                if (s == id || alcanca(s, id)) {
+                    throw new GrupoInvalidoException("o subgrupo " + s + " criaria um ciclo com o grupo " + id + ".");
+                }
+            }
+        }
+
+        // o grupo sai do cache antes de as arestas antigas serem trocadas
+        invalidar(id);
+        for (long antigo : filhos.getOrDefault(id, new long[0])) {
+            Set<Long> p = pais.get(antigo);
+            if (p != null) {
+                p.remove(id);
+                if (p.isEmpty()) {
+                    pais.remove(antigo);
+                }
+            }
+        }
+
+        RoaringBitmap proprios = new RoaringBitmap();
+        for (Long d : dispositivos) {
+            proprios.add(d.intValue());
+        }
+        proprios.runOptimize();
+        diretos.put(id, proprios);
+
+        long[] novos = subgrupos.stream().mapToLong(Long::longValue).distinct().toArray();
+        filhos.put(id, novos);
+        for (long s : novos) {
+            pais.computeIfAbsent(s, k -> new HashSet<>()).add(id);
+        }
+    }
+
+    /**
+     * Remove um grupo. Os grupos que ainda o referenciam passam a tratá-lo
+     * como vazio até serem redefinidos.
+     *
+     * @param id ID do grupo
+     */
+    synchronized void remover(long id) {
+        // os ancestrais saem do cache aqui, enquanto as arestas para eles ainda existem
+        invalidar(id);
+        for (long s : filhos.getOrDefault(id, new long[0])) {
+            Set<Long> p = pais.get(s);
+            if (p != null) {
+                p.remove(id);
+                if (p.isEmpty()) {
+                    pais.remove(s);
+                }
+            }
+        }
+        diretos.remove(id);
+        filhos.remove(id);
+        pais.remove(id);
+    }
+
+    /**
+     * Membros achatados de um grupo: seus dispositivos e os de todos os
+     * subgrupos, em qualquer nível.
+     *
+     * @param id ID do grupo
+     * @return bitmap somente leitura com os IDs dos dispositivos (vazio se o
+     *         grupo não existir)
+     */
+    synchronized RoaringBitmap membros(long id) {
+        RoaringBitmap b = cache.get(id);
+        if (b != null) {
+            acertos++;
+            return b;
+        }
+        return calcular(id, new HashSet<>());
+    }
+
+    // em um nó seguidor a hierarquia pode passar por estados intermediários; "visitando" evita laços
+    private RoaringBitmap calcular(long id, Set<Long> visitando) {
+        RoaringBitmap b = cache.get(id);
+        if (b != null) {
+            return b;
+        }
+        RoaringBitmap proprios = diretos.get(id);
+        if (proprios == null || !visitando.add(id)) {
+            return new RoaringBitmap();
+        }
+
+        List<RoaringBitmap> partes = new ArrayList<>();
+        partes.add(proprios);
+        for (long s : filhos.get(id)) {
+            partes.add(calcular(s, visitando));
+        }
+        visitando.remove(id);
+
+        b = partes.size() == 1 ? proprios : FastAggregation.or(partes.iterator());
+        cache.put(id, b);
+        calculos++;
+        return b;
+    }
+
+    /**
+     * Retira do cache um grupo e todos os seus ancestrais.
+     */
+    private void invalidar(long id) {
+        ArrayDeque<Long> pendentes = new ArrayDeque<>();
+        Set<Long> vistos = new HashSet<>();
+        pendentes.add(id);
+        while (!pendentes.isEmpty()) {
+            long g = pendentes.poll();
+            if (!vistos.add(g)) {
+                continue;
+            }
+            if (cache.remove(g) != null) {
+                invalidacoes++;
+            }
+            Set<Long> p = pais.get(g);
+            if (p != null) {
+                pendentes.addAll(p);
+            }
+        }
+    }
+
+    /**
+     * Verifica se o grupo {@code alvo} é alcançável a partir de {@code origem}
+     * descendo pelos subgrupos.
+     */
+    private boolean alcanca(long origem, long alvo) {
+        ArrayDeque<Long> pendentes = new ArrayDeque<>();
+        Set<Long> vistos = new HashSet<>();
+        pendentes.add(origem);
+        while (!pendentes.isEmpty()) {
+            long g = pendentes.poll();
+            if (g == alvo) {
+                return true;
+            }
+            if (vistos.add(g)) {
+                for (long s : filhos.getOrDefault(g, new long[0])) {
+                    pendentes.add(s);
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Métricas do cache de membros.
+     *
+     * @return mapa com o número de grupos, grupos em cache, acertos, cálculos e invalidações
+     */
+    synchronized Map<String, Long> metricas() {
+        Map<String, Long> obj = new HashMap<>();
+        obj.put("grupos", (long) filhos.size());
+        obj.put("emCache", (long) cache.size());
+        obj.put("acertos", acertos);
+        obj.put("calculos", calculos);
+        obj.put("invalidacoes", invalidacoes);
+        return obj;
+    }
+}
@@ -0,0 +1,288 @@
+package engtelecom.std.smart_home.service;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Cache das respostas de requisições com o cabeçalho {@code Idempotency-Key}.
+ *
+ * A primeira requisição com uma chave reserva a entrada e é executada; as
+ * repetições recebem a resposta guardada, e as que chegam enquanto a primeira
+ * ainda está em andamento esperam por ela em vez de executar de novo. Uma
+ * chave reaproveitada em outra requisição (outra assinatura) é recusada.
+ *
+ * O cache é limitado em número de entradas e em bytes estimados. Como todas
+ * as entradas têm a mesma validade, a ordem de inserção é também a ordem de
+ * expiração: uma única fila serve tanto para descartar as expiradas quanto
+ * para despejar as mais antigas quando um dos limites é ultrapassado. Uma
+ * entrada em andamento nunca expira nem é despejada: quem a reservou a
+ * conclui pela própria {@link Reserva}, e quem espera por ela recebe a
+ * resposta.
+ */
+@Component
+public class IdempotenciaService {
+
+    /**
+     * Resultado da consulta de uma chave.
+     */
+    public enum Situacao {
+        /** chave nova: a requisição deve ser executada e o resultado concluído */
+        EXECUTAR,
+        /** chave já concluída: a resposta guardada deve ser repetida */
+        REPETIR,
+        /** chave usada antes com outro método ou outra URI */
+        CONFLITO,
+        /** a primeira requisição com a chave não terminou dentro da espera */
+        EM_ANDAMENTO
+    }
+
+    /**
+     * Resposta guardada de uma requisição.
+     *
+     * @param status     código HTTP
+     * @param cabecalhos cabeçalhos da resposta
+     * @param corpo      corpo da resposta
+     */
+    public record RespostaArmazenada(int status, Map<String, List<String>> cabecalhos, byte[] corpo) {
+    }
+
+    /**
+     * Decisão sobre uma requisição com chave de idempotência.
+     *
+     * @param situacao o que fazer com a requisição
+     * @param resposta resposta a repetir (apenas em {@link Situacao#REPETIR})
+     * @param entrada  entrada reservada, a concluir com {@link #concluir}
+     *                 (apenas em {@link Situacao#EXECUTAR})
+     */
+    public record Reserva(Situacao situacao, RespostaArmazenada resposta, Entrada entrada) {
+    }
+
+    // custo aproximado de uma entrada além do corpo e dos cabeçalhos
+    private static final int CUSTO_FIXO_ENTRADA = 256;
+
+    private final ConcurrentHashMap<String, Entrada> entradas = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Entrada> ordem = new ConcurrentLinkedQueue<>();
+    private final AtomicLong bytes = new AtomicLong();
+
+    private final long ttlMs;
+    private final int maximoEntradas;
+    private final long maximoBytes;
+    private final long esperaMs;
+
+    private final LongAdder requisicoes = new LongAdder();
+    private final LongAdder acertos = new LongAdder();
+    private final LongAdder esperas = new LongAdder();
+    private final LongAdder conflitos = new LongAdder();
+    private final LongAdder expiradas = new LongAdder();
+    private final LongAdder despejadas = new LongAdder();
+
+    /**
+     * Cria o cache de idempotência.
+     *
+     * @param ttlMs          validade de uma resposta guardada
+     * @param maximoEntradas número máximo de chaves guardadas
+     * @param maximoBytes    memória máxima estimada das respostas guardadas
+     * @param esperaMs       espera máxima de uma repetição pela primeira requisição
+     */
+    public IdempotenciaService(@Value("${casa.idempotencia.ttl-ms:3600000}") long ttlMs,
+            @Value("${casa.idempotencia.maximo-entradas:10000}") int maximoEntradas,
+            @Value("${casa.idempotencia.maximo-bytes:16777216}") long maximoBytes,
+            @Value("${casa.idempotencia.espera-ms:30000}") long esperaMs) {
+        this.ttlMs = ttlMs;
+        this.maximoEntradas = maximoEntradas;
+        this.maximoBytes = maximoBytes;
+        this.esperaMs = esperaMs;
+    }
+
+    /**
+     * Reserva uma chave ou obtém a resposta já guardada para ela, esperando se
+     * a primeira requisição com a chave ainda estiver em andamento.
+     *
+     * Quem recebe {@link Situacao#EXECUTAR} deve sempre chamar
+     * {@link #concluir} ao terminar.
+     *
+     * @param chave      valor do cabeçalho {@code Idempotency-Key}, já com o
+     *                   escopo do cliente
+     * @param assinatura identificação da requisição (método, URI e corpo)
+     * @return a decisão sobre a requisição
+     * @throws InterruptedException se a espera for interrompida
+     */
+    public Reserva reservar(String chave, String assinatura) throws InterruptedException {
+        requisicoes.increment();
+        while (true) {
+            long agora = System.nanoTime();
+            Entrada nova = new Entrada(chave, assinatura, agora + ttlMs * 1_000_000);
+            Entrada atual = entradas.putIfAbsent(chave, nova);
+            if (atual == null) {
+                ordem.add(nova);
+                return new Reserva(Situacao.EXECUTAR, null, nova);
+            }
+
+            if (atual.expirada(agora)) {
+                remover(atual);
+                expiradas.increment();
+                continue;
+            }
+            if (!atual.assinatura.equals(assinatura)) {
+                conflitos.increment();
+                return new Reserva(Situacao.CONFLITO, null, null);
+            }
+
+            if (!atual.resultado.isDone()) {
+                esperas.increment();
+            }
+            RespostaArmazenada resposta;
+            try {
+                resposta = atual.resultado.get(esperaMs, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                return new Reserva(Situacao.EM_ANDAMENTO, null, null);
+            } catch (ExecutionException e) {
+                resposta = null;
+            }
+
+            // a primeira requisição falhou sem guardar resposta: tenta executar esta
+            if (resposta == null) {
+                continue;
+            }
+            acertos.increment();
+            return new Reserva(Situacao.REPETIR, resposta, null);
+        }
+    }
+
+    /**
+     * Conclui a entrada reservada por {@link #reservar}, guardando a resposta
+     * ou liberando a chave para uma nova tentativa.
+     *
+     * @param reserva  reserva com {@link Situacao#EXECUTAR}
+     * @param resposta resposta a guardar, ou null se a requisição não deve ser
+     *                 repetida (erro temporário, encaminhamento ao líder etc.)
+     */
+    public void concluir(Reserva reserva, RespostaArmazenada resposta) {
+        Entrada e = reserva.entrada();
+        if (e.resultado.isDone()) {
+            return;
+        }
+
+        if (resposta == null) {
+            entradas.remove(e.chave, e);
+            e.resultado.complete(null);
+            return;
+        }
+
+        // a entrada em andamento continua no mapa: só sai depois de concluída
+        e.tamanho = estimarTamanho(e.chave, resposta);
+        bytes.addAndGet(e.tamanho);
+        e.resultado.complete(resposta);
+        despejarExcedentes();
+    }
+
+    /**
+     * Descarta as entradas expiradas, que estão sempre no início da fila.
+     */
+    @Scheduled(fixedDelayString = "${casa.idempotencia.intervalo-limpeza-ms:1000}")
+    public void descartarExpiradas() {
+        long agora = System.nanoTime();
+        Entrada e;
+        while ((e = ordem.peek()) != null && (e.expirada(agora) || entradas.get(e.chave) != e)) {
+            if (ordem.remove(e) && remover(e)) {
+                expiradas.increment();
+            }
+        }
+    }
+
+    private void despejarExcedentes() {
+        Iterator<Entrada> it = ordem.iterator();
+        while ((entradas.size() > maximoEntradas || bytes.get() > maximoBytes) && it.hasNext()) {
+            Entrada e = it.next();
+            if (entradas.get(e.chave) != e) {
+                it.remove();
+            } else if (e.resultado.isDone()) {
+                it.remove();
+                if (remover(e)) {
+                    despejadas.increment();
+                }
+            }
+        }
+    }
+
+    private boolean remover(Entrada e) {
+        if (!entradas.remove(e.chave, e)) {
+            return false;
+        }
+        bytes.addAndGet(-e.tamanho);
+        return true;
+    }
+
+    private static long estimarTamanho(String chave, RespostaArmazenada r) {
+        long tamanho = CUSTO_FIXO_ENTRADA + 2L * chave.length() + r.corpo().length;
+        for (Map.Entry<String, List<String>> c : r.cabecalhos().entrySet()) {
+            tamanho += 2L * c.getKey().length();
+            for (String v : c.getValue()) {
+                tamanho += 2L * v.length();
+            }
+        }
+        return tamanho;
+    }
+
+    /**
+     * Métricas do cache: taxa de acerto, esperas por requisições em andamento
+     * e uso de memória estimado.
+     *
+     * @return mapa com as métricas
+     */
+    public Map<String, Object> metricas() {
+        long total = requisicoes.sum();
+        long repetidas = acertos.sum();
+
+        Map<String, Object> obj = new LinkedHashMap<>();
+        obj.put("requisicoesComChave", total);
+        obj.put("respostasRepetidas", repetidas);
+        obj.put("taxaAcerto", total == 0 ? 0.0 : (double) repetidas / total);
+        obj.put("esperasPorEmAndamento", esperas.sum());
+        obj.put("conflitos", conflitos.sum());
+        obj.put("entradas", entradas.size());
+        obj.put("maximoEntradas", maximoEntradas);
+        obj.put("bytesEstimados", bytes.get());
+        obj.put("maximoBytes", maximoBytes);
+        obj.put("expiradas", expiradas.sum());
+        obj.put("despejadas", despejadas.sum());
+        obj.put("ttlMs", ttlMs);
+        return obj;
+    }
+
+    /**
+     * Entrada do cache de uma chave. Fora do serviço, serve apenas para
+     * identificar a reserva a concluir.
+     */
+    public static final class Entrada {
+        final String chave;
+        final String assinatura;
+        final long expiraEm;
+        final CompletableFuture<RespostaArmazenada> resultado = new CompletableFuture<>();
+        volatile long tamanho;
+
+        Entrada(String chave, String assinatura, long expiraEm) {
+            this.chave = chave;
+            this.assinatura = assinatura;
+            this.expiraEm = expiraEm;
+        }
+
+        boolean expirada(long agora) {
+            return resultado.isDone() && agora - expiraEm > 0;
+        }
+    }
+}
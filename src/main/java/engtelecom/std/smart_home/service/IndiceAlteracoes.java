@@ -0,0 +1,197 @@
+package engtelecom.std.smart_home.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import engtelecom.std.smart_home.service.DiarioAlteracoes.Alteracao;
+import engtelecom.std.smart_home.service.DiarioAlteracoes.AlteracoesDesde;
+
+/**
+ * Índice compacto das alterações do cadastro, usado na sincronização por
+ * diferença ({@code GET /estado?desde=}).
+ *
+ * Para cada ambiente, dispositivo, cenário e grupo de cada casa, guarda apenas
+ * a sequência da sua última alteração e se ela foi uma remoção, sem os dados:
+ * o estado atual é lido do próprio cadastro na hora de responder. As
+ * alterações posteriores a uma sequência são, então, as entradas da cauda do
+ * índice, uma por recurso, por mais que cada recurso tenha sido alterado e por
+ * mais antiga que seja a sequência: o tamanho do índice acompanha o do
+ * cadastro, e não o volume de alterações.
+ *
+ * As remoções também ficam no índice, para que o cliente fique sabendo delas,
+ * mas apenas as {@code maximoRemocoes} mais recentes de cada casa. Quando uma
+ * remoção é descartada, a sequência dela passa a ser o piso da casa: quem
+ * sincronizou antes disso não tem como saber o que foi removido e precisa
+ * recomeçar do estado completo. Uma remoção substituída por um novo cadastro
+ * do mesmo recurso sai do índice na hora.
+ *
+ * Cada casa tem também a sua versão do cadastro, que avança a cada registro
+ * da casa e a cada reinício do índice: uma alteração em uma casa não muda a
+ * versão das outras.
+ *
+ * Cada casa tem o seu próprio monitor: alterações em casas diferentes não
+ * disputam o mesmo lock. A versão pode ser lida sem ele.
+ */
+final class IndiceAlteracoes {
+
+    private final int maximoRemocoes;
+    private final ConcurrentHashMap<Long, IndiceCasa> casas = new ConcurrentHashMap<>();
+
+    // piso comum a todas as casas (o diário recomeçou de um instantâneo)
+    private volatile long piso;
+    private final AtomicInteger registros = new AtomicInteger();
+
+    /**
+     * @param maximoRemocoes número de remoções mantidas por casa
+     */
+    IndiceAlteracoes(int maximoRemocoes) {
+        this.maximoRemocoes = maximoRemocoes;
+    }
+
+    /**
+     * Substitui no índice a entrada anterior do mesmo recurso.
+     *
+     * @param registro registro anexado ao diário
+     */
+    void registrar(RegistroAlteracao registro) {
+        registrar(registro.casaId(), () -> registro);
+    }
+
+    /**
+     * Cria um registro com o monitor da casa e o coloca no índice. A
+     * sequência do registro deve ser obtida dentro de {@code criar}: assim,
+     * as sequências de uma casa entram no índice em ordem.
+     *
+     * @param casaId casa alterada
+     * @param criar  cria o registro
+     * @return o registro criado
+     */
+    RegistroAlteracao registrar(long casaId, Supplier<RegistroAlteracao> criar) {
+        IndiceCasa casa = casa(casaId);
+        synchronized (casa) {
+            RegistroAlteracao registro = criar.get();
+            casa.versao++;
+            if (!RegistroAlteracao.CASA.equals(registro.recurso())) {
+                indexar(casa, registro);
+            }
+            return registro;
+        }
+    }
+
+    private void indexar(IndiceCasa casa, RegistroAlteracao registro) {
+        Alteracao alteracao = new Alteracao(registro.recurso(), registro.id(),
+                RegistroAlteracao.REMOVER.equals(registro.operacao()));
+        Long anterior = casa.ultimas.put(new Chave(registro.recurso(), registro.id()), registro.sequencia());
+        if (anterior != null) {
+            if (casa.porSequencia.remove(anterior).removido()) {
+                casa.remocoes.remove(anterior);
+            }
+        } else {
+            registros.incrementAndGet();
+        }
+        casa.porSequencia.put(registro.sequencia(), alteracao);
+
+        if (alteracao.removido()) {
+            casa.remocoes.add(registro.sequencia());
+            if (casa.remocoes.size() > maximoRemocoes) {
+                descartarRemocao(casa);
+            }
+        }
+    }
+
+    private void descartarRemocao(IndiceCasa casa) {
+        long sequencia = casa.remocoes.pollFirst();
+        Alteracao a = casa.porSequencia.remove(sequencia);
+        casa.ultimas.remove(new Chave(a.recurso(), a.id()));
+        casa.piso = sequencia;
+        registros.decrementAndGet();
+    }
+
+    /**
+     * Esvazia o índice quando o diário recomeça de um instantâneo: as
+     * alterações anteriores a ele não são mais conhecidas. As casas continuam
+     * no índice, com a versão avançada.
+     *
+     * @param sequencia sequência do último registro contido no instantâneo
+     */
+    void reiniciar(long sequencia) {
+        for (IndiceCasa casa : casas.values()) {
+            synchronized (casa) {
+                registros.addAndGet(-casa.ultimas.size());
+                casa.porSequencia.clear();
+                casa.ultimas.clear();
+                casa.remocoes.clear();
+                casa.piso = 0;
+                casa.versao++;
+            }
+        }
+        piso = sequencia;
+    }
+
+    /**
+     * Versão do cadastro de uma casa. Nunca diminui, nem quando o índice é
+     * reiniciado.
+     *
+     * @param casaId casa consultada
+     * @return a versão atual
+     */
+    long versao(long casaId) {
+        return casa(casaId).versao;
+    }
+
+    /**
+     * Última alteração de cada recurso de uma casa alterado depois de uma
+     * sequência, em ordem de sequência.
+     *
+     * @param casaId casa consultada
+     * @param desde  última sequência conhecida pelo cliente
+     * @param ultima última sequência do diário, lida com o monitor da casa:
+     *               nenhuma alteração da casa até ela está faltando
+     * @return as alterações e a sequência lida, ou null se alguma alteração
+     *         posterior a {@code desde} não puder mais ser reconstituída (ou se
+     *         {@code desde} for posterior à última sequência)
+     */
+    AlteracoesDesde desde(long casaId, long desde, LongSupplier ultima) {
+        IndiceCasa casa = casa(casaId);
+        synchronized (casa) {
+            long sequencia = ultima.getAsLong();
+            if (desde > sequencia || desde < piso || desde < casa.piso) {
+                return null;
+            }
+            return new AlteracoesDesde(sequencia,
+                    new ArrayList<>(casa.porSequencia.tailMap(desde, false).values()));
+        }
+    }
+
+    /**
+     * @return número de entradas mantidas, somando todas as casas
+     */
+    int tamanho() {
+        return registros.get();
+    }
+
+    private IndiceCasa casa(long casaId) {
+        IndiceCasa casa = casas.get(casaId);
+        // a casa passa a existir no índice também na leitura, para que um reinício avance a sua versão
+        return casa != null ? casa : casas.computeIfAbsent(casaId, id -> new IndiceCasa());
+    }
+
+    private record Chave(String recurso, long id) {
+    }
+
+    private static final class IndiceCasa {
+        private final TreeMap<Long, Alteracao> porSequencia = new TreeMap<>();
+        private final Map<Chave, Long> ultimas = new HashMap<>();
+        // sequências das remoções ainda no índice, da mais antiga para a mais nova
+        private final TreeSet<Long> remocoes = new TreeSet<>();
+        private long piso;
+        private volatile long versao;
+    }
+}
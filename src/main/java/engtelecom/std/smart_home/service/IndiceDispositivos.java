@@ -0,0 +1,357 @@
+package engtelecom.std.smart_home.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.roaringbitmap.FastAggregation;
+import org.roaringbitmap.RoaringBitmap;
+
+import engtelecom.std.smart_home.entities.Dispositivo;
+import engtelecom.std.smart_home.exceptions.SeletorInvalidoException;
+
+/**
+ * Índices em bitmaps comprimidos (Roaring) dos dispositivos de uma casa, usados
+ * para avaliar seletores sem percorrer o cadastro.
+ *
+ * Cada bitmap é o conjunto dos IDs dos dispositivos que têm uma propriedade:
+ * um tipo, um valor de um campo textual ou lógico (cor, ligado, aplicativo
+ * etc.), um valor de um campo numérico (intensidade, temperatura, volume,
+ * velocidade) ou a presença em um ambiente. Os campos numéricos têm um
+ * bitmap por valor em um mapa ordenado, de modo que uma faixa é a união dos
+ * bitmaps dos valores dentro dela.
+ *
+ * Os índices são atualizados a cada alteração efetiva de um dispositivo ou de
+ * um ambiente. Alterações de dispositivos diferentes chegam de caixas postais
+ * diferentes ao mesmo tempo, então o acesso é protegido por uma trava de
+ * leitura e escrita própria do índice.
+ */
+final class IndiceDispositivos {
+
+    static final String TIPO = "tipo";
+    static final String AMBIENTE = "ambiente";
+
+    private final ReentrantReadWriteLock trava = new ReentrantReadWriteLock();
+
+    private final RoaringBitmap todos = new RoaringBitmap();
+    private final Map<String, Map<String, RoaringBitmap>> textuais = new HashMap<>();
+    private final Map<String, NavigableMap<Long, RoaringBitmap>> numericos = new HashMap<>();
+
+    // dispositivos de cada ambiente e tipo (nome) de cada ambiente
+    private final Map<Long, RoaringBitmap> ambientes = new HashMap<>();
+    private final Map<Long, String> nomesAmbientes = new HashMap<>();
+
+    /**
+     * Indexa um dispositivo recém-cadastrado, com todo o seu estado.
+     *
+     * @param d dispositivo cadastrado
+     */
+    void indexar(Dispositivo d) {
+        int id = (int) d.getId();
+        trava.writeLock().lock();
+        try {
+            todos.add(id);
+            indexarCampo(TIPO, d.getTipo(), id);
+            for (Map.Entry<String, Object> campo : d.obterEstado().entrySet()) {
+                indexarCampo(campo.getKey(), campo.getValue(), id);
+            }
+        } finally {
+            trava.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Indexa um lote de dispositivos recém-cadastrados, com a trava tomada
+     * uma única vez.
+     *
+     * @param novos dispositivos cadastrados
+     */
+    void indexar(List<Dispositivo> novos) {
+        trava.writeLock().lock();
+        try {
+            for (Dispositivo d : novos) {
+                int id = (int) d.getId();
+                todos.add(id);
+                indexarCampo(TIPO, d.getTipo(), id);
+                for (Map.Entry<String, Object> campo : d.obterEstado().entrySet()) {
+                    indexarCampo(campo.getKey(), campo.getValue(), id);
+                }
+            }
+        } finally {
+            trava.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Atualiza os campos alterados de um dispositivo.
+     *
+     * @param d          dispositivo alterado
+     * @param alteracoes campos alterados, com seus novos valores
+     */
+    void atualizar(Dispositivo d, Map<String, Object> alteracoes) {
+        int id = (int) d.getId();
+        trava.writeLock().lock();
+        try {
+            for (Map.Entry<String, Object> campo : alteracoes.entrySet()) {
+                desindexarCampo(campo.getKey(), id);
+                indexarCampo(campo.getKey(), campo.getValue(), id);
+            }
+        } finally {
+            trava.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Substitui os dispositivos indexados de um ambiente.
+     *
+     * @param ambienteId   ID do ambiente
+     * @param nome         tipo do ambiente (sala, quarto...)
+     * @param dispositivos IDs dos dispositivos do ambiente
+     */
+    void indexarAmbiente(long ambienteId, String nome, List<Long> dispositivos) {
+        RoaringBitmap b = new RoaringBitmap();
+        for (Long id : dispositivos) {
+            b.add(id.intValue());
+        }
+        b.runOptimize();
+        trava.writeLock().lock();
+        try {
+            ambientes.put(ambienteId, b);
+            nomesAmbientes.put(ambienteId, normalizar(nome));
+        } finally {
+            trava.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Inclui ou retira um dispositivo de um ambiente, sem refazer o bitmap
+     * do ambiente inteiro. Um ambiente que não está no índice (já removido)
+     * não é recriado.
+     *
+     * @param ambienteId    ID do ambiente
+     * @param nome          tipo do ambiente (sala, quarto...)
+     * @param dispositivoId ID do dispositivo
+     * @param presente      true para incluir, false para retirar
+     */
+    void marcarNoAmbiente(long ambienteId, String nome, long dispositivoId, boolean presente) {
+        trava.writeLock().lock();
+        try {
+            RoaringBitmap b = ambientes.get(ambienteId);
+            if (b == null) {
+                return;
+            }
+            nomesAmbientes.put(ambienteId, normalizar(nome));
+            if (presente) {
+                b.add((int) dispositivoId);
+            } else {
+                b.remove((int) dispositivoId);
+            }
+        } finally {
+            trava.writeLock().unlock();
+        }
+    }
+
+    void removerAmbiente(long ambienteId) {
+        trava.writeLock().lock();
+        try {
+            ambientes.remove(ambienteId);
+            nomesAmbientes.remove(ambienteId);
+        } finally {
+            trava.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Substitui todos os ambientes indexados pelos de outro índice, de uma
+     * só vez: as consultas veem os ambientes antigos ou os novos, nunca um
+     * índice vazio.
+     *
+     * @param outro índice montado à parte com os novos ambientes
+     */
+    void substituirAmbientes(IndiceDispositivos outro) {
+        trava.writeLock().lock();
+        try {
+            ambientes.clear();
+            nomesAmbientes.clear();
+            ambientes.putAll(outro.ambientes);
+            nomesAmbientes.putAll(outro.nomesAmbientes);
+        } finally {
+            trava.writeLock().unlock();
+        }
+    }
+
+    private void indexarCampo(String campo, Object valor, int id) {
+        if (valor == null) {
+            return;
+        }
+        if (valor instanceof Number n) {
+            numericos.computeIfAbsent(campo, c -> new TreeMap<>())
+                    .computeIfAbsent(n.longValue(), v -> new RoaringBitmap()).add(id);
+        } else {
+            textuais.computeIfAbsent(campo, c -> new HashMap<>())
+                    .computeIfAbsent(normalizar(valor), v -> new RoaringBitmap()).add(id);
+        }
+    }
+
+    // o valor anterior não é guardado: o dispositivo é retirado de todos os bitmaps do campo
+    private void desindexarCampo(String campo, int id) {
+        Map<String, RoaringBitmap> porTexto = textuais.get(campo);
+        if (porTexto != null) {
+            porTexto.values().removeIf(b -> b.checkedRemove(id) && b.isEmpty());
+        }
+        NavigableMap<Long, RoaringBitmap> porNumero = numericos.get(campo);
+        if (porNumero != null) {
+            porNumero.values().removeIf(b -> b.checkedRemove(id) && b.isEmpty());
+        }
+    }
+
+    static String normalizar(Object valor) {
+        return String.valueOf(valor).trim().toLowerCase();
+    }
+
+    /**
+     * Avalia um seletor sobre os índices.
+     *
+     * @param seletor seletor já analisado
+     * @return novo bitmap com os IDs dos dispositivos selecionados
+     */
+    RoaringBitmap avaliar(Seletor seletor) {
+        trava.readLock().lock();
+        try {
+            return seletor.avaliar(this);
+        } finally {
+            trava.readLock().unlock();
+        }
+    }
+
+    /**
+     * Número de bitmaps e bytes ocupados por eles.
+     *
+     * @return mapa com "dispositivos", "bitmaps" e "bytes"
+     */
+    Map<String, Object> metricas() {
+        trava.readLock().lock();
+        try {
+            long bitmaps = 1 + ambientes.size();
+            long bytes = todos.getSizeInBytes();
+            for (Map<String, RoaringBitmap> m : textuais.values()) {
+                for (RoaringBitmap b : m.values()) {
+                    bitmaps++;
+                    bytes += b.getSizeInBytes();
+                }
+            }
+            for (NavigableMap<Long, RoaringBitmap> m : numericos.values()) {
+                for (RoaringBitmap b : m.values()) {
+                    bitmaps++;
+                    bytes += b.getSizeInBytes();
+                }
+            }
+            for (RoaringBitmap b : ambientes.values()) {
+                bytes += b.getSizeInBytes();
+            }
+            Map<String, Object> obj = new LinkedHashMap<>();
+            obj.put("dispositivos", todos.getCardinality());
+            obj.put("bitmaps", bitmaps);
+            obj.put("bytes", bytes);
+            return obj;
+        } finally {
+            trava.readLock().unlock();
+        }
+    }
+
+    // Consultas usadas pelo Seletor; chamadas com a trava de leitura já obtida.
+
+    RoaringBitmap todos() {
+        return todos.clone();
+    }
+
+    /**
+     * Dispositivos cujo campo é igual a um valor. Para "ambiente", o valor é
+     * o tipo (sala, quarto...) ou o ID do ambiente.
+     */
+    RoaringBitmap igual(String campo, String valor) {
+        if (AMBIENTE.equals(campo)) {
+            List<RoaringBitmap> partes = new ArrayList<>();
+            for (Map.Entry<Long, String> a : nomesAmbientes.entrySet()) {
+                if (a.getValue().equals(valor) || a.getKey().toString().equals(valor)) {
+                    partes.add(ambientes.get(a.getKey()));
+                }
+            }
+            return FastAggregation.or(partes.iterator());
+        }
+
+        NavigableMap<Long, RoaringBitmap> porNumero = numericos.get(campo);
+        if (porNumero != null) {
+            Long numero = paraNumero(valor);
+            if (numero == null) {
+                throw new SeletorInvalidoException("O campo '" + campo + "' é numérico: " + valor);
+            }
+            return faixa(campo, numero, true, numero, true);
+        }
+
+        Map<String, RoaringBitmap> porTexto = textuais.get(campo);
+        if (porTexto == null) {
+            verificarCampo(campo);
+            return new RoaringBitmap();
+        }
+        RoaringBitmap b = porTexto.get(valor);
+        return b == null ? new RoaringBitmap() : b.clone();
+    }
+
+    /**
+     * Dispositivos cujo campo numérico está em uma faixa. Os limites null
+     * deixam a faixa aberta daquele lado.
+     */
+    RoaringBitmap faixa(String campo, Long minimo, boolean incluiMinimo, Long maximo, boolean incluiMaximo) {
+        NavigableMap<Long, RoaringBitmap> porNumero = numericos.get(campo);
+        if (porNumero == null) {
+            if (textuais.containsKey(campo) || AMBIENTE.equals(campo)) {
+                throw new SeletorInvalidoException("O campo '" + campo + "' não é numérico.");
+            }
+            verificarCampo(campo);
+            return new RoaringBitmap();
+        }
+
+        NavigableMap<Long, RoaringBitmap> valores = porNumero;
+        if (minimo != null) {
+            valores = valores.tailMap(minimo, incluiMinimo);
+        }
+        if (maximo != null) {
+            valores = valores.headMap(maximo, incluiMaximo);
+        }
+        return FastAggregation.or(valores.values().iterator());
+    }
+
+    // "id" é consultado diretamente sobre o conjunto de todos os dispositivos
+    RoaringBitmap faixaIds(long minimo, long maximo) {
+        if (minimo > maximo) {
+            return new RoaringBitmap();
+        }
+        RoaringBitmap faixa = RoaringBitmap.bitmapOfRange(Math.max(minimo, 0), Math.min(maximo, 0xFFFFFFFFL) + 1);
+        faixa.and(todos);
+        return faixa;
+    }
+
+    private void verificarCampo(String campo) {
+        if (!TIPO.equals(campo) && !CAMPOS.contains(campo)) {
+            throw new SeletorInvalidoException("Campo desconhecido no seletor: " + campo);
+        }
+    }
+
+    static Long paraNumero(String valor) {
+        try {
+            return Long.parseLong(valor);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // campos de estado dos dispositivos; podem faltar no índice se ainda não há dispositivos com eles
+    static final List<String> CAMPOS = List.of("ligado", "cor", "intensidade", "temperatura", "velocidade",
+            "autoLimpeza", "modoSilencioso", "volume", "appAtual", "canalAtual");
+}
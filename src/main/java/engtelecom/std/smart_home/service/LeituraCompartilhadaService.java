@@ -0,0 +1,134 @@
+package engtelecom.std.smart_home.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Colapsa leituras idênticas e simultâneas em um único cálculo.
+ *
+ * Quando muitos clientes pedem a mesma listagem ao mesmo tempo (painéis que
+ * atualizam no início de cada minuto, por exemplo), apenas o primeiro monta e
+ * serializa a resposta; os demais esperam por ele e recebem os mesmos bytes
+ * JSON. Cada resposta é associada à versão do cadastro da casa lida
+ * ({@link DiarioAlteracoes#versao(long)}) antes do cálculo, e só é
+ * compartilhada com leituras feitas nessa mesma versão: depois de qualquer
+ * alteração na casa, a leitura seguinte calcula uma resposta nova. Enquanto a
+ * versão não muda, a última resposta continua valendo e também é
+ * reaproveitada, mesmo que outras casas sejam alteradas.
+ */
+@Component
+public class LeituraCompartilhadaService {
+
+    private final DiarioAlteracoes diario;
+    private final ObjectMapper json;
+
+    // última resposta (em cálculo ou pronta) de cada chave
+    private final ConcurrentHashMap<String, Leitura> leituras = new ConcurrentHashMap<>();
+
+    private final LongAdder pedidas = new LongAdder();
+    private final LongAdder calculadas = new LongAdder();
+    private final LongAdder colapsadas = new LongAdder();
+    private final LongAdder reaproveitadas = new LongAdder();
+    private final LongAdder nanosCalculo = new LongAdder();
+
+    public LeituraCompartilhadaService(DiarioAlteracoes diario, ObjectMapper json) {
+        this.diario = diario;
+        this.json = json;
+    }
+
+    /**
+     * Obtém a resposta serializada de uma leitura, calculando-a somente se
+     * não houver uma da versão atual em cálculo ou pronta.
+     *
+     * @param casa     casa lida
+     * @param chave    identifica a leitura (rota e casa, por exemplo)
+     * @param calcular monta o objeto da resposta
+     * @return a resposta em JSON
+     */
+    public byte[] ler(Casa casa, String chave, Supplier<Object> calcular) {
+        pedidas.increment();
+        long versao = diario.versao(casa.getId());
+        Leitura atual = leituras.get(chave);
+        if (atual == null || atual.versao < versao) {
+            Leitura nova = new Leitura(versao);
+            atual = leituras.compute(chave, (k, v) -> v != null && v.versao >= versao ? v : nova);
+            if (atual == nova) {
+                return calcular(chave, nova, calcular);
+            }
+        }
+        // uma leitura mais nova que a versão pedida também serve
+        if (atual.resultado.isDone()) {
+            reaproveitadas.increment();
+        } else {
+            colapsadas.increment();
+        }
+        try {
+            return atual.resultado.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException r ? r : e;
+        }
+    }
+
+    private byte[] calcular(String chave, Leitura leitura, Supplier<Object> calcular) {
+        calculadas.increment();
+        long t0 = System.nanoTime();
+        try {
+            byte[] bytes = json.writeValueAsBytes(calcular.get());
+            leitura.resultado.complete(bytes);
+            return bytes;
+        } catch (JsonProcessingException | RuntimeException e) {
+            // a falha é entregue a quem esperava, mas não fica guardada para as leituras seguintes
+            leituras.remove(chave, leitura);
+            leitura.resultado.completeExceptionally(e);
+            if (e instanceof RuntimeException r) {
+                throw r;
+            }
+            throw new IllegalStateException("Falha ao serializar a resposta de " + chave, e);
+        } finally {
+            nanosCalculo.add(System.nanoTime() - t0);
+        }
+    }
+
+    /**
+     * Métricas das leituras compartilhadas.
+     *
+     * @return leituras pedidas, calculadas, colapsadas em um cálculo em
+     *         andamento e reaproveitadas de um cálculo pronto, a fração de
+     *         leituras atendidas sem cálculo e o tempo médio de um cálculo
+     */
+    public Map<String, Object> metricas() {
+        long p = pedidas.sum();
+        long c = calculadas.sum();
+        Map<String, Object> obj = new LinkedHashMap<>();
+        obj.put("chaves", leituras.size());
+        obj.put("pedidas", p);
+        obj.put("calculadas", c);
+        obj.put("colapsadas", colapsadas.sum());
+        obj.put("reaproveitadas", reaproveitadas.sum());
+        obj.put("taxaCompartilhamento", p == 0 ? 0.0 : (double) (p - c) / p);
+        obj.put("calculoMedioMs", c == 0 ? 0.0 : nanosCalculo.sum() / 1e6 / c);
+        return obj;
+    }
+
+    /**
+     * Resposta de uma chave calculada a partir de uma versão do cadastro.
+     */
+    private static final class Leitura {
+        private final long versao;
+        private final CompletableFuture<byte[]> resultado = new CompletableFuture<>();
+
+        private Leitura(long versao) {
+            this.versao = versao;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package engtelecom.std.smart_home.service;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Limite de requisições simultâneas ajustado pela latência observada, no
+ * estilo do limitador por gradiente (Gradient2).
+ *
+ * São mantidas duas médias exponenciais da latência: uma curta, que segue a
+ * situação atual, e uma longa, que representa a latência sem fila. A razão
+ * entre as duas (o gradiente, limitado a [0,5; 1]) indica se há fila se
+ * formando: com latência estável o limite cresce aos poucos (somando a raiz
+ * do limite atual, a "fila" tolerada); quando a latência curta sobe, o limite
+ * é reduzido na mesma proporção.
+ *
+ * A admissão só usa um contador atômico e um campo volátil; apenas a
+ * atualização do limite, feita ao fim de cada requisição, é sincronizada.
+ */
+class LimiteAdaptativo {
+
+    // número de amostras das médias exponenciais curta e longa
+    private static final double JANELA_CURTA = 10;
+    private static final double JANELA_LONGA = 600;
+    private static final double SUAVIZACAO = 0.2;
+
+    private final int minimo;
+    private final int maximo;
+    private final double tolerancia;
+
+    private final AtomicInteger emAndamento = new AtomicInteger();
+    private volatile int limite;
+
+    private double estimado;
+    private double rttCurto;
+    private double rttLongo;
+    private long amostras;
+
+    /**
+     * Cria o limite.
+     *
+     * @param inicial    limite inicial de requisições simultâneas
+     * @param minimo     menor limite possível
+     * @param maximo     maior limite possível
+     * @param tolerancia quanto a latência curta pode superar a longa antes de
+     *                   o limite ser reduzido (ex.: 2,0 = o dobro)
+     */
+    LimiteAdaptativo(int inicial, int minimo, int maximo, double tolerancia) {
+        this.minimo = minimo;
+        this.maximo = maximo;
+        this.tolerancia = tolerancia;
+        this.estimado = inicial;
+        this.limite = inicial;
+    }
+
+    /**
+     * Tenta ocupar uma vaga.
+     *
+     * @return o número de requisições em andamento (incluindo esta), ou -1 se
+     *         o limite já foi atingido
+     */
+    int adquirir() {
+        while (true) {
+            int atual = emAndamento.get();
+            if (atual >= limite) {
+                return -1;
+            }
+            if (emAndamento.compareAndSet(atual, atual + 1)) {
+                return atual + 1;
+            }
+        }
+    }
+
+    /**
+     * Libera uma vaga e ajusta o limite com a latência da requisição.
+     *
+     * @param rttNanos           latência da requisição
+     * @param emAndamentoInicio  requisições em andamento quando ela foi admitida
+     */
+    void liberar(long rttNanos, int emAndamentoInicio) {
+        emAndamento.decrementAndGet();
+        atualizar(rttNanos, emAndamentoInicio);
+    }
+
+    private synchronized void atualizar(long rttNanos, int emAndamentoInicio) {
+        amostras++;
+        if (amostras == 1) {
+            rttCurto = rttNanos;
+            rttLongo = rttNanos;
+            return;
+        }
+        rttCurto += (rttNanos - rttCurto) / Math.min(amostras, JANELA_CURTA);
+        rttLongo += (rttNanos - rttLongo) / Math.min(amostras, JANELA_LONGA);
+
+        // a latência caiu muito em relação à média longa: ela estava contaminada por uma fila antiga
+        if (rttLongo / rttCurto > 2) {
+            rttLongo *= 0.95;
+        }
+
+        // com menos da metade do limite em uso, a latência não diz nada sobre o limite
+        if (emAndamentoInicio < estimado / 2) {
+            return;
+        }
+
+        double gradiente = Math.max(0.5, Math.min(1.0, tolerancia * rttLongo / rttCurto));
+        double novo = estimado * gradiente + Math.sqrt(estimado);
+        novo = estimado * (1 - SUAVIZACAO) + novo * SUAVIZACAO;
+        estimado = Math.max(minimo, Math.min(maximo, novo));
+        limite = (int) estimado;
+    }
+
+    int getLimite() {
+        return limite;
+    }
+
+    int getEmAndamento() {
+        return emAndamento.get();
+    }
+
+    synchronized double getRttCurtoMs() {
+        return rttCurto / 1e6;
+    }
+
+    synchronized double getRttLongoMs() {
+        return rttLongo / 1e6;
+    }
+}
@@ -0,0 +1,24 @@
+package engtelecom.std.smart_home.service;
+
+import java.util.List;
+
+/**
+ * Resposta do líder a um seguidor que pede os registros do diário.
+ *
+ * Quando o histórico do seguidor não pode ser continuado (seguidor novo,
+ * registros que já saíram do buffer do líder ou histórico divergente depois
+ * de uma troca de líder), o líder envia um instantâneo: um registro
+ * "salvar" para cada recurso do cadastro, válido até a sequência
+ * {@code ultima}.
+ *
+ * @param termo            termo atual do líder
+ * @param lider            índice do líder na lista de nós
+ * @param ultima           última sequência do diário do líder (no instantâneo,
+ *                         a sequência que ele representa)
+ * @param instantaneo      true se os registros formam um instantâneo
+ * @param termoInstantaneo termo do registro {@code ultima}, usado no instantâneo
+ * @param registros        registros em ordem de sequência
+ */
+public record LoteReplicacao(long termo, int lider, long ultima, boolean instantaneo, long termoInstantaneo,
+        List<RegistroAlteracao> registros) {
+}
@@ -0,0 +1,33 @@
+package engtelecom.std.smart_home.service;
+
+import java.util.Map;
+
+import engtelecom.std.smart_home.entities.Dispositivo;
+
+/**
+ * Interface para quem precisa ser avisado das alterações efetivas de estado dos
+ * dispositivos.
+ *
+ * O aviso é feito de dentro da caixa postal do dispositivo, logo, para um mesmo
+ * dispositivo, as notificações chegam na ordem em que as alterações foram
+ * aplicadas. Implementações devem ser rápidas e não bloquear.
+ */
+@FunctionalInterface
+public interface OuvinteDispositivo {
+
+    /**
+     * Chamado após uma alteração real de estado.
+     *
+     * @param dispositivo dispositivo alterado
+     * @param alteracoes  campos que mudaram, com seus novos valores
+     */
+    void dispositivoAlterado(Dispositivo dispositivo, Map<String, Object> alteracoes);
+
+    /**
+     * Chamado quando um dispositivo é cadastrado em alguma casa.
+     *
+     * @param dispositivo dispositivo cadastrado, já com seu ID
+     */
+    default void dispositivoCadastrado(Dispositivo dispositivo) {
+    }
+}
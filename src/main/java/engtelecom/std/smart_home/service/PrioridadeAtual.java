@@ -0,0 +1,68 @@
+package engtelecom.std.smart_home.service;
+
+import engtelecom.std.smart_home.entities.Prioridade;
+
+/**
+ * Faixa de prioridade do trabalho feito pela thread atual.
+ *
+ * É definida pelo filtro HTTP a partir do cabeçalho {@code X-Prioridade} e
+ * pelas execuções assíncronas de cenários, e consultada ao deixar comandos
+ * nas caixas postais. Sem faixa definida, cada ponto de entrada usa a sua
+ * faixa padrão.
+ */
+public final class PrioridadeAtual {
+
+    private static final ThreadLocal<Prioridade> atual = new ThreadLocal<>();
+
+    private PrioridadeAtual() {
+    }
+
+    /**
+     * @param padrao faixa usada se nenhuma estiver definida
+     * @return a faixa da thread atual, ou {@code padrao}
+     */
+    public static Prioridade obter(Prioridade padrao) {
+        Prioridade p = atual.get();
+        return p == null ? padrao : p;
+    }
+
+    /**
+     * Define a faixa da thread atual.
+     *
+     * @param prioridade nova faixa
+     * @return a faixa anterior (ou null), a ser devolvida com {@link #restaurar}
+     */
+    public static Prioridade definir(Prioridade prioridade) {
+        Prioridade anterior = atual.get();
+        atual.set(prioridade);
+        return anterior;
+    }
+
+    /**
+     * Devolve à thread atual a faixa que ela tinha antes de {@link #definir}.
+     *
+     * @param anterior faixa devolvida por {@link #definir}
+     */
+    public static void restaurar(Prioridade anterior) {
+        if (anterior == null) {
+            atual.remove();
+        } else {
+            atual.set(anterior);
+        }
+    }
+
+    /**
+     * Executa um trecho com a faixa informada, restaurando a anterior no fim.
+     *
+     * @param prioridade faixa do trecho
+     * @param trecho     trecho a executar
+     */
+    public static void executar(Prioridade prioridade, Runnable trecho) {
+        Prioridade anterior = definir(prioridade);
+        try {
+            trecho.run();
+        } finally {
+            restaurar(anterior);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package engtelecom.std.smart_home.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Índice reverso das rotinas dos cenários de uma casa: para cada dispositivo,
+ * os cenários que o referenciam e as posições das ações sobre ele.
+ *
+ * Responde "quais cenários usam o dispositivo X" sem percorrer as rotinas:
+ * o custo da consulta é proporcional ao resultado, e não ao número de
+ * cenários. Cada cenário guarda também os dispositivos que referencia, para
+ * que redefini-lo ou removê-lo mexa apenas nas entradas desses dispositivos.
+ *
+ * Ações sem um "dispositivoId" numérico não entram no índice (cenários
+ * recebidos pela replicação não são validados).
+ */
+final class ReferenciasCenarios {
+
+    // dispositivo -> cenário -> posições das ações (começando em 1)
+    private final Map<Long, TreeMap<Long, int[]>> porDispositivo = new HashMap<>();
+    private final Map<Long, long[]> porCenario = new HashMap<>();
+    private int referencias;
+
+    /**
+     * Define (ou redefine) as referências de um cenário a partir da sua rotina.
+     *
+     * @param cenarioId cenário indexado
+     * @param rotina    ações do cenário (pode ser null)
+     */
+    synchronized void definir(long cenarioId, List<Map<String, Object>> rotina) {
+        remover(cenarioId);
+        if (rotina == null || rotina.isEmpty()) {
+            return;
+        }
+
+        Map<Long, int[]> posicoes = new LinkedHashMap<>();
+        int numeroAcao = 0;
+        for (Map<String, Object> acao : rotina) {
+            numeroAcao++;
+            Long dispositivoId = lerDispositivo(acao);
+            if (dispositivoId == null) {
+                continue;
+            }
+            int[] anteriores = posicoes.get(dispositivoId);
+            int[] atuais = anteriores == null ? new int[1] : Arrays.copyOf(anteriores, anteriores.length + 1);
+            atuais[atuais.length - 1] = numeroAcao;
+            posicoes.put(dispositivoId, atuais);
+        }
+        if (posicoes.isEmpty()) {
+            return;
+        }
+
+        long[] dispositivos = new long[posicoes.size()];
+        int i = 0;
+        for (Map.Entry<Long, int[]> p : posicoes.entrySet()) {
+            porDispositivo.computeIfAbsent(p.getKey(), id -> new TreeMap<>()).put(cenarioId, p.getValue());
+            dispositivos[i++] = p.getKey();
+        }
+        porCenario.put(cenarioId, dispositivos);
+        referencias += dispositivos.length;
+    }
+
+    /**
+     * Retira do índice as referências de um cenário.
+     *
+     * @param cenarioId cenário removido
+     */
+    synchronized void remover(long cenarioId) {
+        long[] dispositivos = porCenario.remove(cenarioId);
+        if (dispositivos == null) {
+            return;
+        }
+        for (long dispositivoId : dispositivos) {
+            TreeMap<Long, int[]> cenarios = porDispositivo.get(dispositivoId);
+            cenarios.remove(cenarioId);
+            if (cenarios.isEmpty()) {
+                porDispositivo.remove(dispositivoId);
+            }
+        }
+        referencias -= dispositivos.length;
+    }
+
+    /**
+     * Cenários que referenciam um dispositivo, em ordem de ID.
+     *
+     * @param dispositivoId dispositivo consultado
+     * @return para cada cenário, as posições das ações sobre o dispositivo
+     */
+    synchronized Map<Long, List<Integer>> cenariosDe(long dispositivoId) {
+        TreeMap<Long, int[]> cenarios = porDispositivo.get(dispositivoId);
+        if (cenarios == null) {
+            return Map.of();
+        }
+        Map<Long, List<Integer>> resultado = new LinkedHashMap<>();
+        for (Map.Entry<Long, int[]> c : cenarios.entrySet()) {
+            List<Integer> posicoes = new ArrayList<>(c.getValue().length);
+            for (int p : c.getValue()) {
+                posicoes.add(p);
+            }
+            resultado.put(c.getKey(), posicoes);
+        }
+        return resultado;
+    }
+
+    /**
+     * @return número de pares (cenário, dispositivo) indexados
+     */
+    synchronized int tamanho() {
+        return referencias;
+    }
+
+    private static Long lerDispositivo(Map<String, Object> acao) {
+        Object identificador = acao == null ? null : acao.get("dispositivoId");
+        if (identificador == null) {
+            return null;
+        }
+        try {
+            return Long.parseLong(identificador.toString());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package engtelecom.std.smart_home.service;
+
+import java.util.Map;
+
+/**
+ * Uma alteração do cadastro gravada no {@link DiarioAlteracoes}.
+ *
+ * Cada registro traz o estado completo do recurso após a alteração (ou a sua
+ * remoção), de modo que reaplicar um registro já aplicado não muda nada e
+ * aplicar os registros em ordem a partir de qualquer ponto reproduz o estado
+ * do nó de origem.
+ *
+ * @param sequencia posição do registro no diário (começa em 1)
+ * @param termo     termo do líder que gravou o registro
+ * @param instante  momento da gravação, em milissegundos desde a época
+ * @param casaId    casa do recurso
+ * @param recurso   "casa", "dispositivo", "ambiente", "cenario" ou "grupo"
+ * @param operacao  "salvar" ou "remover"
+ * @param id        ID do recurso na casa (para "casa", o próprio ID da casa)
+ * @param dados     estado completo do recurso (vazio na remoção)
+ */
+public record RegistroAlteracao(long sequencia, long termo, long instante, long casaId, String recurso,
+        String operacao, long id, Map<String, Object> dados) {
+
+    public static final String CASA = "casa";
+    public static final String DISPOSITIVO = "dispositivo";
+    public static final String AMBIENTE = "ambiente";
+    public static final String CENARIO = "cenario";
+    public static final String GRUPO = "grupo";
+
+    public static final String SALVAR = "salvar";
+    public static final String REMOVER = "remover";
+}
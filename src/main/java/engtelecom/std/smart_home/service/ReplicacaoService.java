@@ -0,0 +1,760 @@
+package engtelecom.std.smart_home.service;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import engtelecom.std.smart_home.entities.Ambiente;
+import engtelecom.std.smart_home.entities.Cenario;
+import engtelecom.std.smart_home.entities.Dispositivo;
+import engtelecom.std.smart_home.entities.Grupo;
+import engtelecom.std.smart_home.exceptions.NoNaoLiderException;
+import engtelecom.std.smart_home.service.DiarioAlteracoes.Alcance;
+import engtelecom.std.smart_home.service.DiarioAlteracoes.Posicao;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Replicação líder-seguidor do cadastro entre vários nós da aplicação.
+ *
+ * Os nós são configurados em {@code casa.replicacao.nos} (a mesma lista, na
+ * mesma ordem, em todos eles) e cada um conhece sua posição na lista
+ * ({@code casa.replicacao.no}). Sem a lista, a replicação fica desativada e o
+ * nó atende sozinho, como líder.
+ *
+ * Só o líder aceita alterações; elas são gravadas no {@link DiarioAlteracoes}
+ * e os seguidores as buscam com consultas longas em
+ * {@code /replicacao/registros}, aplicando-as na mesma ordem. Seguidores
+ * atendem leituras e encaminham as escritas ao líder.
+ *
+ * A escolha do líder segue a eleição do Raft: cada nó tem um termo; um
+ * seguidor que fica {@code casa.replicacao.timeout-lider-ms} (mais um sorteio)
+ * sem falar com o líder se candidata no termo seguinte e vence com os votos da
+ * maioria, que só o apoia se o seu diário estiver pelo menos tão atualizado
+ * quanto o de quem vota. Um líder que deixa de ser consultado pela maioria
+ * volta a ser seguidor, o que evita dois líderes aceitando escritas.
+ */
+@Component
+public class ReplicacaoService {
+
+    /**
+     * Papel do nó na replicação.
+     */
+    public enum Papel {
+        LIDER, SEGUIDOR, CANDIDATO;
+
+        public String getNome() {
+            return name().toLowerCase();
+        }
+    }
+
+    private static final int MAXIMO_POR_LOTE = 1000;
+
+    private final CasaService casaService;
+    private final DispositivoService dispositivoService;
+    private final AmbienteService ambienteService;
+    private final CenarioService cenarioService;
+    private final GrupoService grupoService;
+    private final DiarioAlteracoes diario;
+    private final ObjectMapper json;
+    private final HttpClient http;
+
+    private final List<String> nos;
+    private final int no;
+    private final boolean habilitada;
+    private final long esperaMs;
+    private final long timeoutLiderMs;
+    private final long intervaloMs;
+    private final long esperaLeituraMs;
+
+    // estado da eleição, protegido pelo monitor do serviço
+    private volatile Papel papel;
+    private long termo;
+    private int votouEm = -1;
+    private int lider = -1;
+    private long ultimoContatoLider = System.nanoTime();
+    private long prazoEleicao;
+    private final long[] ultimoContatoSeguidor;
+
+    // false até o primeiro instantâneo: o cadastro local ainda não veio do líder
+    private volatile boolean sincronizado;
+
+    private Thread laco;
+    private volatile boolean ativo = true;
+
+    // métricas
+    private final LongAdder registrosAplicados = new LongAdder();
+    private final LongAdder instantaneosInstalados = new LongAdder();
+    private final LongAdder instantaneosEnviados = new LongAdder();
+    private final LongAdder eleicoes = new LongAdder();
+    private final LongAdder falhasDeContato = new LongAdder();
+    private final LongAdder trocasDeLider = new LongAdder();
+    private volatile long ultimaTrocaMs = -1;
+    private volatile long atrasoUltimoMs;
+    private final LongAdder atrasoTotalMs = new LongAdder();
+    private final AtomicLong atrasoMaximoMs = new AtomicLong();
+
+    /**
+     * Cria o serviço de replicação.
+     *
+     * @param casaService        serviço das casas
+     * @param dispositivoService serviço dos dispositivos
+     * @param ambienteService    serviço dos ambientes
+     * @param cenarioService     serviço dos cenários
+     * @param grupoService       serviço dos grupos
+     * @param diario             diário de alterações replicado
+     * @param json               conversor JSON da aplicação
+     * @param nos                URLs base dos nós, separadas por vírgula (vazio desativa)
+     * @param no                 posição deste nó na lista
+     * @param esperaMs           tempo máximo de uma consulta longa ao líder
+     * @param timeoutLiderMs     tempo sem contato com o líder antes de uma eleição
+     * @param intervaloMs        intervalo entre tentativas quando não há líder
+     * @param esperaLeituraMs    espera máxima de uma leitura por uma posição do diário
+     */
+    public ReplicacaoService(CasaService casaService, DispositivoService dispositivoService,
+            AmbienteService ambienteService, CenarioService cenarioService, GrupoService grupoService,
+            DiarioAlteracoes diario, ObjectMapper json,
+            @Value("${casa.replicacao.nos:}") String nos,
+            @Value("${casa.replicacao.no:0}") int no,
+            @Value("${casa.replicacao.espera-ms:500}") long esperaMs,
+            @Value("${casa.replicacao.timeout-lider-ms:1500}") long timeoutLiderMs,
+            @Value("${casa.replicacao.intervalo-ms:50}") long intervaloMs,
+            @Value("${casa.replicacao.espera-leitura-ms:1000}") long esperaLeituraMs) {
+        this.casaService = casaService;
+        this.dispositivoService = dispositivoService;
+        this.ambienteService = ambienteService;
+        this.cenarioService = cenarioService;
+        this.grupoService = grupoService;
+        this.diario = diario;
+        this.json = json;
+        this.http = HttpClient.newBuilder().connectTimeout(Duration.ofMillis(timeoutLiderMs / 2)).build();
+
+        this.nos = new ArrayList<>();
+        for (String url : nos.split(",")) {
+            if (!url.isBlank()) {
+                this.nos.add(url.trim().replaceAll("/+$", ""));
+            }
+        }
+        this.habilitada = !this.nos.isEmpty();
+        if (habilitada && (no < 0 || no >= this.nos.size())) {
+            throw new IllegalArgumentException("casa.replicacao.no fora da lista de nós: " + no);
+        }
+        this.no = no;
+        this.esperaMs = esperaMs;
+        this.timeoutLiderMs = timeoutLiderMs;
+        this.intervaloMs = intervaloMs;
+        this.esperaLeituraMs = esperaLeituraMs;
+        this.ultimoContatoSeguidor = new long[this.nos.size()];
+
+        if (habilitada) {
+            // todo nó começa como seguidor; o líder sai da primeira eleição
+            this.papel = Papel.SEGUIDOR;
+            this.termo = 0;
+            diario.setOrigemLocal(false);
+            diario.acompanhar();
+            reiniciarPrazo();
+        } else {
+            this.papel = Papel.LIDER;
+            this.termo = 1;
+        }
+    }
+
+    /**
+     * Inicia a thread da replicação quando a aplicação já está atendendo, de
+     * modo que a casa padrão local já existe antes do primeiro instantâneo.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    void iniciar() {
+        if (!habilitada) {
+            return;
+        }
+        laco = new Thread(this::executarLaco, "replicacao");
+        laco.setDaemon(true);
+        laco.start();
+    }
+
+    @PreDestroy
+    void encerrar() {
+        ativo = false;
+        if (laco != null) {
+            laco.interrupt();
+        }
+    }
+
+    private void executarLaco() {
+        while (ativo) {
+            try {
+                int liderAtual;
+                synchronized (this) {
+                    liderAtual = papel == Papel.LIDER ? no : lider;
+                }
+
+                if (liderAtual == no) {
+                    verificarMaioria();
+                    Thread.sleep(intervaloMs);
+                    continue;
+                }
+
+                if (liderAtual < 0) {
+                    liderAtual = descobrirLider();
+                }
+                if (liderAtual >= 0) {
+                    puxar(liderAtual);
+                } else {
+                    Thread.sleep(intervaloMs);
+                }
+
+                if (prazoVencido()) {
+                    eleger();
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException | RuntimeException e) {
+                falhasDeContato.increment();
+                synchronized (this) {
+                    lider = -1;
+                }
+                try {
+                    Thread.sleep(intervaloMs);
+                    if (prazoVencido()) {
+                        eleger();
+                    }
+                } catch (InterruptedException ie) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Busca no líder os registros posteriores ao diário local e os aplica.
+     */
+    private void puxar(int consultado) throws IOException, InterruptedException {
+        long desde = diario.ultimaSequencia();
+        long termoDesde = sincronizado ? diario.termoDe(desde) : -1;
+        long meuTermo;
+        synchronized (this) {
+            meuTermo = termo;
+        }
+
+        HttpResponse<String> resposta = http.send(HttpRequest.newBuilder(URI.create(nos.get(consultado)
+                + "/replicacao/registros?no=" + no + "&termo=" + meuTermo + "&desde=" + desde
+                + "&termoDesde=" + termoDesde))
+                .timeout(Duration.ofMillis(esperaMs + timeoutLiderMs))
+                .build(), HttpResponse.BodyHandlers.ofString());
+
+        if (resposta.statusCode() != 200) {
+            synchronized (this) {
+                lider = -1;
+            }
+            return;
+        }
+
+        LoteReplicacao lote = json.readValue(resposta.body(), LoteReplicacao.class);
+        synchronized (this) {
+            if (lote.termo() < termo) {
+                lider = -1;
+                return;
+            }
+            if (lote.termo() > termo) {
+                adotarTermo(lote.termo());
+            }
+            lider = consultado;
+            ultimoContatoLider = System.nanoTime();
+            reiniciarPrazo();
+        }
+        aplicarLote(lote);
+    }
+
+    /**
+     * Pergunta aos outros nós quem é o líder atual.
+     *
+     * @return posição do líder na lista, ou -1 se nenhum nó se declarar líder
+     */
+    private int descobrirLider() throws InterruptedException {
+        for (int i = 0; i < nos.size(); i++) {
+            if (i == no) {
+                continue;
+            }
+            try {
+                HttpResponse<String> resposta = http.send(HttpRequest.newBuilder(URI.create(nos.get(i) + "/replicacao"))
+                        .timeout(Duration.ofMillis(timeoutLiderMs / 2)).build(), HttpResponse.BodyHandlers.ofString());
+                if (resposta.statusCode() != 200) {
+                    continue;
+                }
+                Map<?, ?> estado = json.readValue(resposta.body(), Map.class);
+                long termoNo = ((Number) estado.get("termo")).longValue();
+                if (Papel.LIDER.getNome().equals(estado.get("papel"))) {
+                    synchronized (this) {
+                        if (termoNo >= termo && papel != Papel.LIDER) {
+                            if (termoNo > termo) {
+                                adotarTermo(termoNo);
+                            }
+                            lider = i;
+                            return i;
+                        }
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                // nó fora do ar: tenta o próximo
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Inicia uma eleição no termo seguinte, pedindo o voto dos outros nós.
+     */
+    private void eleger() throws InterruptedException {
+        long termoEleicao;
+        long sequencia;
+        long termoUltimo;
+        synchronized (this) {
+            if (papel == Papel.LIDER) {
+                return;
+            }
+            termo++;
+            votouEm = no;
+            lider = -1;
+            papel = Papel.CANDIDATO;
+            termoEleicao = termo;
+            sequencia = diario.ultimaSequencia();
+            termoUltimo = diario.termoDe(sequencia);
+            reiniciarPrazo();
+        }
+        eleicoes.increment();
+
+        List<CompletableFuture<HttpResponse<String>>> pedidos = new ArrayList<>();
+        for (int i = 0; i < nos.size(); i++) {
+            if (i == no) {
+                continue;
+            }
+            pedidos.add(http.sendAsync(HttpRequest.newBuilder(URI.create(nos.get(i) + "/replicacao/votos?termo="
+                    + termoEleicao + "&candidato=" + no + "&sequencia=" + sequencia + "&termoUltimo=" + termoUltimo))
+                    .timeout(Duration.ofMillis(timeoutLiderMs / 2))
+                    .POST(HttpRequest.BodyPublishers.noBody())
+                    .build(), HttpResponse.BodyHandlers.ofString()));
+        }
+
+        int votos = 1;
+        for (CompletableFuture<HttpResponse<String>> pedido : pedidos) {
+            try {
+                HttpResponse<String> resposta = pedido.get(timeoutLiderMs, TimeUnit.MILLISECONDS);
+                if (resposta.statusCode() != 200) {
+                    continue;
+                }
+                Map<?, ?> voto = json.readValue(resposta.body(), Map.class);
+                long termoVotante = ((Number) voto.get("termo")).longValue();
+                if (termoVotante > termoEleicao) {
+                    synchronized (this) {
+                        if (termoVotante > termo) {
+                            adotarTermo(termoVotante);
+                        }
+                    }
+                    return;
+                }
+                if (Boolean.TRUE.equals(voto.get("concedido"))) {
+                    votos++;
+                }
+            } catch (ExecutionException | TimeoutException | IOException | RuntimeException e) {
+                // nó fora do ar: conta como voto negado
+            }
+        }
+
+        synchronized (this) {
+            if (papel != Papel.CANDIDATO || termo != termoEleicao) {
+                return;
+            }
+            if (votos >= maioria()) {
+                tornarLider();
+            } else {
+                papel = Papel.SEGUIDOR;
+            }
+        }
+    }
+
+    /**
+     * Decide o voto deste nó em uma eleição.
+     *
+     * @param termoCandidato termo da eleição
+     * @param candidato      posição do candidato na lista de nós
+     * @param sequencia      última sequência do diário do candidato
+     * @param termoUltimo    termo do último registro do candidato
+     * @return mapa com o termo deste nó e se o voto foi concedido
+     */
+    public synchronized Map<String, Object> votar(long termoCandidato, int candidato, long sequencia,
+            long termoUltimo) {
+        if (termoCandidato > termo) {
+            adotarTermo(termoCandidato);
+        }
+
+        boolean concedido = false;
+        if (termoCandidato == termo && (votouEm < 0 || votouEm == candidato)) {
+            long minhaSequencia = diario.ultimaSequencia();
+            long meuTermoUltimo = diario.termoDe(minhaSequencia);
+            if (termoUltimo > meuTermoUltimo || (termoUltimo == meuTermoUltimo && sequencia >= minhaSequencia)) {
+                votouEm = candidato;
+                concedido = true;
+                reiniciarPrazo();
+            }
+        }
+
+        Map<String, Object> obj = new LinkedHashMap<>();
+        obj.put("termo", termo);
+        obj.put("concedido", concedido);
+        return obj;
+    }
+
+    /**
+     * Atende o pedido de registros de um seguidor. Se não houver registros
+     * novos, espera até {@code casa.replicacao.espera-ms} por eles.
+     *
+     * @param seguidor       posição do seguidor na lista de nós
+     * @param termoSeguidor  termo conhecido pelo seguidor
+     * @param desde          última sequência do diário do seguidor
+     * @param termoDesde     termo do registro {@code desde} no seguidor
+     * @return os registros seguintes, ou um instantâneo do cadastro
+     * @throws NoNaoLiderException  se este nó não for o líder
+     * @throws InterruptedException se a espera for interrompida
+     */
+    public LoteReplicacao servirRegistros(int seguidor, long termoSeguidor, long desde, long termoDesde)
+            throws InterruptedException {
+        long meuTermo;
+        synchronized (this) {
+            if (termoSeguidor > termo) {
+                adotarTermo(termoSeguidor);
+            }
+            if (papel != Papel.LIDER) {
+                throw new NoNaoLiderException(termo);
+            }
+            if (seguidor >= 0 && seguidor < ultimoContatoSeguidor.length) {
+                ultimoContatoSeguidor[seguidor] = System.nanoTime();
+            }
+            meuTermo = termo;
+        }
+
+        // o histórico do seguidor só continua se coincidir com o deste nó até "desde"
+        long termoLocal = diario.termoDe(desde);
+        if (termoLocal >= 0 && termoLocal == termoDesde) {
+            List<RegistroAlteracao> registros = diario.lerDesde(desde, MAXIMO_POR_LOTE, esperaMs);
+            if (registros != null) {
+                return new LoteReplicacao(meuTermo, no, diario.ultimaSequencia(), false, 0, registros);
+            }
+        }
+        return instantaneo(meuTermo);
+    }
+
+    /**
+     * Monta um instantâneo do cadastro. A sequência é lida antes dos dados, de
+     * modo que alterações concorrentes entram no instantâneo e também nos
+     * registros seguintes, que o seguidor reaplica sem efeito.
+     */
+    private LoteReplicacao instantaneo(long meuTermo) {
+        long sequencia = diario.ultimaSequencia();
+        long termoSequencia = diario.termoDe(sequencia);
+        long agora = System.currentTimeMillis();
+
+        List<RegistroAlteracao> registros = new ArrayList<>();
+        for (Casa casa : casaService.buscarTodas()) {
+            long casaId = casa.getId();
+            registros.add(new RegistroAlteracao(sequencia, termoSequencia, agora, casaId, RegistroAlteracao.CASA,
+                    RegistroAlteracao.SALVAR, casaId, DiarioAlteracoes.dadosCasa(casa)));
+            for (Dispositivo d : casa.dispositivos.values()) {
+                registros.add(new RegistroAlteracao(sequencia, termoSequencia, agora, casaId,
+                        RegistroAlteracao.DISPOSITIVO, RegistroAlteracao.SALVAR, d.getId(),
+                        DiarioAlteracoes.dadosDispositivo(d)));
+            }
+            synchronized (casa) {
+                for (Map.Entry<Long, Ambiente> a : casa.ambientes.entrySet()) {
+                    registros.add(new RegistroAlteracao(sequencia, termoSequencia, agora, casaId,
+                            RegistroAlteracao.AMBIENTE, RegistroAlteracao.SALVAR, a.getKey(),
+                            DiarioAlteracoes.dadosAmbiente(a.getValue())));
+                }
+                for (Cenario c : casa.cenarios.values()) {
+                    registros.add(new RegistroAlteracao(sequencia, termoSequencia, agora, casaId,
+                            RegistroAlteracao.CENARIO, RegistroAlteracao.SALVAR, c.getId(),
+                            DiarioAlteracoes.dadosCenario(c)));
+                }
+                for (Grupo g : casa.grupos.values()) {
+                    registros.add(new RegistroAlteracao(sequencia, termoSequencia, agora, casaId,
+                            RegistroAlteracao.GRUPO, RegistroAlteracao.SALVAR, g.getId(),
+                            DiarioAlteracoes.dadosGrupo(g)));
+                }
+            }
+        }
+        instantaneosEnviados.increment();
+        return new LoteReplicacao(meuTermo, no, sequencia, true, termoSequencia, registros);
+    }
+
+    private void aplicarLote(LoteReplicacao lote) {
+        if (lote.instantaneo()) {
+            instalarInstantaneo(lote.registros());
+            diario.reiniciar(lote.ultima(), lote.termoInstantaneo());
+            sincronizado = true;
+            instantaneosInstalados.increment();
+            return;
+        }
+
+        long agora = System.currentTimeMillis();
+        for (RegistroAlteracao r : lote.registros()) {
+            aplicarRegistro(r);
+            diario.anexar(r);
+            registrosAplicados.increment();
+
+            long atraso = Math.max(0, agora - r.instante());
+            atrasoUltimoMs = atraso;
+            atrasoTotalMs.add(atraso);
+            atrasoMaximoMs.accumulateAndGet(atraso, Math::max);
+        }
+    }
+
+    /**
+     * Instala um instantâneo do cadastro sem que as leituras atendidas
+     * durante a instalação vejam casas vazias.
+     *
+     * Os dispositivos são aplicados diretamente. Os ambientes, cenários e
+     * grupos de cada casa são montados em uma partição à parte e trocados
+     * de uma vez, com o monitor da casa; os que estão ausentes do
+     * instantâneo foram removidos no líder e somem na troca.
+     */
+    private void instalarInstantaneo(List<RegistroAlteracao> registros) {
+        Map<Long, Casa> montadas = new HashMap<>();
+        for (RegistroAlteracao r : registros) {
+            if (RegistroAlteracao.CASA.equals(r.recurso()) || RegistroAlteracao.DISPOSITIVO.equals(r.recurso())) {
+                aplicarRegistro(r);
+                continue;
+            }
+            Casa casa = casaService.buscarPorId(r.casaId());
+            if (casa != null) {
+                aplicarRegistro(montadas.computeIfAbsent(casa.getId(), id -> casa.particaoVazia()), r);
+            }
+        }
+
+        for (Casa casa : casaService.buscarTodas()) {
+            Casa montada = montadas.get(casa.getId());
+            synchronized (casa) {
+                casa.substituirCadastro(montada != null ? montada : casa.particaoVazia());
+            }
+        }
+    }
+
+    private void aplicarRegistro(RegistroAlteracao r) {
+        if (RegistroAlteracao.CASA.equals(r.recurso())) {
+            casaService.restaurarCasa(r.id(), r.dados());
+            return;
+        }
+
+        Casa casa = casaService.buscarPorId(r.casaId());
+        if (casa != null) {
+            aplicarRegistro(casa, r);
+        }
+    }
+
+    private void aplicarRegistro(Casa casa, RegistroAlteracao r) {
+        boolean remover = RegistroAlteracao.REMOVER.equals(r.operacao());
+        switch (r.recurso()) {
+            case RegistroAlteracao.DISPOSITIVO -> dispositivoService.restaurarDispositivo(casa, r.id(), r.dados());
+            case RegistroAlteracao.AMBIENTE -> {
+                if (remover) {
+                    ambienteService.restaurarRemocao(casa, r.id());
+                } else {
+                    ambienteService.restaurarAmbiente(casa, r.id(), r.dados());
+                }
+            }
+            case RegistroAlteracao.CENARIO -> {
+                if (remover) {
+                    cenarioService.restaurarRemocao(casa, r.id());
+                } else {
+                    cenarioService.restaurarCenario(casa, r.id(), r.dados());
+                }
+            }
+            case RegistroAlteracao.GRUPO -> {
+                if (remover) {
+                    grupoService.restaurarRemocao(casa, r.id());
+                } else {
+                    grupoService.restaurarGrupo(casa, r.id(), r.dados());
+                }
+            }
+            default -> {
+                // recurso desconhecido: registro de uma versão mais nova, ignorado
+            }
+        }
+    }
+
+    /**
+     * O líder verifica se a maioria dos nós ainda o consulta; caso contrário,
+     * ele pode ter ficado isolado e deixa de aceitar escritas.
+     */
+    private synchronized void verificarMaioria() {
+        long agora = System.nanoTime();
+        int ativos = 1;
+        for (int i = 0; i < ultimoContatoSeguidor.length; i++) {
+            if (i != no && agora - ultimoContatoSeguidor[i] < timeoutLiderMs * 1_000_000) {
+                ativos++;
+            }
+        }
+        if (ativos < maioria()) {
+            tornarSeguidor();
+            lider = -1;
+        }
+    }
+
+    private void tornarLider() {
+        long agora = System.nanoTime();
+        papel = Papel.LIDER;
+        lider = no;
+        ultimaTrocaMs = (agora - ultimoContatoLider) / 1_000_000;
+        trocasDeLider.increment();
+        Arrays.fill(ultimoContatoSeguidor, agora);
+        diario.setTermo(termo);
+        diario.setOrigemLocal(true);
+        sincronizado = true;
+    }
+
+    private void tornarSeguidor() {
+        papel = Papel.SEGUIDOR;
+        diario.setOrigemLocal(false);
+        ultimoContatoLider = System.nanoTime();
+        reiniciarPrazo();
+    }
+
+    private void adotarTermo(long novoTermo) {
+        termo = novoTermo;
+        votouEm = -1;
+        lider = -1;
+        if (papel != Papel.SEGUIDOR) {
+            tornarSeguidor();
+        }
+    }
+
+    private void reiniciarPrazo() {
+        prazoEleicao = System.nanoTime()
+                + ThreadLocalRandom.current().nextLong(timeoutLiderMs, 2 * timeoutLiderMs + 1) * 1_000_000;
+    }
+
+    private synchronized boolean prazoVencido() {
+        return papel != Papel.LIDER && System.nanoTime() > prazoEleicao;
+    }
+
+    private int maioria() {
+        return nos.size() / 2 + 1;
+    }
+
+    /**
+     * Indica se este nó aceita escritas: é o líder ou a replicação está
+     * desativada.
+     *
+     * @return true se este nó é o líder
+     */
+    public boolean isLider() {
+        return papel == Papel.LIDER;
+    }
+
+    public boolean isHabilitada() {
+        return habilitada;
+    }
+
+    /**
+     * URL base do líder conhecido, para onde as escritas devem ser enviadas.
+     *
+     * @return a URL, ou null se nenhum líder for conhecido no momento
+     */
+    public synchronized String urlLider() {
+        int atual = papel == Papel.LIDER ? no : lider;
+        return atual < 0 || !habilitada ? null : nos.get(atual);
+    }
+
+    /**
+     * Espera até que o cadastro local inclua as alterações até uma posição do
+     * diário (leitura das próprias escritas) e verifica se o registro daquela
+     * posição ainda é o da escrita do cliente ({@link DiarioAlteracoes#aguardar(Posicao, long)}).
+     *
+     * O líder não espera: ele tem todos os registros do seu termo, e uma
+     * posição que ele não alcançou foi gravada por outro líder.
+     *
+     * @param posicao posição do diário informada pelo cliente
+     * @return o resultado da espera
+     * @throws InterruptedException se a espera for interrompida
+     */
+    public Alcance aguardarPosicao(Posicao posicao) throws InterruptedException {
+        return diario.aguardar(posicao, isLider() ? 0 : esperaLeituraMs);
+    }
+
+    /**
+     * Estado do nó na replicação.
+     *
+     * @return mapa com papel, termo, líder conhecido e posição do diário
+     */
+    public synchronized Map<String, Object> estado() {
+        Map<String, Object> obj = new LinkedHashMap<>();
+        obj.put("habilitada", habilitada);
+        obj.put("no", no);
+        obj.put("papel", papel.getNome());
+        obj.put("termo", termo);
+        obj.put("lider", urlLider());
+        obj.put("sequencia", diario.ultimaSequencia());
+        return obj;
+    }
+
+    /**
+     * Métricas da replicação: atraso dos registros aplicados, instantâneos,
+     * eleições e tempo da última troca de líder.
+     *
+     * @return mapa com as métricas
+     */
+    public Map<String, Object> metricas() {
+        Map<String, Object> obj = estado();
+        long aplicados = registrosAplicados.sum();
+
+        Map<String, Object> atraso = new LinkedHashMap<>();
+        atraso.put("ultimoMs", atrasoUltimoMs);
+        atraso.put("medioMs", aplicados == 0 ? 0.0 : (double) atrasoTotalMs.sum() / aplicados);
+        atraso.put("maximoMs", atrasoMaximoMs.get());
+
+        obj.put("registrosAplicados", aplicados);
+        obj.put("atraso", atraso);
+        obj.put("instantaneosInstalados", instantaneosInstalados.sum());
+        obj.put("instantaneosEnviados", instantaneosEnviados.sum());
+        obj.put("eleicoes", eleicoes.sum());
+        obj.put("trocasDeLider", trocasDeLider.sum());
+        obj.put("ultimaTrocaMs", ultimaTrocaMs);
+        obj.put("falhasDeContato", falhasDeContato.sum());
+
+        if (isLider() && habilitada) {
+            Map<String, Object> seguidores = new LinkedHashMap<>();
+            long agora = System.nanoTime();
+            synchronized (this) {
+                for (int i = 0; i < nos.size(); i++) {
+                    if (i != no) {
+                        seguidores.put(nos.get(i), (agora - ultimoContatoSeguidor[i]) / 1_000_000);
+                    }
+                }
+            }
+            obj.put("msDesdeUltimoContato", seguidores);
+        }
+        obj.put("diario", diario.metricas());
+        return obj;
+    }
+}
@@ -0,0 +1,299 @@
+package engtelecom.std.smart_home.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.roaringbitmap.FastAggregation;
+import org.roaringbitmap.RoaringBitmap;
+
+import engtelecom.std.smart_home.exceptions.SeletorInvalidoException;
+
+/**
+ * Seletor de dispositivos já analisado, avaliado sobre o
+ * {@link IndiceDispositivos} de uma casa.
+ *
+ * Gramática (palavras-chave e nomes de campos sem distinção de maiúsculas):
+ *
+ * <pre>
+ * seletor    := termo (("ou" | "or" | "||") termo)*
+ * termo      := fator (("e" | "and" | "&amp;&amp;") fator)*
+ * fator      := ("nao" | "não" | "not" | "!") fator | "(" seletor ")" | comparacao
+ * comparacao := campo ("=" | "!=" | "&gt;" | "&gt;=" | "&lt;" | "&lt;=") valor
+ *             | campo "in" "(" valor ("," valor)* ")"
+ * </pre>
+ *
+ * Os campos são {@code tipo}, {@code ambiente} (tipo ou ID do ambiente),
+ * {@code id} e os campos de estado dos dispositivos ({@code ligado},
+ * {@code cor}, {@code intensidade}, {@code temperatura}...). Valores com
+ * espaços podem ser escritos entre aspas simples ou duplas. Exemplo:
+ * {@code tipo=lampada e ambiente=sala e (intensidade>=50 ou não ligado=true)}.
+ */
+sealed interface Seletor {
+
+    /**
+     * Avalia o seletor; chamado com a trava de leitura do índice já obtida.
+     *
+     * @param indice índice da casa
+     * @return novo bitmap com os IDs selecionados
+     */
+    RoaringBitmap avaliar(IndiceDispositivos indice);
+
+    /**
+     * Analisa o texto de um seletor.
+     *
+     * @param texto seletor recebido na requisição
+     * @return seletor pronto para ser avaliado
+     *
+     * @throws SeletorInvalidoException se o texto não seguir a gramática
+     */
+    static Seletor analisar(String texto) {
+        if (texto == null || texto.isBlank()) {
+            throw new SeletorInvalidoException("seletor vazio.");
+        }
+        return new Analisador(texto).analisar();
+    }
+
+    record Ou(List<Seletor> partes) implements Seletor {
+        @Override
+        public RoaringBitmap avaliar(IndiceDispositivos indice) {
+            List<RoaringBitmap> bitmaps = new ArrayList<>(partes.size());
+            for (Seletor s : partes) {
+                bitmaps.add(s.avaliar(indice));
+            }
+            return FastAggregation.or(bitmaps.iterator());
+        }
+    }
+
+    record E(List<Seletor> partes) implements Seletor {
+        @Override
+        public RoaringBitmap avaliar(IndiceDispositivos indice) {
+            RoaringBitmap resultado = partes.get(0).avaliar(indice);
+            for (int i = 1; i < partes.size() && !resultado.isEmpty(); i++) {
+                resultado.and(partes.get(i).avaliar(indice));
+            }
+            return resultado;
+        }
+    }
+
+    record Nao(Seletor seletor) implements Seletor {
+        @Override
+        public RoaringBitmap avaliar(IndiceDispositivos indice) {
+            RoaringBitmap resultado = indice.todos();
+            resultado.andNot(seletor.avaliar(indice));
+            return resultado;
+        }
+    }
+
+    record Igual(String campo, List<String> valores) implements Seletor {
+        @Override
+        public RoaringBitmap avaliar(IndiceDispositivos indice) {
+            List<RoaringBitmap> bitmaps = new ArrayList<>(valores.size());
+            for (String valor : valores) {
+                if ("id".equals(campo)) {
+                    long id = numero(campo, valor);
+                    bitmaps.add(indice.faixaIds(id, id));
+                } else {
+                    bitmaps.add(indice.igual(campo, valor));
+                }
+            }
+            return bitmaps.size() == 1 ? bitmaps.get(0) : FastAggregation.or(bitmaps.iterator());
+        }
+    }
+
+    record Faixa(String campo, Long minimo, boolean incluiMinimo, Long maximo, boolean incluiMaximo)
+            implements Seletor {
+        @Override
+        public RoaringBitmap avaliar(IndiceDispositivos indice) {
+            if (!"id".equals(campo)) {
+                return indice.faixa(campo, minimo, incluiMinimo, maximo, incluiMaximo);
+            }
+            long de = minimo == null ? 0 : incluiMinimo ? minimo : minimo + 1;
+            long ate = maximo == null ? Long.MAX_VALUE : incluiMaximo ? maximo : maximo - 1;
+            return indice.faixaIds(de, ate);
+        }
+    }
+
+    private static long numero(String campo, String valor) {
+        Long n = IndiceDispositivos.paraNumero(valor);
+        if (n == null) {
+            throw new SeletorInvalidoException("o campo '" + campo + "' é numérico: " + valor);
+        }
+        return n;
+    }
+
+    /**
+     * Analisador descendente recursivo da gramática acima.
+     */
+    final class Analisador {
+        private final String texto;
+        private int pos;
+
+        Analisador(String texto) {
+            this.texto = texto;
+        }
+
+        Seletor analisar() {
+            Seletor s = ou();
+            pularEspacos();
+            if (pos < texto.length()) {
+                throw erro("trecho inesperado");
+            }
+            return s;
+        }
+
+        private Seletor ou() {
+            List<Seletor> partes = new ArrayList<>();
+            partes.add(e());
+            while (consumirPalavra("ou", "or") || consumir("||")) {
+                partes.add(e());
+            }
+            return partes.size() == 1 ? partes.get(0) : new Ou(partes);
+        }
+
+        private Seletor e() {
+            List<Seletor> partes = new ArrayList<>();
+            partes.add(fator());
+            while (consumirPalavra("e", "and") || consumir("&&")) {
+                partes.add(fator());
+            }
+            return partes.size() == 1 ? partes.get(0) : new E(partes);
+        }
+
+        private Seletor fator() {
+            if (consumirPalavra("nao", "não", "not") || (!olhar("!=") && consumir("!"))) {
+                return new Nao(fator());
+            }
+            if (consumir("(")) {
+                Seletor s = ou();
+                esperar(")");
+                return s;
+            }
+            return comparacao();
+        }
+
+        private Seletor comparacao() {
+            String campo = campo(palavra("nome de campo"));
+
+            if (consumirPalavra("in", "em")) {
+                esperar("(");
+                List<String> valores = new ArrayList<>();
+                do {
+                    valores.add(valor());
+                } while (consumir(","));
+                esperar(")");
+                return new Igual(campo, valores);
+            }
+
+            String operador = operador();
+            String valor = valor();
+            return switch (operador) {
+                case "=", "==" -> new Igual(campo, List.of(valor));
+                case "!=", "<>" -> new Nao(new Igual(campo, List.of(valor)));
+                case ">" -> new Faixa(campo, numero(campo, valor), false, null, false);
+                case ">=" -> new Faixa(campo, numero(campo, valor), true, null, false);
+                case "<" -> new Faixa(campo, null, false, numero(campo, valor), false);
+                default -> new Faixa(campo, null, false, numero(campo, valor), true);
+            };
+        }
+
+        private String campo(String nome) {
+            if (nome.equalsIgnoreCase(IndiceDispositivos.TIPO)) {
+                return IndiceDispositivos.TIPO;
+            }
+            if (nome.equalsIgnoreCase(IndiceDispositivos.AMBIENTE)) {
+                return IndiceDispositivos.AMBIENTE;
+            }
+            if (nome.equalsIgnoreCase("id")) {
+                return "id";
+            }
+            for (String c : IndiceDispositivos.CAMPOS) {
+                if (c.equalsIgnoreCase(nome)) {
+                    return c;
+                }
+            }
+            throw new SeletorInvalidoException("campo desconhecido: " + nome);
+        }
+
+        private String operador() {
+            for (String op : new String[] { ">=", "<=", "!=", "<>", "==", "=", ">", "<" }) {
+                if (consumir(op)) {
+                    return op;
+                }
+            }
+            throw erro("operador esperado");
+        }
+
+        private String valor() {
+            pularEspacos();
+            if (pos < texto.length() && (texto.charAt(pos) == '\'' || texto.charAt(pos) == '"')) {
+                char aspas = texto.charAt(pos);
+                int fim = texto.indexOf(aspas, pos + 1);
+                if (fim < 0) {
+                    throw erro("aspas não fechadas");
+                }
+                String v = texto.substring(pos + 1, fim);
+                pos = fim + 1;
+                return IndiceDispositivos.normalizar(v);
+            }
+            return IndiceDispositivos.normalizar(palavra("valor"));
+        }
+
+        private String palavra(String esperado) {
+            pularEspacos();
+            int inicio = pos;
+            while (pos < texto.length() && caractereDePalavra(texto.charAt(pos))) {
+                pos++;
+            }
+            if (pos == inicio) {
+                throw erro(esperado + " esperado");
+            }
+            return texto.substring(inicio, pos);
+        }
+
+        private static boolean caractereDePalavra(char c) {
+            return Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == '.';
+        }
+
+        private boolean consumirPalavra(String... palavras) {
+            pularEspacos();
+            for (String p : palavras) {
+                int fim = pos + p.length();
+                if (texto.regionMatches(true, pos, p, 0, p.length())
+                        && (fim == texto.length() || !caractereDePalavra(texto.charAt(fim)))) {
+                    pos = fim;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean olhar(String simbolo) {
+            pularEspacos();
+            return texto.startsWith(simbolo, pos);
+        }
+
+        private boolean consumir(String simbolo) {
+            if (olhar(simbolo)) {
+                pos += simbolo.length();
+                return true;
+            }
+            return false;
+        }
+
+        private void esperar(String simbolo) {
+            if (!consumir(simbolo)) {
+                throw erro("'" + simbolo + "' esperado");
+            }
+        }
+
+        private void pularEspacos() {
+            while (pos < texto.length() && Character.isWhitespace(texto.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        private SeletorInvalidoException erro(String motivo) {
+            return new SeletorInvalidoException(motivo + " na posição " + pos + ".");
+        }
+    }
+}
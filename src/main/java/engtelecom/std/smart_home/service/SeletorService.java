@@ -0,0 +1,209 @@
+package engtelecom.std.smart_home.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import engtelecom.std.smart_home.entities.Dispositivo;
+import engtelecom.std.smart_home.exceptions.SeletorInvalidoException;
+
+/**
+ * Consultas e comandos em massa sobre os dispositivos de uma casa descritos
+ * por um seletor (ver {@link Seletor} para a gramática).
+ *
+ * O seletor é avaliado sobre os bitmaps do {@link IndiceDispositivos} da casa,
+ * sem percorrer o cadastro: o custo depende do número de valores distintos
+ * envolvidos e do tamanho do resultado, não do número de dispositivos.
+ *
+ * Em um comando em massa, os dispositivos selecionados são fixados no início
+ * e o comando é deixado de uma vez na caixa postal de cada um, em blocos de
+ * {@code casa.seletores.lote} dispositivos, de modo que todos são atualizados
+ * em paralelo e cada um continua recebendo seus comandos em ordem.
+ */
+@Component
+public class SeletorService {
+
+    private final CasaService casaService;
+    private final DispositivoService dispositivoService;
+    private final int lote;
+
+    private final LongAdder consultas = new LongAdder();
+    private final LongAdder difusoes = new LongAdder();
+    private final LongAdder selecionados = new LongAdder();
+    private final LongAdder nanosAvaliacao = new LongAdder();
+
+    /**
+     * Cria o serviço.
+     *
+     * @param casaService        serviço das casas, consultado nas métricas
+     * @param dispositivoService serviço que aplica os comandos aos dispositivos
+     * @param lote               número máximo de comandos pendentes de um mesmo
+     *                           comando em massa
+     */
+    public SeletorService(CasaService casaService, DispositivoService dispositivoService,
+            @Value("${casa.seletores.lote:4096}") int lote) {
+        this.casaService = casaService;
+        this.dispositivoService = dispositivoService;
+        this.lote = lote;
+    }
+
+    /**
+     * IDs dos dispositivos de uma casa que atendem a um seletor.
+     *
+     * @param casa    casa consultada
+     * @param seletor texto do seletor
+     * @return bitmap com os IDs selecionados
+     *
+     * @throws SeletorInvalidoException se o seletor for inválido
+     */
+    public RoaringBitmap avaliar(Casa casa, String seletor) {
+        Seletor s = Seletor.analisar(seletor);
+        long inicio = System.nanoTime();
+        RoaringBitmap ids = casa.indice.avaliar(s);
+        nanosAvaliacao.add(System.nanoTime() - inicio);
+        selecionados.add(ids.getLongCardinality());
+        return ids;
+    }
+
+    /**
+     * Dispositivos de uma casa que atendem a um seletor, em ordem de ID.
+     *
+     * @param casa    casa consultada
+     * @param seletor texto do seletor
+     * @return lista de dispositivos selecionados
+     *
+     * @throws SeletorInvalidoException se o seletor for inválido
+     */
+    public ArrayList<Dispositivo> selecionar(Casa casa, String seletor) {
+        RoaringBitmap ids = avaliar(casa, seletor);
+        consultas.increment();
+
+        ArrayList<Dispositivo> resultado = new ArrayList<>(ids.getCardinality());
+        IntIterator it = ids.getIntIterator();
+        while (it.hasNext()) {
+            Dispositivo d = casa.dispositivos.get(Integer.toUnsignedLong(it.next()));
+            if (d != null) {
+                resultado.add(d);
+            }
+        }
+        return resultado;
+    }
+
+    /**
+     * Aplica os mesmos campos a todos os dispositivos selecionados.
+     *
+     * Cada dispositivo recebe apenas a diferença em relação ao seu estado,
+     * como em {@link DispositivoService#aplicarDiferenca}. Dispositivos que
+     * não têm nenhum dos campos enviados (por exemplo, {@code intensidade}
+     * para uma televisão) são ignorados; dispositivos que recusam o comando
+     * (caixa postal cheia, valor inválido) são contados como falhas, sem
+     * interromper os demais.
+     *
+     * @param casa    casa dos dispositivos
+     * @param seletor texto do seletor
+     * @param body    campos a aplicar
+     * @return mapa com o seletor e o número de dispositivos selecionados,
+     *         alterados, sem efeito, ignorados e com falha
+     *
+     * @throws SeletorInvalidoException se o seletor for inválido
+     */
+    public Map<String, Object> difundir(Casa casa, String seletor, Map<String, Object> body) {
+        if (body == null || body.isEmpty()) {
+            throw new IllegalArgumentException("Comando vazio.");
+        }
+        long inicio = System.nanoTime();
+        RoaringBitmap ids = avaliar(casa, seletor);
+        difusoes.increment();
+
+        int[] contagem = new int[4]; // alterados, sem efeito, ignorados, falhas
+        String primeiraFalha = null;
+        List<CompletableFuture<Map<String, Object>>> pendentes = new ArrayList<>(Math.min(lote, ids.getCardinality()));
+
+        IntIterator it = ids.getIntIterator();
+        while (it.hasNext()) {
+            Dispositivo d = casa.dispositivos.get(Integer.toUnsignedLong(it.next()));
+            if (d == null) {
+                continue;
+            }
+            try {
+                pendentes.add(dispositivoService.enviarDiferenca(casa, d, body));
+            } catch (RuntimeException e) {
+                contagem[3]++;
+                primeiraFalha = primeiraFalha == null ? e.getMessage() : primeiraFalha;
+            }
+            if (pendentes.size() >= lote) {
+                primeiraFalha = aguardar(pendentes, contagem, primeiraFalha);
+            }
+        }
+        primeiraFalha = aguardar(pendentes, contagem, primeiraFalha);
+
+        Map<String, Object> obj = new LinkedHashMap<>();
+        obj.put("seletor", seletor);
+        obj.put("selecionados", ids.getCardinality());
+        obj.put("alterados", contagem[0]);
+        obj.put("semEfeito", contagem[1]);
+        obj.put("ignorados", contagem[2]);
+        obj.put("falhas", contagem[3]);
+        if (primeiraFalha != null) {
+            obj.put("primeiraFalha", primeiraFalha);
+        }
+        obj.put("duracaoMs", (System.nanoTime() - inicio) / 1e6);
+        return obj;
+    }
+
+    private static String aguardar(List<CompletableFuture<Map<String, Object>>> pendentes, int[] contagem,
+            String primeiraFalha) {
+        for (CompletableFuture<Map<String, Object>> f : pendentes) {
+            try {
+                Map<String, Object> diferenca = f.join();
+                contagem[diferenca == null ? 2 : diferenca.isEmpty() ? 1 : 0]++;
+            } catch (CompletionException e) {
+                contagem[3]++;
+                primeiraFalha = primeiraFalha == null ? e.getCause().getMessage() : primeiraFalha;
+            }
+        }
+        pendentes.clear();
+        return primeiraFalha;
+    }
+
+    /**
+     * Métricas dos seletores.
+     *
+     * @return consultas e comandos em massa atendidos, dispositivos
+     *         selecionados, tempo médio de avaliação dos seletores e tamanho
+     *         dos índices de todas as casas
+     */
+    public Map<String, Object> metricas() {
+        long dispositivos = 0;
+        long bitmaps = 0;
+        long bytes = 0;
+        for (Casa casa : casaService.buscarTodas()) {
+            Map<String, Object> indice = casa.indice.metricas();
+            dispositivos += ((Number) indice.get("dispositivos")).longValue();
+            bitmaps += ((Number) indice.get("bitmaps")).longValue();
+            bytes += ((Number) indice.get("bytes")).longValue();
+        }
+        Map<String, Object> indices = new LinkedHashMap<>();
+        indices.put("dispositivos", dispositivos);
+        indices.put("bitmaps", bitmaps);
+        indices.put("bytes", bytes);
+
+        long avaliacoes = consultas.sum() + difusoes.sum();
+        Map<String, Object> obj = new LinkedHashMap<>();
+        obj.put("consultas", consultas.sum());
+        obj.put("difusoes", difusoes.sum());
+        obj.put("selecionados", selecionados.sum());
+        obj.put("avaliacaoMediaMs", avaliacoes == 0 ? 0.0 : nanosAvaliacao.sum() / 1e6 / avaliacoes);
+        obj.put("indices", indices);
+        return obj;
+    }
+}
@@ -0,0 +1,99 @@
+package engtelecom.std.smart_home.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import engtelecom.std.smart_home.entities.Dispositivo;
+
+/**
+ * Estado projetado dos dispositivos de uma casa durante a simulação de um
+ * cenário.
+ *
+ * A sobreposição não copia a casa: um dispositivo só ganha uma cópia do seu
+ * estado (copy-on-write) quando uma ação o altera de fato, e as ações
+ * seguintes sobre ele são comparadas com essa cópia. Os demais continuam
+ * sendo lidos dos próprios dispositivos, que nunca são alterados. O custo é
+ * proporcional aos dispositivos tocados pela rotina, e não ao tamanho da
+ * casa.
+ *
+ * Não é thread-safe: cada simulação usa a sua.
+ */
+final class SobreposicaoCasa {
+
+    private final Map<Long, Projecao> projecoes = new LinkedHashMap<>();
+
+    /**
+     * Aplica uma ação ao estado projetado de um dispositivo.
+     *
+     * @param d    dispositivo alvo
+     * @param body campos desejados
+     * @return os campos que a ação altera no estado projetado (vazio se não
+     *         tiver efeito), ou null se nenhum campo for reconhecido
+     */
+    Map<String, Object> aplicar(Dispositivo d, Map<String, Object> body) {
+        Projecao projecao = projecoes.get(d.getId());
+        Map<String, Object> atual = projecao == null ? d.obterEstado() : projecao.depois;
+        Map<String, Object> diferenca = d.calcularDiferenca(body, atual);
+        if (diferenca != null && !diferenca.isEmpty()) {
+            if (projecao == null) {
+                projecao = new Projecao(d, atual);
+                projecoes.put(d.getId(), projecao);
+            }
+            projecao.depois.putAll(diferenca);
+        }
+        return diferenca;
+    }
+
+    /**
+     * Dispositivos cujo estado projetado difere do atual, na ordem em que a
+     * rotina os alterou pela primeira vez.
+     *
+     * @return para cada dispositivo, o ID, o tipo, o estado antes e depois da
+     *         rotina e os campos alterados
+     */
+    List<Map<String, Object>> alterados() {
+        List<Map<String, Object>> alterados = new ArrayList<>();
+        for (Projecao p : projecoes.values()) {
+            Map<String, Object> alteracoes = new LinkedHashMap<>();
+            for (Map.Entry<String, Object> campo : p.depois.entrySet()) {
+                if (!Objects.equals(p.antes.get(campo.getKey()), campo.getValue())) {
+                    alteracoes.put(campo.getKey(), campo.getValue());
+                }
+            }
+            // ações seguintes podem ter devolvido o dispositivo ao estado inicial
+            if (alteracoes.isEmpty()) {
+                continue;
+            }
+            Map<String, Object> obj = new LinkedHashMap<>();
+            obj.put("id", p.dispositivo.getId());
+            obj.put("tipo", p.dispositivo.getTipo());
+            obj.put("antes", p.antes);
+            obj.put("depois", p.depois);
+            obj.put("alteracoes", alteracoes);
+            alterados.add(obj);
+        }
+        return alterados;
+    }
+
+    /**
+     * @return número de dispositivos copiados para a sobreposição
+     */
+    int tamanho() {
+        return projecoes.size();
+    }
+
+    private static final class Projecao {
+        private final Dispositivo dispositivo;
+        private final Map<String, Object> antes;
+        private final Map<String, Object> depois;
+
+        private Projecao(Dispositivo dispositivo, Map<String, Object> antes) {
+            this.dispositivo = dispositivo;
+            this.antes = antes;
+            this.depois = new LinkedHashMap<>(antes);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package engtelecom.std.smart_home.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.stereotype.Component;
+
+import engtelecom.std.smart_home.entities.Dispositivo;
+import engtelecom.std.smart_home.telemetria.CampoTelemetria;
+import engtelecom.std.smart_home.telemetria.LoteTelemetria;
+
+/**
+ * Serviço que aplica os relatórios de telemetria enviados pelos dispositivos.
+ *
+ * Os relatórios descrevem o estado físico do dispositivo, portanto atualizam o
+ * estado reportado do gêmeo digital, e não o estado desejado. Relatórios de
+ * casas ou dispositivos desconhecidos, ou de campos que o dispositivo não
+ * possui, são descartados.
+ */
+@Component
+public class TelemetriaService {
+
+    private final CasaService casaService;
+    private final DispositivoService dispositivoService;
+    private final GemeoDigitalService gemeoDigitalService;
+
+    private final long inicio = System.nanoTime();
+    private final LongAdder recebidos = new LongAdder();
+    private final LongAdder aplicados = new LongAdder();
+    private final LongAdder descartados = new LongAdder();
+    private final LongAdder lotes = new LongAdder();
+    private final LongAdder quadrosInvalidos = new LongAdder();
+
+    /**
+     * Cria o serviço de telemetria.
+     *
+     * @param casaService         serviço das casas
+     * @param dispositivoService  serviço usado para validar os dispositivos
+     * @param gemeoDigitalService serviço que guarda o estado reportado
+     */
+    public TelemetriaService(CasaService casaService, DispositivoService dispositivoService,
+            GemeoDigitalService gemeoDigitalService) {
+        this.casaService = casaService;
+        this.dispositivoService = dispositivoService;
+        this.gemeoDigitalService = gemeoDigitalService;
+    }
+
+    /**
+     * Aplica todos os relatórios de um lote, na ordem em que foram recebidos.
+     *
+     * @param lote lote decodificado pelo receptor
+     */
+    public void aplicar(LoteTelemetria lote) {
+        int n = lote.tamanho();
+        int validos = 0;
+        Casa casa = null;
+
+        for (int i = 0; i < n; i++) {
+            // relatórios seguidos costumam ser da mesma casa
+            if (casa == null || casa.getId() != lote.casa(i)) {
+                casa = casaService.buscarPorId(lote.casa(i));
+                if (casa == null) {
+                    continue;
+                }
+            }
+
+            CampoTelemetria campo = CampoTelemetria.porCodigo(lote.campo(i));
+            Dispositivo d = dispositivoService.buscarPorId(casa, lote.dispositivo(i));
+            if (campo == null || d == null || !campo.aceita(d)) {
+                continue;
+            }
+            if (gemeoDigitalService.registrarReportado(d, campo.getNome(), campo.converter(lote.valor(i)))) {
+                validos++;
+            }
+        }
+
+        recebidos.add(n);
+        aplicados.add(validos);
+        descartados.add(n - validos);
+        lotes.increment();
+    }
+
+    /**
+     * Contabiliza quadros ignorados pelo receptor (tamanho desconhecido).
+     *
+     * @param quantidade número de quadros ignorados
+     */
+    public void registrarQuadrosInvalidos(int quantidade) {
+        quadrosInvalidos.add(quantidade);
+    }
+
+    /**
+     * Métricas da telemetria.
+     *
+     * @return mapa com relatórios recebidos, aplicados e descartados
+     */
+    public Map<String, Object> metricas() {
+        double segundos = Math.max(1e-9, (System.nanoTime() - inicio) / 1e9);
+        long l = lotes.sum();
+
+        Map<String, Object> obj = new LinkedHashMap<>();
+        obj.put("recebidos", recebidos.sum());
+        obj.put("aplicados", aplicados.sum());
+        obj.put("descartados", descartados.sum());
+        obj.put("quadrosInvalidos", quadrosInvalidos.sum());
+        obj.put("lotes", l);
+        obj.put("relatoriosPorLote", l == 0 ? 0 : (double) recebidos.sum() / l);
+        obj.put("relatoriosPorSegundo", recebidos.sum() / segundos);
+        return obj;
+    }
+}
@@ -0,0 +1,167 @@
+package engtelecom.std.smart_home.service;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import engtelecom.std.smart_home.entities.Dispositivo;
+
+/**
+ * Transição gradual de um campo numérico de um dispositivo até um valor alvo.
+ *
+ * O valor avança em passos de tamanho fixo a intervalos fixos a partir do
+ * instante de início, de modo que o valor em qualquer instante é calculado
+ * diretamente, sem depender de quantas vezes a transição foi avançada: um
+ * avanço atrasado apenas salta os passos intermediários.
+ *
+ * As transições ativas de cada casa ficam em {@code Casa.transicoes}, com no
+ * máximo uma por campo de cada dispositivo. Uma transição é cancelada quando
+ * outra a substitui ou quando um comando comum altera o mesmo campo; a
+ * conclusão apenas a retira da casa, sem cancelá-la, para que o último passo
+ * ainda pendente na caixa postal seja aplicado.
+ */
+final class Transicao {
+
+    /**
+     * Campos que admitem transição gradual.
+     */
+    static final List<String> CAMPOS = List.of("intensidade", "temperatura", "volume");
+
+    final Casa casa;
+    final Dispositivo dispositivo;
+    final String campo;
+    final int inicial;
+    final int alvo;
+    final int passo;
+    final long inicioNanos;
+    final long intervaloNanos;
+    final long fimNanos;
+
+    private volatile boolean cancelada;
+
+    // usados apenas pela thread do relógio das transições
+    int ultimoValor;
+    long rodadas;
+
+    /**
+     * @param casa           casa do dispositivo
+     * @param dispositivo    dispositivo alvo
+     * @param campo          campo que varia (um de {@link #CAMPOS})
+     * @param inicial        valor do campo no início
+     * @param alvo           valor final do campo
+     * @param passo          variação (positiva) a cada intervalo
+     * @param intervaloNanos tempo entre dois passos
+     * @param inicioNanos    instante de início ({@link System#nanoTime()})
+     */
+    Transicao(Casa casa, Dispositivo dispositivo, String campo, int inicial, int alvo, int passo,
+            long intervaloNanos, long inicioNanos) {
+        this.casa = casa;
+        this.dispositivo = dispositivo;
+        this.campo = campo;
+        this.inicial = inicial;
+        this.alvo = alvo;
+        this.passo = passo;
+        this.intervaloNanos = intervaloNanos;
+        this.inicioNanos = inicioNanos;
+        long passos = (Math.abs((long) alvo - inicial) + passo - 1) / passo;
+        this.fimNanos = inicioNanos + passos * intervaloNanos;
+        this.ultimoValor = inicial;
+    }
+
+    /**
+     * Valor do campo em um instante: o inicial mais os passos já vencidos,
+     * sem ultrapassar o alvo.
+     */
+    int valorEm(long agora) {
+        if (agora >= fimNanos) {
+            return alvo;
+        }
+        long vencidos = Math.max(0, (agora - inicioNanos) / intervaloNanos);
+        long variacao = Math.min(vencidos * passo, Math.abs((long) alvo - inicial));
+        return (int) (alvo >= inicial ? inicial + variacao : inicial - variacao);
+    }
+
+    /**
+     * Instante do primeiro passo posterior a {@code agora}.
+     */
+    long proximoPasso(long agora) {
+        long vencidos = Math.max(0, (agora - inicioNanos) / intervaloNanos);
+        return Math.min(fimNanos, inicioNanos + (vencidos + 1) * intervaloNanos);
+    }
+
+    boolean isCancelada() {
+        return cancelada;
+    }
+
+    /**
+     * Cancela a transição; os passos ainda pendentes na caixa postal do
+     * dispositivo deixam de ter efeito.
+     *
+     * @return true se a transição ainda não estava cancelada
+     */
+    boolean cancelar() {
+        if (cancelada) {
+            return false;
+        }
+        cancelada = true;
+        return true;
+    }
+
+    /**
+     * Retira a transição concluída da casa, se ela ainda for a transição ativa
+     * do campo.
+     */
+    void concluir() {
+        casa.transicoes.remove(chave(dispositivo.getId(), campo), this);
+    }
+
+    /**
+     * Cancela as transições de um dispositivo nos campos informados, chamado
+     * quando um comando comum altera esses campos.
+     *
+     * @param casa   casa do dispositivo
+     * @param id     ID do dispositivo
+     * @param campos campos do comando
+     * @return número de transições canceladas
+     */
+    static int cancelar(Casa casa, long id, Collection<String> campos) {
+        if (casa.transicoes.isEmpty()) {
+            return 0;
+        }
+        int canceladas = 0;
+        for (String campo : CAMPOS) {
+            if (campos.contains(campo)) {
+                Transicao t = casa.transicoes.remove(chave(id, campo));
+                if (t != null && t.cancelar()) {
+                    canceladas++;
+                }
+            }
+        }
+        return canceladas;
+    }
+
+    static String chave(long id, String campo) {
+        return id + "/" + campo;
+    }
+
+    /**
+     * Representação da transição para as respostas da API.
+     *
+     * @param agora instante usado para o valor atual e o tempo restante
+     * @return mapa com dispositivo, campo, valores inicial, atual e alvo,
+     *         passo, intervalo e tempo restante
+     */
+    Map<String, Object> descrever(long agora) {
+        Map<String, Object> obj = new LinkedHashMap<>();
+        obj.put("dispositivoId", dispositivo.getId());
+        obj.put("campo", campo);
+        obj.put("inicial", inicial);
+        obj.put("atual", valorEm(agora));
+        obj.put("alvo", alvo);
+        obj.put("passo", passo);
+        obj.put("intervaloMs", intervaloNanos / 1_000_000.0);
+        obj.put("restanteMs", Math.max(0, fimNanos - agora) / 1_000_000);
+        return obj;
+    }
+}
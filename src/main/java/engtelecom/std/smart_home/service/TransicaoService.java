@@ -0,0 +1,396 @@
+package engtelecom.std.smart_home.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import engtelecom.std.smart_home.entities.Dispositivo;
+import engtelecom.std.smart_home.exceptions.CaixaPostalCheiaException;
+import engtelecom.std.smart_home.exceptions.DispositivoNaoEncontradoException;
+import engtelecom.std.smart_home.exceptions.TransicaoInvalidaException;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Serviço de transições graduais: intensidade de lâmpadas, temperatura de
+ * aparelhos de ar-condicionado e volume de televisões variando até um valor
+ * alvo ao longo do tempo, em vez de saltarem de uma vez.
+ *
+ * Há duas formas de transição:
+ * <ul>
+ * <li>esmaecimento: {@code {"intensidade": 20, "duracaoMs": 30000}} chega ao
+ * alvo ao fim da duração, em passos unitários ou, se a duração for curta
+ * demais para isso, em passos maiores separados por pelo menos
+ * {@code casa.transicoes.intervalo-minimo-ms};</li>
+ * <li>rampa: {@code {"temperatura": 18, "passo": 1, "intervaloMs": 600000}}
+ * varia o campo de {@code passo} em {@code passo} a cada intervalo.</li>
+ * </ul>
+ *
+ * Todas as transições de todas as casas são avançadas por um único relógio,
+ * sem uma thread ou um temporizador por transição. O relógio é uma roda de
+ * temporização: cada transição fica na posição da roda correspondente ao seu
+ * próximo passo, e cada tique visita apenas a posição corrente, de modo que o
+ * custo de um tique é proporcional às transições com passo vencido, não ao
+ * total de transições ativas. Os passos passam pela caixa postal do
+ * dispositivo, como qualquer comando.
+ *
+ * Uma nova transição substitui a que estiver em andamento no mesmo campo do
+ * dispositivo, e um comando comum que altere o campo cancela a transição; em
+ * ambos os casos, os passos já enviados e ainda não aplicados são descartados.
+ */
+@Component
+public class TransicaoService {
+
+    private static final int POSICOES = 512;
+
+    private final CasaService casaService;
+    private final DispositivoService dispositivoService;
+    private final long tickNanos;
+    private final long intervaloMinimoNanos;
+
+    private final ScheduledExecutorService relogio;
+    private final ConcurrentLinkedQueue<Transicao> novas = new ConcurrentLinkedQueue<>();
+
+    // roda de temporização, usada apenas pela thread do relógio
+    private final List<ArrayList<Transicao>> roda = new ArrayList<>(POSICOES);
+    private final long origem = System.nanoTime();
+    private long tickAtual;
+
+    private final LongAdder iniciadas = new LongAdder();
+    private final LongAdder concluidas = new LongAdder();
+    private final LongAdder canceladas = new LongAdder();
+    private final LongAdder passos = new LongAdder();
+    private final LongAdder passosRecusados = new LongAdder();
+    private final LongAdder ticks = new LongAdder();
+    private final LongAdder nanosTicks = new LongAdder();
+    private volatile long maiorTickNanos;
+
+    /**
+     * Cria o serviço e inicia o relógio das transições.
+     *
+     * @param casaService        serviço das casas, consultado nas métricas
+     * @param dispositivoService serviço que aplica os passos aos dispositivos
+     * @param tickMs             período do relógio
+     * @param intervaloMinimoMs  menor intervalo entre dois passos de uma transição
+     */
+    public TransicaoService(CasaService casaService, DispositivoService dispositivoService,
+            @Value("${casa.transicoes.tick-ms:50}") long tickMs,
+            @Value("${casa.transicoes.intervalo-minimo-ms:100}") long intervaloMinimoMs) {
+        if (tickMs <= 0) {
+            throw new IllegalArgumentException("casa.transicoes.tick-ms deve ser positivo: " + tickMs);
+        }
+        this.casaService = casaService;
+        this.dispositivoService = dispositivoService;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMs);
+        this.intervaloMinimoNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(tickMs, intervaloMinimoMs));
+        for (int i = 0; i < POSICOES; i++) {
+            roda.add(new ArrayList<>());
+        }
+
+        this.relogio = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "transicoes");
+            t.setDaemon(true);
+            return t;
+        });
+        relogio.scheduleAtFixedRate(this::avancar, tickMs, tickMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Indica se um comando pede uma transição gradual ({@code duracaoMs} ou
+     * {@code intervaloMs}).
+     */
+    public static boolean ehTransicao(Map<String, Object> body) {
+        return body != null && (body.containsKey("duracaoMs") || body.containsKey("intervaloMs"));
+    }
+
+    /**
+     * Inicia as transições de um dispositivo.
+     *
+     * Os campos com transição (intensidade, temperatura, volume) que o
+     * dispositivo tiver variam gradualmente; os demais campos do comando (por
+     * exemplo, {@code ligado} ou {@code cor}, que não têm valores
+     * intermediários) são aplicados de imediato. Uma duração zero aplica tudo
+     * de imediato.
+     *
+     * @param casa casa do dispositivo
+     * @param id   ID do dispositivo
+     * @param body campos alvo e {@code duracaoMs}, ou {@code passo} e {@code intervaloMs}
+     * @return mapa com o ID do dispositivo, as alterações aplicadas de imediato
+     *         e as transições iniciadas
+     *
+     * @throws DispositivoNaoEncontradoException se o dispositivo não existir
+     * @throws TransicaoInvalidaException        se a duração, o passo ou o intervalo
+     *                                           forem inválidos, ou se o dispositivo não
+     *                                           tiver nenhum dos campos com transição
+     */
+    public Map<String, Object> iniciar(Casa casa, long id, Map<String, Object> body) {
+        Dispositivo d = dispositivoService.buscarPorId(casa, id);
+        if (d == null) {
+            throw new DispositivoNaoEncontradoException(id);
+        }
+
+        Map<String, Object> imediatos = new HashMap<>(body);
+        Long duracaoMs = lerNumero(imediatos.remove("duracaoMs"), "duracaoMs");
+        Long intervaloMs = lerNumero(imediatos.remove("intervaloMs"), "intervaloMs");
+        Long passo = lerNumero(imediatos.remove("passo"), "passo");
+        if ((duracaoMs == null) == (intervaloMs == null)) {
+            throw new TransicaoInvalidaException("informe 'duracaoMs' ou 'intervaloMs' (com 'passo').");
+        }
+        if (duracaoMs != null && (duracaoMs < 0 || passo != null)) {
+            throw new TransicaoInvalidaException("'duracaoMs' não pode ser negativo nem vir com 'passo'.");
+        }
+        if (intervaloMs != null && (TimeUnit.MILLISECONDS.toNanos(intervaloMs) < intervaloMinimoNanos
+                || (passo != null && passo <= 0))) {
+            throw new TransicaoInvalidaException("'intervaloMs' deve ser de pelo menos "
+                    + intervaloMinimoNanos / 1_000_000 + " ms e 'passo', positivo.");
+        }
+
+        // uma substituição mais antiga ainda na janela do coalescedor vem antes da transição
+        dispositivoService.descarregarCoalescido(d);
+
+        // alvos já normalizados (limites de intensidade e volume) dos campos que o dispositivo tem
+        Map<String, Integer> alvos = new LinkedHashMap<>();
+        for (String campo : Transicao.CAMPOS) {
+            if (!imediatos.containsKey(campo)) {
+                continue;
+            }
+            Object valor = imediatos.get(campo);
+            Map<String, Object> normalizado;
+            try {
+                normalizado = d.calcularDiferenca(Map.of(campo, valor == null ? "" : valor));
+            } catch (NumberFormatException e) {
+                throw new TransicaoInvalidaException("valor inválido para '" + campo + "': " + valor);
+            }
+            if (normalizado != null) {
+                alvos.put(campo, normalizado.containsKey(campo)
+                        ? ((Number) normalizado.get(campo)).intValue()
+                        : ((Number) d.obterEstado().get(campo)).intValue());
+            }
+        }
+        if (alvos.isEmpty()) {
+            throw new TransicaoInvalidaException("o dispositivo " + id + " não tem nenhum dos campos "
+                    + Transicao.CAMPOS + ".");
+        }
+
+        long agora = System.nanoTime();
+        List<Transicao> iniciadasAgora = new ArrayList<>();
+        for (Map.Entry<String, Integer> alvo : alvos.entrySet()) {
+            String campo = alvo.getKey();
+            int inicial = ((Number) d.obterEstado().get(campo)).intValue();
+            int variacao = Math.abs(alvo.getValue() - inicial);
+            if (variacao == 0 || (duracaoMs != null && duracaoMs == 0)) {
+                // nada a variar: segue como comando comum, que também cancela a transição anterior
+                continue;
+            }
+            imediatos.remove(campo);
+
+            int tamanhoPasso;
+            long intervalo;
+            if (duracaoMs != null) {
+                long duracao = TimeUnit.MILLISECONDS.toNanos(duracaoMs);
+                long numeroPassos = Math.max(1, Math.min(variacao, duracao / intervaloMinimoNanos));
+                tamanhoPasso = (int) ((variacao + numeroPassos - 1) / numeroPassos);
+                intervalo = duracao / ((variacao + tamanhoPasso - 1) / tamanhoPasso);
+            } else {
+                tamanhoPasso = passo == null ? 1 : (int) Math.min(passo, variacao);
+                intervalo = TimeUnit.MILLISECONDS.toNanos(intervaloMs);
+            }
+
+            Transicao t = new Transicao(casa, d, campo, inicial, alvo.getValue(), tamanhoPasso, intervalo, agora);
+            Transicao anterior = casa.transicoes.put(Transicao.chave(id, campo), t);
+            if (anterior != null) {
+                anterior.cancelar();
+            }
+            novas.add(t);
+            iniciadas.increment();
+            iniciadasAgora.add(t);
+        }
+
+        Map<String, Object> alteracoes = imediatos.isEmpty() ? Map.of()
+                : dispositivoService.aplicarDiferenca(casa, id, imediatos);
+
+        List<Map<String, Object>> transicoes = new ArrayList<>();
+        for (Transicao t : iniciadasAgora) {
+            transicoes.add(t.descrever(agora));
+        }
+        Map<String, Object> obj = new LinkedHashMap<>();
+        obj.put("dispositivoId", id);
+        obj.put("alteracoes", alteracoes == null ? Map.of() : alteracoes);
+        obj.put("transicoes", transicoes);
+        return obj;
+    }
+
+    /**
+     * Transições em andamento de um dispositivo.
+     *
+     * @param casa casa do dispositivo
+     * @param id   ID do dispositivo
+     * @return lista com a descrição de cada transição (vazia se não houver)
+     */
+    public List<Map<String, Object>> buscarTransicoes(Casa casa, long id) {
+        long agora = System.nanoTime();
+        List<Map<String, Object>> lista = new ArrayList<>();
+        for (String campo : Transicao.CAMPOS) {
+            Transicao t = casa.transicoes.get(Transicao.chave(id, campo));
+            if (t != null) {
+                lista.add(t.descrever(agora));
+            }
+        }
+        return lista;
+    }
+
+    /**
+     * Cancela as transições em andamento de um dispositivo, que permanece com
+     * os valores do último passo aplicado.
+     *
+     * @param casa casa do dispositivo
+     * @param id   ID do dispositivo
+     * @return descrição das transições canceladas
+     */
+    public List<Map<String, Object>> cancelar(Casa casa, long id) {
+        long agora = System.nanoTime();
+        List<Map<String, Object>> lista = new ArrayList<>();
+        for (String campo : Transicao.CAMPOS) {
+            Transicao t = casa.transicoes.remove(Transicao.chave(id, campo));
+            if (t != null && t.cancelar()) {
+                lista.add(t.descrever(agora));
+            }
+        }
+        return lista;
+    }
+
+    /**
+     * Um tique do relógio: agenda as transições novas e avança as posições da
+     * roda vencidas desde o último tique.
+     */
+    private void avancar() {
+        long agora = System.nanoTime();
+        Transicao t;
+        while ((t = novas.poll()) != null) {
+            if (t.isCancelada()) {
+                canceladas.increment();
+            } else {
+                agendar(t, t.proximoPasso(agora));
+            }
+        }
+        // um tique atrasado (pausa da JVM) visita todas as posições que ficaram para trás
+        while (origem + (tickAtual + 1) * tickNanos <= agora) {
+            tickAtual++;
+            visitar((int) (tickAtual & (POSICOES - 1)), agora);
+        }
+        long duracao = System.nanoTime() - agora;
+        ticks.increment();
+        nanosTicks.add(duracao);
+        if (duracao > maiorTickNanos) {
+            maiorTickNanos = duracao;
+        }
+    }
+
+    private void visitar(int posicao, long agora) {
+        ArrayList<Transicao> lista = roda.get(posicao);
+        if (lista.isEmpty()) {
+            return;
+        }
+        roda.set(posicao, new ArrayList<>());
+        for (Transicao t : lista) {
+            if (t.isCancelada()) {
+                canceladas.increment();
+            } else if (t.rodadas > 0) {
+                t.rodadas--;
+                roda.get(posicao).add(t);
+            } else {
+                try {
+                    darPasso(t, agora);
+                } catch (RuntimeException e) {
+                    // uma falha inesperada encerra apenas esta transição, sem parar o relógio
+                    t.cancelar();
+                    t.concluir();
+                    canceladas.increment();
+                }
+            }
+        }
+    }
+
+    private void darPasso(Transicao t, long agora) {
+        int valor = t.valorEm(agora);
+        if (valor != t.ultimoValor) {
+            try {
+                dispositivoService.enviarPasso(t, Map.of(t.campo, valor));
+                t.ultimoValor = valor;
+                passos.increment();
+            } catch (CaixaPostalCheiaException e) {
+                // caixa cheia: o próximo tique tenta de novo, já com o valor daquele instante
+                passosRecusados.increment();
+                agendar(t, agora + tickNanos);
+                return;
+            }
+        }
+        if (agora >= t.fimNanos) {
+            t.concluir();
+            concluidas.increment();
+        } else {
+            agendar(t, t.proximoPasso(agora));
+        }
+    }
+
+    /**
+     * Coloca a transição na posição da roda do tique em que {@code quando}
+     * vence, com o número de voltas completas que ainda faltam.
+     */
+    private void agendar(Transicao t, long quando) {
+        long tick = Math.max(tickAtual + 1, Math.ceilDiv(quando - origem, tickNanos));
+        t.rodadas = (tick - tickAtual - 1) / POSICOES;
+        roda.get((int) (tick & (POSICOES - 1))).add(t);
+    }
+
+    private static Long lerNumero(Object valor, String campo) {
+        if (valor == null) {
+            return null;
+        }
+        try {
+            return Long.parseLong(String.valueOf(valor));
+        } catch (NumberFormatException e) {
+            throw new TransicaoInvalidaException("'" + campo + "' deve ser um número inteiro: " + valor);
+        }
+    }
+
+    /**
+     * Métricas das transições.
+     *
+     * @return transições ativas, iniciadas, concluídas e canceladas, passos
+     *         enviados e recusados e o custo dos tiques do relógio
+     */
+    public Map<String, Object> metricas() {
+        long ativas = 0;
+        for (Casa casa : casaService.buscarTodas()) {
+            ativas += casa.transicoes.size();
+        }
+        long n = ticks.sum();
+        Map<String, Object> obj = new LinkedHashMap<>();
+        obj.put("tickMs", tickNanos / 1_000_000);
+        obj.put("ativas", ativas);
+        obj.put("iniciadas", iniciadas.sum());
+        obj.put("concluidas", concluidas.sum());
+        obj.put("canceladas", canceladas.sum());
+        obj.put("passos", passos.sum());
+        obj.put("passosRecusados", passosRecusados.sum());
+        obj.put("ticks", n);
+        obj.put("tickMedioMs", n == 0 ? 0.0 : nanosTicks.sum() / 1e6 / n);
+        obj.put("tickMaximoMs", maiorTickNanos / 1e6);
+        return obj;
+    }
+
+    @PreDestroy
+    void encerrar() {
+        relogio.shutdownNow();
+    }
+}
@@ -0,0 +1,658 @@
+package engtelecom.std.smart_home.service;
+
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import engtelecom.std.smart_home.exceptions.WebhookInvalidoException;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Serviço de notificações por webhook: sistemas externos (alarmes, painéis de
+ * energia...) assinam as alterações de dispositivos, ambientes, cenários e
+ * grupos e as recebem por {@code POST}, em lotes.
+ *
+ * As alterações não são enviadas por quem as faz: uma thread própria lê o
+ * {@link DiarioAlteracoes}, onde os serviços já gravam cada alteração
+ * efetiva, e distribui os registros para a fila de cada assinatura. Assim,
+ * nem a latência nem as falhas de um assinante chegam às requisições.
+ *
+ * Cada assinatura tem uma fila limitada ({@code casa.webhooks.fila}; os
+ * eventos que não cabem são descartados e contados) e no máximo um
+ * {@code POST} em andamento, feito com o cliente HTTP assíncrono, com até
+ * {@code casa.webhooks.lote} eventos em ordem de sequência. Um envio que
+ * falha (erro de conexão, tempo esgotado ou resposta fora de 2xx) é repetido
+ * com espera exponencial; depois de {@code casa.webhooks.tentativas}
+ * tentativas, o lote vai para o depósito de falhas da assinatura, de onde pode
+ * ser reenviado.
+ *
+ * Como {@code POST /webhooks} não é autenticado, uma assinatura criada por
+ * ele vale para uma única casa e não pode apontar para a própria máquina nem
+ * para a rede interna (endereços de loopback, de enlace local e privados),
+ * a não ser que o destino esteja em {@code casa.webhooks.destinos-permitidos}.
+ * A verificação resolve o nome do destino uma vez, na thread da requisição
+ * que cria a assinatura; os envios não esperam por DNS na thread comum. Ela
+ * não protege contra um nome que passe depois a apontar para a rede interna,
+ * porque o cliente HTTP resolve o nome de novo a cada conexão. As assinaturas
+ * de {@code casa.webhooks.assinaturas} são do operador e não passam por ela.
+ *
+ * Em um nó seguidor da replicação os registros são lidos mas não enviados:
+ * as notificações partem apenas do líder. Sem nenhuma assinatura, o diário
+ * não é lido, e o seu buffer não precisa ser mantido para os webhooks.
+ */
+@Component
+public class WebhookService {
+
+    private static final List<String> RECURSOS = List.of(RegistroAlteracao.CASA, RegistroAlteracao.DISPOSITIVO,
+            RegistroAlteracao.AMBIENTE, RegistroAlteracao.CENARIO, RegistroAlteracao.GRUPO);
+
+    private final DiarioAlteracoes diario;
+    private final ObjectMapper json;
+    private final HttpClient http;
+    private final ScheduledExecutorService agendador;
+
+    private final int capacidadeFila;
+    private final int lote;
+    private final long janelaMs;
+    private final Duration timeout;
+    private final int maximoTentativas;
+    private final long esperaInicialMs;
+    private final long esperaMaximaMs;
+    private final int capacidadeFalhas;
+    // "host" ou "host:porta", em minúsculas
+    private final Set<String> destinosPermitidos = new LinkedHashSet<>();
+
+    private final ConcurrentSkipListMap<Long, Assinatura> assinaturas = new ConcurrentSkipListMap<>();
+    private final AtomicLong contadorAssinaturas = new AtomicLong();
+
+    private final Thread leitor;
+    private volatile boolean ativo = true;
+    private volatile long posicao;
+
+    // se o diário está sendo acompanhado e de onde a leitura recomeça; monitor do serviço
+    private boolean acompanhando;
+    private long retomada = -1;
+
+    private final LongAdder distribuidos = new LongAdder();
+    private final LongAdder perdidos = new LongAdder();
+
+    /**
+     * Cria o serviço. A leitura do diário começa com a primeira assinatura,
+     * a partir da posição atual.
+     *
+     * @param diario           diário de alterações lido
+     * @param json             conversor JSON da aplicação
+     * @param urls             URLs assinantes de todas as alterações desde o início,
+     *                         separadas por vírgula
+     * @param capacidadeFila   número máximo de eventos pendentes por assinatura
+     * @param lote             número máximo de eventos por {@code POST}
+     * @param janelaMs         espera antes do primeiro envio, para acumular um lote
+     * @param timeoutMs        tempo máximo de conexão e de resposta de um envio
+     * @param maximoTentativas tentativas de um lote antes de ir para o depósito de falhas
+     * @param esperaInicialMs  espera antes da primeira repetição
+     * @param esperaMaximaMs   espera máxima entre repetições
+     * @param capacidadeFalhas número máximo de lotes no depósito de falhas de cada assinatura
+     * @param destinos         destinos internos aceitos em {@code POST /webhooks}, como
+     *                         "host" ou "host:porta", separados por vírgula
+     */
+    public WebhookService(DiarioAlteracoes diario, ObjectMapper json,
+            @Value("${casa.webhooks.assinaturas:}") String urls,
+            @Value("${casa.webhooks.fila:10000}") int capacidadeFila,
+            @Value("${casa.webhooks.lote:100}") int lote,
+            @Value("${casa.webhooks.janela-ms:100}") long janelaMs,
+            @Value("${casa.webhooks.timeout-ms:5000}") long timeoutMs,
+            @Value("${casa.webhooks.tentativas:8}") int maximoTentativas,
+            @Value("${casa.webhooks.espera-inicial-ms:200}") long esperaInicialMs,
+            @Value("${casa.webhooks.espera-maxima-ms:30000}") long esperaMaximaMs,
+            @Value("${casa.webhooks.falhas:100}") int capacidadeFalhas,
+            @Value("${casa.webhooks.destinos-permitidos:}") String destinos) {
+        this.diario = diario;
+        this.json = json;
+        this.capacidadeFila = capacidadeFila;
+        this.lote = lote;
+        this.janelaMs = janelaMs;
+        this.timeout = Duration.ofMillis(timeoutMs);
+        this.maximoTentativas = maximoTentativas;
+        this.esperaInicialMs = esperaInicialMs;
+        this.esperaMaximaMs = esperaMaximaMs;
+        this.capacidadeFalhas = capacidadeFalhas;
+        for (String destino : destinos.split(",")) {
+            if (!destino.isBlank()) {
+                destinosPermitidos.add(destino.trim().toLowerCase(Locale.ROOT));
+            }
+        }
+        this.http = HttpClient.newBuilder().connectTimeout(timeout).build();
+        this.agendador = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "webhooks-envio");
+            t.setDaemon(true);
+            return t;
+        });
+
+        for (String url : urls.split(",")) {
+            if (!url.isBlank()) {
+                criar(lerUrl(url.trim()), null, new LinkedHashSet<>());
+            }
+        }
+
+        this.leitor = new Thread(this::lerDiario, "webhooks");
+        leitor.setDaemon(true);
+        leitor.start();
+    }
+
+    /**
+     * Cria uma assinatura das alterações de uma casa.
+     *
+     * @param body mapa com "url", "casaId" e, opcionalmente, "recursos" (lista
+     *             entre casa, dispositivo, ambiente, cenario e grupo; todos se
+     *             ausente)
+     * @return a descrição da assinatura criada
+     *
+     * @throws WebhookInvalidoException se a URL, a casa ou os recursos forem
+     *                                  inválidos, ou se a URL apontar para um
+     *                                  destino interno não permitido
+     */
+    public Map<String, Object> assinar(Map<String, Object> body) {
+        if (body == null || !(body.get("url") instanceof String texto) || texto.isBlank()) {
+            throw new WebhookInvalidoException("o campo 'url' é obrigatório.");
+        }
+        URI url = lerUrl(texto.trim());
+        String recusa = verificarDestino(url);
+        if (recusa != null) {
+            throw new WebhookInvalidoException(recusa);
+        }
+
+        if (body.get("casaId") == null) {
+            throw new WebhookInvalidoException("o campo 'casaId' é obrigatório.");
+        }
+        long casaId;
+        try {
+            casaId = Long.parseLong(String.valueOf(body.get("casaId")));
+        } catch (NumberFormatException e) {
+            throw new WebhookInvalidoException("'casaId' inválido: " + body.get("casaId"));
+        }
+
+        Set<String> recursos = new LinkedHashSet<>();
+        if (body.get("recursos") != null) {
+            if (!(body.get("recursos") instanceof List<?> lista)) {
+                throw new WebhookInvalidoException("'recursos' deve ser uma lista.");
+            }
+            for (Object r : lista) {
+                String recurso = String.valueOf(r).toLowerCase();
+                if (!RECURSOS.contains(recurso)) {
+                    throw new WebhookInvalidoException("recurso desconhecido: " + r);
+                }
+                recursos.add(recurso);
+            }
+        }
+
+        return criar(url, casaId, recursos);
+    }
+
+    private Map<String, Object> criar(URI url, Long casaId, Set<String> recursos) {
+        Assinatura a = new Assinatura(contadorAssinaturas.incrementAndGet(), url, casaId, recursos);
+        assinaturas.put(a.id, a);
+        acompanharDiario();
+        return a.descrever();
+    }
+
+    private static URI lerUrl(String texto) {
+        URI url;
+        try {
+            url = URI.create(texto);
+        } catch (IllegalArgumentException e) {
+            throw new WebhookInvalidoException("URL malformada: " + texto);
+        }
+        if (!"http".equals(url.getScheme()) && !"https".equals(url.getScheme())) {
+            throw new WebhookInvalidoException("a URL deve ser http ou https: " + texto);
+        }
+        if (url.getHost() == null) {
+            throw new WebhookInvalidoException("a URL não tem host: " + texto);
+        }
+        return url;
+    }
+
+    /**
+     * Resolve o host da URL e recusa os endereços internos que não estejam
+     * entre os destinos permitidos.
+     *
+     * @return o motivo da recusa, ou null se o destino for aceito
+     */
+    private String verificarDestino(URI url) {
+        String host = url.getHost().toLowerCase(Locale.ROOT);
+        if (host.startsWith("[") && host.endsWith("]")) {
+            host = host.substring(1, host.length() - 1);
+        }
+        if (destinosPermitidos.contains(host) || destinosPermitidos.contains(host + ":" + url.getPort())) {
+            return null;
+        }
+        InetAddress[] enderecos;
+        try {
+            enderecos = InetAddress.getAllByName(host);
+        } catch (UnknownHostException e) {
+            return "host desconhecido: " + host;
+        }
+        for (InetAddress e : enderecos) {
+            if (interno(e)) {
+                return "destino interno não permitido: " + host + " (" + e.getHostAddress()
+                        + "); veja casa.webhooks.destinos-permitidos";
+            }
+        }
+        return null;
+    }
+
+    private static boolean interno(InetAddress e) {
+        byte[] b = e.getAddress();
+        return e.isAnyLocalAddress() || e.isLoopbackAddress() || e.isLinkLocalAddress() || e.isSiteLocalAddress()
+                || e.isMulticastAddress()
+                // IPv6 de endereço local único (fc00::/7)
+                || (b.length == 16 && (b[0] & 0xfe) == 0xfc)
+                // IPv4 compartilhado das operadoras (100.64.0.0/10)
+                || (b.length == 4 && (b[0] & 0xff) == 100 && (b[1] & 0xc0) == 64);
+    }
+
+    private synchronized void acompanharDiario() {
+        if (!acompanhando) {
+            acompanhando = true;
+            retomada = diario.acompanhar();
+            notifyAll();
+        }
+    }
+
+    private synchronized void liberarDiario() {
+        if (acompanhando && assinaturas.isEmpty()) {
+            acompanhando = false;
+            diario.deixarDeAcompanhar();
+        }
+    }
+
+    /**
+     * Remove uma assinatura; os eventos pendentes dela são descartados.
+     *
+     * @param id ID da assinatura
+     * @return a descrição da assinatura removida, ou null se não existir
+     */
+    public Map<String, Object> cancelar(long id) {
+        Assinatura a = assinaturas.remove(id);
+        if (a == null) {
+            return null;
+        }
+        liberarDiario();
+        synchronized (a) {
+            a.removida = true;
+            return a.descrever();
+        }
+    }
+
+    /**
+     * Descrição de todas as assinaturas, com os contadores de entrega.
+     */
+    public List<Map<String, Object>> buscarTodas() {
+        List<Map<String, Object>> lista = new ArrayList<>();
+        for (Assinatura a : assinaturas.values()) {
+            synchronized (a) {
+                lista.add(a.descrever());
+            }
+        }
+        return lista;
+    }
+
+    /**
+     * Descrição de uma assinatura.
+     *
+     * @return a descrição, ou null se não existir
+     */
+    public Map<String, Object> buscarPorId(long id) {
+        Assinatura a = assinaturas.get(id);
+        if (a == null) {
+            return null;
+        }
+        synchronized (a) {
+            return a.descrever();
+        }
+    }
+
+    /**
+     * Lotes que esgotaram as tentativas de envio de uma assinatura.
+     *
+     * @param id ID da assinatura
+     * @return lotes com o instante, as tentativas, o último erro e os eventos,
+     *         ou null se a assinatura não existir
+     */
+    public List<Map<String, Object>> buscarFalhas(long id) {
+        Assinatura a = assinaturas.get(id);
+        if (a == null) {
+            return null;
+        }
+        synchronized (a) {
+            return new ArrayList<>(a.falhas);
+        }
+    }
+
+    /**
+     * Devolve à fila de uma assinatura os eventos do seu depósito de falhas,
+     * enquanto houver espaço na fila.
+     *
+     * @param id ID da assinatura
+     * @return número de eventos devolvidos à fila, ou -1 se a assinatura não existir
+     */
+    @SuppressWarnings("unchecked")
+    public int reenviarFalhas(long id) {
+        Assinatura a = assinaturas.get(id);
+        if (a == null) {
+            return -1;
+        }
+        int reenviados = 0;
+        synchronized (a) {
+            while (!a.falhas.isEmpty()) {
+                List<RegistroAlteracao> eventos = (List<RegistroAlteracao>) a.falhas.peekFirst().get("eventos");
+                if (a.fila.size() + eventos.size() > capacidadeFila) {
+                    break;
+                }
+                a.falhas.pollFirst();
+                a.eventosEmFalhas -= eventos.size();
+                a.fila.addAll(eventos);
+                reenviados += eventos.size();
+            }
+            if (reenviados > 0) {
+                despertar(a, 0);
+            }
+        }
+        return reenviados;
+    }
+
+    /**
+     * Laço da thread leitora: enquanto houver assinaturas, acompanha o diário
+     * e distribui cada registro para as assinaturas interessadas.
+     */
+    private void lerDiario() {
+        while (ativo) {
+            try {
+                synchronized (this) {
+                    while (!acompanhando) {
+                        wait();
+                    }
+                    if (retomada >= 0) {
+                        posicao = retomada;
+                        retomada = -1;
+                    }
+                }
+                long lida = posicao;
+                if (diario.ultimaSequencia() < lida) {
+                    // o diário recomeçou de um instantâneo anterior à posição lida
+                    posicao = diario.ultimaSequencia();
+                    continue;
+                }
+                List<RegistroAlteracao> registros = diario.lerDesde(lida, lote * 10, 500);
+                if (registros == null) {
+                    // os registros seguintes já saíram do buffer do diário
+                    long primeira = diario.primeiraSequencia();
+                    perdidos.add(primeira - 1 - lida);
+                    posicao = primeira - 1;
+                    continue;
+                }
+                boolean enviar = diario.isOrigemLocal();
+                for (RegistroAlteracao r : registros) {
+                    if (enviar) {
+                        distribuir(r);
+                    }
+                    posicao = r.sequencia();
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                // um registro problemático não pode parar a leitura dos demais
+                posicao++;
+            }
+        }
+    }
+
+    private void distribuir(RegistroAlteracao r) {
+        distribuidos.increment();
+        for (Assinatura a : assinaturas.values()) {
+            if (!a.aceita(r)) {
+                continue;
+            }
+            synchronized (a) {
+                if (a.fila.size() >= capacidadeFila) {
+                    a.descartados++;
+                    continue;
+                }
+                a.fila.add(r);
+                despertar(a, janelaMs);
+            }
+        }
+    }
+
+    /**
+     * Agenda o próximo envio de uma assinatura ociosa. Deve ser chamado com o
+     * monitor da assinatura.
+     */
+    private void despertar(Assinatura a, long esperaMs) {
+        if (a.ocupada || a.removida) {
+            return;
+        }
+        a.ocupada = true;
+        agendador.schedule(() -> enviar(a), esperaMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Envia o lote corrente da assinatura (o lote que falhou, em uma
+     * repetição, ou os próximos eventos da fila).
+     */
+    private void enviar(Assinatura a) {
+        List<RegistroAlteracao> eventos;
+        synchronized (a) {
+            if (a.removida) {
+                return;
+            }
+            if (a.emEnvio == null) {
+                a.emEnvio = new ArrayList<>(Math.min(lote, a.fila.size()));
+                while (a.emEnvio.size() < lote && !a.fila.isEmpty()) {
+                    a.emEnvio.add(a.fila.poll());
+                }
+            }
+            if (a.emEnvio.isEmpty()) {
+                a.emEnvio = null;
+                a.ocupada = false;
+                return;
+            }
+            eventos = a.emEnvio;
+        }
+
+        byte[] corpo;
+        try {
+            corpo = json.writeValueAsBytes(eventos);
+        } catch (JsonProcessingException e) {
+            concluir(a, eventos, -1, e);
+            return;
+        }
+        HttpRequest pedido = HttpRequest.newBuilder(a.url)
+                .timeout(timeout)
+                .header("Content-Type", "application/json")
+                .header("X-Webhook-Id", String.valueOf(a.id))
+                .header("X-Webhook-Tentativa", String.valueOf(a.tentativas + 1))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(corpo))
+                .build();
+        http.sendAsync(pedido, HttpResponse.BodyHandlers.discarding())
+                .whenComplete((resposta, erro) -> concluir(a, eventos, resposta == null ? -1 : resposta.statusCode(),
+                        erro));
+    }
+
+    private void concluir(Assinatura a, List<RegistroAlteracao> eventos, int status, Throwable erro) {
+        synchronized (a) {
+            a.ocupada = false;
+            if (erro == null && status / 100 == 2) {
+                a.entregues += eventos.size();
+                a.lotesEntregues++;
+                a.tentativas = 0;
+                a.emEnvio = null;
+                if (!a.fila.isEmpty()) {
+                    despertar(a, 0);
+                }
+                return;
+            }
+
+            a.envioFalhos++;
+            a.tentativas++;
+            if (erro instanceof CompletionException && erro.getCause() != null) {
+                erro = erro.getCause();
+            }
+            a.ultimoErro = erro != null ? erro.getClass().getSimpleName() + ": " + erro.getMessage() : "HTTP " + status;
+            if (a.tentativas < maximoTentativas) {
+                despertar(a, espera(a.tentativas));
+                return;
+            }
+
+            // tentativas esgotadas: o lote vai para o depósito de falhas e a fila segue
+            if (a.falhas.size() >= capacidadeFalhas) {
+                a.eventosEmFalhas -= ((List<?>) a.falhas.pollFirst().get("eventos")).size();
+            }
+            Map<String, Object> falha = new LinkedHashMap<>();
+            falha.put("instante", System.currentTimeMillis());
+            falha.put("tentativas", a.tentativas);
+            falha.put("erro", a.ultimoErro);
+            falha.put("eventos", eventos);
+            a.falhas.add(falha);
+            a.eventosEmFalhas += eventos.size();
+            a.tentativas = 0;
+            a.emEnvio = null;
+            if (!a.fila.isEmpty()) {
+                despertar(a, 0);
+            }
+        }
+    }
+
+    /**
+     * Espera antes da repetição de número {@code tentativa}: exponencial,
+     * limitada e com variação aleatória, para que vários assinantes que
+     * falharam juntos não repitam todos ao mesmo tempo.
+     */
+    private long espera(int tentativa) {
+        long limite = Math.min(esperaMaximaMs, esperaInicialMs << Math.min(tentativa - 1, 30));
+        return limite / 2 + ThreadLocalRandom.current().nextLong(limite / 2 + 1);
+    }
+
+    /**
+     * Métricas dos webhooks.
+     *
+     * @return assinaturas, eventos distribuídos, pendentes, entregues,
+     *         descartados e em falha, envios falhos e a posição lida do diário
+     */
+    public Map<String, Object> metricas() {
+        long pendentes = 0;
+        long entregues = 0;
+        long lotes = 0;
+        long envioFalhos = 0;
+        long descartados = 0;
+        long emFalhas = 0;
+        for (Assinatura a : assinaturas.values()) {
+            synchronized (a) {
+                pendentes += a.fila.size() + (a.emEnvio == null ? 0 : a.emEnvio.size());
+                entregues += a.entregues;
+                lotes += a.lotesEntregues;
+                envioFalhos += a.envioFalhos;
+                descartados += a.descartados;
+                emFalhas += a.eventosEmFalhas;
+            }
+        }
+        Map<String, Object> obj = new LinkedHashMap<>();
+        obj.put("assinaturas", assinaturas.size());
+        obj.put("posicao", posicao);
+        obj.put("distribuidos", distribuidos.sum());
+        obj.put("perdidos", perdidos.sum());
+        obj.put("pendentes", pendentes);
+        obj.put("entregues", entregues);
+        obj.put("lotes", lotes);
+        obj.put("eventosPorLote", lotes == 0 ? 0.0 : (double) entregues / lotes);
+        obj.put("enviosFalhos", envioFalhos);
+        obj.put("descartados", descartados);
+        obj.put("emFalhas", emFalhas);
+        return obj;
+    }
+
+    @PreDestroy
+    void encerrar() {
+        ativo = false;
+        leitor.interrupt();
+        agendador.shutdownNow();
+    }
+
+    /**
+     * Uma assinatura e o seu estado de entrega, protegido pelo monitor da
+     * própria assinatura.
+     */
+    private static final class Assinatura {
+        private final long id;
+        private final URI url;
+        private final Long casaId;
+        private final Set<String> recursos;
+
+        private final ArrayDeque<RegistroAlteracao> fila = new ArrayDeque<>();
+        private final ArrayDeque<Map<String, Object>> falhas = new ArrayDeque<>();
+        private List<RegistroAlteracao> emEnvio;
+        private boolean ocupada;
+        private boolean removida;
+        private int tentativas;
+        private String ultimoErro;
+
+        private long entregues;
+        private long lotesEntregues;
+        private long envioFalhos;
+        private long descartados;
+        private long eventosEmFalhas;
+
+        private Assinatura(long id, URI url, Long casaId, Set<String> recursos) {
+            this.id = id;
+            this.url = url;
+            this.casaId = casaId;
+            this.recursos = recursos;
+        }
+
+        private boolean aceita(RegistroAlteracao r) {
+            return (casaId == null || casaId == r.casaId()) && (recursos.isEmpty() || recursos.contains(r.recurso()));
+        }
+
+        private Map<String, Object> descrever() {
+            Map<String, Object> obj = new LinkedHashMap<>();
+            obj.put("id", id);
+            obj.put("url", url.toString());
+            obj.put("casaId", casaId);
+            obj.put("recursos", recursos.isEmpty() ? RECURSOS : recursos);
+            obj.put("pendentes", fila.size() + (emEnvio == null ? 0 : emEnvio.size()));
+            obj.put("entregues", entregues);
+            obj.put("lotes", lotesEntregues);
+            obj.put("enviosFalhos", envioFalhos);
+            obj.put("descartados", descartados);
+            obj.put("emFalhas", eventosEmFalhas);
+            obj.put("tentativaAtual", tentativas);
+            obj.put("ultimoErro", ultimoErro);
+            return obj;
+        }
+    }
+}
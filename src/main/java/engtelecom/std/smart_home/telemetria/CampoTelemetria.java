@@ -0,0 +1,73 @@
+package engtelecom.std.smart_home.telemetria;
+
+import engtelecom.std.smart_home.entities.ArCondicionado;
+import engtelecom.std.smart_home.entities.Dispositivo;
+import engtelecom.std.smart_home.entities.Lampada;
+import engtelecom.std.smart_home.entities.Televisao;
+
+/**
+ * Campos que podem ser informados pelos dispositivos através da telemetria,
+ * com o código usado no {@link ProtocoloTelemetria}.
+ */
+public enum CampoTelemetria {
+    LIGADO(1, "ligado", Dispositivo.class),
+    INTENSIDADE(2, "intensidade", Lampada.class),
+    TEMPERATURA(3, "temperatura", ArCondicionado.class),
+    VOLUME(4, "volume", Televisao.class);
+
+    private static final CampoTelemetria[] POR_CODIGO = new CampoTelemetria[5];
+
+    static {
+        for (CampoTelemetria c : values()) {
+            POR_CODIGO[c.codigo] = c;
+        }
+    }
+
+    private final int codigo;
+    private final String nome;
+    private final Class<? extends Dispositivo> tipo;
+
+    CampoTelemetria(int codigo, String nome, Class<? extends Dispositivo> tipo) {
+        this.codigo = codigo;
+        this.nome = nome;
+        this.tipo = tipo;
+    }
+
+    public int getCodigo() {
+        return codigo;
+    }
+
+    public String getNome() {
+        return nome;
+    }
+
+    /**
+     * Indica se o campo existe no dispositivo informado.
+     *
+     * @param d dispositivo
+     * @return true se o dispositivo possuir o campo
+     */
+    public boolean aceita(Dispositivo d) {
+        return tipo.isInstance(d);
+    }
+
+    /**
+     * Converte o valor inteiro recebido no valor usado no estado do dispositivo.
+     *
+     * @param valor valor recebido
+     * @return valor convertido (booleano para "ligado")
+     */
+    public Object converter(int valor) {
+        return this == LIGADO ? Boolean.valueOf(valor != 0) : Integer.valueOf(valor);
+    }
+
+    /**
+     * Busca um campo pelo seu código.
+     *
+     * @param codigo código recebido
+     * @return o campo, ou null se o código for desconhecido
+     */
+    public static CampoTelemetria porCodigo(int codigo) {
+        return codigo > 0 && codigo < POR_CODIGO.length ? POR_CODIGO[codigo] : null;
+    }
+}
@@ -0,0 +1,194 @@
+package engtelecom.std.smart_home.telemetria;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import engtelecom.std.smart_home.service.TelemetriaService;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Receptor da telemetria dos dispositivos, em UDP e TCP, no
+ * {@link ProtocoloTelemetria}.
+ *
+ * Uma única thread com um {@link Selector} atende o socket UDP, o socket de
+ * escuta TCP e as conexões aceitas. Cada leitura é decodificada em um
+ * {@link LoteTelemetria} reaproveitado e aplicada de uma só vez pelo
+ * {@link TelemetriaService}, sem passar pelos controladores REST nem pelo
+ * processamento de JSON.
+ */
+@Component
+@ConditionalOnProperty(name = "casa.telemetria.habilitada", havingValue = "true")
+public class GatewayTelemetria {
+
+    private static final int TAMANHO_BUFFER = 64 * 1024;
+
+    private final TelemetriaService telemetriaService;
+    private final Selector seletor;
+    private final Thread laco;
+    private volatile boolean ativo = true;
+
+    private final ByteBuffer bufferUdp = ByteBuffer.allocateDirect(TAMANHO_BUFFER);
+    private final LoteTelemetria lote;
+
+    /**
+     * Cria o receptor e abre as portas configuradas.
+     *
+     * @param telemetriaService serviço que aplica os relatórios
+     * @param endereco          endereço local de escuta
+     * @param portaUdp          porta UDP (0 desativa)
+     * @param portaTcp          porta TCP (0 desativa)
+     * @param tamanhoLote       número máximo de relatórios aplicados de uma vez
+     * @throws IOException se alguma porta não puder ser aberta
+     */
+    public GatewayTelemetria(TelemetriaService telemetriaService,
+            @Value("${casa.telemetria.endereco:127.0.0.1}") String endereco,
+            @Value("${casa.telemetria.porta-udp:9600}") int portaUdp,
+            @Value("${casa.telemetria.porta-tcp:9600}") int portaTcp,
+            @Value("${casa.telemetria.lote:4096}") int tamanhoLote) throws IOException {
+        this.telemetriaService = telemetriaService;
+        this.lote = new LoteTelemetria(tamanhoLote);
+        this.seletor = Selector.open();
+
+        if (portaUdp > 0) {
+            DatagramChannel udp = DatagramChannel.open();
+            udp.setOption(StandardSocketOptions.SO_RCVBUF, 4 * 1024 * 1024);
+            udp.bind(new InetSocketAddress(endereco, portaUdp));
+            udp.configureBlocking(false);
+            udp.register(seletor, SelectionKey.OP_READ);
+        }
+        if (portaTcp > 0) {
+            ServerSocketChannel tcp = ServerSocketChannel.open();
+            tcp.bind(new InetSocketAddress(endereco, portaTcp));
+            tcp.configureBlocking(false);
+            tcp.register(seletor, SelectionKey.OP_ACCEPT);
+        }
+
+        this.laco = new Thread(this::executarLaco, "gateway-telemetria");
+        this.laco.setDaemon(true);
+        this.laco.start();
+    }
+
+    private void executarLaco() {
+        while (ativo) {
+            try {
+                seletor.select(500);
+                Iterator<SelectionKey> it = seletor.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey chave = it.next();
+                    it.remove();
+                    try {
+                        tratar(chave);
+                    } catch (IOException e) {
+                        chave.cancel();
+                        chave.channel().close();
+                    }
+                }
+            } catch (IOException e) {
+                // erro no seletor: tenta novamente na próxima volta
+            }
+        }
+    }
+
+    private void tratar(SelectionKey chave) throws IOException {
+        if (chave.isAcceptable()) {
+            SocketChannel cliente = ((ServerSocketChannel) chave.channel()).accept();
+            if (cliente != null) {
+                cliente.configureBlocking(false);
+                cliente.register(seletor, SelectionKey.OP_READ, ByteBuffer.allocateDirect(TAMANHO_BUFFER));
+            }
+            return;
+        }
+
+        if (chave.channel() instanceof DatagramChannel udp) {
+            lerDatagramas(udp);
+        } else {
+            lerConexao(chave, (SocketChannel) chave.channel());
+        }
+    }
+
+    /**
+     * Lê todos os datagramas disponíveis, acumulando os relatórios no lote.
+     */
+    private void lerDatagramas(DatagramChannel udp) throws IOException {
+        while (true) {
+            bufferUdp.clear();
+            if (udp.receive(bufferUdp) == null) {
+                break;
+            }
+            bufferUdp.flip();
+            decodificar(bufferUdp);
+        }
+        aplicarLote();
+    }
+
+    /**
+     * Lê o que estiver disponível na conexão; um quadro incompleto fica no
+     * buffer da conexão até a próxima leitura.
+     */
+    private void lerConexao(SelectionKey chave, SocketChannel canal) throws IOException {
+        ByteBuffer buffer = (ByteBuffer) chave.attachment();
+        if (canal.read(buffer) < 0) {
+            chave.cancel();
+            canal.close();
+            return;
+        }
+        buffer.flip();
+        decodificar(buffer);
+        aplicarLote();
+        buffer.compact();
+    }
+
+    /**
+     * Decodifica o buffer inteiro, aplicando o lote sempre que ele enche.
+     */
+    private void decodificar(ByteBuffer buffer) {
+        while (true) {
+            int ignorados = ProtocoloTelemetria.decodificar(buffer, lote);
+            if (ignorados > 0) {
+                telemetriaService.registrarQuadrosInvalidos(ignorados);
+            }
+            if (!lote.cheio()) {
+                return;
+            }
+            aplicarLote();
+        }
+    }
+
+    private void aplicarLote() {
+        if (lote.tamanho() > 0) {
+            telemetriaService.aplicar(lote);
+            lote.limpar();
+        }
+    }
+
+    @PreDestroy
+    public void encerrar() {
+        ativo = false;
+        seletor.wakeup();
+        try {
+            laco.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            for (SelectionKey chave : seletor.keys()) {
+                chave.channel().close();
+            }
+            seletor.close();
+        } catch (IOException e) {
+            // nada a fazer no encerramento
+        }
+    }
+}
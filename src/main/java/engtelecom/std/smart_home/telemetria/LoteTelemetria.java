@@ -0,0 +1,74 @@
+package engtelecom.std.smart_home.telemetria;
+
+/**
+ * Lote reutilizável de relatórios de telemetria já decodificados.
+ *
+ * Os relatórios ficam em vetores de tipos primitivos, de forma que a
+ * decodificação não cria nenhum objeto; o mesmo lote é reaproveitado a cada
+ * leitura do receptor.
+ */
+public final class LoteTelemetria {
+
+    private final long[] casas;
+    private final long[] dispositivos;
+    private final byte[] campos;
+    private final int[] valores;
+    private int tamanho;
+
+    /**
+     * Cria um lote vazio.
+     *
+     * @param capacidade número máximo de relatórios no lote
+     */
+    public LoteTelemetria(int capacidade) {
+        this.casas = new long[capacidade];
+        this.dispositivos = new long[capacidade];
+        this.campos = new byte[capacidade];
+        this.valores = new int[capacidade];
+    }
+
+    /**
+     * Adiciona um relatório ao lote.
+     *
+     * @return false se o lote estiver cheio
+     */
+    boolean adicionar(long casaId, long dispositivoId, byte campo, int valor) {
+        if (tamanho == dispositivos.length) {
+            return false;
+        }
+        casas[tamanho] = casaId;
+        dispositivos[tamanho] = dispositivoId;
+        campos[tamanho] = campo;
+        valores[tamanho] = valor;
+        tamanho++;
+        return true;
+    }
+
+    public boolean cheio() {
+        return tamanho == dispositivos.length;
+    }
+
+    public int tamanho() {
+        return tamanho;
+    }
+
+    public long casa(int i) {
+        return casas[i];
+    }
+
+    public long dispositivo(int i) {
+        return dispositivos[i];
+    }
+
+    public int campo(int i) {
+        return campos[i];
+    }
+
+    public int valor(int i) {
+        return valores[i];
+    }
+
+    public void limpar() {
+        tamanho = 0;
+    }
+}
@@ -0,0 +1,95 @@
+package engtelecom.std.smart_home.telemetria;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Protocolo binário compacto usado pelos dispositivos para informar seu estado.
+ *
+ * Cada relatório é um quadro prefixado pelo seu tamanho, em ordem de bytes de
+ * rede (big-endian):
+ *
+ * <pre>
+ * +---------+--------------+----------------------+--------+------------+
+ * | tamanho | casaId (u32) | dispositivoId (u32)  | campo  | valor (i32)|
+ * | 1 byte  | 4 bytes      | 4 bytes              | 1 byte | 4 bytes    |
+ * +---------+--------------+----------------------+--------+------------+
+ * </pre>
+ *
+ * O tamanho conta apenas os bytes que o seguem: 13 no formato acima, ou 9 no
+ * formato curto, sem o campo casaId, que se refere à casa padrão. Quadros de
+ * outros tamanhos são ignorados, o que permite estender o formato sem quebrar
+ * receptores antigos. Um datagrama UDP ou um trecho do fluxo TCP pode conter
+ * vários quadros seguidos.
+ */
+public final class ProtocoloTelemetria {
+
+    /** Tamanho do corpo de um relatório (sem o byte de tamanho). */
+    public static final int TAMANHO_RELATORIO = 13;
+
+    /** Tamanho do corpo de um relatório da casa padrão, sem o ID da casa. */
+    public static final int TAMANHO_RELATORIO_CURTO = 9;
+
+    /** Tamanho total de um quadro de relatório. */
+    public static final int TAMANHO_QUADRO = TAMANHO_RELATORIO + 1;
+
+    private static final long CASA_PADRAO = 1;
+
+    private ProtocoloTelemetria() {
+    }
+
+    /**
+     * Escreve um relatório no buffer.
+     *
+     * @param buffer        buffer de destino
+     * @param casaId        ID da casa
+     * @param dispositivoId ID do dispositivo na casa
+     * @param campo         campo informado
+     * @param valor         valor do campo (0 ou 1 para "ligado")
+     */
+    public static void codificar(ByteBuffer buffer, long casaId, long dispositivoId, CampoTelemetria campo,
+            int valor) {
+        buffer.put((byte) TAMANHO_RELATORIO);
+        buffer.putInt((int) casaId);
+        buffer.putInt((int) dispositivoId);
+        buffer.put((byte) campo.getCodigo());
+        buffer.putInt(valor);
+    }
+
+    /**
+     * Decodifica os quadros completos do buffer, da posição atual até o limite,
+     * adicionando-os ao lote. A posição do buffer avança até o fim do último
+     * quadro lido; um quadro incompleto no final permanece no buffer.
+     *
+     * A decodificação para quando o lote enche.
+     *
+     * @param buffer buffer em modo de leitura
+     * @param lote   lote de destino
+     * @return número de quadros ignorados por terem tamanho desconhecido
+     */
+    public static int decodificar(ByteBuffer buffer, LoteTelemetria lote) {
+        int ignorados = 0;
+        int pos = buffer.position();
+        int limite = buffer.limit();
+
+        while (pos < limite && !lote.cheio()) {
+            int tamanho = buffer.get(pos) & 0xFF;
+            if (pos + 1 + tamanho > limite) {
+                break;
+            }
+            if (tamanho == TAMANHO_RELATORIO) {
+                long casaId = buffer.getInt(pos + 1) & 0xFFFFFFFFL;
+                long id = buffer.getInt(pos + 5) & 0xFFFFFFFFL;
+                lote.adicionar(casaId, id, buffer.get(pos + 9), buffer.getInt(pos + 10));
+            } else if (tamanho == TAMANHO_RELATORIO_CURTO) {
+                long id = buffer.getInt(pos + 1) & 0xFFFFFFFFL;
+                lote.adicionar(CASA_PADRAO, id, buffer.get(pos + 5), buffer.getInt(pos + 6));
+            } else {
+                ignorados++;
+            }
+            pos += 1 + tamanho;
+        }
+
+        buffer.position(pos);
+        return ignorados;
+    }
+}
@@ -0,0 +1,267 @@
+package engtelecom.std.smart_home;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Sobe três nós da aplicação na mesma JVM, em portas livres, e verifica a
+ * replicação entre eles: escritas no líder chegam aos seguidores, remoções
+ * feitas em disputa com atualizações não deixam o cenário de volta em nenhum
+ * seguidor e, quando o líder cai, outro nó assume e continua replicando.
+ *
+ * A troca de líder derruba um nó, por isso é o último teste da classe.
+ */
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+class ReplicacaoClusterTest {
+
+    private static final int NOS = 3;
+    private static final String POSICAO = "X-Replicacao-Posicao";
+    private static final long PRAZO_MS = 30_000;
+
+    private static final Pattern PAPEL = Pattern.compile("\"papel\":\"(\\w+)\"");
+    private static final Pattern SEQUENCIA = Pattern.compile("\"sequencia\":(\\d+)");
+    private static final Pattern ID = Pattern.compile("\"id\":(\\d+)");
+    private static final Pattern INTENSIDADE = Pattern.compile("\"intensidade\":(\\d+)");
+
+    private static final HttpClient HTTP = HttpClient.newBuilder().connectTimeout(Duration.ofMillis(500)).build();
+
+    private static final int[] portas = new int[NOS];
+    private static final ConfigurableApplicationContext[] nos = new ConfigurableApplicationContext[NOS];
+    private static String[] argumentosBase;
+
+    @BeforeAll
+    static void iniciarCluster() throws IOException {
+        StringBuilder lista = new StringBuilder();
+        for (int i = 0; i < NOS; i++) {
+            try (ServerSocket s = new ServerSocket(0)) {
+                portas[i] = s.getLocalPort();
+            }
+            lista.append(i == 0 ? "" : ",").append(url(i));
+        }
+        argumentosBase = new String[] {
+                "--casa.replicacao.nos=" + lista,
+                "--casa.replicacao.timeout-lider-ms=1000",
+                "--casa.telemetria.habilitada=false",
+                "--casa.admissao.habilitado=false",
+                "--casa.aquecimento.habilitado=false",
+                "--casa.coalescencia.janela-ms=0" };
+        for (int i = 0; i < NOS; i++) {
+            nos[i] = iniciar(i);
+        }
+    }
+
+    @AfterAll
+    static void encerrarCluster() {
+        for (ConfigurableApplicationContext no : nos) {
+            if (no != null) {
+                no.close();
+            }
+        }
+    }
+
+    @Test
+    @Order(1)
+    void escritaNoLiderChegaAosSeguidores() throws Exception {
+        int lider = aguardarLider();
+
+        HttpResponse<String> escrita = enviar(requisicaoEscrita(lider, 37));
+        assertThat(escrita.statusCode()).isEqualTo(200);
+        String posicao = escrita.headers().firstValue(POSICAO).orElseThrow();
+
+        for (int i = 0; i < NOS; i++) {
+            if (i == lider) {
+                continue;
+            }
+            HttpResponse<String> leitura = enviar(HttpRequest.newBuilder(URI.create(url(i) + "/dispositivos/1"))
+                    .header(POSICAO, posicao).build());
+            assertThat(leitura.statusCode()).isEqualTo(200);
+            assertThat(extrair(INTENSIDADE, leitura.body())).isEqualTo("37");
+        }
+    }
+
+    @Test
+    @Order(2)
+    void remocaoChegaAosSeguidoresSemRessuscitarCenarios() throws Exception {
+        int lider = aguardarLider();
+
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            HttpResponse<String> criado = enviar(requisicao(lider, "/cenarios")
+                    .POST(HttpRequest.BodyPublishers.ofString(cenario("disputa-" + i))).build());
+            assertThat(criado.statusCode()).isEqualTo(201);
+            ids.add(Long.parseLong(extrair(ID, criado.body())));
+        }
+
+        // cada cenário recebe uma atualização e uma remoção ao mesmo tempo
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            CountDownLatch largada = new CountDownLatch(1);
+            List<Future<?>> tarefas = new ArrayList<>();
+            for (long id : ids) {
+                String caminho = "/cenarios/" + id;
+                tarefas.add(executor.submit(() -> {
+                    largada.await();
+                    return enviar(requisicao(lider, caminho)
+                            .PUT(HttpRequest.BodyPublishers.ofString(cenario("atualizado-" + id))).build());
+                }));
+                tarefas.add(executor.submit(() -> {
+                    largada.await();
+                    return enviar(requisicao(lider, caminho).DELETE().build());
+                }));
+            }
+            largada.countDown();
+            for (Future<?> tarefa : tarefas) {
+                tarefa.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        long alvo = Long.parseLong(extrair(SEQUENCIA, ler(lider, "/replicacao")));
+        for (int i = 0; i < NOS; i++) {
+            if (i == lider) {
+                continue;
+            }
+            aguardarSequencia(i, alvo);
+            for (long id : ids) {
+                assertThat(enviar(HttpRequest.newBuilder(URI.create(url(i) + "/cenarios/" + id)).build()).statusCode())
+                        .as("cenário %d no nó %d", id, i)
+                        .isEqualTo(404);
+            }
+        }
+    }
+
+    @Test
+    @Order(3)
+    void outroNoAssumeQuandoOLiderCai() throws Exception {
+        int lider = aguardarLider();
+        nos[lider].close();
+        nos[lider] = null;
+
+        long limite = System.currentTimeMillis() + PRAZO_MS;
+        int novoLider = -1;
+        String posicao = null;
+        while (novoLider < 0) {
+            assertThat(System.currentTimeMillis()).as("nenhum nó assumiu a liderança").isLessThan(limite);
+            for (int i = 0; i < NOS && novoLider < 0; i++) {
+                if (nos[i] == null) {
+                    continue;
+                }
+                try {
+                    HttpResponse<String> escrita = enviar(requisicaoEscrita(i, 73));
+                    if (escrita.statusCode() == 200) {
+                        novoLider = i;
+                        posicao = escrita.headers().firstValue(POSICAO).orElseThrow();
+                    }
+                } catch (IOException e) {
+                    // nó ainda ocupado com a eleição
+                }
+            }
+            Thread.sleep(20);
+        }
+
+        int seguidor = -1;
+        for (int i = 0; i < NOS; i++) {
+            if (nos[i] != null && i != novoLider) {
+                seguidor = i;
+            }
+        }
+        HttpResponse<String> leitura = enviar(HttpRequest.newBuilder(URI.create(url(seguidor) + "/dispositivos/1"))
+                .header(POSICAO, posicao).build());
+        assertThat(leitura.statusCode()).isEqualTo(200);
+        assertThat(extrair(INTENSIDADE, leitura.body())).isEqualTo("73");
+    }
+
+    private static ConfigurableApplicationContext iniciar(int i) {
+        String[] argumentos = Arrays.copyOf(argumentosBase, argumentosBase.length + 2);
+        argumentos[argumentosBase.length] = "--server.port=" + portas[i];
+        argumentos[argumentosBase.length + 1] = "--casa.replicacao.no=" + i;
+        return new SpringApplicationBuilder(CasaInteligenteApplication.class).run(argumentos);
+    }
+
+    private static String url(int i) {
+        return "http://localhost:" + portas[i];
+    }
+
+    private static String cenario(String nome) {
+        return "{\"nome\":\"" + nome + "\",\"rotina\":[{\"dispositivoId\":1,\"ligado\":true}]}";
+    }
+
+    private static HttpRequest.Builder requisicao(int no, String caminho) {
+        return HttpRequest.newBuilder(URI.create(url(no) + caminho))
+                .timeout(Duration.ofSeconds(5))
+                .header("content-type", "application/json");
+    }
+
+    private static HttpRequest requisicaoEscrita(int no, int intensidade) {
+        String corpo = "{\"ligado\":true,\"cor\":\"azul\",\"intensidade\":" + intensidade + "}";
+        return requisicao(no, "/dispositivos/1").PUT(HttpRequest.BodyPublishers.ofString(corpo)).build();
+    }
+
+    private static HttpResponse<String> enviar(HttpRequest requisicao) throws IOException, InterruptedException {
+        return HTTP.send(requisicao, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static int aguardarLider() throws InterruptedException {
+        long limite = System.currentTimeMillis() + PRAZO_MS;
+        while (System.currentTimeMillis() < limite) {
+            for (int i = 0; i < NOS; i++) {
+                if (nos[i] != null && "lider".equals(extrair(PAPEL, ler(i, "/replicacao")))) {
+                    return i;
+                }
+            }
+            Thread.sleep(10);
+        }
+        throw new AssertionError("nenhum líder eleito em " + PRAZO_MS + " ms");
+    }
+
+    private static void aguardarSequencia(int no, long sequencia) throws InterruptedException {
+        long limite = System.currentTimeMillis() + PRAZO_MS;
+        while (System.currentTimeMillis() < limite) {
+            String s = extrair(SEQUENCIA, ler(no, "/replicacao"));
+            if (s != null && Long.parseLong(s) >= sequencia) {
+                return;
+            }
+            Thread.sleep(5);
+        }
+        throw new AssertionError("nó " + no + " não alcançou a sequência " + sequencia);
+    }
+
+    private static String ler(int no, String caminho) throws InterruptedException {
+        try {
+            return enviar(HttpRequest.newBuilder(URI.create(url(no) + caminho)).build()).body();
+        } catch (IOException e) {
+            return "";
+        }
+    }
+
+    private static String extrair(Pattern padrao, String texto) {
+        Matcher m = padrao.matcher(texto);
+        return m.find() ? m.group(1) : null;
+    }
+}